@@ -3,17 +3,23 @@ package edu.stanford.futuredata.macrobase.cli;
 import edu.stanford.futuredata.macrobase.analysis.summary.Explanation;
 import edu.stanford.futuredata.macrobase.pipeline.BasicBatchPipeline;
 import edu.stanford.futuredata.macrobase.pipeline.CubePipeline;
+import edu.stanford.futuredata.macrobase.pipeline.ExplanationCache;
 import edu.stanford.futuredata.macrobase.pipeline.PipelineConfig;
 import edu.stanford.futuredata.macrobase.pipeline.Pipeline;
 import edu.stanford.futuredata.macrobase.util.MacrobaseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+
 /**
  * Runs a pipeline based on parameters saved in a config file.
  * New custom pipelines can be created by implementing the Pipeline interface and
  * adding a loader to the PipelineMapper.
  *
+ * If the config sets resultCacheDir, results are stored there and reused by later runs
+ * of the same config over unchanged input.
+ *
  * see demo/cli_conf.yaml
  */
 public class CliRunner {
@@ -24,7 +30,17 @@ public class CliRunner {
         String configFile = args[0];
         PipelineConfig conf = PipelineConfig.fromYamlFile(configFile);
         Pipeline p = loadPipeline(conf);
-        Explanation e = p.results();
+        String resultCacheDir = conf.get("resultCacheDir", null);
+        Explanation e;
+        if (resultCacheDir != null) {
+            ExplanationCache cache = new ExplanationCache(
+                    1, new File(resultCacheDir), Integer.getInteger("macrobase.resultCacheFiles", 256)
+            );
+            e = cache.results(conf, p);
+            log.info("Result cache hits: {}", cache.getNumHits());
+        } else {
+            e = p.results();
+        }
         log.info("Computed Results");
         System.out.println(e.prettyPrint());
     }
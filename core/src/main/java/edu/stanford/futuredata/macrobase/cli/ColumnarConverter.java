@@ -0,0 +1,59 @@
+package edu.stanford.futuredata.macrobase.cli;
+
+import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import edu.stanford.futuredata.macrobase.datamodel.Schema;
+import edu.stanford.futuredata.macrobase.ingest.CSVDataFrameLoader;
+import edu.stanford.futuredata.macrobase.ingest.ColumnarFileWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts a CSV file to the binary columnar format once, so that later queries can load
+ * it with a columnar:// URI instead of parsing the CSV every time.
+ *
+ * Usage: ColumnarConverter input.csv output.mbc [doubleColumn ...]
+ * Listed columns are stored as doubles and the rest as dictionary-encoded strings, which
+ * can still be loaded as doubles.
+ */
+public class ColumnarConverter {
+    private static Logger log = LoggerFactory.getLogger(ColumnarConverter.class);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ColumnarConverter input.csv output.mbc [doubleColumn ...]");
+            System.exit(1);
+        }
+        List<String> doubleColumns = Arrays.asList(args).subList(2, args.length);
+        long startTime = System.currentTimeMillis();
+        DataFrame df = convert(args[0], args[1], doubleColumns, Runtime.getRuntime().availableProcessors());
+        log.info("Wrote {} rows to {} in {} ms", df.getNumRows(), args[1],
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * @param doubleColumns columns to store as doubles, others are stored as strings
+     * @return the converted DataFrame
+     */
+    public static DataFrame convert(
+            String csvFile,
+            String outputFile,
+            List<String> doubleColumns,
+            int numThreads
+    ) throws Exception {
+        Map<String, Schema.ColType> colTypes = new HashMap<>();
+        for (String column : doubleColumns) {
+            colTypes.put(column, Schema.ColType.DOUBLE);
+        }
+        CSVDataFrameLoader loader = new CSVDataFrameLoader(csvFile);
+        loader.setNumThreads(numThreads);
+        loader.setColumnTypes(colTypes);
+        DataFrame df = loader.load();
+        new ColumnarFileWriter().write(df, outputFile);
+        return df;
+    }
+}
@@ -2,21 +2,33 @@ package edu.stanford.futuredata.macrobase.pipeline;
 
 import edu.stanford.futuredata.macrobase.analysis.classify.Classifier;
 import edu.stanford.futuredata.macrobase.analysis.classify.PercentileClassifier;
+import edu.stanford.futuredata.macrobase.analysis.summary.APrioriMinedState;
 import edu.stanford.futuredata.macrobase.analysis.summary.APrioriSummarizer;
 import edu.stanford.futuredata.macrobase.analysis.summary.BatchSummarizer;
 import edu.stanford.futuredata.macrobase.analysis.summary.Explanation;
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.AttributeEncoder;
 import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
 import edu.stanford.futuredata.macrobase.datamodel.Schema;
-import edu.stanford.futuredata.macrobase.ingest.CSVDataFrameLoader;
 import edu.stanford.futuredata.macrobase.util.MacrobaseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Simplest default pipeline: load, classify, and then explain
  * Only supports operating over a single metric
+ *
+ * In pipelined mode the input is loaded on a separate thread as a stream of chunks. Each
+ * chunk's attributes are encoded and its metric values handed to the classifier as it
+ * arrives, so parsing overlaps with both, and the chunks are never merged into one
+ * DataFrame. Percentile cutoffs depend on the whole metric column, so rows are labelled
+ * once the last chunk is in, and itemset counts depend on those labels, so summarization
+ * runs after that. Only the percentile classifiers and the APriori summarizer support
+ * pipelining; other types, and pipelines loading through a data cache, run sequentially.
+ * The explanation is the same in both modes, since chunked encoding only changes the
+ * codes of attribute values and results with equal support are ordered by their values.
  */
 public class BasicBatchPipeline implements Pipeline {
     Logger log = LoggerFactory.getLogger(Pipeline.class);
@@ -33,7 +45,17 @@ public class BasicBatchPipeline implements Pipeline {
     private List<String> attributes = null;
     private double minSupport = 0.01;
     private double minRiskRatio = 5.0;
+    private int numThreads = 1;
+    private boolean pipelined = false;
+    private DataFrameCache dataCache = null;
+    private APrioriMinedState minedState = null;
+    private String minedStateKey = null;
+    // Filled in as stages finish, so progress can be read while results() runs
+    private final Map<String, Long> stageTimings = Collections.synchronizedMap(new LinkedHashMap<>());
 
+    // Loaded chunks waiting to be classified and encoded
+    private static final int CHUNK_QUEUE_SIZE = 4;
+    private static final DataFrame END_OF_INPUT = new DataFrame();
 
     public BasicBatchPipeline (PipelineConfig conf) {
         inputURI = conf.get("inputURI");
@@ -48,16 +70,20 @@ public class BasicBatchPipeline implements Pipeline {
         attributes = conf.get("attributes");
         minRiskRatio = conf.get("minRiskRatio");
         minSupport = conf.get("minSupport");
-
+        numThreads = conf.get("numThreads", 1);
+        pipelined = conf.get("pipelined", false);
     }
 
     public Classifier getClassifier() throws MacrobaseException {
         switch (classifierType.toLowerCase()) {
-            case "percentile": {
+            case "percentile":
+            case "percentile_sketch": {
                 PercentileClassifier classifier = new PercentileClassifier(metric);
                 classifier.setPercentile(cutoff);
                 classifier.setIncludeHigh(pctileHigh);
                 classifier.setIncludeLow(pctileLow);
+                classifier.setUseSketch(classifierType.equalsIgnoreCase("percentile_sketch"));
+                classifier.setNumThreads(numThreads);
                 return classifier;
             }
             default : {
@@ -74,6 +100,8 @@ public class BasicBatchPipeline implements Pipeline {
                 summarizer.setAttributes(attributes);
                 summarizer.setMinSupport(minSupport);
                 summarizer.setMinRiskRatio(minRiskRatio);
+                summarizer.setNumThreads(numThreads);
+                summarizer.setMinedState(getMinedState());
                 return summarizer;
             }
             default: {
@@ -82,34 +110,204 @@ public class BasicBatchPipeline implements Pipeline {
         }
     }
 
+    /**
+     * Load data through a cache shared with other pipelines, instead of from the input
+     * every time. The pipelined loading mode is not used while a cache is set.
+     * @param dataCache cache to load through, or null to always load from the input
+     * @return this
+     */
+    public BasicBatchPipeline setDataCache(DataFrameCache dataCache) {
+        this.dataCache = dataCache;
+        return this;
+    }
+
+    /**
+     * Share itemset counts with other runs over the same data, so that runs differing only
+     * in minSupport or minRiskRatio can skip counting where possible
+     * @param minedState state to reuse and update, or null to count from scratch
+     * @return this
+     */
+    public BasicBatchPipeline setMinedState(APrioriMinedState minedState) {
+        this.minedState = minedState;
+        return this;
+    }
+
+    /**
+     * Share itemset counts with other runs through the data cache. Runs with the same key
+     * over the same cached input share a mined state, which is dropped when the input is
+     * evicted. Only used while a cache is set and no mined state is given.
+     * @param minedStateKey key identifying runs that differ only in minSupport or minRiskRatio
+     * @return this
+     */
+    public BasicBatchPipeline setMinedStateKey(String minedStateKey) {
+        this.minedStateKey = minedStateKey;
+        return this;
+    }
+
+    private APrioriMinedState getMinedState() {
+        if (minedState == null && minedStateKey != null && dataCache != null) {
+            return dataCache.getMinedState(inputURI, getColTypes(), minedStateKey, attributes.size());
+        }
+        return minedState;
+    }
+
     public DataFrame loadData() throws Exception {
+        if (dataCache != null) {
+            return dataCache.get(inputURI, getColTypes(), numThreads);
+        }
+        return PipelineUtils.loadDataFrame(inputURI, getColTypes(), numThreads);
+    }
+
+    private Map<String, Schema.ColType> getColTypes() {
         Map<String, Schema.ColType> colTypes = new HashMap<>();
         colTypes.put(metric, Schema.ColType.DOUBLE);
-        return PipelineUtils.loadDataFrame(inputURI, colTypes);
+        return colTypes;
+    }
+
+    /**
+     * @return time taken by each stage of the current or last run so far, in order
+     */
+    public Map<String, Long> getStageTimings() {
+        synchronized (stageTimings) {
+            return new LinkedHashMap<>(stageTimings);
+        }
+    }
+
+    /**
+     * Stop between stages if the thread running the pipeline was interrupted
+     */
+    private void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException("Pipeline cancelled");
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Load the input on a separate thread, classifying and encoding chunks as they are loaded,
+     * and then summarize the encoded rows
+     */
+    private Explanation resultsPipelined(
+            PercentileClassifier classifier,
+            APrioriSummarizer summarizer
+    ) throws Exception {
+        BlockingQueue<DataFrame> chunks = new ArrayBlockingQueue<>(CHUNK_QUEUE_SIZE);
+        Map<String, Schema.ColType> colTypes = getColTypes();
+        AttributeEncoder encoder = new AttributeEncoder();
+        encoder.setColumnNames(attributes);
+        List<int[]> encoded = new ArrayList<>();
+
+        long startTime = System.currentTimeMillis();
+        ExecutorService loader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> loading = loader.submit(() -> {
+                long loadStartTime = System.currentTimeMillis();
+                try {
+                    PipelineUtils.loadDataFrameChunks(inputURI, colTypes, numThreads, chunks);
+                } finally {
+                    chunks.put(END_OF_INPUT);
+                }
+                return System.currentTimeMillis() - loadStartTime;
+            });
+
+            long encodeTime = 0;
+            DataFrame chunk;
+            while ((chunk = chunks.take()) != END_OF_INPUT) {
+                long chunkStartTime = System.currentTimeMillis();
+                classifier.addChunk(chunk);
+                encoded.addAll(encoder.encodeDictionaryColumns(
+                        chunk.getEncodedStringColsByName(attributes)));
+                encodeTime += System.currentTimeMillis() - chunkStartTime;
+            }
+            stageTimings.put("load", getResult(loading));
+            stageTimings.put("encode", encodeTime);
+        } finally {
+            loader.shutdownNow();
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+
+        log.info("Loading time: {}", elapsed);
+        log.info("{} rows", encoded.size());
+        log.info("Metric: {}", metric);
+        log.info("Attributes: {}", attributes);
+        checkInterrupted();
+
+        startTime = System.currentTimeMillis();
+        double[] outlierCol = classifier.classifyChunks();
+        stageTimings.put("classify", System.currentTimeMillis() - startTime);
+
+        checkInterrupted();
+
+        startTime = System.currentTimeMillis();
+        summarizer.processEncoded(encoder, encoded, outlierCol, null);
+        elapsed = System.currentTimeMillis() - startTime;
+        log.info("Summarization time: {}", elapsed);
+        Explanation output = summarizer.getResults();
+        stageTimings.put("summarize", System.currentTimeMillis() - startTime);
+        output.setStageTimings(getStageTimings());
+
+        return output;
     }
 
     @Override
     public Explanation results() throws Exception {
+        stageTimings.clear();
+        if (pipelined) {
+            if (dataCache != null) {
+                log.info("Loading through the data cache, running sequentially");
+            } else {
+                Classifier classifier = getClassifier();
+                BatchSummarizer summarizer = getSummarizer(classifier.getOutputColumnName());
+                if (classifier instanceof PercentileClassifier && summarizer instanceof APrioriSummarizer) {
+                    return resultsPipelined((PercentileClassifier) classifier, (APrioriSummarizer) summarizer);
+                }
+                log.info("{} and {} cannot be pipelined, running sequentially", classifierType, summarizerType);
+            }
+        }
         long startTime = System.currentTimeMillis();
         DataFrame df = loadData();
+        stageTimings.put("load", System.currentTimeMillis() - startTime);
         long elapsed = System.currentTimeMillis() - startTime;
 
         log.info("Loading time: {}", elapsed);
         log.info("{} rows", df.getNumRows());
         log.info("Metric: {}", metric);
         log.info("Attributes: {}", attributes);
+        checkInterrupted();
 
+        startTime = System.currentTimeMillis();
         Classifier classifier = getClassifier();
         classifier.process(df);
         df = classifier.getResults();
+        stageTimings.put("classify", System.currentTimeMillis() - startTime);
 
         BatchSummarizer summarizer = getSummarizer(classifier.getOutputColumnName());
+        checkInterrupted();
 
         startTime = System.currentTimeMillis();
         summarizer.process(df);
         elapsed = System.currentTimeMillis() - startTime;
         log.info("Summarization time: {}", elapsed);
         Explanation output = summarizer.getResults();
+        stageTimings.put("summarize", System.currentTimeMillis() - startTime);
+        output.setStageTimings(getStageTimings());
+        if (minedState == null && minedStateKey != null && dataCache != null) {
+            dataCache.updateMinedState(inputURI, getColTypes(), minedStateKey);
+        }
 
         return output;
     }
@@ -34,6 +34,7 @@ public class CubePipeline implements Pipeline {
     private List<String> attributes;
     private double minSupport;
     private double minRiskRatio;
+    private int numThreads;
 
     public CubePipeline(PipelineConfig conf) {
         inputURI = conf.get("inputURI");
@@ -49,12 +50,13 @@ public class CubePipeline implements Pipeline {
         attributes = conf.get("attributes");
         minSupport = conf.get("minSupport");
         minRiskRatio = conf.get("minRiskRatio");
+        numThreads = conf.get("numThreads", 1);
     }
 
     public Explanation results() throws Exception {
         Map<String, Schema.ColType> colTypes = getColTypes();
         long startTime = System.currentTimeMillis();
-        DataFrame df = PipelineUtils.loadDataFrame(inputURI, colTypes);
+        DataFrame df = PipelineUtils.loadDataFrame(inputURI, colTypes, numThreads);
         long elapsed = System.currentTimeMillis() - startTime;
         log.info("Loading time: {}", elapsed);
         log.info("{} rows", df.getNumRows());
@@ -77,6 +79,7 @@ public class CubePipeline implements Pipeline {
         summarizer.setAttributes(attributes);
         summarizer.setMinSupport(minSupport);
         summarizer.setMinRiskRatio(minRiskRatio);
+        summarizer.setNumThreads(numThreads);
         startTime = System.currentTimeMillis();
         summarizer.process(df);
         elapsed = System.currentTimeMillis() - startTime;
@@ -88,7 +91,8 @@ public class CubePipeline implements Pipeline {
     private Map<String, Schema.ColType> getColTypes() {
         Map<String, Schema.ColType> colTypes = new HashMap<>();
         switch (classifierType) {
-            case "arithmetic": {
+            case "arithmetic":
+            case "arithmetic_sketch": {
                 colTypes.put(countColumn, Schema.ColType.DOUBLE);
                 colTypes.put(meanColumn, Schema.ColType.DOUBLE);
                 colTypes.put(stdColumn, Schema.ColType.DOUBLE);
@@ -99,12 +103,15 @@ public class CubePipeline implements Pipeline {
 
     private CubeClassifier getClassifier() throws MacrobaseException {
         switch (classifierType) {
-            case "arithmetic": {
+            case "arithmetic":
+            case "arithmetic_sketch": {
                 ArithmeticClassifier classifier =
                         new ArithmeticClassifier(countColumn, meanColumn, stdColumn);
                 classifier.setPercentile(percentile);
                 classifier.setIncludeHigh(includeHi);
                 classifier.setIncludeLow(includeLo);
+                classifier.setNumThreads(numThreads);
+                classifier.setUseSketch(classifierType.equals("arithmetic_sketch"));
                 return classifier;
             }
             default:
@@ -0,0 +1,326 @@
+package edu.stanford.futuredata.macrobase.pipeline;
+
+import edu.stanford.futuredata.macrobase.analysis.summary.APrioriMinedState;
+import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import edu.stanford.futuredata.macrobase.datamodel.DictionaryColumn;
+import edu.stanford.futuredata.macrobase.datamodel.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Keeps loaded DataFrames in memory so that repeated queries over the same input skip
+ * loading. Entries are keyed by input URI and column types, stored with every string
+ * column dictionary-encoded, and evicted least recently used first once their estimated
+ * size exceeds the budget. An entry for a file is reloaded if the file's modification
+ * time or length has changed since it was loaded.
+ *
+ * An entry can also hold APriori mined states for queries over it. A mined state only
+ * matches the columns it was built from, so it is dropped along with its entry, and its
+ * estimated size counts towards the entry's. A new state is charged for the rows it will
+ * hold, and measured again with its counts by updateMinedState after each run.
+ *
+ * Loading happens outside the cache lock, so concurrent misses on the same key may each
+ * load the input; the last one to finish is kept.
+ */
+public class DataFrameCache {
+    private static Logger log = LoggerFactory.getLogger(DataFrameCache.class);
+
+    // Rough JVM object sizes used to estimate memory use
+    private static final long ARRAY_OVERHEAD = 16;
+    private static final long REFERENCE_SIZE = 8;
+    private static final long STRING_OVERHEAD = 40;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, CachedDataset> entries;
+    private long totalBytes = 0;
+    private long numHits = 0;
+    private long numMisses = 0;
+
+    /**
+     * @param maxBytes estimated memory budget for all cached DataFrames
+     */
+    public DataFrameCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Look up a DataFrame, loading and caching it on a miss
+     * @return a copy of the cached DataFrame which may be modified without affecting the cache
+     */
+    public DataFrame get(
+            String inputURI,
+            Map<String, Schema.ColType> colTypes,
+            int numThreads
+    ) throws Exception {
+        String key = getKey(inputURI, colTypes);
+        long signature = PipelineUtils.getInputFingerprint(inputURI);
+        synchronized (this) {
+            CachedDataset entry = entries.get(key);
+            if (entry != null) {
+                if (entry.signature == signature) {
+                    numHits++;
+                    entry.numHits++;
+                    return entry.df.copy();
+                }
+                log.info("Input changed, reloading {}", inputURI);
+                remove(key);
+            }
+            numMisses++;
+        }
+
+        long startTime = System.currentTimeMillis();
+        DataFrame df = encoded(PipelineUtils.loadDataFrame(inputURI, colTypes, numThreads));
+        CachedDataset entry = new CachedDataset(
+                inputURI, colTypes, df, signature, System.currentTimeMillis() - startTime
+        );
+        synchronized (this) {
+            if (entry.estimatedBytes <= maxBytes) {
+                remove(key);
+                entries.put(key, entry);
+                totalBytes += entry.estimatedBytes;
+                evictToBudget();
+            } else {
+                log.info("{} is too large to cache: {} bytes", inputURI, entry.estimatedBytes);
+            }
+        }
+        return df.copy();
+    }
+
+    /**
+     * Look up the mined state kept with a cached input under a key, creating it if needed.
+     * A new state is charged the size of the encoded rows and outlier column it will hold.
+     * @param numAttributes number of attributes the state's rows are encoded from
+     * @return the state, or null if the input is not cached or there is no room for the state
+     */
+    public synchronized APrioriMinedState getMinedState(
+            String inputURI,
+            Map<String, Schema.ColType> colTypes,
+            String stateKey,
+            int numAttributes
+    ) {
+        CachedDataset entry = entries.get(getKey(inputURI, colTypes));
+        if (entry == null) {
+            return null;
+        }
+        APrioriMinedState state = entry.minedStates.get(stateKey);
+        if (state == null) {
+            long stateBytes = estimateMinedStateBytes(entry.getNumRows(), numAttributes);
+            if (entry.estimatedBytes + stateBytes > maxBytes) {
+                log.info("No room to keep mined state for {}", inputURI);
+                return null;
+            }
+            state = new APrioriMinedState();
+            entry.minedStates.put(stateKey, state);
+            entry.minedStateBytes.put(stateKey, stateBytes);
+            entry.estimatedBytes += stateBytes;
+            totalBytes += stateBytes;
+            // The entry was just used, so only others are evicted
+            evictToBudget();
+        }
+        return state;
+    }
+
+    /**
+     * Charge a mined state for the memory it holds after a run, dropping it if its entry no
+     * longer fits the budget. Call once the run that used the state has finished.
+     */
+    public void updateMinedState(
+            String inputURI,
+            Map<String, Schema.ColType> colTypes,
+            String stateKey
+    ) {
+        String key = getKey(inputURI, colTypes);
+        APrioriMinedState state;
+        synchronized (this) {
+            CachedDataset entry = entries.get(key);
+            state = entry == null ? null : entry.minedStates.get(stateKey);
+        }
+        if (state == null) {
+            return;
+        }
+        // measured outside the cache lock, since it waits for any run using the state
+        long stateBytes = state.getEstimatedBytes();
+        synchronized (this) {
+            CachedDataset entry = entries.get(key);
+            if (entry == null || entry.minedStates.get(stateKey) != state) {
+                return;
+            }
+            long delta = stateBytes - entry.minedStateBytes.get(stateKey);
+            if (entry.estimatedBytes + delta > maxBytes) {
+                log.info("No room to keep mined state for {}", inputURI);
+                entry.minedStates.remove(stateKey);
+                delta = -entry.minedStateBytes.remove(stateKey);
+            } else {
+                entry.minedStateBytes.put(stateKey, stateBytes);
+            }
+            entry.estimatedBytes += delta;
+            totalBytes += delta;
+            // The entry was just used, so only others are evicted
+            evictToBudget();
+        }
+    }
+
+    /**
+     * Remove every entry for an input, whatever its column types
+     * @return number of entries removed
+     */
+    public synchronized int evict(String inputURI) {
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, CachedDataset> e : entries.entrySet()) {
+            if (e.getValue().inputURI.equals(inputURI)) {
+                keys.add(e.getKey());
+            }
+        }
+        for (String key : keys) {
+            remove(key);
+        }
+        return keys.size();
+    }
+
+    /**
+     * @return number of entries removed
+     */
+    public synchronized int clear() {
+        int numEntries = entries.size();
+        entries.clear();
+        totalBytes = 0;
+        return numEntries;
+    }
+
+    /**
+     * @return cached datasets from least to most recently used
+     */
+    public synchronized List<CachedDataset> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+    public synchronized long getNumHits() {
+        return numHits;
+    }
+    public synchronized long getNumMisses() {
+        return numMisses;
+    }
+
+    private void remove(String key) {
+        CachedDataset removed = entries.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.estimatedBytes;
+        }
+    }
+
+    private void evictToBudget() {
+        Iterator<CachedDataset> it = entries.values().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            CachedDataset eldest = it.next();
+            log.info("Evicting {} from cache", eldest.inputURI);
+            totalBytes -= eldest.estimatedBytes;
+            it.remove();
+        }
+    }
+
+    private static String getKey(String inputURI, Map<String, Schema.ColType> colTypes) {
+        return inputURI + "|" + new TreeMap<>(colTypes);
+    }
+
+    /**
+     * @return DataFrame with the same columns where string columns are only stored encoded
+     */
+    private static DataFrame encoded(DataFrame df) {
+        DataFrame result = new DataFrame();
+        Schema schema = df.getSchema();
+        for (int c = 0; c < schema.getNumColumns(); c++) {
+            if (schema.getColumnType(c) == Schema.ColType.DOUBLE) {
+                result.addDoubleColumn(schema.getColumnName(c), df.getDoubleColumn(c));
+            } else {
+                result.addEncodedStringColumn(schema.getColumnName(c), df.getEncodedStringColumn(c));
+            }
+        }
+        return result;
+    }
+
+    // Encoded rows are held by the state and the outlier column is pinned by it; counts are
+    // charged once they exist
+    private static long estimateMinedStateBytes(int numRows, int numAttributes) {
+        long rowBytes = REFERENCE_SIZE + ARRAY_OVERHEAD + 4L * numAttributes;
+        return numRows * rowBytes + ARRAY_OVERHEAD + 8L * numRows;
+    }
+
+    private static long estimateBytes(DataFrame df) {
+        Schema schema = df.getSchema();
+        long bytes = 0;
+        for (int c = 0; c < schema.getNumColumns(); c++) {
+            if (schema.getColumnType(c) == Schema.ColType.DOUBLE) {
+                bytes += ARRAY_OVERHEAD + 8L * df.getDoubleColumn(c).length;
+            } else {
+                DictionaryColumn col = df.getEncodedStringColumn(c);
+                bytes += 2 * ARRAY_OVERHEAD + 4L * col.getNumRows();
+                for (String value : col.getDictionary()) {
+                    bytes += REFERENCE_SIZE;
+                    if (value != null) {
+                        bytes += STRING_OVERHEAD + 2L * value.length();
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    public static class CachedDataset {
+        private final String inputURI;
+        private final Map<String, Schema.ColType> columnTypes;
+        private final DataFrame df;
+        private final long signature;
+        private final long loadTime;
+        // Only changed under the cache lock
+        private volatile long estimatedBytes;
+        private volatile long numHits = 0;
+        private final Map<String, APrioriMinedState> minedStates = new HashMap<>();
+        private final Map<String, Long> minedStateBytes = new HashMap<>();
+
+        CachedDataset(
+                String inputURI,
+                Map<String, Schema.ColType> columnTypes,
+                DataFrame df,
+                long signature,
+                long loadTime
+        ) {
+            this.inputURI = inputURI;
+            this.columnTypes = new TreeMap<>(columnTypes);
+            this.df = df;
+            this.signature = signature;
+            this.loadTime = loadTime;
+            this.estimatedBytes = estimateBytes(df);
+        }
+
+        public String getInputURI() {
+            return inputURI;
+        }
+        public Map<String, Schema.ColType> getColumnTypes() {
+            return columnTypes;
+        }
+        public int getNumRows() {
+            return df.getNumRows();
+        }
+        public long getLoadTime() {
+            return loadTime;
+        }
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+        public long getNumHits() {
+            return numHits;
+        }
+        public int getNumMinedStates() {
+            return minedStates.size();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package edu.stanford.futuredata.macrobase.pipeline;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import edu.stanford.futuredata.macrobase.analysis.summary.Explanation;
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.AttributeSet;
+import edu.stanford.futuredata.macrobase.util.MacrobaseInternalError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Stores pipeline results so that rerunning a configuration over unchanged input returns
+ * the stored Explanation instead of recomputing it. Results are keyed by a hash of the
+ * config values and a fingerprint of the input file, kept as JSON in a bounded in-memory
+ * LRU tier and, if a directory is given, written to disk so they survive restarts. The
+ * disk tier is bounded by a number of files, dropping the least recently used first, and
+ * results for an older version of an input are deleted once a newer one is stored.
+ * Inputs without a fingerprint, such as database queries, are not cached, since a change
+ * to them could not be detected.
+ *
+ * Config values that only affect how a pipeline runs, such as numThreads, are left out
+ * of the key. Stored results are returned without stage timings, since no stages ran.
+ */
+public class ExplanationCache {
+    private static Logger log = LoggerFactory.getLogger(ExplanationCache.class);
+
+    public static final Set<String> EXECUTION_KEYS = new HashSet<>(Arrays.asList(
+            "numThreads", "pipelined", "timeoutMillis", "resultCacheDir"
+    ));
+
+    private final ObjectMapper mapper;
+    // Sorts nested maps so equal configs always hash the same
+    private final ObjectMapper keyMapper;
+    private final File directory;
+    private final int maxFiles;
+    private final LinkedHashMap<String, String> memory;
+    // Held while deleting files so two writers do not both prune the directory
+    private final Object diskLock = new Object();
+
+    private long numHits = 0;
+    private long numDiskHits = 0;
+    private long numMisses = 0;
+
+    /**
+     * @param maxEntries number of results to keep in memory and on disk
+     * @param directory directory to store results in, or null to only keep them in memory
+     */
+    public ExplanationCache(int maxEntries, File directory) {
+        this(maxEntries, directory, maxEntries);
+    }
+
+    /**
+     * @param maxEntries number of results to keep in memory
+     * @param directory directory to store results in, or null to only keep them in memory
+     * @param maxFiles number of results to keep in the directory
+     */
+    public ExplanationCache(int maxEntries, File directory, int maxFiles) {
+        this.maxFiles = maxFiles;
+        this.mapper = new ObjectMapper();
+        this.keyMapper = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+        this.directory = directory;
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new MacrobaseInternalError("Could not create result cache directory " + directory);
+        }
+        this.memory = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Return the stored result for a config, or run the pipeline and store its result
+     */
+    public Explanation results(PipelineConfig conf, Pipeline pipeline) throws Exception {
+        String key = getKey(conf);
+        if (key == null) {
+            return pipeline.results();
+        }
+        Explanation cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        Explanation result = pipeline.results();
+        put(key, result);
+        return result;
+    }
+
+    /**
+     * Keys are made of a hash of the input URI, the input fingerprint and a hash of the
+     * config, so results for other versions of the same input can be found by prefix.
+     * @return key identifying the config and the current contents of its input, or null if
+     * the input has no fingerprint and its results should not be cached
+     */
+    public String getKey(PipelineConfig conf) throws IOException {
+        String inputURI = conf.get("inputURI");
+        long fingerprint = inputURI == null ? 0 : PipelineUtils.getInputFingerprint(inputURI);
+        if (fingerprint == 0) {
+            return null;
+        }
+        Map<String, Object> values = new TreeMap<>(conf.getValues());
+        values.keySet().removeAll(EXECUTION_KEYS);
+        return sha256(inputURI).substring(0, 16) + "-" + Long.toHexString(fingerprint)
+                + "-" + sha256(keyMapper.writeValueAsString(values));
+    }
+
+    private static String sha256(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new MacrobaseInternalError("SHA-256 unavailable");
+        }
+    }
+
+    /**
+     * @return prefix shared by the keys of every version of the key's input
+     */
+    private static String inputPrefix(String key) {
+        return key.substring(0, key.indexOf('-') + 1);
+    }
+
+    /**
+     * @return prefix shared by the keys of the key's input at its current version
+     */
+    private static String versionPrefix(String key) {
+        return key.substring(0, key.indexOf('-', key.indexOf('-') + 1) + 1);
+    }
+
+    /**
+     * @param key key from getKey, null for an input that is not cached
+     * @return a copy of the stored result for a key, or null if there is none
+     */
+    public Explanation get(String key) throws IOException {
+        if (key == null) {
+            return null;
+        }
+        String json;
+        synchronized (this) {
+            json = memory.get(key);
+            if (json != null) {
+                numHits++;
+                return fromJson(json);
+            }
+        }
+        File f = getFile(key);
+        if (f != null && f.isFile()) {
+            try {
+                json = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+            } catch (NoSuchFileException e) {
+                // pruned by a concurrent put
+                synchronized (this) {
+                    numMisses++;
+                }
+                return null;
+            }
+            // the modification time orders files by last use
+            f.setLastModified(System.currentTimeMillis());
+            synchronized (this) {
+                memory.put(key, json);
+                numHits++;
+                numDiskHits++;
+            }
+            return fromJson(json);
+        }
+        synchronized (this) {
+            numMisses++;
+        }
+        return null;
+    }
+
+    /**
+     * Store a result, dropping results for other versions of its input
+     * @param key key from getKey, null for an input that is not cached
+     */
+    public void put(String key, Explanation result) throws IOException {
+        if (key == null) {
+            return;
+        }
+        String json = mapper.writeValueAsString(result);
+        String inputPrefix = inputPrefix(key);
+        String versionPrefix = versionPrefix(key);
+        synchronized (this) {
+            memory.keySet().removeIf(k -> k.startsWith(inputPrefix) && !k.startsWith(versionPrefix));
+            memory.put(key, json);
+        }
+        File f = getFile(key);
+        if (f != null) {
+            // Write then rename so readers never see a partial file
+            File tmp = File.createTempFile(key, ".tmp", directory);
+            Files.write(tmp.toPath(), json.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            prune(inputPrefix, versionPrefix);
+        }
+    }
+
+    /**
+     * Delete stored files for other versions of an input, then the least recently used
+     * files beyond maxFiles
+     */
+    private void prune(String inputPrefix, String versionPrefix) {
+        synchronized (diskLock) {
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(".json"));
+            if (files == null) {
+                return;
+            }
+            List<File> kept = new ArrayList<>();
+            for (File f : files) {
+                String name = f.getName();
+                if (name.startsWith(inputPrefix) && !name.startsWith(versionPrefix)) {
+                    delete(f);
+                } else {
+                    kept.add(f);
+                }
+            }
+            if (kept.size() > maxFiles) {
+                Map<File, Long> lastUsed = new HashMap<>();
+                kept.forEach(f -> lastUsed.put(f, f.lastModified()));
+                kept.sort(Comparator.comparing((File f) -> lastUsed.get(f)).thenComparing(File::getName));
+                for (File f : kept.subList(0, kept.size() - maxFiles)) {
+                    delete(f);
+                }
+            }
+        }
+    }
+
+    private static void delete(File f) {
+        if (!f.delete() && f.exists()) {
+            log.warn("Could not delete cached result {}", f);
+        }
+    }
+
+    /**
+     * @return number of results stored on disk
+     */
+    public int getNumFiles() {
+        if (directory == null) {
+            return 0;
+        }
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".json"));
+        return files == null ? 0 : files.length;
+    }
+
+    /**
+     * Remove every stored result, in memory and on disk
+     */
+    public void clear() {
+        synchronized (this) {
+            memory.clear();
+        }
+        if (directory != null) {
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(".json"));
+            if (files != null) {
+                for (File f : files) {
+                    delete(f);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return lookups answered from memory or disk
+     */
+    public synchronized long getNumHits() {
+        return numHits;
+    }
+    /**
+     * @return lookups answered from disk, a subset of the hits
+     */
+    public synchronized long getNumDiskHits() {
+        return numDiskHits;
+    }
+    public synchronized long getNumMisses() {
+        return numMisses;
+    }
+
+    private File getFile(String key) {
+        return directory == null ? null : new File(directory, key + ".json");
+    }
+
+    private Explanation fromJson(String json) throws IOException {
+        JsonNode root = mapper.readTree(json);
+        List<AttributeSet> itemsets = new ArrayList<>();
+        for (JsonNode itemset : root.path("itemsets")) {
+            Map<String, String> items = new HashMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = itemset.path("items").fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                items.put(field.getKey(), field.getValue().asText());
+            }
+            itemsets.add(new AttributeSet(
+                    itemset.path("support").asDouble(),
+                    itemset.path("numRecords").asDouble(),
+                    itemset.path("ratioToInliers").asDouble(),
+                    items
+            ));
+        }
+        return new Explanation(
+                itemsets,
+                root.path("numInliers").asLong(),
+                root.path("numOutliers").asLong(),
+                root.path("creationTimeMs").asLong()
+        );
+    }
+}
@@ -2,6 +2,16 @@ package edu.stanford.futuredata.macrobase.pipeline;
 
 import edu.stanford.futuredata.macrobase.analysis.summary.Explanation;
 
+import java.util.Collections;
+import java.util.Map;
+
 public interface Pipeline {
     Explanation results() throws Exception;
+
+    /**
+     * @return time taken by each finished stage of a run, for pipelines that track them
+     */
+    default Map<String, Long> getStageTimings() {
+        return Collections.emptyMap();
+    }
 }
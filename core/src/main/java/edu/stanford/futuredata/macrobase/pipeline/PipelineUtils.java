@@ -3,22 +3,76 @@ package edu.stanford.futuredata.macrobase.pipeline;
 import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
 import edu.stanford.futuredata.macrobase.datamodel.Schema;
 import edu.stanford.futuredata.macrobase.ingest.CSVDataFrameLoader;
+import edu.stanford.futuredata.macrobase.ingest.ColumnarDataFrameLoader;
 import edu.stanford.futuredata.macrobase.util.MacrobaseException;
 
+import java.io.File;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 
 public class PipelineUtils {
     public static DataFrame loadDataFrame(
             String inputURI,
             Map<String, Schema.ColType> colTypes
+    ) throws Exception {
+        return loadDataFrame(inputURI, colTypes, 1);
+    }
+
+    public static DataFrame loadDataFrame(
+            String inputURI,
+            Map<String, Schema.ColType> colTypes,
+            int numThreads
     ) throws Exception {
         if(inputURI.substring(0, 3).equals("csv")) {
             CSVDataFrameLoader loader = new CSVDataFrameLoader(inputURI.substring(6));
+            loader.setNumThreads(numThreads);
             loader.setColumnTypes(colTypes);
             DataFrame df = loader.load();
             return df;
+        } else if (inputURI.startsWith("columnar://")) {
+            ColumnarDataFrameLoader loader = new ColumnarDataFrameLoader(inputURI.substring(11));
+            loader.setColumnTypes(colTypes);
+            return loader.load();
         } else {
             throw new MacrobaseException("Unsupported URI");
         }
     }
+
+    /**
+     * Load a DataFrame as a sequence of chunks which can be combined with a DataFrameChunkMerger.
+     * CSV files are split into chunks as they are parsed, other inputs arrive as a single chunk.
+     * @param chunks queue to put chunks on in order
+     */
+    public static void loadDataFrameChunks(
+            String inputURI,
+            Map<String, Schema.ColType> colTypes,
+            int numThreads,
+            BlockingQueue<DataFrame> chunks
+    ) throws Exception {
+        if(inputURI.substring(0, 3).equals("csv")) {
+            CSVDataFrameLoader loader = new CSVDataFrameLoader(inputURI.substring(6));
+            loader.setNumThreads(numThreads);
+            loader.setColumnTypes(colTypes);
+            loader.loadChunks(chunks);
+        } else {
+            chunks.put(loadDataFrame(inputURI, colTypes, numThreads));
+        }
+    }
+
+    /**
+     * @return value that changes when the file behind a csv:// or columnar:// URI is modified,
+     * 0 if there is no such file, as for other URIs
+     */
+    public static long getInputFingerprint(String inputURI) {
+        String fileName;
+        if (inputURI.startsWith("csv://")) {
+            fileName = inputURI.substring(6);
+        } else if (inputURI.startsWith("columnar://")) {
+            fileName = inputURI.substring(11);
+        } else {
+            return 0;
+        }
+        File f = new File(fileName);
+        return 31 * f.lastModified() + f.length();
+    }
 }
@@ -0,0 +1,245 @@
+package edu.stanford.futuredata.macrobase.rest;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import edu.stanford.futuredata.macrobase.analysis.summary.Explanation;
+import edu.stanford.futuredata.macrobase.pipeline.Pipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs pipelines for the REST server with bounded concurrency and memory.
+ * At most maxRunning queries run at once and at most maxQueued wait for a thread; further
+ * submissions are rejected so the server can tell clients to back off. Each query reserves
+ * its estimated memory before it starts and waits while the reservations of running
+ * queries would exceed the budget, so a few large queries cannot exhaust the heap together.
+ *
+ * Cancelling a query interrupts its thread; pipelines check for interruption between
+ * stages, so a running query stops at the end of its current stage.
+ */
+public class QueryExecutor {
+    private static Logger log = LoggerFactory.getLogger(QueryExecutor.class);
+
+    public enum State {QUEUED, RUNNING}
+
+    private final ThreadPoolExecutor pool;
+    private final long memoryBudget;
+    private long reservedBytes = 0;
+    private final Object memoryLock = new Object();
+
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<Long, QueryStatus> queries = new LinkedHashMap<>();
+
+    /**
+     * @param maxRunning number of queries to run at once, at least 1
+     * @param maxQueued number of queries that may wait to run before submissions are rejected;
+     *                  with 0, queries are rejected unless a thread is free to take them
+     * @param memoryBudget total estimated bytes that running queries may use
+     * @throws IllegalArgumentException if maxRunning is below 1 or maxQueued below 0
+     */
+    public QueryExecutor(int maxRunning, int maxQueued, long memoryBudget) {
+        if (maxRunning < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Need at least 1 running and 0 queued queries, got %d and %d", maxRunning, maxQueued
+            ));
+        }
+        // A SynchronousQueue only hands a query to an idle thread and holds none
+        BlockingQueue<Runnable> queue = maxQueued == 0
+                ? new SynchronousQueue<>() : new LinkedBlockingQueue<>(maxQueued);
+        this.pool = new ThreadPoolExecutor(
+                maxRunning, maxRunning,
+                0L, TimeUnit.MILLISECONDS,
+                queue
+        );
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Start a query without waiting for it
+     * @param description shown in the status of the query
+     * @param estimatedBytes memory to reserve while the query runs
+     * @return status of the query, through which its result can be retrieved
+     * @throws RejectedExecutionException if the queue is full or the query can never fit in memory
+     */
+    public QueryStatus submit(String description, long estimatedBytes, Pipeline pipeline) {
+        if (estimatedBytes > memoryBudget) {
+            throw new RejectedExecutionException(String.format(
+                    "Query needs an estimated %d bytes, more than the budget of %d",
+                    estimatedBytes, memoryBudget
+            ));
+        }
+        QueryStatus status = new QueryStatus(
+                nextId.incrementAndGet(), description, estimatedBytes, pipeline
+        );
+        synchronized (queries) {
+            queries.put(status.id, status);
+        }
+        try {
+            status.future = pool.submit(() -> runQuery(status));
+        } catch (RejectedExecutionException e) {
+            remove(status);
+            throw new RejectedExecutionException("Too many queries are waiting to run");
+        }
+        return status;
+    }
+
+    /**
+     * Run a query and wait for its result
+     * @param timeoutMillis time to wait, including time spent queued, or 0 to wait indefinitely
+     * @throws TimeoutException if the query did not finish in time, in which case it is cancelled
+     * @throws CancellationException if the query was cancelled
+     */
+    public Explanation run(
+            String description,
+            long estimatedBytes,
+            Pipeline pipeline,
+            long timeoutMillis
+    ) throws Exception {
+        QueryStatus status = submit(description, estimatedBytes, pipeline);
+        try {
+            if (timeoutMillis > 0) {
+                return status.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                return status.future.get();
+            }
+        } catch (TimeoutException e) {
+            log.info("Query {} timed out after {} ms", status.id, timeoutMillis);
+            cancel(status.id);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return false if there is no such query, or it has already finished
+     */
+    public boolean cancel(long id) {
+        QueryStatus status;
+        synchronized (queries) {
+            status = queries.get(id);
+        }
+        if (status == null || status.future == null || !status.future.cancel(true)) {
+            return false;
+        }
+        // A query cancelled before it started never runs, so clean up after it here
+        if (status.state == State.QUEUED) {
+            remove(status);
+            pool.purge();
+        }
+        return true;
+    }
+
+    /**
+     * @return queued and running queries in order of submission
+     */
+    public List<QueryStatus> getQueries() {
+        synchronized (queries) {
+            return new ArrayList<>(queries.values());
+        }
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public long getReservedBytes() {
+        synchronized (memoryLock) {
+            return reservedBytes;
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private Explanation runQuery(QueryStatus status) throws Exception {
+        try {
+            synchronized (memoryLock) {
+                while (reservedBytes + status.estimatedBytes > memoryBudget) {
+                    memoryLock.wait();
+                }
+                reservedBytes += status.estimatedBytes;
+            }
+            try {
+                status.startTime = System.currentTimeMillis();
+                status.state = State.RUNNING;
+                return status.pipeline.results();
+            } finally {
+                synchronized (memoryLock) {
+                    reservedBytes -= status.estimatedBytes;
+                    memoryLock.notifyAll();
+                }
+            }
+        } finally {
+            remove(status);
+        }
+    }
+
+    private void remove(QueryStatus status) {
+        synchronized (queries) {
+            queries.remove(status.id);
+        }
+    }
+
+    public static class QueryStatus {
+        private final long id;
+        private final String description;
+        private final long estimatedBytes;
+        private final Pipeline pipeline;
+        private final long submitTime;
+        private volatile long startTime = 0;
+        private volatile State state = State.QUEUED;
+        private volatile Future<Explanation> future;
+
+        QueryStatus(long id, String description, long estimatedBytes, Pipeline pipeline) {
+            this.id = id;
+            this.description = description;
+            this.estimatedBytes = estimatedBytes;
+            this.pipeline = pipeline;
+            this.submitTime = System.currentTimeMillis();
+        }
+
+        public long getId() {
+            return id;
+        }
+        public String getDescription() {
+            return description;
+        }
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+        public State getState() {
+            return state;
+        }
+        /**
+         * @return milliseconds since submission
+         */
+        public long getElapsed() {
+            return System.currentTimeMillis() - submitTime;
+        }
+        /**
+         * @return milliseconds since the query started running, 0 while queued
+         */
+        public long getRunningTime() {
+            return state == State.RUNNING ? System.currentTimeMillis() - startTime : 0;
+        }
+        public Map<String, Long> getStageTimings() {
+            return pipeline.getStageTimings();
+        }
+        @JsonIgnore
+        public Future<Explanation> getFuture() {
+            return future;
+        }
+    }
+}
@@ -4,32 +4,203 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.stanford.futuredata.macrobase.analysis.summary.Explanation;
 import edu.stanford.futuredata.macrobase.pipeline.BasicBatchPipeline;
+import edu.stanford.futuredata.macrobase.pipeline.DataFrameCache;
+import edu.stanford.futuredata.macrobase.pipeline.ExplanationCache;
 import edu.stanford.futuredata.macrobase.pipeline.PipelineConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.Request;
 import spark.Response;
 
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
 import static spark.Spark.*;
 
 public class RestServer {
     private static Logger log = LoggerFactory.getLogger(RestServer.class);
 
+    // Loaded inputs shared across queries, bounded by a quarter of the heap by default
+    private static DataFrameCache dataCache = new DataFrameCache(
+            Long.getLong("macrobase.cacheBytes", Runtime.getRuntime().maxMemory() / 4)
+    );
+    // Queries beyond the running and queued limits are turned away with a 429
+    private static QueryExecutor queryExecutor = new QueryExecutor(
+            Integer.getInteger("macrobase.maxRunningQueries", Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger("macrobase.maxQueuedQueries", 16),
+            Long.getLong("macrobase.queryBytes", Runtime.getRuntime().maxMemory() / 2)
+    );
+    // Results of earlier queries, also kept on disk if macrobase.resultCacheDir is set
+    private static ExplanationCache resultCache = new ExplanationCache(
+            Integer.getInteger("macrobase.resultCacheEntries", 256),
+            System.getProperty("macrobase.resultCacheDir") == null
+                    ? null : new File(System.getProperty("macrobase.resultCacheDir")),
+            Integer.getInteger("macrobase.resultCacheFiles", 1024)
+    );
+    private static long defaultTimeoutMillis = Long.getLong("macrobase.queryTimeoutMillis", 0L);
+
     public static void main(String[] args) {
         post("/query", RestServer::processBasicBatchQuery, RestServer::toJsonString);
+        get("/datasets", RestServer::listDatasets, RestServer::toJsonString);
+        delete("/datasets", RestServer::evictDatasets, RestServer::toJsonString);
+        get("/queries", RestServer::listQueries, RestServer::toJsonString);
+        delete("/queries/:id", RestServer::cancelQuery, RestServer::toJsonString);
+        get("/results", RestServer::resultCacheStatus, RestServer::toJsonString);
+        delete("/results", RestServer::clearResults, RestServer::toJsonString);
 
         exception(Exception.class, (exception, request, response) -> {
             log.error("An exception occurred: ", exception);
         });
     }
 
-    public static Explanation processBasicBatchQuery(
+    /**
+     * Return the stored result of an identical earlier query over unchanged input, or
+     * run the query on the query executor. The optional timeoutMillis config value overrides
+     * the server's default timeout.
+     * @return the explanation, or an error with status 429 if the server is too busy, 504 if
+     * the query timed out and 409 if it was cancelled
+     */
+    public static Object processBasicBatchQuery(
             Request req, Response res
     ) throws Exception {
         res.type("application/json");
         PipelineConfig conf = PipelineConfig.fromJsonString(req.body());
-        Explanation e = new BasicBatchPipeline(conf).results();
-        return e;
+        String resultKey = resultCache.getKey(conf);
+        Explanation cached = resultCache.get(resultKey);
+        if (cached != null) {
+            return cached;
+        }
+        Map<String, Object> dataValues = new HashMap<>(conf.getValues());
+        dataValues.remove("minSupport");
+        dataValues.remove("minRiskRatio");
+        // Itemset counts are kept with the cached input and shared by queries that differ
+        // only in thresholds
+        BasicBatchPipeline pipeline = new BasicBatchPipeline(conf)
+                .setDataCache(dataCache)
+                .setMinedStateKey(resultCache.getKey(new PipelineConfig(dataValues)));
+        long timeoutMillis = conf.get("timeoutMillis", (Number) defaultTimeoutMillis).longValue();
+        try {
+            Explanation result = queryExecutor.run(
+                    conf.get("inputURI"), estimateQueryBytes(conf), pipeline, timeoutMillis
+            );
+            resultCache.put(resultKey, result);
+            return result;
+        } catch (RejectedExecutionException e) {
+            res.status(429);
+            res.header("Retry-After", "1");
+            return errorMessage(e.getMessage());
+        } catch (TimeoutException e) {
+            res.status(504);
+            return errorMessage("Query timed out after " + timeoutMillis + " ms");
+        } catch (CancellationException e) {
+            res.status(409);
+            return errorMessage("Query was cancelled");
+        }
+    }
+
+    /**
+     * Estimate the memory a query needs: twice the size of the metric, attribute and outlier
+     * columns for the rows of a cached input, or four times the size of an uncached input
+     * file, which assumes at least four bytes of text for each used value.
+     */
+    static long estimateQueryBytes(PipelineConfig conf) {
+        String inputURI = conf.get("inputURI");
+        List<String> attributes = conf.get("attributes", new ArrayList<>());
+        int numColumns = attributes.size() + 2;
+        int numRows = 0;
+        for (DataFrameCache.CachedDataset entry : dataCache.getEntries()) {
+            if (entry.getInputURI().equals(inputURI)) {
+                numRows = Math.max(numRows, entry.getNumRows());
+            }
+        }
+        if (numRows > 0) {
+            return 2L * numRows * numColumns * Double.BYTES;
+        }
+        int separator = inputURI.indexOf("://");
+        if (separator < 0) {
+            return 0;
+        }
+        return 4 * new File(inputURI.substring(separator + 3)).length();
+    }
+
+    public static Map<String, Object> listQueries(
+            Request req, Response res
+    ) {
+        res.type("application/json");
+        Map<String, Object> status = new HashMap<>();
+        status.put("queries", queryExecutor.getQueries());
+        status.put("reservedBytes", queryExecutor.getReservedBytes());
+        status.put("memoryBudget", queryExecutor.getMemoryBudget());
+        return status;
+    }
+
+    public static Map<String, Object> cancelQuery(
+            Request req, Response res
+    ) {
+        res.type("application/json");
+        boolean cancelled = queryExecutor.cancel(Long.parseLong(req.params(":id")));
+        if (!cancelled) {
+            res.status(404);
+        }
+        Map<String, Object> status = new HashMap<>();
+        status.put("cancelled", cancelled);
+        return status;
+    }
+
+    public static Map<String, Object> resultCacheStatus(
+            Request req, Response res
+    ) {
+        res.type("application/json");
+        Map<String, Object> status = new HashMap<>();
+        status.put("numHits", resultCache.getNumHits());
+        status.put("numDiskHits", resultCache.getNumDiskHits());
+        status.put("numMisses", resultCache.getNumMisses());
+        status.put("numFiles", resultCache.getNumFiles());
+        return status;
+    }
+
+    public static Map<String, Object> clearResults(
+            Request req, Response res
+    ) {
+        res.type("application/json");
+        resultCache.clear();
+        return new HashMap<>();
+    }
+
+    private static Map<String, Object> errorMessage(String message) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", message);
+        return error;
+    }
+
+    public static Map<String, Object> listDatasets(
+            Request req, Response res
+    ) {
+        res.type("application/json");
+        Map<String, Object> status = new HashMap<>();
+        status.put("datasets", dataCache.getEntries());
+        status.put("totalBytes", dataCache.getTotalBytes());
+        status.put("maxBytes", dataCache.getMaxBytes());
+        status.put("numHits", dataCache.getNumHits());
+        status.put("numMisses", dataCache.getNumMisses());
+        return status;
+    }
+
+    /**
+     * Evict the cached datasets for the inputURI query parameter, or all of them if it is absent
+     */
+    public static Map<String, Object> evictDatasets(
+            Request req, Response res
+    ) {
+        res.type("application/json");
+        String inputURI = req.queryParams("inputURI");
+        int numEvicted = inputURI == null ? dataCache.clear() : dataCache.evict(inputURI);
+        Map<String, Object> status = new HashMap<>();
+        status.put("numEvicted", numEvicted);
+        return status;
     }
 
     public static String toJsonString(Object o) throws JsonProcessingException {
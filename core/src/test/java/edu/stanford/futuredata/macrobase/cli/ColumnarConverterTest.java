@@ -0,0 +1,36 @@
+package edu.stanford.futuredata.macrobase.cli;
+
+import edu.stanford.futuredata.macrobase.analysis.summary.Explanation;
+import edu.stanford.futuredata.macrobase.pipeline.BasicBatchPipeline;
+import edu.stanford.futuredata.macrobase.pipeline.PipelineConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ColumnarConverterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConvertedQuery() throws Exception {
+        File converted = new File(folder.getRoot(), "tiny.mbc");
+        ColumnarConverter.convert(
+                "src/test/resources/tiny.csv", converted.getPath(),
+                Collections.singletonList("usage"), 1
+        );
+
+        PipelineConfig conf = PipelineConfig.fromYamlFile(
+                "src/test/resources/tiny_conf.yaml"
+        );
+        Explanation fromCSV = new BasicBatchPipeline(conf).results();
+        conf.getValues().put("inputURI", "columnar://" + converted.getPath());
+        Explanation fromColumnar = new BasicBatchPipeline(conf).results();
+        assertEquals(fromCSV.prettyPrint(), fromColumnar.prettyPrint());
+        assertEquals(fromCSV.getNumInliers(), fromColumnar.getNumInliers());
+    }
+}
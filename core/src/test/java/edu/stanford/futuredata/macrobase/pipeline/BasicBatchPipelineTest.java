@@ -1,11 +1,23 @@
 package edu.stanford.futuredata.macrobase.pipeline;
 
+import edu.stanford.futuredata.macrobase.analysis.classify.PercentileClassifier;
+import edu.stanford.futuredata.macrobase.analysis.summary.APrioriMinedState;
 import edu.stanford.futuredata.macrobase.analysis.summary.Explanation;
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.AttributeSet;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.*;
 
 import static org.junit.Assert.*;
 
 public class BasicBatchPipelineTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testDemoQuery() throws Exception {
         PipelineConfig conf = PipelineConfig.fromYamlFile(
@@ -16,4 +28,128 @@ public class BasicBatchPipelineTest {
         assertEquals(3, e.getNumInliers());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testParallel() throws Exception {
+        PipelineConfig conf = PipelineConfig.fromYamlFile(
+                "src/test/resources/tiny_conf.yaml"
+        );
+        PipelineConfig parallelConf = PipelineConfig.fromYamlFile(
+                "src/test/resources/tiny_parallel_conf.yaml"
+        );
+        Explanation sequential = new BasicBatchPipeline(conf).results();
+        Explanation parallel = new BasicBatchPipeline(parallelConf).results();
+        assertEquals(sequential.prettyPrint(), parallel.prettyPrint());
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        for (String confFile : new String[]{"tiny_conf.yaml", "tiny_parallel_conf.yaml"}) {
+            for (String classifier : new String[]{"percentile", "percentile_sketch"}) {
+                PipelineConfig conf = PipelineConfig.fromYamlFile(
+                        "src/test/resources/" + confFile
+                );
+                conf.getValues().put("classifier", classifier);
+                Explanation sequential = new BasicBatchPipeline(conf).results();
+                conf.getValues().put("pipelined", true);
+                Explanation pipelined = new BasicBatchPipeline(conf).results();
+                assertEquals(sequential.prettyPrint(), pipelined.prettyPrint());
+                assertTrue(pipelined.getStageTimings().containsKey("encode"));
+                assertTrue(pipelined.getStageTimings().containsKey("summarize"));
+            }
+        }
+    }
+
+    @Test
+    public void testPipelinedExplanation() throws Exception {
+        // Outliers are the first and last 1000 rows. Cyclic attribute values give explanations
+        // with equal support, and the values of a0 in the last chunk get different codes when
+        // encoded chunk by chunk.
+        int n = 20000;
+        File f = folder.newFile("ties.csv");
+        try (FileWriter w = new FileWriter(f)) {
+            w.write("usage,a0,a1,a2,a3\n");
+            for (int i = 0; i < n; i++) {
+                int a0 = i < n * 3 / 4 ? i % 4 : 4 + i % 4;
+                w.write(i + ",x" + a0 + ",y" + i % 8 + ",z" + i % 3 + ",w" + i * 4 / n + "\n");
+            }
+        }
+        Map<String, Object> values = new HashMap<>();
+        values.put("inputURI", "csv://" + f.getPath());
+        values.put("classifier", "percentile");
+        values.put("metric", "usage");
+        values.put("cutoff", 5.0);
+        values.put("includeHi", true);
+        values.put("includeLo", true);
+        values.put("summarizer", "apriori");
+        values.put("attributes", Arrays.asList("a0", "a1", "a2", "a3"));
+        values.put("minRiskRatio", 0.0);
+        values.put("minSupport", 0.01);
+        values.put("numThreads", 4);
+
+        Explanation sequential = new BasicBatchPipeline(new PipelineConfig(values)).results();
+        values.put("pipelined", true);
+        Explanation pipelined = new BasicBatchPipeline(new PipelineConfig(values)).results();
+
+        List<AttributeSet> itemsets = sequential.getItemsets();
+        int numTies = 0;
+        for (int i = 1; i < itemsets.size(); i++) {
+            if (itemsets.get(i).getSupport() == itemsets.get(i - 1).getSupport()) {
+                numTies++;
+            }
+        }
+        assertTrue(numTies > 5);
+        assertEquals(sequential.prettyPrint(), pipelined.prettyPrint());
+    }
+
+    @Test
+    public void testPipelinedFallback() throws Exception {
+        PipelineConfig conf = PipelineConfig.fromYamlFile(
+                "src/test/resources/tiny_conf.yaml"
+        );
+        Explanation sequential = new BasicBatchPipeline(conf).results();
+        conf.getValues().put("pipelined", true);
+        // Loading through a cache does not pipeline
+        Explanation cached = new BasicBatchPipeline(conf)
+                .setDataCache(new DataFrameCache(1 << 20)).results();
+        assertEquals(sequential.prettyPrint(), cached.prettyPrint());
+        assertFalse(cached.getStageTimings().containsKey("encode"));
+    }
+
+    @Test
+    public void testSketchClassifier() throws Exception {
+        PipelineConfig conf = PipelineConfig.fromYamlFile(
+                "src/test/resources/tiny_conf.yaml"
+        );
+        conf.getValues().put("classifier", "percentile_sketch");
+        BasicBatchPipeline p = new BasicBatchPipeline(conf);
+        assertTrue(((PercentileClassifier) p.getClassifier()).isUseSketch());
+        Explanation e = p.results();
+        assertEquals(3, e.getNumInliers());
+    }
+
+    @Test
+    public void testMinedState() throws Exception {
+        PipelineConfig conf = PipelineConfig.fromYamlFile(
+                "src/test/resources/tiny_conf.yaml"
+        );
+        DataFrameCache cache = new DataFrameCache(1 << 20);
+        APrioriMinedState state = new APrioriMinedState();
+        new BasicBatchPipeline(conf).setDataCache(cache).setMinedState(state).results();
+        conf.getValues().put("minSupport", 0.5);
+        Explanation reused = new BasicBatchPipeline(conf)
+                .setDataCache(cache).setMinedState(state).results();
+        Explanation fresh = new BasicBatchPipeline(conf).results();
+
+        assertEquals(fresh.prettyPrint(), reused.prettyPrint());
+        assertEquals(3, state.getNumReusedOrders());
+
+        // States kept by the cache are shared by runs with the same key
+        DataFrameCache keyedCache = new DataFrameCache(1 << 20);
+        new BasicBatchPipeline(conf).setDataCache(keyedCache).setMinedStateKey("q").results();
+        conf.getValues().put("minSupport", 0.01);
+        Explanation keyed = new BasicBatchPipeline(conf)
+                .setDataCache(keyedCache).setMinedStateKey("q").results();
+        assertEquals(new BasicBatchPipeline(conf).results().prettyPrint(), keyed.prettyPrint());
+        assertEquals(1, keyedCache.getEntries().get(0).getNumMinedStates());
+    }
+}
@@ -0,0 +1,166 @@
+package edu.stanford.futuredata.macrobase.pipeline;
+
+import edu.stanford.futuredata.macrobase.analysis.summary.APrioriMinedState;
+import edu.stanford.futuredata.macrobase.analysis.summary.Explanation;
+import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import edu.stanford.futuredata.macrobase.datamodel.Schema;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DataFrameCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File writeCSV(String name, String contents) throws Exception {
+        File f = folder.newFile(name);
+        try (FileWriter w = new FileWriter(f)) {
+            w.write(contents);
+        }
+        return f;
+    }
+
+    private Map<String, Schema.ColType> usageTypes() {
+        Map<String, Schema.ColType> colTypes = new HashMap<>();
+        colTypes.put("usage", Schema.ColType.DOUBLE);
+        return colTypes;
+    }
+
+    @Test
+    public void testHitAndInvalidate() throws Exception {
+        File f = writeCSV("a.csv", "usage,location\n1.0,USA\n2.0,CAN\n");
+        String uri = "csv://" + f.getPath();
+        DataFrameCache cache = new DataFrameCache(1 << 20);
+
+        DataFrame first = cache.get(uri, usageTypes(), 1);
+        DataFrame second = cache.get(uri, usageTypes(), 1);
+        assertEquals(1, cache.getNumMisses());
+        assertEquals(1, cache.getNumHits());
+        assertSame(
+                first.getDoubleColumnByName("usage"),
+                second.getDoubleColumnByName("usage")
+        );
+        // Changes to a returned DataFrame do not reach the cache
+        first.addDoubleColumn("extra", new double[2]);
+        assertFalse(cache.get(uri, usageTypes(), 1).hasColumn("extra"));
+
+        try (FileWriter w = new FileWriter(f)) {
+            w.write("usage,location\n1.0,USA\n2.0,CAN\n3.0,MEX\n");
+        }
+        f.setLastModified(f.lastModified() + 2000);
+        DataFrame reloaded = cache.get(uri, usageTypes(), 1);
+        assertEquals(3, reloaded.getNumRows());
+        assertEquals(2, cache.getNumMisses());
+        assertEquals(1, cache.getEntries().size());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        String uriA = "csv://" + writeCSV("a.csv", "usage,location\n1.0,USA\n2.0,CAN\n").getPath();
+        String uriB = "csv://" + writeCSV("b.csv", "usage,location\n3.0,USA\n4.0,CAN\n").getPath();
+
+        DataFrameCache sizing = new DataFrameCache(1 << 20);
+        sizing.get(uriA, usageTypes(), 1);
+        long entryBytes = sizing.getTotalBytes();
+        assertTrue(entryBytes > 0);
+
+        // Room for only one of the two datasets
+        DataFrameCache cache = new DataFrameCache(entryBytes + entryBytes / 2);
+        cache.get(uriA, usageTypes(), 1);
+        cache.get(uriB, usageTypes(), 1);
+        assertEquals(1, cache.getEntries().size());
+        assertEquals(uriB, cache.getEntries().get(0).getInputURI());
+        assertTrue(cache.getTotalBytes() <= cache.getMaxBytes());
+
+        assertEquals(1, cache.evict(uriB));
+        assertEquals(0, cache.getTotalBytes());
+        assertEquals(0, cache.getEntries().size());
+    }
+
+    @Test
+    public void testMinedStates() throws Exception {
+        String uri = "csv://" + writeCSV("a.csv", "usage,location\n1.0,USA\n2.0,CAN\n").getPath();
+        DataFrameCache cache = new DataFrameCache(1 << 20);
+        assertNull(cache.getMinedState(uri, usageTypes(), "q", 1));
+
+        cache.get(uri, usageTypes(), 1);
+        long entryBytes = cache.getTotalBytes();
+        APrioriMinedState state = cache.getMinedState(uri, usageTypes(), "q", 1);
+        assertNotNull(state);
+        assertSame(state, cache.getMinedState(uri, usageTypes(), "q", 1));
+        assertNotSame(state, cache.getMinedState(uri, usageTypes(), "r", 1));
+        assertEquals(2, cache.getEntries().get(0).getNumMinedStates());
+        assertTrue(cache.getTotalBytes() > entryBytes);
+        assertEquals(cache.getTotalBytes(), cache.getEntries().get(0).getEstimatedBytes());
+
+        // States go with their entry
+        cache.evict(uri);
+        assertEquals(0, cache.getTotalBytes());
+        cache.get(uri, usageTypes(), 1);
+        assertNotSame(state, cache.getMinedState(uri, usageTypes(), "q", 1));
+
+        // A state that does not fit the budget is not kept
+        DataFrameCache small = new DataFrameCache(entryBytes);
+        small.get(uri, usageTypes(), 1);
+        assertNull(small.getMinedState(uri, usageTypes(), "q", 1));
+        assertEquals(entryBytes, small.getTotalBytes());
+    }
+
+    @Test
+    public void testMinedStateMeasured() throws Exception {
+        PipelineConfig conf = PipelineConfig.fromYamlFile(
+                "src/test/resources/tiny_conf.yaml"
+        );
+        DataFrameCache cache = new DataFrameCache(1 << 20);
+        new BasicBatchPipeline(conf).setDataCache(cache).setMinedStateKey("q").results();
+        DataFrameCache.CachedDataset entry = cache.getEntries().get(0);
+        String uri = entry.getInputURI();
+        Map<String, Schema.ColType> colTypes = entry.getColumnTypes();
+        int numAttributes = ((List<?>) conf.get("attributes")).size();
+
+        // A fresh state is only charged for its rows
+        DataFrameCache sizing = new DataFrameCache(1 << 20);
+        sizing.get(uri, colTypes, 1);
+        long dataBytes = sizing.getTotalBytes();
+        sizing.getMinedState(uri, colTypes, "q", numAttributes);
+        long reservedBytes = sizing.getTotalBytes();
+
+        // After a run the state is charged for its counts too
+        APrioriMinedState state = cache.getMinedState(uri, colTypes, "q", numAttributes);
+        assertTrue(state.getNumCountedOrders() > 0);
+        assertEquals(dataBytes + state.getEstimatedBytes(), cache.getTotalBytes());
+        assertTrue(cache.getTotalBytes() > reservedBytes);
+
+        // A state that outgrows the budget is dropped, keeping the data
+        DataFrameCache tight = new DataFrameCache(reservedBytes);
+        new BasicBatchPipeline(conf).setDataCache(tight).setMinedStateKey("q").results();
+        assertEquals(1, tight.getEntries().size());
+        assertEquals(0, tight.getEntries().get(0).getNumMinedStates());
+        assertEquals(dataBytes, tight.getTotalBytes());
+    }
+
+    @Test
+    public void testPipelineQueries() throws Exception {
+        PipelineConfig conf = PipelineConfig.fromYamlFile(
+                "src/test/resources/tiny_conf.yaml"
+        );
+        DataFrameCache cache = new DataFrameCache(1 << 20);
+        Explanation uncached = new BasicBatchPipeline(conf).results();
+        Explanation first = new BasicBatchPipeline(conf).setDataCache(cache).results();
+        conf.getValues().put("minSupport", 0.5);
+        Explanation second = new BasicBatchPipeline(conf).setDataCache(cache).results();
+
+        assertEquals(uncached.prettyPrint(), first.prettyPrint());
+        assertEquals(3, second.getNumInliers());
+        assertEquals(1, cache.getNumMisses());
+        assertEquals(1, cache.getNumHits());
+    }
+}
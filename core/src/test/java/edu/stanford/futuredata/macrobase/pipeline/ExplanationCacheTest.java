@@ -0,0 +1,131 @@
+package edu.stanford.futuredata.macrobase.pipeline;
+
+import edu.stanford.futuredata.macrobase.analysis.summary.Explanation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ExplanationCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PipelineConfig getConf(File input) throws Exception {
+        PipelineConfig conf = PipelineConfig.fromYamlFile(
+                "src/test/resources/tiny_conf.yaml"
+        );
+        conf.getValues().put("inputURI", "csv://" + input.getPath());
+        return conf;
+    }
+
+    private File copyInput() throws Exception {
+        File input = folder.newFile("tiny.csv");
+        Files.copy(
+                Paths.get("src/test/resources/tiny.csv"), input.toPath(),
+                StandardCopyOption.REPLACE_EXISTING
+        );
+        return input;
+    }
+
+    @Test
+    public void testMemoryAndDisk() throws Exception {
+        File input = copyInput();
+        File dir = folder.newFolder("results");
+        PipelineConfig conf = getConf(input);
+
+        ExplanationCache cache = new ExplanationCache(4, dir);
+        Explanation computed = cache.results(conf, new BasicBatchPipeline(conf));
+        assertEquals(1, cache.getNumMisses());
+        Explanation cached = cache.results(conf, new BasicBatchPipeline(conf));
+        assertEquals(1, cache.getNumHits());
+        assertEquals(computed.prettyPrint(), cached.prettyPrint());
+        assertFalse(computed.getStageTimings().isEmpty());
+        // no stages ran for a stored result
+        assertTrue(cached.getStageTimings().isEmpty());
+
+        // A new cache, as after a restart, finds the result on disk
+        ExplanationCache restarted = new ExplanationCache(4, dir);
+        Explanation fromDisk = restarted.results(conf, () -> {
+            throw new AssertionError("Should not recompute");
+        });
+        assertEquals(1, restarted.getNumDiskHits());
+        assertEquals(computed.prettyPrint(), fromDisk.prettyPrint());
+        assertEquals(computed.getNumInliers(), fromDisk.getNumInliers());
+        assertEquals(computed.getItemsets().size(), fromDisk.getItemsets().size());
+    }
+
+    @Test
+    public void testDiskLimits() throws Exception {
+        File input = copyInput();
+        File dir = folder.newFolder("results");
+        PipelineConfig conf = getConf(input);
+        ExplanationCache cache = new ExplanationCache(4, dir, 2);
+
+        String first = cache.getKey(conf);
+        cache.results(conf, new BasicBatchPipeline(conf));
+        conf.getValues().put("minSupport", 0.5);
+        cache.results(conf, new BasicBatchPipeline(conf));
+        assertEquals(2, cache.getNumFiles());
+
+        // Reading the first result from disk makes the second the least recently used
+        Thread.sleep(20);
+        assertNotNull(new ExplanationCache(4, dir, 2).get(first));
+        Thread.sleep(20);
+        conf.getValues().put("minSupport", 0.6);
+        String third = cache.getKey(conf);
+        cache.results(conf, new BasicBatchPipeline(conf));
+        assertEquals(2, cache.getNumFiles());
+        assertTrue(new File(dir, first + ".json").isFile());
+        assertTrue(new File(dir, third + ".json").isFile());
+
+        // Storing a result for a changed input deletes those for the old version
+        Files.write(input.toPath(), "usage,version,location\n1.0,27,USA\n".getBytes());
+        input.setLastModified(input.lastModified() + 2000);
+        cache.results(conf, new BasicBatchPipeline(conf));
+        assertEquals(1, cache.getNumFiles());
+        assertNull(new ExplanationCache(4, dir, 2).get(first));
+    }
+
+    @Test
+    public void testNoFingerprint() throws Exception {
+        PipelineConfig conf = getConf(copyInput());
+        conf.getValues().put("inputURI", "jdbc://localhost/db");
+        ExplanationCache cache = new ExplanationCache(4, null);
+        assertNull(cache.getKey(conf));
+
+        int[] numRuns = new int[1];
+        Pipeline p = () -> {
+            numRuns[0]++;
+            return new Explanation(Collections.emptyList(), 3, 1, 0);
+        };
+        cache.results(conf, p);
+        cache.results(conf, p);
+        assertEquals(2, numRuns[0]);
+        assertEquals(0, cache.getNumHits());
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        File input = copyInput();
+        ExplanationCache cache = new ExplanationCache(4, null);
+        PipelineConfig conf = getConf(input);
+        String key = cache.getKey(conf);
+
+        conf.getValues().put("numThreads", 7);
+        assertEquals(key, cache.getKey(conf));
+        conf.getValues().put("minSupport", 0.5);
+        String otherKey = cache.getKey(conf);
+        assertNotEquals(key, otherKey);
+
+        Files.write(input.toPath(), "usage,version,location\n1.0,27,USA\n".getBytes());
+        input.setLastModified(input.lastModified() + 2000);
+        assertNotEquals(otherKey, cache.getKey(conf));
+    }
+}
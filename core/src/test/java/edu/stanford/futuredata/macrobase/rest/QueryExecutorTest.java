@@ -0,0 +1,132 @@
+package edu.stanford.futuredata.macrobase.rest;
+
+import edu.stanford.futuredata.macrobase.analysis.summary.Explanation;
+import edu.stanford.futuredata.macrobase.pipeline.Pipeline;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class QueryExecutorTest {
+    private QueryExecutor executor;
+    private CountDownLatch release = new CountDownLatch(1);
+    private CountDownLatch started = new CountDownLatch(1);
+
+    // Runs until released, or until interrupted
+    private Pipeline blockingPipeline() {
+        return () -> {
+            started.countDown();
+            release.await();
+            return new Explanation(new ArrayList<>(), 0, 0, 0);
+        };
+    }
+
+    private void waitForNoQueries() throws InterruptedException {
+        for (int i = 0; i < 100 && !executor.getQueries().isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(executor.getQueries().isEmpty());
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testRejectWhenFull() throws Exception {
+        executor = new QueryExecutor(1, 1, 100);
+        QueryExecutor.QueryStatus running = executor.submit("a", 10, blockingPipeline());
+        started.await();
+        QueryExecutor.QueryStatus queued = executor.submit("b", 10, blockingPipeline());
+        assertEquals(QueryExecutor.State.RUNNING, running.getState());
+        assertEquals(QueryExecutor.State.QUEUED, queued.getState());
+        try {
+            executor.submit("c", 10, blockingPipeline());
+            fail("Expected rejection with a full queue");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        try {
+            executor.submit("d", 1000, blockingPipeline());
+            fail("Expected rejection over the memory budget");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(2, executor.getQueries().size());
+
+        release.countDown();
+        running.getFuture().get();
+        queued.getFuture().get();
+        waitForNoQueries();
+    }
+
+    @Test
+    public void testNoQueue() throws Exception {
+        executor = new QueryExecutor(1, 0, 100);
+        QueryExecutor.QueryStatus running = executor.submit("a", 10, blockingPipeline());
+        started.await();
+        try {
+            executor.submit("b", 10, blockingPipeline());
+            fail("Expected rejection with no queue and a busy thread");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        release.countDown();
+        running.getFuture().get();
+        waitForNoQueries();
+
+        for (int[] limits : new int[][]{{0, 1}, {1, -1}}) {
+            try {
+                new QueryExecutor(limits[0], limits[1], 100);
+                fail("Expected invalid limits to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testMemoryAdmission() throws Exception {
+        executor = new QueryExecutor(2, 2, 100);
+        QueryExecutor.QueryStatus first = executor.submit("a", 60, blockingPipeline());
+        started.await();
+        QueryExecutor.QueryStatus second = executor.submit("b", 60, blockingPipeline());
+        Thread.sleep(50);
+        // A thread is free but the second query does not fit alongside the first
+        assertEquals(QueryExecutor.State.QUEUED, second.getState());
+        assertEquals(60, executor.getReservedBytes());
+
+        release.countDown();
+        first.getFuture().get();
+        second.getFuture().get();
+        waitForNoQueries();
+        assertEquals(0, executor.getReservedBytes());
+    }
+
+    @Test
+    public void testTimeoutAndCancel() throws Exception {
+        executor = new QueryExecutor(1, 1, 100);
+        try {
+            executor.run("a", 10, blockingPipeline(), 50);
+            fail("Expected timeout");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        waitForNoQueries();
+
+        started = new CountDownLatch(1);
+        QueryExecutor.QueryStatus running = executor.submit("b", 10, blockingPipeline());
+        started.await();
+        QueryExecutor.QueryStatus queued = executor.submit("c", 10, blockingPipeline());
+        assertTrue(executor.cancel(queued.getId()));
+        assertTrue(executor.cancel(running.getId()));
+        assertFalse(executor.cancel(running.getId()));
+        waitForNoQueries();
+        assertEquals(0, executor.getReservedBytes());
+    }
+}
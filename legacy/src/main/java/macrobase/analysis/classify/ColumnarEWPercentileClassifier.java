@@ -0,0 +1,158 @@
+package macrobase.analysis.classify;
+
+import macrobase.analysis.pipeline.operator.MBOperator;
+import macrobase.analysis.pipeline.stream.MBStream;
+import macrobase.analysis.result.OutlierClassificationBatch;
+import macrobase.analysis.sample.FlexibleDampedReservoir;
+import macrobase.conf.MacroBaseConf;
+import macrobase.conf.MacroBaseDefaults;
+import macrobase.datamodel.DatumBatch;
+import macrobase.util.Periodic;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ Columnar version of EWAppxPercentileOutlierClassifier, which it matches tuple for tuple.
+ The reservoir keeps only norms.
+ */
+public class ColumnarEWPercentileClassifier extends MBOperator<DatumBatch, OutlierClassificationBatch> {
+    private final double percentile;
+    private final FlexibleDampedReservoir<Double> reservoir;
+
+    private double currentThreshold = 0;
+
+    private final Periodic reservoirDecayer;
+    private final Periodic percentileUpdater;
+
+    private final int warmupCount;
+    private int tupleCount = 0;
+    private DatumBatch warmupInput;
+
+    private final MBStream<OutlierClassificationBatch> output = new MBStream<>();
+
+    public ColumnarEWPercentileClassifier(MacroBaseConf conf) {
+        this(conf,
+             conf.getInt(MacroBaseConf.SCORE_RESERVOIR_SIZE, MacroBaseDefaults.SCORE_RESERVOIR_SIZE),
+             conf.getInt(MacroBaseConf.WARMUP_COUNT, MacroBaseDefaults.WARMUP_COUNT),
+             conf.getDecayType(),
+             conf.getDouble(MacroBaseConf.SUMMARY_UPDATE_PERIOD, MacroBaseDefaults.SUMMARY_UPDATE_PERIOD),
+             conf.getDecayType(),
+             conf.getDouble(MacroBaseConf.SUMMARY_UPDATE_PERIOD, MacroBaseDefaults.SUMMARY_UPDATE_PERIOD),
+             conf.getDouble(MacroBaseConf.DECAY_RATE, MacroBaseDefaults.DECAY_RATE),
+             conf.getDouble(MacroBaseConf.TARGET_PERCENTILE, MacroBaseDefaults.TARGET_PERCENTILE));
+    }
+
+    public ColumnarEWPercentileClassifier(MacroBaseConf conf,
+                                          int sampleSize,
+                                          int warmupCount,
+                                          MacroBaseConf.PeriodType updatePeriodType,
+                                          double updatePeriod,
+                                          MacroBaseConf.PeriodType decayPeriodType,
+                                          double decayPeriod,
+                                          double decayRate,
+                                          double percentile) {
+        reservoir = new FlexibleDampedReservoir<>(sampleSize, decayRate, conf.getRandom());
+
+        this.percentileUpdater = new Periodic(updatePeriodType,
+                                              updatePeriod,
+                                              () -> updateThreshold(percentile));
+
+        this.reservoirDecayer = new Periodic(decayPeriodType,
+                                             decayPeriod,
+                                             reservoir::advancePeriod);
+
+        this.warmupCount = warmupCount;
+        this.percentile = percentile;
+    }
+
+    private void updateThreshold(double percentile) {
+        List<Double> norms = reservoir.getReservoir();
+        Collections.sort(norms);
+        currentThreshold = norms.get((int)(percentile * norms.size()));
+    }
+
+    @Override
+    public MBStream<OutlierClassificationBatch> getStream() {
+        return output;
+    }
+
+    @Override
+    public void initialize() {
+
+    }
+
+    @Override
+    public void consume(List<DatumBatch> records) {
+        for(DatumBatch batch : records) {
+            OutlierClassificationBatch classified = classify(batch);
+            if(classified != null) {
+                output.add(classified);
+            }
+        }
+    }
+
+    private OutlierClassificationBatch classify(DatumBatch batch) {
+        boolean[] outliers = new boolean[batch.size()];
+        int firstClassified = batch.size();
+        DatumBatch ret = null;
+        boolean[] retOutliers = null;
+
+        for(int row = 0; row < batch.size(); ++row) {
+            tupleCount ++;
+            double norm = batch.norm(row);
+
+            if(tupleCount < warmupCount) {
+                if(warmupInput == null) {
+                    warmupInput = new DatumBatch(batch.numAttributes(), batch.numMetrics());
+                }
+                warmupInput.add(batch, row);
+                reservoir.insert(norm);
+                reservoirDecayer.runIfNecessary();
+                percentileUpdater.runIfNecessary();
+            } else {
+                if(tupleCount == warmupCount) {
+                    updateThreshold(percentile);
+
+                    // like the per-tuple classifier, label the warmup tuples by the norm of
+                    // the tuple that ends the warmup
+                    ret = warmupInput != null ? warmupInput : new DatumBatch(batch.numAttributes(),
+                                                                             batch.numMetrics());
+                    retOutliers = new boolean[ret.size() + batch.size() - row];
+                    Arrays.fill(retOutliers, 0, ret.size(), norm > currentThreshold);
+                    warmupInput = null;
+                }
+
+                if(firstClassified == batch.size()) {
+                    firstClassified = row;
+                }
+
+                reservoir.insert(norm);
+                outliers[row] = norm > currentThreshold;
+            }
+        }
+
+        if(firstClassified == 0 && ret == null) {
+            return new OutlierClassificationBatch(batch, outliers);
+        }
+
+        if(ret == null) {
+            if(firstClassified == batch.size()) {
+                return null;
+            }
+            ret = new DatumBatch(batch.numAttributes(), batch.numMetrics(), batch.size() - firstClassified);
+            retOutliers = new boolean[batch.size() - firstClassified];
+        }
+        for(int row = firstClassified; row < batch.size(); ++row) {
+            retOutliers[ret.size()] = outliers[row];
+            ret.add(batch, row);
+        }
+        return new OutlierClassificationBatch(ret, retOutliers);
+    }
+
+    @Override
+    public void shutdown() {
+
+    }
+}
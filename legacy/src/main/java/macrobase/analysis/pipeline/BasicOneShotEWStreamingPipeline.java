@@ -2,11 +2,14 @@ package macrobase.analysis.pipeline;
 
 import com.google.common.base.Stopwatch;
 import macrobase.MacroBase;
+import macrobase.analysis.classify.ColumnarEWPercentileClassifier;
 import macrobase.analysis.classify.EWAppxPercentileOutlierClassifier;
 import macrobase.analysis.pipeline.operator.MBOperator;
+import macrobase.analysis.pipeline.operator.ThreadedOperatorChain;
 import macrobase.analysis.pipeline.stream.MBStream;
 import macrobase.analysis.result.AnalysisResult;
 import macrobase.analysis.result.OutlierClassificationResult;
+import macrobase.analysis.summary.ColumnarEWStreamingSummarizer;
 import macrobase.analysis.summary.EWStreamingSummarizer;
 import macrobase.analysis.summary.Summarizer;
 import macrobase.analysis.summary.Summary;
@@ -14,13 +17,16 @@ import macrobase.analysis.transform.LowMetricTransform;
 import macrobase.conf.MacroBaseConf;
 import macrobase.conf.MacroBaseDefaults;
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 import macrobase.ingest.DataIngester;
+import macrobase.analysis.transform.ColumnarEWFeatureTransform;
 import macrobase.analysis.transform.EWFeatureTransform;
 import org.apache.commons.math3.stat.descriptive.summary.Sum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -40,6 +46,11 @@ public class    BasicOneShotEWStreamingPipeline extends BasePipeline {
 
         Stopwatch sw = Stopwatch.createStarted();
         DataIngester ingester = conf.constructIngester();
+
+        if(conf.getBoolean(MacroBaseConf.COLUMNAR_BATCHES, MacroBaseDefaults.COLUMNAR_BATCHES)) {
+            return runColumnar(ingester, batchSize, sw);
+        }
+
         List<Datum> data = ingester.getStream().drain();
 
         if(conf.isSet(MacroBaseConf.LOW_METRIC_TRANSFORM)) {
@@ -55,16 +66,61 @@ public class    BasicOneShotEWStreamingPipeline extends BasePipeline {
 
         Summarizer summarizer = new EWStreamingSummarizer(conf);
         MBOperator<Datum, Summary> pipeline =
-                new EWFeatureTransform(conf)
+                maybeThreaded(new EWFeatureTransform(conf))
                 .then(new EWAppxPercentileOutlierClassifier(conf), batchSize)
                 .then(summarizer, batchSize);
 
+        pipeline.initialize();
         while(streamData.remaining() > 0) {
             pipeline.consume(streamData.drain(batchSize));
         }
+        pipeline.shutdown();
+
+        Summary result = summarizer.summarize().getStream().drain().get(0);
+
+        return report(result, sw, loadMs);
+    }
+
+    // same analysis over columnar batches of batchSize tuples
+    private List<AnalysisResult> runColumnar(DataIngester ingester,
+                                             int batchSize,
+                                             Stopwatch sw) throws Exception {
+        DatumBatch data = ingester.getBatch();
+
+        if(conf.isSet(MacroBaseConf.LOW_METRIC_TRANSFORM)) {
+            new LowMetricTransform(conf).transform(data);
+        }
+
+        System.gc();
+        final long loadMs = sw.elapsed(TimeUnit.MILLISECONDS);
+
+        ColumnarEWStreamingSummarizer summarizer = new ColumnarEWStreamingSummarizer(conf);
+        MBOperator<DatumBatch, Summary> pipeline =
+                maybeThreaded(new ColumnarEWFeatureTransform(conf))
+                .then(new ColumnarEWPercentileClassifier(conf), 1)
+                .then(summarizer, 1);
+
+        pipeline.initialize();
+        for(int start = 0; start < data.size(); start += batchSize) {
+            pipeline.consume(Collections.singletonList(data.slice(start, Math.min(start + batchSize, data.size()))));
+        }
+        pipeline.shutdown();
 
         Summary result = summarizer.summarize().getStream().drain().get(0);
 
+        return report(result, sw, loadMs);
+    }
+
+    private <S, T> MBOperator<S, T> maybeThreaded(MBOperator<S, T> first) {
+        if(conf.getBoolean(MacroBaseConf.THREADED_OPERATORS, MacroBaseDefaults.THREADED_OPERATORS)) {
+            return ThreadedOperatorChain.of(first,
+                                            conf.getInt(MacroBaseConf.OPERATOR_QUEUE_SIZE,
+                                                        MacroBaseDefaults.OPERATOR_QUEUE_SIZE));
+        }
+        return first;
+    }
+
+    private List<AnalysisResult> report(Summary result, Stopwatch sw, long loadMs) {
         final long totalMs = sw.elapsed(TimeUnit.MILLISECONDS) - loadMs;
         final long summarizeMs = result.getCreationTimeMs();
         final long executeMs = totalMs - result.getCreationTimeMs();
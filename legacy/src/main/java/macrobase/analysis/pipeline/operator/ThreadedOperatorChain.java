@@ -0,0 +1,173 @@
+package macrobase.analysis.pipeline.operator;
+
+import macrobase.analysis.pipeline.stream.MBStream;
+import macrobase.analysis.pipeline.stream.SPSCQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Chain of operators, like MBOperator.then, where each operator runs on its own thread.
+ * Stages pass batches through bounded single-producer single-consumer queues, so a slow
+ * stage blocks the stages before it, and consume() blocks once the first queue is full.
+ *
+ * shutdown() sends an end-of-stream marker down the chain: each stage finishes its queued
+ * batches, shuts down its operator and passes the marker on. The output of the last
+ * operator may only be read after shutdown() returns. If an operator fails, the other
+ * stages stop and consume() or shutdown() throws.
+ */
+public class ThreadedOperatorChain<S, T> extends MBOperator<S, T> {
+    private static final Logger log = LoggerFactory.getLogger(ThreadedOperatorChain.class);
+
+    private static final List<Object> END_OF_STREAM = Collections.unmodifiableList(new ArrayList<>());
+
+    private final List<Stage> stages;
+    private final int queueCapacity;
+    private final List<Thread> threads = new ArrayList<>();
+
+    private volatile Throwable failure;
+    private boolean started = false;
+    private boolean shutdown = false;
+
+    private static class Stage {
+        private final MBOperator<Object, Object> operator;
+        private final SPSCQueue<List<Object>> input;
+        // batch size when draining the output of this stage into the next
+        private int outputBatchSize = -1;
+        private Stage next;
+
+        @SuppressWarnings("unchecked")
+        private Stage(MBOperator<?, ?> operator, int queueCapacity) {
+            this.operator = (MBOperator<Object, Object>) operator;
+            this.input = new SPSCQueue<>(queueCapacity);
+        }
+    }
+
+    private ThreadedOperatorChain(List<Stage> stages, int queueCapacity) {
+        this.stages = stages;
+        this.queueCapacity = queueCapacity;
+    }
+
+    private void run(Stage stage) {
+        try {
+            while (true) {
+                List<Object> batch = stage.input.take(() -> failure != null);
+                if (batch == null) {
+                    return;
+                }
+                if (batch == END_OF_STREAM) {
+                    stage.operator.shutdown();
+                    if (stage.next != null) {
+                        stage.next.input.put(END_OF_STREAM, () -> failure != null);
+                    }
+                    return;
+                }
+
+                stage.operator.consume(batch);
+                if (stage.next != null) {
+                    List<Object> output = stage.operator.getStream().drain(stage.outputBatchSize);
+                    if (!output.isEmpty() && !stage.next.input.put(output, () -> failure != null)) {
+                        return;
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            log.error("Operator {} failed", stage.operator.getClass().getSimpleName(), t);
+            if (failure == null) {
+                failure = t;
+            }
+        }
+    }
+
+    /**
+     * @param queueCapacity maximum number of batches waiting for each stage
+     */
+    public static <S, T> ThreadedOperatorChain<S, T> of(MBOperator<S, T> first, int queueCapacity) {
+        List<Stage> stages = new ArrayList<>();
+        stages.add(new Stage(first, queueCapacity));
+        return new ThreadedOperatorChain<>(stages, queueCapacity);
+    }
+
+    @Override
+    public <Y> ThreadedOperatorChain<S, Y> then(MBOperator<T, Y> o2, int batchSize) {
+        if (started) {
+            throw new IllegalStateException("Cannot add stages to a running chain");
+        }
+        List<Stage> chained = new ArrayList<>(stages);
+        Stage prev = chained.get(chained.size() - 1);
+        prev.outputBatchSize = batchSize;
+        prev.next = new Stage(o2, queueCapacity);
+        chained.add(prev.next);
+        return new ThreadedOperatorChain<>(chained, queueCapacity);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public MBStream<T> getStream() throws Exception {
+        return (MBStream<T>) (MBStream<?>) stages.get(stages.size() - 1).operator.getStream();
+    }
+
+    @Override
+    public void initialize() throws Exception {
+        for (Stage stage : stages) {
+            stage.operator.initialize();
+        }
+        start();
+    }
+
+    private void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        for (int i = 0; i < stages.size(); ++i) {
+            Stage stage = stages.get(i);
+            Thread thread = new Thread(() -> run(stage), "mb-operator-" + i + "-"
+                    + stage.operator.getClass().getSimpleName());
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void consume(List<S> records) throws Exception {
+        if (shutdown) {
+            throw new IllegalStateException("Chain has been shut down");
+        }
+        start();
+        checkFailure();
+        if (!stages.get(0).input.put((List<Object>) records, () -> failure != null)) {
+            checkFailure();
+        }
+    }
+
+    @Override
+    public void shutdown() throws Exception {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        start();
+        stages.get(0).input.put(END_OF_STREAM, () -> failure != null);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws Exception {
+        Throwable t = failure;
+        if (t == null) {
+            return;
+        }
+        if (t instanceof Exception) {
+            throw new Exception("Operator chain failed", t);
+        }
+        throw (Error) t;
+    }
+}
@@ -0,0 +1,128 @@
+package macrobase.analysis.pipeline.stream;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer thread.
+ *
+ * Each side only writes its own index and publishes it with an ordered store, and keeps
+ * a cached copy of the other side's index so that the shared index is only read when the
+ * queue looks full or empty.
+ */
+public class SPSCQueue<T> {
+    private static final int SPIN_TRIES = 100;
+    private static final long MAX_PARK_NANOS = 100_000;
+
+    private final Object[] buffer;
+    private final int mask;
+
+    // next index to read, written only by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // next index to write, written only by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    private long cachedHead = 0;
+    private long cachedTail = 0;
+
+    /**
+     * @param capacity maximum number of queued elements, rounded up to a power of two
+     */
+    public SPSCQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        buffer = new Object[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Producer only.
+     * @return false if the queue is full
+     */
+    public boolean offer(T element) {
+        long t = tail.get();
+        if (t - cachedHead >= buffer.length) {
+            cachedHead = head.get();
+            if (t - cachedHead >= buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) t & mask] = element;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer only.
+     * @return the next element, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long h = head.get();
+        if (h >= cachedTail) {
+            cachedTail = tail.get();
+            if (h >= cachedTail) {
+                return null;
+            }
+        }
+        int index = (int) h & mask;
+        T element = (T) buffer[index];
+        buffer[index] = null;
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    /**
+     * Producer only. Waits while the queue is full.
+     * @param abort checked while waiting; the element is dropped if it becomes true
+     * @return whether the element was queued
+     */
+    public boolean put(T element, BooleanSupplier abort) throws InterruptedException {
+        for (int tries = 0; !offer(element); ++tries) {
+            if (!backoff(tries, abort)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Consumer only. Waits while the queue is empty.
+     * @param abort checked while waiting
+     * @return the next element, or null if aborted
+     */
+    public T take(BooleanSupplier abort) throws InterruptedException {
+        for (int tries = 0; ; ++tries) {
+            T element = poll();
+            if (element != null) {
+                return element;
+            }
+            if (!backoff(tries, abort)) {
+                return null;
+            }
+        }
+    }
+
+    // spin briefly, then yield, then park for increasing intervals
+    private static boolean backoff(int tries, BooleanSupplier abort) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (abort.getAsBoolean()) {
+            return false;
+        }
+        if (tries < SPIN_TRIES) {
+            return true;
+        }
+        if (tries < 2 * SPIN_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(tries - 2 * SPIN_TRIES, 7)));
+        }
+        return true;
+    }
+}
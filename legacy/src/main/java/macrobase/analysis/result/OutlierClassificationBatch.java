@@ -0,0 +1,28 @@
+package macrobase.analysis.result;
+
+import macrobase.datamodel.DatumBatch;
+
+/**
+ * Columnar counterpart of OutlierClassificationResult: a batch of tuples with a flag per row.
+ */
+public class OutlierClassificationBatch {
+    private final DatumBatch batch;
+    private final boolean[] outliers;
+
+    public OutlierClassificationBatch(DatumBatch batch, boolean[] outliers) {
+        this.batch = batch;
+        this.outliers = outliers;
+    }
+
+    public DatumBatch getBatch() {
+        return batch;
+    }
+
+    public int size() {
+        return batch.size();
+    }
+
+    public boolean isOutlier(int row) {
+        return outliers[row];
+    }
+}
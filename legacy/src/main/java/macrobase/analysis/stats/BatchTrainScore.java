@@ -2,6 +2,7 @@ package macrobase.analysis.stats;
 
 import macrobase.conf.MacroBaseConf;
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,4 +18,14 @@ public abstract class BatchTrainScore {
 
     public abstract double score(Datum datum);
 
+    // Columnar variants; by default these materialize Datums, so scorers that only read
+    // metric columns should override them
+
+    public void train(DatumBatch data) {
+        train(data.toData());
+    }
+
+    public double score(DatumBatch data, int row) {
+        return score(data.getDatum(row));
+    }
 }
@@ -5,6 +5,7 @@ import com.codahale.metrics.Timer;
 import macrobase.MacroBase;
 import macrobase.conf.MacroBaseConf;
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,7 +37,6 @@ public class MAD extends BatchTrainScore {
 
     @Override
     public void train(List<Datum> data) {
-        Timer.Context context = medianComputation.time();
         assert (data.get(0).metrics().getDimension() == 1);
 
         int len = data.size();
@@ -45,6 +45,20 @@ public class MAD extends BatchTrainScore {
             metrics[i] = data.get(i).metrics().getEntry(0);
         }
 
+        train(metrics);
+    }
+
+    @Override
+    public void train(DatumBatch data) {
+        assert (data.numMetrics() == 1);
+        train(Arrays.copyOf(data.getMetricColumn(0), data.size()));
+    }
+
+    // sorts metrics in place
+    private void train(double[] metrics) {
+        Timer.Context context = medianComputation.time();
+        int len = metrics.length;
+
         Arrays.sort(metrics);
 
         if (len % 2 == 0) {
@@ -64,11 +78,11 @@ public class MAD extends BatchTrainScore {
         context = residualMedianComputation.time();
         Arrays.sort(residuals);
 
-        if (data.size() % 2 == 0) {
-            MAD = (residuals[data.size() / 2 - 1] +
-                   residuals[data.size() / 2]) / 2;
+        if (len % 2 == 0) {
+            MAD = (residuals[len / 2 - 1] +
+                   residuals[len / 2]) / 2;
         } else {
-            MAD = residuals[(int) Math.ceil(data.size() / 2)];
+            MAD = residuals[(int) Math.ceil(len / 2)];
         }
 
         if (MAD == 0) {
@@ -95,6 +109,11 @@ public class MAD extends BatchTrainScore {
         return Math.abs(point - median) / (MAD);
     }
 
+    @Override
+    public double score(DatumBatch data, int row) {
+        return Math.abs(data.getMetric(row, 0) - median) / (MAD);
+    }
+
     public double getZScoreEquivalent(double zscore) {
         return zscore / MAD_TO_ZSCORE_COEFFICIENT;
     }
@@ -4,6 +4,7 @@ import com.codahale.metrics.Timer;
 import macrobase.MacroBase;
 import macrobase.conf.MacroBaseConf;
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 
 import java.util.List;
 
@@ -41,9 +42,37 @@ public class ZScore extends BatchTrainScore {
         context.stop();
     }
 
+    @Override
+    public void train(DatumBatch data) {
+        assert (data.numMetrics() == 1);
+        double[] metrics = data.getMetricColumn(0);
+        int len = data.size();
+        double sum = 0;
+
+        Timer.Context context = meanComputation.time();
+        for (int i = 0; i < len; ++i) {
+            sum += metrics[i];
+        }
+        mean = sum / len;
+        context.stop();
+
+        context = stddevComputation.time();
+        double ss = 0;
+        for (int i = 0; i < len; ++i) {
+            ss += Math.pow(mean - metrics[i], 2);
+        }
+        std = Math.sqrt(ss / len);
+        context.stop();
+    }
+
     @Override
     public double score(Datum datum) {
         double point = datum.metrics().getEntry(0);
         return Math.abs(point - mean) / std;
     }
+
+    @Override
+    public double score(DatumBatch data, int row) {
+        return Math.abs(data.getMetric(row, 0) - mean) / std;
+    }
 }
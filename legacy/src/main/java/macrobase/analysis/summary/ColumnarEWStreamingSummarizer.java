@@ -0,0 +1,53 @@
+package macrobase.analysis.summary;
+
+import macrobase.analysis.pipeline.operator.MBOperator;
+import macrobase.analysis.pipeline.stream.MBStream;
+import macrobase.analysis.result.OutlierClassificationBatch;
+import macrobase.conf.ConfigurationException;
+import macrobase.conf.MacroBaseConf;
+
+import java.util.List;
+
+/*
+ EWStreamingSummarizer over columnar batches: reads each tuple's attributes straight from
+ the attribute columns instead of from a Datum.
+ */
+public class ColumnarEWStreamingSummarizer extends MBOperator<OutlierClassificationBatch, Summary> {
+    private final EWStreamingSummarizer summarizer;
+
+    public ColumnarEWStreamingSummarizer(MacroBaseConf conf) throws ConfigurationException {
+        this(conf, -1);
+    }
+
+    public ColumnarEWStreamingSummarizer(MacroBaseConf conf,
+                                         int maximumSummaryDelay) throws ConfigurationException {
+        summarizer = new EWStreamingSummarizer(conf, maximumSummaryDelay);
+    }
+
+    @Override
+    public MBStream<Summary> getStream() {
+        return summarizer.getStream();
+    }
+
+    @Override
+    public void initialize() {
+        summarizer.initialize();
+    }
+
+    @Override
+    public void consume(List<OutlierClassificationBatch> records) {
+        for(OutlierClassificationBatch batch : records) {
+            summarizer.consumeBatch(batch);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        summarizer.shutdown();
+    }
+
+    public ColumnarEWStreamingSummarizer summarize() {
+        summarizer.summarize();
+        return this;
+    }
+}
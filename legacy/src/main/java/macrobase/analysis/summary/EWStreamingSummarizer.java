@@ -2,12 +2,14 @@ package macrobase.analysis.summary;
 
 import com.google.common.base.Stopwatch;
 import macrobase.analysis.pipeline.stream.MBStream;
+import macrobase.analysis.result.OutlierClassificationBatch;
 import macrobase.analysis.result.OutlierClassificationResult;
 import macrobase.analysis.summary.itemset.ExponentiallyDecayingEmergingItemsets;
 import macrobase.analysis.summary.itemset.result.ItemsetResult;
 import macrobase.conf.ConfigurationException;
 import macrobase.conf.MacroBaseConf;
 import macrobase.conf.MacroBaseDefaults;
+import macrobase.datamodel.DatumBatch;
 import macrobase.ingest.DatumEncoder;
 import macrobase.util.Periodic;
 
@@ -89,6 +91,24 @@ public class EWStreamingSummarizer extends Summarizer {
         }
     }
 
+    // used by ColumnarEWStreamingSummarizer
+    void consumeBatch(OutlierClassificationBatch records) {
+        DatumBatch data = records.getBatch();
+        int[] attributes = new int[data.numAttributes()];
+        for(int row = 0; row < data.size(); ++row) {
+            count++;
+            summaryUpdater.runIfNecessary();
+            summarizationTimer.runIfNecessary();
+
+            data.getAttributes(row, attributes);
+            if(records.isOutlier(row)) {
+                streamingSummarizer.markOutlier(attributes);
+            } else {
+                streamingSummarizer.markInlier(attributes);
+            }
+        }
+    }
+
     @Override
     public void shutdown() {
 
@@ -1,14 +1,10 @@
 package macrobase.analysis.summary.count;
 
-import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.DoubleSummaryStatistics;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
 
 /*
  Maintains probabilistic heavy-hitters:
@@ -16,8 +12,8 @@ import java.util.Map;
     - Once we have seen 1/threshold items, size is >= 1/threshold items.
 
  This is similar to SpaceSaving but with:
-   - O(1) update and O(items*log(k)) maintenance
-     (normally O(log(k)) update)
+   - O(1) update and expected O(items) maintenance, using quickselect to find the
+     eviction cutoff (normally O(log(k)) update)
    - unlimited space overhead within an epoch (normally O(k))
 
  Basic idea:
@@ -31,6 +27,8 @@ import java.util.Map;
      3.) compute 1/thresh highest counts
      4.) discard lower items, updating min if necessary
 
+ Counts are kept in dense primitive arrays indexed by an open-addressing map, and the
+ 1/thresh highest counts are found by selection rather than by sorting every count.
  */
 public class AmortizedMaintenanceCounter extends ApproximateCount {
     private static final Logger log = LoggerFactory.getLogger(AmortizedMaintenanceCounter.class);
@@ -38,7 +36,12 @@ public class AmortizedMaintenanceCounter extends ApproximateCount {
     private double decayFactor = 1;
     private static final double DECAY_RESET_THRESHOLD = Double.MAX_VALUE*.5;
 
-    private HashMap<Integer, Double> counts = new HashMap<>();
+    // item -> position in items and counts
+    private final IntIntHashMap positions = new IntIntHashMap();
+    private int[] items = new int[16];
+    private double[] counts = new double[16];
+    private int size = 0;
+
     private double totalCount = 0;
     private final int maxStableSize;
 
@@ -56,42 +59,96 @@ public class AmortizedMaintenanceCounter extends ApproximateCount {
             resetDecayFactor();
         }
 
-        if (counts.size() > maxStableSize) {
-            List<Map.Entry<Integer, Double>> a = Lists.newArrayList(counts.entrySet());
-            a.sort((e1, e2) -> e1.getValue().compareTo(e2.getValue()));
-
-            int toRemove = counts.size() - maxStableSize;
+        if (size > maxStableSize) {
+            int toRemove = size - maxStableSize;
 
             log.trace("Removing {} items from counts", toRemove);
 
-            prevEpochMaxEvicted = Double.MIN_VALUE;
+            // the largest evicted count is the toRemove-th smallest
+            double[] scratch = Arrays.copyOf(counts, size);
+            prevEpochMaxEvicted = select(scratch, toRemove - 1);
+
+            int numBelow = 0;
+            for (int i = 0; i < size; ++i) {
+                if (counts[i] < prevEpochMaxEvicted) {
+                    numBelow++;
+                }
+            }
+            int tiesToRemove = toRemove - numBelow;
 
-            for (int i = 0; i < toRemove; ++i) {
-                Map.Entry<Integer, Double> entry = a.get(i);
-                counts.remove(entry.getKey());
-                if (entry.getValue() > prevEpochMaxEvicted) {
-                    prevEpochMaxEvicted = entry.getValue();
+            positions.clear();
+            int kept = 0;
+            for (int i = 0; i < size; ++i) {
+                if (counts[i] < prevEpochMaxEvicted) {
+                    continue;
                 }
+                if (counts[i] == prevEpochMaxEvicted && tiesToRemove > 0) {
+                    tiesToRemove--;
+                    continue;
+                }
+                items[kept] = items[i];
+                counts[kept] = counts[i];
+                positions.put(items[kept], kept);
+                kept++;
             }
+            size = kept;
         }
 
         log.trace("Finished pruning; new size is {}; max evicted is {}",
-                  counts.size(),
+                  size,
                   prevEpochMaxEvicted);
     }
 
+    // returns the k-th smallest value (0-indexed), reordering values
+    private static double select(double[] values, int k) {
+        int left = 0;
+        int right = values.length - 1;
+        while (left < right) {
+            double pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+
+    @Override
     public HashMap<Integer, Double> getCounts() {
-        resetDecayFactor();
-        return counts;
+        HashMap<Integer, Double> ret = new HashMap<>(size * 2);
+        for (int i = 0; i < size; ++i) {
+            ret.put(items[i], counts[i] / decayFactor);
+        }
+        return ret;
     }
 
     private void resetDecayFactor() {
-        log.trace("Decaying; {} items stored", counts.size());
+        log.trace("Decaying; {} items stored", size);
 
-        for (Map.Entry<Integer, Double> entry : counts.entrySet()) {
-            double newValue = entry.getValue()/decayFactor;
-            counts.put(entry.getKey(), newValue);
+        for (int i = 0; i < size; ++i) {
+            counts[i] /= decayFactor;
         }
+        prevEpochMaxEvicted /= decayFactor;
 
         totalCount /= decayFactor;
 
@@ -100,18 +157,31 @@ public class AmortizedMaintenanceCounter extends ApproximateCount {
 
     @Override
     public void observe(Integer item, double count) {
+        observe(item.intValue(), count);
+    }
+
+    @Override
+    public void observe(int item, double count) {
         count *= decayFactor;
 
-        Double value = counts.get(item);
-        if (value == null) {
+        int position = positions.get(item, -1);
+        double value;
+        if (position < 0) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            position = size++;
+            positions.put(item, position);
+            items[position] = item;
             value = prevEpochMaxEvicted + count;
             totalCount += value;
         } else {
-            value += count;
+            value = counts[position] + count;
             totalCount += count;
         }
 
-        counts.put(item, value);
+        counts[position] = value;
 
         if(value > DECAY_RESET_THRESHOLD && decayFactor > 1) {
             resetDecayFactor();
@@ -125,11 +195,11 @@ public class AmortizedMaintenanceCounter extends ApproximateCount {
 
     @Override
     public double getCount(int item) {
-        Double ret = counts.get(item);
-        if (ret == null) {
+        int position = positions.get(item, -1);
+        if (position < 0) {
             return prevEpochMaxEvicted/decayFactor;
         }
 
-        return ret/decayFactor;
+        return counts[position]/decayFactor;
     }
-}
\ No newline at end of file
+}
@@ -26,4 +26,9 @@ public abstract class ApproximateCount {
     public void observe(Integer item) {
         observe(item, 1);
     }
+
+    // overridden by counters that store items unboxed
+    public void observe(int item, double count) {
+        observe(Integer.valueOf(item), count);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+package macrobase.analysis.summary.count;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from int keys to int values, used by the counters to find the
+ * array slot of an item without boxing. Uses linear probing with backward-shift deletion,
+ * so there are no tombstones and lookups stay short under heavy churn.
+ */
+public class IntIntHashMap {
+    private static final double MAX_LOAD = .5;
+
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int mask;
+    private int size;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    public IntIntHashMap(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(4, (int) (expectedSize / MAX_LOAD)) - 1) << 1);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private int find(int key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (!used[i]) {
+                return -1;
+            }
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    public int get(int key, int defaultValue) {
+        int i = find(key);
+        return i < 0 ? defaultValue : values[i];
+    }
+
+    public void put(int key, int value) {
+        int i = slot(key);
+        while (used[i]) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        used[i] = true;
+        if (++size > MAX_LOAD * keys.length) {
+            rehash();
+        }
+    }
+
+    public boolean remove(int key) {
+        int i = find(key);
+        if (i < 0) {
+            return false;
+        }
+        used[i] = false;
+        size--;
+
+        // shift back later entries of the probe run so that lookups never hit a gap
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (!used[j]) {
+                return true;
+            }
+            int home = slot(keys[j]);
+            boolean staysPut = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!staysPut) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                used[i] = true;
+                used[j] = false;
+                i = j;
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(keys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldUsed[i]) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
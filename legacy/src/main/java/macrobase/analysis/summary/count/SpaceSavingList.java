@@ -1,318 +1,195 @@
 package macrobase.analysis.summary.count;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/*
+ SpaceSaving heavy-hitters: monitors at most maxSize items, and a new item replaces an
+ item with the lowest count, inheriting that count.
+
+ Counters are kept as a Stream-Summary: a list of groups in increasing count order, each
+ holding the list of counters at that count, so a unit increment moves a counter to the
+ neighbouring group in O(1). Counters and groups live in primitive arrays linked by index,
+ and items are found through an open-addressing map, so updates do not allocate.
+ */
 public class SpaceSavingList extends ApproximateCount {
     private static final Logger log = LoggerFactory.getLogger(SpaceSavingList.class);
 
-    Map<Integer, CounterToken> digest = new HashMap<>();
-    CounterGroup groupHead = null;
-    private final int maxSize;
-    private double totalCount;
+    private static final int NONE = -1;
 
-    @Override
-    public double getTotalCount() {
-        return totalCount;
-    }
+    // item -> counter
+    private final IntIntHashMap counters;
 
-    private class CounterGroup {
-        private double differential;
-
-        private CounterGroup prev;
-        private CounterGroup next;
-        private CounterToken tokenList;
-
-        private CounterGroup(double differential,
-                             CounterGroup prev,
-                             CounterGroup next,
-                             CounterToken counterToken) {
-            this.differential = differential;
-            this.prev = prev;
-            this.next = next;
-            this.tokenList = counterToken;
-            counterToken.group = this;
-        }
+    // counters, linked to the others in their group
+    private final int[] counterItem;
+    private final int[] counterGroup;
+    private final int[] counterPrev;
+    private final int[] counterNext;
+    private int numCounters = 0;
 
-        public void removeIfEmpty() {
-            if (tokenList != null) {
-                return;
-            }
-
-            if (next != null) {
-                next.prev = prev;
-                next.differential += differential;
-            }
+    // groups, linked in increasing count order; an increment can briefly need one more
+    // group than there are counters
+    private final double[] groupCount;
+    private final int[] groupPrev;
+    private final int[] groupNext;
+    private final int[] groupCounters;
+    private final int[] freeGroups;
+    private int numFreeGroups;
+    private int groupHead = NONE;
 
-            if (prev != null) {
-                prev.next = next;
-            } else {
-                assert (groupHead == this);
-                groupHead = next;
-            }
-        }
-
-        public void addCounter(CounterToken t) {
-            assert (tokenList != null);
-
-            if (tokenList == null) {
-                tokenList = t;
-            } else {
-                t.next = tokenList;
-                t.next.prev = t;
-                t.prev = null;
+    private final int maxSize;
+    private double totalCount;
 
-                tokenList = t;
-            }
+    public SpaceSavingList(int maxSize) {
+        this.maxSize = maxSize;
 
-            t.group = this;
-        }
+        counters = new IntIntHashMap(maxSize);
+        counterItem = new int[maxSize];
+        counterGroup = new int[maxSize];
+        counterPrev = new int[maxSize];
+        counterNext = new int[maxSize];
+
+        groupCount = new double[maxSize + 1];
+        groupPrev = new int[maxSize + 1];
+        groupNext = new int[maxSize + 1];
+        groupCounters = new int[maxSize + 1];
+        freeGroups = new int[maxSize + 1];
+        for (int i = 0; i <= maxSize; ++i) {
+            freeGroups[i] = i;
+        }
+        numFreeGroups = maxSize + 1;
+    }
 
-        // returns replaced token
-        public CounterToken replaceOneToken(CounterToken newToken) {
-            assert (tokenList != null);
-            CounterToken replaced = tokenList;
-            tokenList = newToken;
-            newToken.prev = null;
-            newToken.next = replaced.next;
+    @Override
+    public double getTotalCount() {
+        return totalCount;
+    }
 
-            if (newToken.next != null) {
-                newToken.next.prev = newToken;
-            }
+    @Override
+    public double getCount(int item) {
+        int counter = counters.get(item, NONE);
 
-            newToken.group = this;
-            return replaced;
+        if (counter == NONE) {
+            return groupHead == NONE ? 0 : groupCount[groupHead];
         }
 
-        public void removeToken(CounterToken token) {
-
-
-            if (token.prev != null) {
-                token.prev.next = token.next;
-            }
-
-            if (token.next != null) {
-                // head of list
-                if (tokenList == token) {
-                    assert (token.prev == null);
-                    tokenList = token.next;
-                    token.next.prev = null;
-                } else {
-                    token.next.prev = token.prev;
-                }
-            } else {
-                if (tokenList == token) {
-                    tokenList = null;
-                }
-            }
-
-            token.next = null;
-            token.prev = null;
-            token.group = null;
-
-            removeIfEmpty();
-        }
+        return groupCount[counterGroup[counter]];
     }
 
-    private class CounterToken {
-        private int item;
-        private CounterGroup group;
-        private CounterToken prev;
-        private CounterToken next;
-
-        private CounterToken(int item, CounterGroup group, CounterToken next) {
-            this.item = item;
-            this.group = group;
-            this.next = next;
-        }
+    @Override
+    public void observe(Integer item, double count) {
+        observe(item.intValue(), count);
     }
 
     @Override
-    public double getCount(int item) {
-        CounterToken token = digest.get(item);
+    public void observe(int item, double count) {
+        totalCount += count;
 
-        if (token == null) {
-            return groupHead.differential;
+        int counter = counters.get(item, NONE);
+        if (counter != NONE) {
+            incrementCounter(counter, count);
+        } else if (numCounters < maxSize) {
+            counter = numCounters++;
+            counterItem[counter] = item;
+            counters.put(item, counter);
+            insertCounter(counter, count, NONE);
+        } else {
+            // take over a counter with the lowest count
+            counter = groupCounters[groupHead];
+            counters.remove(counterItem[counter]);
+            counterItem[counter] = item;
+            counters.put(item, counter);
+            incrementCounter(counter, count);
         }
+    }
 
-        CounterGroup group = token.group;
+    private void incrementCounter(int counter, double by) {
+        int group = counterGroup[counter];
+        double count = groupCount[group] + by;
+        int next = groupNext[group];
 
-        double ret = 0L;
-        while (group != null) {
-            ret += group.differential;
-            group = group.prev;
+        // the only counter in its group, and still below the next group
+        if (groupCounters[group] == counter && counterNext[counter] == NONE
+                && (next == NONE || groupCount[next] > count)) {
+            groupCount[group] = count;
+            return;
         }
 
-        return ret;
+        int prev = groupPrev[group];
+        removeCounter(counter);
+        insertCounter(counter, count, prev);
     }
 
-    private void incrementCounter(CounterToken token,
-                                  Double by) {
-        CounterGroup currentGroup = token.group;
-
-        // we are at the end of the groups (highest count)
-        if (currentGroup.next == null) {
-
-            // we are the only matching token
-            if (currentGroup.tokenList == token && token.next == null) {
-                currentGroup.differential += by;
-            }
-            // insert a new token at the end
-            else {
-                currentGroup.removeToken(token);
-                CounterGroup newGroup = new CounterGroup(by,
-                                                         currentGroup,
-                                                         null,
-                                                         token);
-                currentGroup.next = newGroup;
-
-            }
-        }
-        // perfect match on next group
-        else if (currentGroup.next.differential == by) {
-            currentGroup.removeToken(token);
-            currentGroup.next.addCounter(token);
-        }
-        // we are between current and current.next; insert a new token
-        else if (currentGroup.next != null && currentGroup.next.differential > by) {
-            currentGroup.next.differential -= by;
-
-            // if this is the only token in the list, just increment
-            if (currentGroup.tokenList == token && token.next == null) {
-                currentGroup.differential += by;
+    // add the counter to the group with its count, searching forward from the group after
+    // 'after', or from the head if NONE
+    private void insertCounter(int counter, double count, int after) {
+        int next = after == NONE ? groupHead : groupNext[after];
+        while (next != NONE && groupCount[next] < count) {
+            after = next;
+            next = groupNext[next];
+        }
+
+        int group = next;
+        if (group == NONE || groupCount[group] != count) {
+            group = freeGroups[--numFreeGroups];
+            groupCount[group] = count;
+            groupCounters[group] = NONE;
+            groupPrev[group] = after;
+            groupNext[group] = next;
+            if (after == NONE) {
+                groupHead = group;
             } else {
-                currentGroup.removeToken(token);
-
-                CounterGroup newGroup = new CounterGroup(by,
-                                                         currentGroup,
-                                                         currentGroup.next,
-                                                         token);
-                currentGroup.next.prev = newGroup;
-                currentGroup.next = newGroup;
+                groupNext[after] = group;
+            }
+            if (next != NONE) {
+                groupPrev[next] = group;
             }
         }
-        // we fall after the next token in line
-        else if (currentGroup.next != null && currentGroup.next.differential < by) {
-            currentGroup.removeToken(token);
 
-            insertNextMatchingGroup(currentGroup, token, by);
+        counterGroup[counter] = group;
+        counterPrev[counter] = NONE;
+        counterNext[counter] = groupCounters[group];
+        if (groupCounters[group] != NONE) {
+            counterPrev[groupCounters[group]] = counter;
         }
+        groupCounters[group] = counter;
     }
 
-    private void insertNextMatchingGroup(CounterGroup currentGroup,
-                                         CounterToken token,
-                                         double remaining) {
-        // find the group we want to insert ourselves after
-        CounterGroup gteGroup = currentGroup.next;
-        CounterGroup prevGroup = null;
-        while (remaining > 0 && gteGroup != null) {
-            remaining -= gteGroup.differential;
-            prevGroup = gteGroup;
-            gteGroup = gteGroup.next;
-            assert (gteGroup == null || gteGroup.prev == prevGroup);
-        }
-
-        // we should be the new tail node
-        if (remaining > 0) {
-            CounterGroup newGroup = new CounterGroup(remaining,
-                                                     prevGroup,
-                                                     null,
-                                                     token);
-            if (prevGroup != null) {
-                prevGroup.next = newGroup;
-            }
+    // unlink the counter from its group, freeing the group if it is left empty
+    private void removeCounter(int counter) {
+        int group = counterGroup[counter];
+        if (counterPrev[counter] == NONE) {
+            groupCounters[group] = counterNext[counter];
+        } else {
+            counterNext[counterPrev[counter]] = counterNext[counter];
         }
-        // we matched exactly!
-        else if (remaining == 0) {
-            prevGroup.addCounter(token);
+        if (counterNext[counter] != NONE) {
+            counterPrev[counterNext[counter]] = counterPrev[counter];
         }
-        // insert ourselves before the last node we visited
-        else {
-            double delta = -remaining;
-            // insert ourselves before...
-            prevGroup.differential -= delta;
-            CounterGroup newGroup = new CounterGroup(delta,
-                                                     prevGroup.prev,
-                                                     prevGroup,
-                                                     token);
-
-            if (prevGroup == groupHead) {
-                groupHead = newGroup;
-                prevGroup.prev = newGroup;
-            } else {
-                prevGroup.prev.next = newGroup;
-                prevGroup.prev = newGroup;
-            }
-        }
-    }
 
-    @Override
-    public void observe(Integer item, double count) {
-        //sanityCheck();
-        totalCount += count;
-
-        CounterToken token = digest.get(item);
-        if (token == null) {
-            token = new CounterToken(item, null, null);
-            digest.put(item, token);
-
-            if (digest.size() <= maxSize) {
-                // first group in the bunch
-                if (groupHead == null) {
-                    groupHead = new CounterGroup(count,
-                                                 null,
-                                                 null,
-                                                 token);
-                }
-                // insert the token at the appropriate position
-                else {
-                    if (count == groupHead.differential) {
-                        groupHead.addCounter(token);
-                    }
-                    // insert ourselves at the head of the list
-                    else if (count < groupHead.differential) {
-                        CounterGroup newGroup = new CounterGroup(count,
-                                                                 null,
-                                                                 groupHead,
-                                                                 token);
-                        groupHead.differential -= count;
-                        groupHead.prev = newGroup;
-                        groupHead = newGroup;
-                    } else {
-                        insertNextMatchingGroup(groupHead, token, count);
-                    }
-                }
+        if (groupCounters[group] == NONE) {
+            int prev = groupPrev[group];
+            int next = groupNext[group];
+            if (prev == NONE) {
+                groupHead = next;
             } else {
-                CounterToken replaced = groupHead.replaceOneToken(token);
-                incrementCounter(token, 1.0);
-                digest.remove(replaced.item);
+                groupNext[prev] = next;
             }
-        } else {
-            incrementCounter(token, count);
+            if (next != NONE) {
+                groupPrev[next] = prev;
+            }
+            freeGroups[numFreeGroups++] = group;
         }
-        //sanityCheck();
     }
 
     @Override
     public Map<Integer, Double> getCounts() {
-        Map<Integer, Double> ret = new HashMap<>();
-
-        CounterGroup curGroup = groupHead;
-        Double currentCount = 0.;
-
-        while (curGroup != null) {
-            currentCount += curGroup.differential;
-            CounterToken curToken = curGroup.tokenList;
-            while (curToken != null) {
-                ret.put(curToken.item, currentCount);
-                curToken = curToken.next;
-            }
-
-            curGroup = curGroup.next;
+        Map<Integer, Double> ret = new HashMap<>(numCounters * 2);
+        for (int counter = 0; counter < numCounters; ++counter) {
+            ret.put(counterItem[counter], groupCount[counterGroup[counter]]);
         }
 
         return ret;
@@ -322,35 +199,19 @@ public class SpaceSavingList extends ApproximateCount {
     public void multiplyAllCounts(Double by) {
         totalCount *= by;
 
-        CounterGroup curGroup = groupHead;
-        while (curGroup != null) {
-            curGroup.differential *= by;
-            curGroup = curGroup.next;
+        for (int group = groupHead; group != NONE; group = groupNext[group]) {
+            groupCount[group] *= by;
         }
     }
 
     public void debugPrint() {
-        double currentCount = 0;
-        CounterGroup curGroup = groupHead;
         log.debug("****");
-        while (curGroup != null) {
-            currentCount += curGroup.differential;
-            log.debug("at group {}", curGroup);
-            log.debug("differential is {}, so far is {}",
-                      curGroup.differential,
-                      currentCount);
-            CounterToken token = curGroup.tokenList;
-            while (token != null) {
-                log.debug("\t counter: {}", token.item);
-                token = token.next;
+        for (int group = groupHead; group != NONE; group = groupNext[group]) {
+            log.debug("group {}, count is {}", group, groupCount[group]);
+            for (int counter = groupCounters[group]; counter != NONE; counter = counterNext[counter]) {
+                log.debug("\t counter: {}", counterItem[counter]);
             }
-            curGroup = curGroup.next;
-            log.debug("");
         }
         log.debug("****");
     }
-
-    public SpaceSavingList(int maxSize) {
-        this.maxSize = maxSize;
-    }
 }
@@ -0,0 +1,91 @@
+package macrobase.analysis.summary.count;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/*
+ Heavy-hitters that can be updated from several ingest threads at once.
+
+ Each thread updates one of a fixed number of stripes, each an independent counter
+ guarded by its own lock, so threads on different stripes never contend. Reads merge the
+ stripes: an item's count is the sum of its counts in every stripe, where a stripe that
+ does not monitor the item contributes its estimate for unmonitored items. Since each
+ stripe overestimates, so does the merged count.
+ */
+public class StripedApproximateCount extends ApproximateCount {
+    private final ApproximateCount[] stripes;
+
+    public StripedApproximateCount(int numStripes, Supplier<? extends ApproximateCount> stripeFactory) {
+        stripes = new ApproximateCount[numStripes];
+        for (int i = 0; i < numStripes; ++i) {
+            stripes[i] = stripeFactory.get();
+        }
+    }
+
+    private ApproximateCount currentStripe() {
+        return stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+    }
+
+    @Override
+    public void observe(Integer item, double count) {
+        ApproximateCount stripe = currentStripe();
+        synchronized (stripe) {
+            stripe.observe(item, count);
+        }
+    }
+
+    @Override
+    public void multiplyAllCounts(Double by) {
+        for (ApproximateCount stripe : stripes) {
+            synchronized (stripe) {
+                stripe.multiplyAllCounts(by);
+            }
+        }
+    }
+
+    /**
+     * @return merged counts of every item monitored by at least one stripe
+     */
+    @Override
+    public Map<Integer, Double> getCounts() {
+        Map<Integer, Double> ret = new HashMap<>();
+        for (ApproximateCount stripe : stripes) {
+            synchronized (stripe) {
+                for (Integer item : stripe.getCounts().keySet()) {
+                    ret.put(item, 0.);
+                }
+            }
+        }
+        for (ApproximateCount stripe : stripes) {
+            synchronized (stripe) {
+                for (Map.Entry<Integer, Double> e : ret.entrySet()) {
+                    e.setValue(e.getValue() + stripe.getCount(e.getKey()));
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public double getTotalCount() {
+        double total = 0;
+        for (ApproximateCount stripe : stripes) {
+            synchronized (stripe) {
+                total += stripe.getTotalCount();
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public double getCount(int item) {
+        double count = 0;
+        for (ApproximateCount stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.getCount(item);
+            }
+        }
+        return count;
+    }
+}
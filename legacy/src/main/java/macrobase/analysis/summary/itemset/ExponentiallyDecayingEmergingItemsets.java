@@ -22,6 +22,7 @@ import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.Timer;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 
 public class ExponentiallyDecayingEmergingItemsets {
     private static final Logger log = LoggerFactory.getLogger(ExponentiallyDecayingEmergingItemsets.class);
@@ -148,6 +149,28 @@ public class ExponentiallyDecayingEmergingItemsets {
         }
     }
 
+    // the attribute array is not retained, so callers may reuse it
+    public void markOutlier(int[] attributes) {
+        numOutliers++;
+        for (int item : attributes) {
+            outlierCountSummary.observe(item, 1.0);
+        }
+
+        if (!combinationsEnabled || attributeDimension > 1) {
+            outlierPatternSummary.insertTransactionStreamingFalseNegative(Ints.asList(attributes));
+        }
+    }
+
+    public void markInlier(int[] attributes) {
+        numInliers++;
+        for (int item : attributes) {
+            inlierCountSummary.observe(item, 1.0);
+        }
+        if (!combinationsEnabled || attributeDimension > 1) {
+            inlierPatternSummary.insertTransactionStreamingFalseNegative(Ints.asList(attributes));
+        }
+    }
+
     private List<ItemsetResult> getSingleItemItemsets(DatumEncoder encoder) {
         double supportCountRequired = outlierCountSummary.getTotalCount() * minSupportOutlier;
 
@@ -40,6 +40,11 @@ public class StreamingFPGrowth {
         // used to calculate the order
         private Map<Integer, Double> frequentItemCounts = new HashMap<>();
 
+        // Decay is applied lazily, as in AmortizedMaintenanceCounter: node and item counts are
+        // stored multiplied by decayFactor, which grows instead of every count shrinking
+        private double decayFactor = 1;
+        private static final double DECAY_RESET_THRESHOLD = 1e100;
+
         // item order -- need canonical to break ties; 0 is smallest, N is largest
         private Map<Integer, Integer> frequentItemOrder = new HashMap<>();
 
@@ -61,20 +66,31 @@ public class StreamingFPGrowth {
             walkTree(root, 1);
         }
 
-        // todo: make more efficient
-        private void decayWeights(FPTreeNode start, double decayWeight) {
-            if (start == root) {
-                for (Integer item : frequentItemCounts.keySet()) {
-                    frequentItemCounts.put(item, frequentItemCounts.get(item) * decayWeight);
-                }
+        private void decayWeights(double decayWeight) {
+            decayFactor /= decayWeight;
+
+            if (decayFactor > DECAY_RESET_THRESHOLD) {
+                resetDecayFactor();
             }
+        }
 
-            start.count *= decayWeight;
-            if (start.getChildren() != null) {
-                for (FPTreeNode child : start.getChildren()) {
-                    decayWeights(child, decayWeight);
+        // rescale the stored counts to their true values; only needed before they overflow
+        private void resetDecayFactor() {
+            for (Map.Entry<Integer, Double> entry : frequentItemCounts.entrySet()) {
+                entry.setValue(entry.getValue() / decayFactor);
+            }
+
+            Deque<FPTreeNode> toRescale = new ArrayDeque<>();
+            toRescale.push(root);
+            while (!toRescale.isEmpty()) {
+                FPTreeNode node = toRescale.pop();
+                node.count /= decayFactor;
+                if (node.getChildren() != null) {
+                    node.getChildren().forEach(toRescale::push);
                 }
             }
+
+            decayFactor = 1;
         }
 
 
@@ -278,7 +294,7 @@ public class StreamingFPGrowth {
                     }
 
                     if (itemsToFind == 0) {
-                        count += pathHead.count;
+                        count += pathHead.count / decayFactor;
                         break;
                     }
 
@@ -304,7 +320,7 @@ public class StreamingFPGrowth {
 
             for (Map.Entry<Integer, Double> e : itemCounts.entrySet()) {
                 if (e.getValue() >= countRequiredForSupport) {
-                    frequentItemCounts.put(e.getKey(), e.getValue());
+                    frequentItemCounts.put(e.getKey(), e.getValue() * decayFactor);
                 }
             }
 
@@ -349,15 +365,28 @@ public class StreamingFPGrowth {
         private void updateFrequentItemOrder() {
             Timer.Context context = updateFrequentItemOrder.time();
 
-            sortedNodes.clear();
-
-            frequentItemOrder.clear();
-
             // we have to materialize a canonical order so that items with equal counts
             // are consistently ordered when they are sorted during transaction insertion
             List<Map.Entry<Integer, Double>> sortedItemCounts = Lists.newArrayList(frequentItemCounts.entrySet());
             sortedItemCounts.sort((i1, i2) -> frequentItemCounts.get(i1.getKey())
                     .compareTo(frequentItemCounts.get(i2.getKey())));
+
+            // sorted branches only need to be re-sorted if the remaining items changed relative
+            // order, which decay alone never does
+            int prevOrder = Integer.MIN_VALUE;
+            for (Map.Entry<Integer, Double> e : sortedItemCounts) {
+                Integer order = frequentItemOrder.get(e.getKey());
+                if (order == null) {
+                    continue;
+                }
+                if (order <= prevOrder) {
+                    sortedNodes.clear();
+                    break;
+                }
+                prevOrder = order;
+            }
+
+            frequentItemOrder.clear();
             for (int i = 0; i < sortedItemCounts.size(); ++i) {
                 frequentItemOrder.put(sortedItemCounts.get(i).getKey(), i);
             }
@@ -377,7 +406,7 @@ public class StreamingFPGrowth {
 
             for (Map.Entry<Integer, Double> e : itemCounts.entrySet()) {
                 if (e.getValue() >= countRequiredForSupport) {
-                    frequentItemCounts.put(e.getKey(), e.getValue());
+                    frequentItemCounts.put(e.getKey(), e.getValue() * decayFactor);
                 }
             }
 
@@ -396,7 +425,15 @@ public class StreamingFPGrowth {
 
         public void insertConditionalFrequentPatterns(List<ItemsetWithCount> patterns) {
             for (ItemsetWithCount is : patterns) {
-                reinsertBranch(is.getItems(), is.getCount(), root);
+                reinsertBranch(is.getItems(), is.getCount() * decayFactor, root);
+            }
+        }
+
+        // replace the item counts, given as true rather than stored values, scaled by weight
+        public void resetFrequentItems(Map<Integer, Double> newFrequentItems, double weight) {
+            frequentItemCounts = new HashMap<>(newFrequentItems.size());
+            for (Map.Entry<Integer, Double> e : newFrequentItems.entrySet()) {
+                frequentItemCounts.put(e.getKey(), e.getValue() * weight * decayFactor);
             }
         }
 
@@ -415,9 +452,10 @@ public class StreamingFPGrowth {
         }
 
         public void insertTransaction(Collection<Integer> transaction, boolean streaming, boolean filterExistingFrequentItemsOnly) {
+            final double itemCount = decayFactor;
             if (streaming && !filterExistingFrequentItemsOnly) {
                 for (Integer item : transaction) {
-                    frequentItemCounts.compute(item, (k, v) -> v == null ? 1 : v + 1);
+                    frequentItemCounts.compute(item, (k, v) -> v == null ? itemCount : v + itemCount);
                 }
             }
 
@@ -427,25 +465,27 @@ public class StreamingFPGrowth {
             if (!filtered.isEmpty()) {
                 if (streaming && filterExistingFrequentItemsOnly) {
                     for (Integer item : filtered) {
-                        frequentItemCounts.compute(item, (k, v) -> v == null ? 1 : v + 1);
+                        frequentItemCounts.compute(item, (k, v) -> v == null ? itemCount : v + itemCount);
                     }
                 }
 
                 sortTransaction(filtered, streaming);
-                root.insertTransaction(filtered, 0, 1, streaming);
+                root.insertTransaction(filtered, 0, itemCount, streaming);
             }
         }
 
         List<ItemsetWithCount> mineItemsets(Integer supportCountRequired) {
             List<ItemsetWithCount> singlePathItemsets = new ArrayList<>();
             List<ItemsetWithCount> branchingItemsets = new ArrayList<>();
+            // compare against stored counts without rescaling them
+            final double storedSupportRequired = supportCountRequired * decayFactor;
 
             // mine single-path itemsets first
             FPTreeNode curNode = root;
             FPTreeNode nodeOfBranching = null;
             Set<FPTreeNode> singlePathNodes = new HashSet<>();
             while (true) {
-                if (curNode.count < supportCountRequired) {
+                if (curNode.count < storedSupportRequired) {
                     break;
                 }
 
@@ -480,8 +520,8 @@ public class StreamingFPGrowth {
                     }
                 }
 
-                assert (minSupportInSubset >= supportCountRequired);
-                singlePathItemsets.add(new ItemsetWithCount(items, minSupportInSubset));
+                assert (minSupportInSubset >= storedSupportRequired);
+                singlePathItemsets.add(new ItemsetWithCount(items, minSupportInSubset / decayFactor));
             }
 
             // the entire tree was a single path...
@@ -504,20 +544,20 @@ public class StreamingFPGrowth {
 
             for (Map.Entry<Integer, FPTreeNode> header : nodeHeaders.entrySet()) {
                 if (alreadyMinedItems.contains(header.getKey())
-                    || frequentItemCounts.get(header.getKey()) < supportCountRequired) {
+                    || frequentItemCounts.get(header.getKey()) < storedSupportRequired) {
                     continue;
                 }
 
                 // add the singleton item set
                 branchingItemsets.add(new ItemsetWithCount(Sets.newHashSet(header.getKey()),
-                                                           frequentItemCounts.get(header.getKey())));
+                                                           frequentItemCounts.get(header.getKey()) / decayFactor));
 
                 List<ItemsetWithCount> conditionalPatternBase = new ArrayList<>();
 
                 // walk each "leaf" node
                 FPTreeNode conditionalNode = header.getValue();
                 while (conditionalNode != null) {
-                    final double leafSupport = conditionalNode.getCount();
+                    final double leafSupport = conditionalNode.getCount() / decayFactor;
 
                     // walk the tree up to the branch node
                     Set<Integer> conditionalPattern = new HashSet<>();
@@ -708,11 +748,13 @@ public class StreamingFPGrowth {
     public void decayAndResetFrequentItems(Map<Integer, Double> newFrequentItems, double decayRate) {
         Set<Integer> toRemove = Sets.difference(fp.frequentItemOrder.keySet(),
                                                 newFrequentItems.keySet()).immutableCopy();
-        fp.frequentItemCounts = newFrequentItems;
-        fp.updateFrequentItemOrder();
+        // the new counts are decayed along with the tree; they are copied rather than shared
+        // since the inlier and outlier trees are reset from the same map
         if (decayRate > 0) {
-            fp.decayWeights(fp.root, (1 - decayRate));
+            fp.decayWeights(1 - decayRate);
         }
+        fp.resetFrequentItems(newFrequentItems, 1 - decayRate);
+        fp.updateFrequentItemOrder();
         restructureTree(toRemove);
     }
 
@@ -734,7 +776,7 @@ public class StreamingFPGrowth {
         }
 
         Timer.Context context = fpMine.time();
-        List<ItemsetWithCount> itemset = fp.mineItemsets((int) (fp.root.getCount() * support));
+        List<ItemsetWithCount> itemset = fp.mineItemsets((int) (fp.root.getCount() / fp.decayFactor * support));
         context.stop();
 
         return itemset;
@@ -0,0 +1,156 @@
+package macrobase.analysis.transform;
+
+import macrobase.analysis.pipeline.operator.MBOperator;
+import macrobase.analysis.pipeline.stream.MBStream;
+import macrobase.analysis.sample.FlexibleDampedReservoir;
+import macrobase.analysis.stats.BatchTrainScore;
+import macrobase.conf.ConfigurationException;
+import macrobase.conf.MacroBaseConf;
+import macrobase.conf.MacroBaseDefaults;
+import macrobase.datamodel.DatumBatch;
+import macrobase.util.Periodic;
+
+import java.util.List;
+
+/*
+ Columnar version of EWFeatureTransform: each output batch holds the scores of its tuples
+ as its only metric, and shares attribute columns and IDs with the input batch. The
+ reservoir keeps only metric rows, which is all the scorers train on.
+ */
+public class ColumnarEWFeatureTransform extends MBOperator<DatumBatch, DatumBatch> {
+    private static final int[] NO_ATTRIBUTES = new int[0];
+
+    private final FlexibleDampedReservoir<double[]> reservoir;
+    private final BatchTrainScore scorer;
+    private DatumBatch warmupInput;
+    private final int warmupCount;
+    private int tupleCount = 0;
+
+    private final MBStream<DatumBatch> output = new MBStream<>();
+
+    private final Periodic retrainer;
+    private final Periodic decayer;
+
+    public ColumnarEWFeatureTransform(MacroBaseConf conf) throws ConfigurationException {
+        this(conf,
+             conf.getInt(MacroBaseConf.WARMUP_COUNT, MacroBaseDefaults.WARMUP_COUNT),
+             conf.getInt(MacroBaseConf.INPUT_RESERVOIR_SIZE, MacroBaseDefaults.INPUT_RESERVOIR_SIZE),
+             conf.getDecayType(),
+             conf.getDouble(MacroBaseConf.MODEL_UPDATE_PERIOD, MacroBaseDefaults.MODEL_UPDATE_PERIOD),
+             conf.getDouble(MacroBaseConf.DECAY_RATE, MacroBaseDefaults.DECAY_RATE),
+             conf.getDecayType(),
+             conf.getDouble(MacroBaseConf.MODEL_UPDATE_PERIOD, MacroBaseDefaults.MODEL_UPDATE_PERIOD));
+    }
+
+    public ColumnarEWFeatureTransform(MacroBaseConf conf,
+                                      int warmupCount,
+                                      int sampleSize,
+                                      MacroBaseConf.PeriodType decayPeriodType,
+                                      double decayPeriod,
+                                      double decayRate,
+                                      MacroBaseConf.PeriodType trainingPeriodType,
+                                      double trainingPeriod) throws ConfigurationException {
+        scorer = conf.constructTransform();
+
+        reservoir = new FlexibleDampedReservoir<>(sampleSize, decayRate, conf.getRandom());
+
+        decayer = new Periodic(decayPeriodType,
+                               decayPeriod,
+                               reservoir::advancePeriod);
+
+        retrainer = new Periodic(trainingPeriodType,
+                                 trainingPeriod,
+                                 this::train);
+
+        this.warmupCount = warmupCount;
+    }
+
+    private void train() {
+        List<double[]> sample = reservoir.getReservoir();
+        DatumBatch data = new DatumBatch(0, sample.isEmpty() ? 0 : sample.get(0).length, sample.size());
+        for(double[] metrics : sample) {
+            data.add(NO_ATTRIBUTES, metrics);
+        }
+        scorer.train(data);
+    }
+
+    @Override
+    public void initialize() {
+
+    }
+
+    @Override
+    public void consume(List<DatumBatch> records) {
+        for(DatumBatch batch : records) {
+            DatumBatch scored = score(batch);
+            if(scored != null) {
+                output.add(scored);
+            }
+        }
+    }
+
+    private DatumBatch score(DatumBatch batch) {
+        double[] scores = new double[batch.size()];
+        int firstScored = batch.size();
+        DatumBatch ret = null;
+
+        for(int row = 0; row < batch.size(); ++row) {
+            tupleCount ++;
+
+            if(tupleCount < warmupCount) {
+                if(warmupInput == null) {
+                    warmupInput = new DatumBatch(batch.numAttributes(), batch.numMetrics());
+                }
+                warmupInput.add(batch, row);
+                reservoir.insert(batch.getMetrics(row, new double[batch.numMetrics()]));
+                retrainer.runIfNecessary();
+                decayer.runIfNecessary();
+            } else {
+                if(tupleCount == warmupCount) {
+                    train();
+                    ret = new DatumBatch(batch.numAttributes(), 1, tupleCount + batch.size() - row);
+                    if(warmupInput != null) {
+                        for(int i = 0; i < warmupInput.size(); ++i) {
+                            ret.add(warmupInput, i, scorer.score(warmupInput, i));
+                        }
+                        warmupInput = null;
+                    }
+                }
+
+                if(firstScored == batch.size()) {
+                    firstScored = row;
+                }
+
+                retrainer.runIfNecessary();
+                decayer.runIfNecessary();
+                reservoir.insert(batch.getMetrics(row, new double[batch.numMetrics()]));
+                scores[row] = scorer.score(batch, row);
+            }
+        }
+
+        if(firstScored == 0 && ret == null) {
+            return batch.withMetrics(scores);
+        }
+
+        if(ret == null) {
+            if(firstScored == batch.size()) {
+                return null;
+            }
+            ret = new DatumBatch(batch.numAttributes(), 1, batch.size() - firstScored);
+        }
+        for(int row = firstScored; row < batch.size(); ++row) {
+            ret.add(batch, row, scores[row]);
+        }
+        return ret;
+    }
+
+    @Override
+    public void shutdown() {
+
+    }
+
+    @Override
+    public MBStream<DatumBatch> getStream() {
+        return output;
+    }
+}
@@ -4,6 +4,7 @@ import macrobase.analysis.pipeline.stream.MBStream;
 import macrobase.conf.ConfigurationException;
 import macrobase.conf.MacroBaseConf;
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -39,14 +40,29 @@ public class LowMetricTransform extends FeatureTransform {
     public void consume(List<Datum> records) throws Exception {
         for(Datum d : records) {
             for(int idx : toTransform) {
-                double prevVal = d.metrics().getEntry(idx);
-                d.metrics().setEntry(idx, Math.pow(Math.max(prevVal, 0.1), -1));
+                d.metrics().setEntry(idx, transform(d.metrics().getEntry(idx)));
             }
 
             output.add(d);
         }
     }
 
+    /**
+     * Transforms the metric columns of a batch in place.
+     */
+    public void transform(DatumBatch batch) {
+        for(int idx : toTransform) {
+            double[] column = batch.getMetricColumn(idx);
+            for(int row = 0; row < batch.size(); ++row) {
+                column[row] = transform(column[row]);
+            }
+        }
+    }
+
+    private static double transform(double value) {
+        return Math.pow(Math.max(value, 0.1), -1);
+    }
+
     @Override
     public void shutdown() throws Exception {
 
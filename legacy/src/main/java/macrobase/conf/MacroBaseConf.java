@@ -38,6 +38,9 @@ public class MacroBaseConf extends Configuration {
     public static final String MODEL_UPDATE_PERIOD = "macrobase.analysis.streaming.modelUpdatePeriod";
     public static final String OUTLIER_ITEM_SUMMARY_SIZE = "macrobase.analysis.streaming.outlierSummarySize";
     public static final String INLIER_ITEM_SUMMARY_SIZE = "macrobase.analysis.streaming.inlierItemSummarySize";
+    public static final String THREADED_OPERATORS = "macrobase.analysis.streaming.threadedOperators";
+    public static final String OPERATOR_QUEUE_SIZE = "macrobase.analysis.streaming.operatorQueueSize";
+    public static final String COLUMNAR_BATCHES = "macrobase.analysis.streaming.columnarBatches";
 
     public static final String TUPLE_WINDOW = "macrobase.analysis.timeseries.tupleWindow";
     public static final String TIME_WINDOW = "macrobase.analysis.timeseries.timeWindow";
@@ -29,6 +29,9 @@ public class MacroBaseDefaults {
     public static final Double MODEL_UPDATE_PERIOD = 100000.;
     public static final Integer OUTLIER_ITEM_SUMMARY_SIZE = 100000;
     public static final Integer INLIER_ITEM_SUMMARY_SIZE = 100000;
+    public static final Boolean THREADED_OPERATORS = false;
+    public static final Integer OPERATOR_QUEUE_SIZE = 16;
+    public static final Boolean COLUMNAR_BATCHES = false;
     
     // timeseries defaults
     public static final Integer TUPLE_WINDOW = 100;
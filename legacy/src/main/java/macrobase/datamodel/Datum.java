@@ -47,6 +47,21 @@ public class Datum {
         this.attributes = attributes;
         this.metrics = metrics;
     }
+
+    // for DatumBatch, which hands out IDs from blocks reserved with reserveIDs
+    Datum(long id, List<Integer> attributes, RealVector metrics) {
+        this.id = id;
+        this.parentDatumID = null;
+        this.attributes = attributes;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the first of count consecutive unused IDs
+     */
+    static long reserveIDs(int count) {
+        return idGen.getAndAdd(count) + 1;
+    }
     
     public long getTime(Integer timeColumn) {
         return (long) metrics.getEntry(timeColumn);
@@ -0,0 +1,236 @@
+package macrobase.datamodel;
+
+import com.google.common.primitives.Ints;
+import org.apache.commons.math3.linear.ArrayRealVector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column-oriented batch of tuples. Each attribute and each metric is stored as a primitive
+ * array indexed by row, so a tuple costs a few bytes per column instead of a Datum with its
+ * boxed attribute list and metric vector. IDs are drawn from the same sequence as Datum IDs,
+ * in blocks, and are kept when rows are copied or rescored.
+ *
+ * Rows are appended with add(); the column arrays returned by getAttributeColumn and
+ * getMetricColumn may be longer than size().
+ */
+public class DatumBatch {
+    private static final int ID_BLOCK_SIZE = 1024;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[][] attributes;
+    private double[][] metrics;
+    private long[] ids;
+    private int size;
+
+    private long nextID = 0;
+    private long idLimit = 0;
+
+    public DatumBatch(int numAttributes, int numMetrics) {
+        this(numAttributes, numMetrics, DEFAULT_CAPACITY);
+    }
+
+    public DatumBatch(int numAttributes, int numMetrics, int capacity) {
+        capacity = Math.max(capacity, 1);
+        attributes = new int[numAttributes][capacity];
+        metrics = new double[numMetrics][capacity];
+        ids = new long[capacity];
+    }
+
+    private DatumBatch(int[][] attributes, double[][] metrics, long[] ids, int size) {
+        this.attributes = attributes;
+        this.metrics = metrics;
+        this.ids = ids;
+        this.size = size;
+    }
+
+    /**
+     * Copies a list of Datums, which must all have the same dimensions, keeping their IDs.
+     */
+    public static DatumBatch fromData(List<Datum> data) {
+        if (data.isEmpty()) {
+            return new DatumBatch(0, 0);
+        }
+
+        Datum first = data.get(0);
+        DatumBatch batch = new DatumBatch(first.attributes().size(),
+                                          first.metrics().getDimension(),
+                                          data.size());
+        for (Datum d : data) {
+            int row = batch.nextRow(d.getID());
+            for (int i = 0; i < batch.attributes.length; ++i) {
+                batch.attributes[i][row] = d.attributes().get(i);
+            }
+            for (int i = 0; i < batch.metrics.length; ++i) {
+                batch.metrics[i][row] = d.metrics().getEntry(i);
+            }
+        }
+        return batch;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int numAttributes() {
+        return attributes.length;
+    }
+
+    public int numMetrics() {
+        return metrics.length;
+    }
+
+    private int nextRow(long id) {
+        if (size == ids.length) {
+            int capacity = ids.length * 2;
+            for (int i = 0; i < attributes.length; ++i) {
+                attributes[i] = Arrays.copyOf(attributes[i], capacity);
+            }
+            for (int i = 0; i < metrics.length; ++i) {
+                metrics[i] = Arrays.copyOf(metrics[i], capacity);
+            }
+            ids = Arrays.copyOf(ids, capacity);
+        }
+        ids[size] = id;
+        return size++;
+    }
+
+    private long newID() {
+        if (nextID == idLimit) {
+            nextID = Datum.reserveIDs(ID_BLOCK_SIZE);
+            idLimit = nextID + ID_BLOCK_SIZE;
+        }
+        return nextID++;
+    }
+
+    /**
+     * Appends a new tuple with a fresh ID.
+     */
+    public void add(int[] attributeValues, double... metricValues) {
+        int row = nextRow(newID());
+        for (int i = 0; i < attributes.length; ++i) {
+            attributes[i][row] = attributeValues[i];
+        }
+        for (int i = 0; i < metrics.length; ++i) {
+            metrics[i][row] = metricValues[i];
+        }
+    }
+
+    /**
+     * Appends the attributes and ID of a row of another batch with new metric values.
+     */
+    public void add(DatumBatch source, int sourceRow, double... metricValues) {
+        int row = nextRow(source.ids[sourceRow]);
+        for (int i = 0; i < attributes.length; ++i) {
+            attributes[i][row] = source.attributes[i][sourceRow];
+        }
+        for (int i = 0; i < metrics.length; ++i) {
+            metrics[i][row] = metricValues[i];
+        }
+    }
+
+    /**
+     * Appends a copy of a row of another batch.
+     */
+    public void add(DatumBatch source, int sourceRow) {
+        int row = nextRow(source.ids[sourceRow]);
+        for (int i = 0; i < attributes.length; ++i) {
+            attributes[i][row] = source.attributes[i][sourceRow];
+        }
+        for (int i = 0; i < metrics.length; ++i) {
+            metrics[i][row] = source.metrics[i][sourceRow];
+        }
+    }
+
+    public long getID(int row) {
+        return ids[row];
+    }
+
+    public int getAttribute(int row, int column) {
+        return attributes[column][row];
+    }
+
+    public double getMetric(int row, int column) {
+        return metrics[column][row];
+    }
+
+    public void setMetric(int row, int column, double value) {
+        metrics[column][row] = value;
+    }
+
+    public int[] getAttributeColumn(int column) {
+        return attributes[column];
+    }
+
+    public double[] getMetricColumn(int column) {
+        return metrics[column];
+    }
+
+    /**
+     * Copies the attributes of a row into the given array, which is returned.
+     */
+    public int[] getAttributes(int row, int[] into) {
+        for (int i = 0; i < attributes.length; ++i) {
+            into[i] = attributes[i][row];
+        }
+        return into;
+    }
+
+    public double[] getMetrics(int row, double[] into) {
+        for (int i = 0; i < metrics.length; ++i) {
+            into[i] = metrics[i][row];
+        }
+        return into;
+    }
+
+    // same computation as RealVector.getNorm
+    public double norm(int row) {
+        double sum = 0;
+        for (double[] column : metrics) {
+            sum += column[row] * column[row];
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * @return a batch with the same attributes and IDs and the given metric columns, which
+     * must have at least size() entries. The attribute columns are shared, not copied.
+     */
+    public DatumBatch withMetrics(double[]... metricColumns) {
+        return new DatumBatch(attributes, metricColumns, ids, size);
+    }
+
+    /**
+     * @return a copy of rows [from, to)
+     */
+    public DatumBatch slice(int from, int to) {
+        int[][] sliceAttributes = new int[attributes.length][];
+        for (int i = 0; i < attributes.length; ++i) {
+            sliceAttributes[i] = Arrays.copyOfRange(attributes[i], from, to);
+        }
+        double[][] sliceMetrics = new double[metrics.length][];
+        for (int i = 0; i < metrics.length; ++i) {
+            sliceMetrics[i] = Arrays.copyOfRange(metrics[i], from, to);
+        }
+        return new DatumBatch(sliceAttributes, sliceMetrics, Arrays.copyOfRange(ids, from, to), to - from);
+    }
+
+    /**
+     * Materializes a row as a Datum with the row's ID, for code that has no columnar path.
+     */
+    public Datum getDatum(int row) {
+        return new Datum(ids[row],
+                         new ArrayList<>(Ints.asList(getAttributes(row, new int[attributes.length]))),
+                         new ArrayRealVector(getMetrics(row, new double[metrics.length]), false));
+    }
+
+    public List<Datum> toData() {
+        List<Datum> ret = new ArrayList<>(size);
+        for (int row = 0; row < size; ++row) {
+            ret.add(getDatum(row));
+        }
+        return ret;
+    }
+}
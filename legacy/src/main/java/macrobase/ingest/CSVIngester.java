@@ -5,6 +5,7 @@ import macrobase.analysis.pipeline.stream.MBStream;
 import macrobase.conf.ConfigurationException;
 import macrobase.conf.MacroBaseConf;
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 import macrobase.ingest.result.ColumnValue;
 import macrobase.ingest.result.RowSet;
 import org.apache.commons.csv.CSVFormat;
@@ -66,28 +67,69 @@ public class CSVIngester extends DataIngester {
         );
     }
 
+    // parses into the given arrays; on malformed metrics, leaves them partly filled and throws
+    private void parseRecord(CSVRecord record, int[] attrRow, double[] metricRow) throws NumberFormatException {
+        for (int i = 0; i < metrics.size(); ++i) {
+            metricRow[i] = Double.parseDouble(record.get(metrics.get(i)));
+        }
+
+        for (int i = 0; i < attributes.size(); ++i) {
+            int pos = schema.get(attributes.get(i));
+            attrRow[i] = conf.getEncoder().getIntegerEncoding(pos + 1, record.get(pos));
+        }
+    }
+
+    private void openParser() throws Exception {
+        filename = conf.getString(MacroBaseConf.CSV_INPUT_FILE);
+        Compression compression = conf.getCsvCompression();
+
+        if (compression == Compression.GZIP) {
+            InputStream fileStream = new FileInputStream(filename);
+            InputStream gzipStream = new GZIPInputStream(fileStream);
+            Reader decoder = new InputStreamReader(gzipStream);
+            csvParser = new CSVParser(decoder, CSVFormat.DEFAULT.withHeader());
+        } else {
+            File csvFile = new File(conf.getString(MacroBaseConf.CSV_INPUT_FILE));
+            csvParser = CSVParser.parse(csvFile, Charset.defaultCharset(), CSVFormat.DEFAULT.withHeader());
+        }
+        schema = csvParser.getHeaderMap(); //equal to resultSet.getmetadata or smt
+
+        for (Map.Entry<String, Integer> se : schema.entrySet()) {
+            conf.getEncoder().recordAttributeName(se.getValue() + 1, se.getKey()); //numbering off each column for encoding
+        }
+    }
+
+    @Override
+    public DatumBatch getBatch() throws Exception {
+        openParser();
+
+        DatumBatch batch = new DatumBatch(attributes.size(), metrics.size());
+        int[] attrRow = new int[attributes.size()];
+        double[] metricRow = new double[metrics.size()];
+
+        int numRows = 0;
+        int numBadRows = 0;
+        for (CSVRecord record : csvParser) {
+            try {
+                parseRecord(record, attrRow, metricRow);
+                batch.add(attrRow, metricRow);
+                numRows++;
+            } catch (NumberFormatException e) {
+                numBadRows++;
+            }
+        }
+        badRows += numBadRows;
+        log.info("{}/{} rows successfully parsed ({} malformed rows)", numRows, numRows + numBadRows, numBadRows);
+
+        return batch;
+    }
+
     @Override
     public MBStream<Datum> getStream() throws Exception {
         if(!loaded) {
             long st = System.currentTimeMillis();
 
-            filename = conf.getString(MacroBaseConf.CSV_INPUT_FILE);
-            Compression compression = conf.getCsvCompression();
-
-            if (compression == Compression.GZIP) {
-                InputStream fileStream = new FileInputStream(filename);
-                InputStream gzipStream = new GZIPInputStream(fileStream);
-                Reader decoder = new InputStreamReader(gzipStream);
-                csvParser = new CSVParser(decoder, CSVFormat.DEFAULT.withHeader());
-            } else {
-                File csvFile = new File(conf.getString(MacroBaseConf.CSV_INPUT_FILE));
-                csvParser = CSVParser.parse(csvFile, Charset.defaultCharset(), CSVFormat.DEFAULT.withHeader());
-            }
-            schema = csvParser.getHeaderMap(); //equal to resultSet.getmetadata or smt
-
-            for (Map.Entry<String, Integer> se : schema.entrySet()) {
-                conf.getEncoder().recordAttributeName(se.getValue() + 1, se.getKey()); //numbering off each column for encoding
-            }
+            openParser();
 
             // Load all records into memory to filter out rows with missing data
             Iterator<CSVRecord> rawIterator = csvParser.iterator();
@@ -5,6 +5,7 @@ import macrobase.conf.ConfigurationException;
 import macrobase.conf.MacroBaseConf;
 import macrobase.conf.MacroBaseDefaults;
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 import macrobase.ingest.result.RowSet;
 
 import java.util.List;
@@ -24,6 +25,14 @@ public abstract class DataIngester implements MBProducer<Datum> {
         metrics = conf.getStringList(MacroBaseConf.METRICS);
     }
 
+    /**
+     * Loads the input as a single columnar batch. Ingesters that can fill columns directly
+     * should override this; by default the Datums from getStream() are copied.
+     */
+    public DatumBatch getBatch() throws Exception {
+        return DatumBatch.fromData(getStream().drain());
+    }
+
     //Meant to be overridden. Hack for CSV plot/explore fix
     public RowSet getRows(String baseQuery,
                           Map<String, String> preds,
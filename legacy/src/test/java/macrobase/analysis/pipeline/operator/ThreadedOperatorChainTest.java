@@ -0,0 +1,103 @@
+package macrobase.analysis.pipeline.operator;
+
+import macrobase.analysis.pipeline.stream.MBStream;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ThreadedOperatorChainTest {
+    private static class AddOperator extends MBOperator<Integer, Integer> {
+        private final MBStream<Integer> output = new MBStream<>();
+        private final int add;
+        private final int failAt;
+        private boolean shutdown = false;
+
+        AddOperator(int add) {
+            this(add, -1);
+        }
+
+        AddOperator(int add, int failAt) {
+            this.add = add;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public void initialize() throws Exception {
+
+        }
+
+        @Override
+        public void consume(List<Integer> records) throws Exception {
+            List<Integer> ret = new ArrayList<>();
+            for (Integer i : records) {
+                if (i == failAt) {
+                    throw new IllegalArgumentException("failing at " + i);
+                }
+                ret.add(i + add);
+            }
+            output.add(ret);
+        }
+
+        @Override
+        public void shutdown() throws Exception {
+            shutdown = true;
+        }
+
+        @Override
+        public MBStream<Integer> getStream() throws Exception {
+            return output;
+        }
+    }
+
+    private static List<Integer> range(int start, int end) {
+        List<Integer> ret = new ArrayList<>();
+        for (int i = start; i < end; ++i) {
+            ret.add(i);
+        }
+        return ret;
+    }
+
+    @Test
+    public void testMatchesSynchronousChain() throws Exception {
+        MBOperator<Integer, Integer> sync = new AddOperator(1)
+                .then(new AddOperator(10), 7)
+                .then(new AddOperator(100), 3);
+
+        AddOperator last = new AddOperator(100);
+        MBOperator<Integer, Integer> threaded = ThreadedOperatorChain.of(new AddOperator(1), 2)
+                .then(new AddOperator(10), 7)
+                .then(last, 3);
+
+        threaded.initialize();
+        for (int i = 0; i < 1000; i += 10) {
+            sync.consume(range(i, i + 10));
+            threaded.consume(range(i, i + 10));
+        }
+        threaded.shutdown();
+
+        assertTrue(last.shutdown);
+        assertEquals(sync.getStream().drain(), threaded.getStream().drain());
+    }
+
+    @Test
+    public void testFailurePropagates() throws Exception {
+        MBOperator<Integer, Integer> threaded = ThreadedOperatorChain.of(new AddOperator(1), 2)
+                .then(new AddOperator(10, 500), 10);
+
+        threaded.initialize();
+        boolean failed = false;
+        try {
+            for (int i = 0; i < 10000; i += 10) {
+                threaded.consume(range(i, i + 10));
+            }
+            threaded.shutdown();
+        } catch (Exception e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+            failed = true;
+        }
+        assertTrue(failed);
+    }
+}
@@ -2,6 +2,7 @@ package macrobase.analysis.stats;
 
 import macrobase.conf.MacroBaseConf;
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.junit.Test;
@@ -78,4 +79,22 @@ public class MADTest {
                      m.getZScoreEquivalent(m.score(data.get(data.size() - 1))),
                      1e-1);
     }
+
+    @Test
+    public void columnarTest() {
+        MAD rowMAD = new MAD(new MacroBaseConf());
+        MAD columnarMAD = new MAD(new MacroBaseConf());
+
+        List<Datum> data = new ArrayList<>();
+        for (int i = 0; i < 101; ++i) {
+            data.add(new Datum(new ArrayList<>(), new ArrayRealVector(new double[]{i * i % 37})));
+        }
+        DatumBatch batch = DatumBatch.fromData(data);
+
+        rowMAD.train(data);
+        columnarMAD.train(batch);
+        for (int i = 0; i < data.size(); ++i) {
+            assertEquals(rowMAD.score(data.get(i)), columnarMAD.score(batch, i), 0);
+        }
+    }
 }
@@ -84,4 +84,33 @@ public class AmortizedMaintenanceCounterTest {
         int key = cnts.keySet().iterator().next();
         assertEquals(cnts.get(key), ss.getCount(key), 1e-10);
     }
+
+    @Test
+    public void evictionTest() {
+        AmortizedMaintenanceCounter ss = new AmortizedMaintenanceCounter(5);
+
+        // item i is seen i times; items 0-4 tie at one observation
+        for (int i = 0; i < 5; ++i) {
+            ss.observe(i);
+        }
+        for (int i = 5; i < 15; ++i) {
+            for (int j = 0; j < i; ++j) {
+                ss.observe(i);
+            }
+        }
+
+        ss.multiplyAllCounts(1.);
+
+        Map<Integer, Double> cnts = ss.getCounts();
+        assertEquals(5, cnts.size());
+        for (int i = 10; i < 15; ++i) {
+            assertEquals(i, cnts.get(i), 0);
+        }
+
+        // evicted items are estimated by the largest evicted count
+        assertEquals(9, ss.getCount(9), 0);
+        assertEquals(9, ss.getCount(100), 0);
+        ss.observe(100);
+        assertEquals(10, ss.getCount(100), 0);
+    }
 }
@@ -0,0 +1,39 @@
+package macrobase.analysis.summary.count;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class IntIntHashMapTest {
+    @Test
+    public void randomOpsTest() {
+        IntIntHashMap map = new IntIntHashMap(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random r = new Random(0);
+
+        for (int i = 0; i < 100000; ++i) {
+            // small key range so that removals often fall inside probe runs
+            int key = r.nextInt(500) - 250;
+            if (r.nextDouble() < .4) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            } else {
+                map.put(key, i);
+                expected.put(key, i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (int key = -250; key < 250; ++key) {
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            assertEquals((int) expected.getOrDefault(key, -1), map.get(key, -1));
+        }
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.get(0, -1));
+    }
+}
@@ -12,6 +12,7 @@ import java.util.Map;
 import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class SpaceSavingTest {
 
@@ -81,4 +82,33 @@ public class SpaceSavingTest {
 
         ss.debugPrint();
     }
+
+    @Test
+    public void invariantTest() {
+        final int CAPACITY = 50;
+        SpaceSavingList ss = new SpaceSavingList(CAPACITY);
+
+        Random r = new Random(0);
+        Map<Integer, Double> trueCnt = new HashMap<>();
+
+        for (int i = 0; i < 100000; ++i) {
+            int item = r.nextDouble() < .5 ? r.nextInt(10) : r.nextInt(1000);
+            double cnt = r.nextDouble() < .8 ? 1 : r.nextInt(5) + .5;
+            ss.observe(item, cnt);
+            trueCnt.compute(item, (k, v) -> v == null ? cnt : v + cnt);
+
+            if (i % 1000 == 0) {
+                // a counter only ever inherits counts, so they sum to the total
+                Map<Integer, Double> cnts = ss.getCounts();
+                assertEquals(Math.min(trueCnt.size(), CAPACITY), cnts.size());
+                assertEquals(ss.getTotalCount(),
+                             cnts.values().stream().mapToDouble(Double::doubleValue).sum(),
+                             1e-6);
+                for (Map.Entry<Integer, Double> e : cnts.entrySet()) {
+                    assertTrue(e.getValue() >= trueCnt.get(e.getKey()));
+                    assertEquals(e.getValue(), ss.getCount(e.getKey()), 0);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package macrobase.analysis.summary.count;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class StripedApproximateCountTest {
+    @Test
+    public void concurrentTest() throws Exception {
+        final int THREADS = 4;
+        final int N = 10000;
+        final int ITEMS = 50;
+
+        StripedApproximateCount counter = new StripedApproximateCount(
+                THREADS, () -> new AmortizedMaintenanceCounter(ITEMS));
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; ++t) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < N; ++i) {
+                    counter.observe(i % ITEMS);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        // nothing was evicted, so the merged counts are exact
+        assertEquals(THREADS * N, counter.getTotalCount(), 0);
+        Map<Integer, Double> counts = counter.getCounts();
+        assertEquals(ITEMS, counts.size());
+        for (int item = 0; item < ITEMS; ++item) {
+            assertEquals(THREADS * N / ITEMS, counts.get(item), 0);
+            assertEquals(THREADS * N / ITEMS, counter.getCount(item), 0);
+        }
+
+        counter.multiplyAllCounts(.5);
+        assertEquals(THREADS * N / 2, counter.getTotalCount(), 1e-9);
+        assertEquals(THREADS * N / ITEMS / 2, counter.getCount(0), 1e-9);
+    }
+}
@@ -0,0 +1,155 @@
+package macrobase.analysis.summary.itemset;
+
+import macrobase.analysis.summary.itemset.result.ItemsetWithCount;
+import macrobase.datamodel.Datum;
+
+import java.util.*;
+
+/**
+ * Compare the array-based FPGrowth in macrobase-lib with the object-per-node FPGrowth it
+ * replaced, which is the one still used here, on mining time, counting time and the heap
+ * retained by a constructed tree. Heap numbers are measured from Runtime after forcing
+ * garbage collection with and without the tree, so run with a fixed heap and the serial collector
+ * (e.g. -Xms4g -Xmx4g -XX:+UseSerialGC) for stable results.
+ */
+public class FPGrowthBenchmark {
+    // a static field keeps a tree reachable while the heap is measured
+    private static Object retained;
+
+    // constructTree is protected, so the array tree is built through a subclass
+    private static class ArrayFPGrowth
+            extends edu.stanford.futuredata.macrobase.analysis.summary.itemset.FPGrowth {
+        Object buildTree(List<Set<Integer>> transactions, int supportCount) {
+            return constructTree(transactions, supportCount);
+        }
+    }
+
+    private static List<Set<Integer>> generate(Random r, int n, int d, int C) {
+        List<Set<Integer>> txns = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Set<Integer> txn = new HashSet<>();
+            for (int j = 0; j < d; j++) {
+                // skewed values so that longer itemsets are frequent
+                txn.add(j * C + Math.min(r.nextInt(C), r.nextInt(C)));
+            }
+            txns.add(txn);
+        }
+        return txns;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Map<Set<Integer>, Double> toMap(List<ItemsetWithCount> itemsets) {
+        Map<Set<Integer>, Double> counts = new HashMap<>();
+        for (ItemsetWithCount i : itemsets) {
+            counts.put(i.getItems(), i.getCount());
+        }
+        return counts;
+    }
+
+    private static Map<Set<Integer>, Double> toArrayMap(
+            List<edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetWithCount> itemsets
+    ) {
+        Map<Set<Integer>, Double> counts = new HashMap<>();
+        for (edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetWithCount i : itemsets) {
+            counts.put(i.getItems(), i.getCount());
+        }
+        return counts;
+    }
+
+    public static void benchmark(int n, int d, int C, double support, int numTrials) {
+        List<Set<Integer>> txns = generate(new Random(0), n, d, C);
+        double supportCount = support * n;
+
+        // retained size of a tree is the heap freed by dropping it after it was built
+        retained = new FPGrowth().constructTree(txns, (int) supportCount);
+        long withTree = usedHeap();
+        retained = null;
+        long legacyHeap = withTree - usedHeap();
+
+        retained = new ArrayFPGrowth().buildTree(txns, (int) supportCount);
+        withTree = usedHeap();
+        retained = null;
+        long arrayHeap = withTree - usedHeap();
+
+        long legacyTime = Long.MAX_VALUE;
+        long arrayTime = Long.MAX_VALUE;
+        long parallelTime = Long.MAX_VALUE;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        List<ItemsetWithCount> legacyResult = null;
+        List<edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetWithCount> arrayResult = null;
+        for (int t = 0; t < numTrials; t++) {
+            long start = System.nanoTime();
+            legacyResult = new FPGrowth().getItemsetsWithSupportCount(txns, supportCount);
+            legacyTime = Math.min(legacyTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            arrayResult = new ArrayFPGrowth().getItemsetsWithSupportCount(txns, supportCount);
+            arrayTime = Math.min(arrayTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            List<edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetWithCount> parallelResult =
+                    new ArrayFPGrowth().setNumThreads(numThreads).getItemsetsWithSupportCount(txns, supportCount);
+            parallelTime = Math.min(parallelTime, System.nanoTime() - start);
+            if (!toArrayMap(parallelResult).equals(toArrayMap(arrayResult))) {
+                throw new RuntimeException("Mismatched parallel itemsets");
+            }
+        }
+        Map<Set<Integer>, Double> legacyItemsets = toMap(legacyResult);
+        if (!legacyItemsets.equals(toArrayMap(arrayResult))) {
+            throw new RuntimeException("Mismatched itemsets");
+        }
+
+        // count the mined itemsets against the same transactions, as FPGrowthEmerging does for
+        // inliers; the old implementation takes Datums, which are built outside the timing
+        Map<Integer, Double> itemCounts = new HashMap<>();
+        List<Datum> datums = new ArrayList<>(txns.size());
+        for (Set<Integer> txn : txns) {
+            for (int i : txn) {
+                itemCounts.merge(i, 1.0, Double::sum);
+            }
+            datums.add(new Datum(new ArrayList<>(txn)));
+        }
+        long legacyCountTime = Long.MAX_VALUE;
+        long arrayCountTime = Long.MAX_VALUE;
+        for (int t = 0; t < numTrials; t++) {
+            long start = System.nanoTime();
+            List<ItemsetWithCount> legacyCounts = new FPGrowth().getCounts(
+                    datums, itemCounts, itemCounts.keySet(), legacyResult);
+            legacyCountTime = Math.min(legacyCountTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            List<edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetWithCount> arrayCounts =
+                    new ArrayFPGrowth().getCounts(txns, itemCounts, itemCounts.keySet(), arrayResult);
+            arrayCountTime = Math.min(arrayCountTime, System.nanoTime() - start);
+            if (!toMap(legacyCounts).equals(toArrayMap(arrayCounts))) {
+                throw new RuntimeException("Mismatched counts");
+            }
+        }
+
+        System.out.format("n=%d d=%d C=%d: %d itemsets\n", n, d, C, arrayResult.size());
+        System.out.format("  mine:      legacy %.1f ms, array %.1f ms, %.2fx\n",
+                legacyTime / 1e6, arrayTime / 1e6, legacyTime * 1.0 / arrayTime);
+        System.out.format("  mine with %d threads: array %.1f ms, %.2fx over legacy\n",
+                numThreads, parallelTime / 1e6, legacyTime * 1.0 / parallelTime);
+        System.out.format("  count:     legacy %.1f ms, array %.1f ms, %.2fx\n",
+                legacyCountTime / 1e6, arrayCountTime / 1e6, legacyCountTime * 1.0 / arrayCountTime);
+        System.out.format("  tree heap: legacy %.1f MB, array %.1f MB\n",
+                legacyHeap / 1e6, arrayHeap / 1e6);
+    }
+
+    public static void main(String[] args) {
+        // Increase these numbers for more rigorous, slower performance testing
+        int numTrials = 3;
+        benchmark(100000, 6, 5, 0.01, numTrials);
+        benchmark(1000000, 8, 4, 0.05, numTrials);
+        // wide, high-cardinality transactions give trees with millions of nodes
+        benchmark(1000000, 10, 10, 0.05, numTrials);
+    }
+}
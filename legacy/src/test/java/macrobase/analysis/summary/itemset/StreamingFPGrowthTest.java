@@ -172,4 +172,34 @@ public class StreamingFPGrowthTest {
             }
         }
     }
+
+    @Test
+    public void testDecay() {
+        StreamingFPGrowth fp = new StreamingFPGrowth(0);
+        Map<Integer, Double> frequentItems = new HashMap<>();
+        frequentItems.put((int) 'a', 1.0);
+        frequentItems.put((int) 'b', 1.0);
+
+        // enough periods for the lazy decay factor to be reset along the way
+        double expected = 0;
+        for (int i = 0; i < 500; ++i) {
+            fp.insertTransactionStreamingExact(intIfy("a, b"));
+            fp.decayAndResetFrequentItems(frequentItems, .5);
+            expected = (expected + 1) * .5;
+
+            if (i % 100 == 0) {
+                List<ItemsetWithCount> itemsets = fp.getItemsets();
+                assertEquals(3, itemsets.size());
+                for (ItemsetWithCount itemset : itemsets) {
+                    assertEquals(expected, itemset.getCount(), 1e-9);
+                }
+            }
+        }
+
+        List<ItemsetWithCount> itemsets = fp.getItemsets();
+        assertEquals(3, itemsets.size());
+        for (ItemsetWithCount itemset : itemsets) {
+            assertEquals(expected, itemset.getCount(), 1e-9);
+        }
+    }
 }
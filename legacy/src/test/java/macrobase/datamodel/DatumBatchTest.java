@@ -0,0 +1,78 @@
+package macrobase.datamodel;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class DatumBatchTest {
+    @Test
+    public void testAddAndGrow() {
+        DatumBatch batch = new DatumBatch(2, 1, 1);
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 3000; ++i) {
+            batch.add(new int[]{i, -i}, i * .5);
+            ids.add(batch.getID(i));
+        }
+
+        assertEquals(3000, batch.size());
+        assertEquals(3000, ids.size());
+        assertEquals(1234, batch.getAttribute(1234, 0));
+        assertEquals(-1234, batch.getAttribute(1234, 1));
+        assertEquals(617, batch.getMetric(1234, 0), 0);
+
+        // IDs come from the same sequence as Datum IDs
+        assertFalse(ids.contains(new Datum().getID()));
+    }
+
+    @Test
+    public void testDatumRoundTrip() {
+        List<Datum> data = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            data.add(new Datum(Lists.newArrayList(i, i + 1, i + 2), i, -i));
+        }
+
+        DatumBatch batch = DatumBatch.fromData(data);
+        assertEquals(3, batch.numAttributes());
+        assertEquals(2, batch.numMetrics());
+
+        List<Datum> copied = batch.toData();
+        for (int i = 0; i < data.size(); ++i) {
+            assertEquals(data.get(i).getID(), copied.get(i).getID());
+            assertEquals(data.get(i).attributes(), copied.get(i).attributes());
+            assertEquals(data.get(i).metrics(), copied.get(i).metrics());
+            assertEquals(data.get(i).norm(), batch.norm(i), 0);
+        }
+    }
+
+    @Test
+    public void testSliceAndRescore() {
+        DatumBatch batch = new DatumBatch(1, 2);
+        for (int i = 0; i < 10; ++i) {
+            batch.add(new int[]{i}, i, i);
+        }
+
+        DatumBatch slice = batch.slice(3, 7);
+        assertEquals(4, slice.size());
+        assertEquals(3, slice.getAttribute(0, 0));
+        assertEquals(batch.getID(6), slice.getID(3));
+
+        DatumBatch scored = slice.withMetrics(new double[]{1, 2, 3, 4});
+        assertEquals(1, scored.numMetrics());
+        assertEquals(4, scored.getMetric(3, 0), 0);
+        assertEquals(slice.getID(3), scored.getID(3));
+        assertEquals(6, scored.getAttribute(3, 0));
+
+        DatumBatch copy = new DatumBatch(1, 1);
+        copy.add(scored, 2);
+        copy.add(slice, 1, 10.);
+        assertEquals(3, copy.getMetric(0, 0), 0);
+        assertEquals(10, copy.getMetric(1, 0), 0);
+        assertEquals(slice.getID(1), copy.getID(1));
+    }
+}
@@ -2,6 +2,7 @@ package macrobase.ingest;
 
 import macrobase.conf.MacroBaseConf;
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 
 import com.google.common.collect.Lists;
 import macrobase.ingest.result.RowSet;
@@ -60,6 +61,24 @@ public class CSVIngesterTest {
     }
 
 
+    @Test
+    public void testBatch() throws Exception {
+        MacroBaseConf conf = new MacroBaseConf();
+        conf.set(MacroBaseConf.CSV_INPUT_FILE, "src/test/resources/data/missingdata.csv");
+        conf.set(MacroBaseConf.ATTRIBUTES, Lists.newArrayList("a1"));
+        conf.set(MacroBaseConf.METRICS, Lists.newArrayList("m1","m2"));
+
+        List<Datum> data = new CSVIngester(conf).getStream().drain();
+        DatumBatch batch = new CSVIngester(conf).getBatch();
+
+        assertEquals(data.size(), batch.size());
+        for (int i = 0; i < data.size(); ++i) {
+            assertEquals(data.get(i).attributes().get(0).intValue(), batch.getAttribute(i, 0));
+            assertEquals(data.get(i).metrics().getEntry(0), batch.getMetric(i, 0), 0);
+            assertEquals(data.get(i).metrics().getEntry(1), batch.getMetric(i, 1), 0);
+        }
+    }
+
     @Test
     public void testGetRows() throws Exception {
         MacroBaseConf conf = new MacroBaseConf();
@@ -4,6 +4,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import macrobase.analysis.pipeline.BasicOneShotEWStreamingPipeline;
 import macrobase.analysis.result.AnalysisResult;
+import macrobase.analysis.summary.itemset.result.ItemsetResult;
 import macrobase.conf.MacroBaseConf;
 import macrobase.ingest.CSVIngester;
 import macrobase.ingest.result.ColumnValue;
@@ -64,6 +65,74 @@ public class BasicOneShotEWStreamingPipelineTest {
         assertEquals("0", ar.getItemSets().get(0).getItems().get(0).getValue());
     }
 
+    private static MacroBaseConf getMADConf() {
+        return new MacroBaseConf()
+                .set(MacroBaseConf.TARGET_PERCENTILE, 0.99) // analysis
+                .set(MacroBaseConf.USE_PERCENTILE, true)
+                .set(MacroBaseConf.MIN_OI_RATIO, 1)
+                .set(MacroBaseConf.MIN_SUPPORT, .02)
+                .set(MacroBaseConf.RANDOM_SEED, 0)
+                .set(MacroBaseConf.DECAY_RATE, .01) // streaming
+                .set(MacroBaseConf.WARMUP_COUNT, 10)
+                .set(MacroBaseConf.DECAY_TYPE, MacroBaseConf.PeriodType.TUPLE_BASED)
+                .set(MacroBaseConf.MODEL_UPDATE_PERIOD, 50)
+                .set(MacroBaseConf.SUMMARY_UPDATE_PERIOD, 50)
+                .set(MacroBaseConf.INPUT_RESERVOIR_SIZE, 10)
+                .set(MacroBaseConf.SCORE_RESERVOIR_SIZE, 10)
+                .set(MacroBaseConf.INLIER_ITEM_SUMMARY_SIZE, 1000)
+                .set(MacroBaseConf.OUTLIER_ITEM_SUMMARY_SIZE, 1000)
+                .set(MacroBaseConf.TUPLE_BATCH_SIZE, 20)
+                .set(MacroBaseConf.ATTRIBUTES, Lists.newArrayList("A1", "A2", "A3", "A4")) // loader
+                .set(MacroBaseConf.METRICS, Lists.newArrayList("A5"))
+                .set(MacroBaseConf.LOW_METRIC_TRANSFORM, Lists.newArrayList("A5"))
+                .set(MacroBaseConf.DATA_LOADER_TYPE, MacroBaseConf.DataIngesterType.CSV_LOADER)
+                .set(MacroBaseConf.CSV_INPUT_FILE, "src/test/resources/data/simple.csv");
+    }
+
+    private static AnalysisResult run(MacroBaseConf conf) throws Exception {
+        BasicOneShotEWStreamingPipeline sa = new BasicOneShotEWStreamingPipeline();
+        sa.initialize(conf);
+        return sa.run().get(0);
+    }
+
+    private static void assertSameResult(AnalysisResult expected, AnalysisResult ar) {
+        assertEquals(expected.getNumOutliers(), ar.getNumOutliers(), 0);
+        assertEquals(expected.getNumInliers(), ar.getNumInliers(), 0);
+        assertEquals(expected.getItemSets().size(), ar.getItemSets().size());
+        for (int i = 0; i < ar.getItemSets().size(); ++i) {
+            ItemsetResult e = expected.getItemSets().get(i);
+            ItemsetResult r = ar.getItemSets().get(i);
+            assertEquals(e.getSupport(), r.getSupport(), 0);
+            assertEquals(e.getItems().size(), r.getItems().size());
+            for (int j = 0; j < r.getItems().size(); ++j) {
+                assertEquals(e.getItems().get(j).getColumn(), r.getItems().get(j).getColumn());
+                assertEquals(e.getItems().get(j).getValue(), r.getItems().get(j).getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testThreadedOperators() throws Exception {
+        MacroBaseConf conf = getMADConf();
+        conf.loadSystemProperties();
+        AnalysisResult expected = run(conf);
+
+        conf.set(MacroBaseConf.THREADED_OPERATORS, true)
+            .set(MacroBaseConf.OPERATOR_QUEUE_SIZE, 2);
+        AnalysisResult ar = run(conf);
+        assertSameResult(expected, ar);
+    }
+
+    @Test
+    public void testColumnarBatches() throws Exception {
+        AnalysisResult expected = run(getMADConf());
+
+        assertSameResult(expected, run(getMADConf().set(MacroBaseConf.COLUMNAR_BATCHES, true)));
+        assertSameResult(expected, run(getMADConf()
+                                               .set(MacroBaseConf.COLUMNAR_BATCHES, true)
+                                               .set(MacroBaseConf.THREADED_OPERATORS, true)));
+    }
+
     @Test
     public void testMCDAnalyzer() throws Exception {
         MacroBaseConf conf = new MacroBaseConf()
@@ -104,6 +173,9 @@ public class BasicOneShotEWStreamingPipelineTest {
 
         assertEquals(BasePipelineTest.countLines("src/test/resources/data/simple.csv"),
                      ar.getNumInliers()+ar.getNumOutliers(), 0);
+
+        // MCD has no columnar path, so this also covers the Datum adapters
+        assertSameResult(ar, run(conf.set(MacroBaseConf.COLUMNAR_BATCHES, true)));
     }
 
     @Test
@@ -153,6 +225,8 @@ public class BasicOneShotEWStreamingPipelineTest {
 
         assertEquals(0, toFindColumn.size());
         assertEquals(0, toFindValue.size());
+
+        assertSameResult(ar, run(conf.set(MacroBaseConf.COLUMNAR_BATCHES, true)));
     }
 
     @Test
@@ -18,6 +18,9 @@ public class ArithmeticClassifier extends CubeClassifier implements ThresholdCla
     private double percentile = 1.0;
     private boolean includeHigh = true;
     private boolean includeLow = true;
+    private int numThreads = 1;
+    private boolean useSketch = false;
+    private int sketchSize = 1024;
 
     // Calculated values
     private double lowCutoff;
@@ -38,13 +41,21 @@ public class ArithmeticClassifier extends CubeClassifier implements ThresholdCla
         double[] stds = input.getDoubleColumnByName(stdColumnName);
         int len = means.length;
 
-        WeightedPercentile wp = new WeightedPercentile(counts, means);
-        lowCutoff = wp.evaluate(percentile);
-        highCutoff = wp.evaluate(100.0 - percentile);
+        double[] percentiles = {percentile, 100.0 - percentile};
+        double[] cutoffs;
+        if (useSketch) {
+            cutoffs = WeightedPercentile.approximate(counts, means, percentiles, sketchSize);
+        } else {
+            cutoffs = new WeightedPercentile(counts, means, numThreads).evaluate(percentiles);
+        }
+        lowCutoff = cutoffs[0];
+        highCutoff = cutoffs[1];
 
         output = input.copy();
         double[] resultColumn = new double[len];
         NormalDist dist = new NormalDist();
+        double[] highCdfs = includeHigh ? dist.cdf(means, stds, highCutoff, new double[len]) : null;
+        double[] lowCdfs = includeLow ? dist.cdf(means, stds, lowCutoff, new double[len]) : null;
         for (int i = 0; i < len; i++) {
             double mean = means[i];
             double std = stds[i];
@@ -58,12 +69,10 @@ public class ArithmeticClassifier extends CubeClassifier implements ThresholdCla
                 }
             } else {
                 if (includeHigh) {
-                    double percentile = dist.cdf(mean, std, highCutoff);
-                    numOutliers += count * (1.0 - percentile);
+                    numOutliers += count * (1.0 - highCdfs[i]);
                 }
                 if (includeLow) {
-                    double percentile = dist.cdf(mean, std, lowCutoff);
-                    numOutliers += count * percentile;
+                    numOutliers += count * lowCdfs[i];
                 }
             }
             resultColumn[i] = numOutliers;
@@ -143,6 +152,46 @@ public class ArithmeticClassifier extends CubeClassifier implements ThresholdCla
         return this;
     }
 
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads Number of threads to sort group means with when computing exact cutoffs
+     * @return this
+     */
+    public ArithmeticClassifier setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    public boolean isUseSketch() {
+        return useSketch;
+    }
+
+    /**
+     * @param useSketch Whether to estimate cutoffs with a quantile sketch instead of exactly,
+     *                  for cubes too large to sort
+     * @return this
+     */
+    public ArithmeticClassifier setUseSketch(boolean useSketch) {
+        this.useSketch = useSketch;
+        return this;
+    }
+
+    public int getSketchSize() {
+        return sketchSize;
+    }
+
+    /**
+     * @param sketchSize Accuracy parameter of the sketch: rank error shrinks roughly as 1 / sketchSize
+     * @return this
+     */
+    public ArithmeticClassifier setSketchSize(int sketchSize) {
+        this.sketchSize = sketchSize;
+        return this;
+    }
+
     public double getLowCutoff() {
         return lowCutoff;
     }
@@ -1,23 +1,52 @@
 package edu.stanford.futuredata.macrobase.analysis.classify;
 
+import edu.stanford.futuredata.macrobase.analysis.classify.stats.QuantileSketch;
 import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import edu.stanford.futuredata.macrobase.util.ForkJoinPools;
+import edu.stanford.futuredata.macrobase.util.MacrobaseInternalError;
 import org.apache.commons.math3.stat.descriptive.rank.Percentile;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 /**
  * Classify rows based on high / low values for a single column.
  * Returns a new dataframe with a column representation the classification status for
  * each row: 1.0 if outlier, 0.0 otherwise.
+ *
+ * Cutoffs are exact by default. With setUseSketch they are estimated from a QuantileSketch
+ * built in one pass over the column, which avoids copying and sorting it. The column is
+ * sketched in fixed blocks of rows whose sketches are merged in order, so blocks can be
+ * sketched in parallel and the cutoffs do not depend on the number of threads.
+ *
+ * Input that arrives in chunks can be passed to addChunk as each chunk arrives and classified
+ * with classifyChunks once the last one is in. In sketch mode each chunk goes into the sketch
+ * when it is added, so only the final labelling pass is left.
  */
 public class PercentileClassifier extends Classifier implements ThresholdClassifier {
+    private static final int SKETCH_BLOCK_ROWS = 1 << 16;
+
     // Parameters
     private double percentile = 0.5;
     private boolean includeHigh = true;
     private boolean includeLow = true;
+    private boolean useSketch = false;
+    private int sketchSize = 1024;
+    private int numThreads = 1;
 
     // Calculated values
     private double lowCutoff;
     private double highCutoff;
     private DataFrame output;
+    // Metric values of the chunks added so far, and in sketch mode the merged sketch of the
+    // full blocks and the sketch of the block being filled
+    private List<double[]> metricChunks = new ArrayList<>();
+    private QuantileSketch chunkSketch;
+    private QuantileSketch blockSketch;
+    private int blockRows = 0;
 
     public PercentileClassifier(String columnName) {
         super(columnName);
@@ -26,21 +55,145 @@ public class PercentileClassifier extends Classifier implements ThresholdClassif
     @Override
     public void process(DataFrame input) {
         double[] metrics = input.getDoubleColumnByName(columnName);
-        int len = metrics.length;
-        lowCutoff = new Percentile().evaluate(metrics, percentile);
-        highCutoff = new Percentile().evaluate(metrics, 100.0 - percentile);
+        if (useSketch) {
+            setCutoffs(sketch(metrics));
+        } else {
+            setCutoffs(metrics);
+        }
 
         output = input.copy();
+        double[] resultColumn = new double[metrics.length];
+        classify(metrics, resultColumn, 0);
+        output.addDoubleColumn(outputColumnName, resultColumn);
+    }
+
+    /**
+     * @param chunk next rows of an input that arrives in pieces
+     */
+    public void addChunk(DataFrame chunk) {
+        double[] metrics = chunk.getDoubleColumnByName(columnName);
+        metricChunks.add(metrics);
+        if (useSketch) {
+            // Blocks span chunk boundaries, so the sketch matches the one process builds
+            for (double x : metrics) {
+                if (blockSketch == null) {
+                    blockSketch = new QuantileSketch(sketchSize);
+                }
+                blockSketch.add(x);
+                if (++blockRows == SKETCH_BLOCK_ROWS) {
+                    foldBlock();
+                }
+            }
+        }
+    }
+
+    private void foldBlock() {
+        chunkSketch = chunkSketch == null ? blockSketch : chunkSketch.merge(blockSketch);
+        blockSketch = null;
+        blockRows = 0;
+    }
+
+    /**
+     * Compute cutoffs over every chunk added since the last call and classify their rows.
+     * Gives the same cutoffs and classes as process on the concatenated chunks.
+     * @return class of every row added, in order
+     */
+    public double[] classifyChunks() {
+        int len = 0;
+        for (double[] metrics : metricChunks) {
+            len += metrics.length;
+        }
         double[] resultColumn = new double[len];
-        for (int i = 0; i < len; i++) {
+        if (useSketch) {
+            if (blockSketch != null) {
+                foldBlock();
+            }
+            setCutoffs(chunkSketch == null ? new QuantileSketch(sketchSize) : chunkSketch);
+        } else {
+            double[] allMetrics = new double[len];
+            int offset = 0;
+            for (double[] metrics : metricChunks) {
+                System.arraycopy(metrics, 0, allMetrics, offset, metrics.length);
+                offset += metrics.length;
+            }
+            setCutoffs(allMetrics);
+        }
+        int offset = 0;
+        for (double[] metrics : metricChunks) {
+            classify(metrics, resultColumn, offset);
+            offset += metrics.length;
+        }
+        metricChunks = new ArrayList<>();
+        chunkSketch = null;
+        return resultColumn;
+    }
+
+    /**
+     * Sketch each block of rows, in parallel if there are several threads, and merge the
+     * block sketches in row order
+     */
+    private QuantileSketch sketch(double[] metrics) {
+        int numBlocks = (metrics.length + SKETCH_BLOCK_ROWS - 1) / SKETCH_BLOCK_ROWS;
+        QuantileSketch sketch = null;
+        if (numThreads == 1 || numBlocks <= 1) {
+            for (int b = 0; b < numBlocks; b++) {
+                QuantileSketch block = sketchBlock(metrics, b);
+                sketch = sketch == null ? block : sketch.merge(block);
+            }
+            return sketch == null ? new QuantileSketch(sketchSize) : sketch;
+        }
+        List<Callable<QuantileSketch>> tasks = new ArrayList<>(numBlocks);
+        for (int b = 0; b < numBlocks; b++) {
+            int block = b;
+            tasks.add(() -> sketchBlock(metrics, block));
+        }
+        try {
+            for (Future<QuantileSketch> f : ForkJoinPools.shared(numThreads).invokeAll(tasks)) {
+                sketch = sketch == null ? f.get() : sketch.merge(f.get());
+            }
+            return sketch;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new MacrobaseInternalError("Failed to sketch metrics: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MacrobaseInternalError("Interrupted while sketching metrics");
+        }
+    }
+
+    private QuantileSketch sketchBlock(double[] metrics, int block) {
+        QuantileSketch sketch = new QuantileSketch(sketchSize);
+        int end = (int) Math.min(metrics.length, (block + 1L) * SKETCH_BLOCK_ROWS);
+        for (int i = block * SKETCH_BLOCK_ROWS; i < end; i++) {
+            sketch.add(metrics[i]);
+        }
+        return sketch;
+    }
+
+    private void setCutoffs(QuantileSketch sketch) {
+        double[] cutoffs = sketch.quantiles(new double[]{percentile / 100.0, 1.0 - percentile / 100.0});
+        lowCutoff = cutoffs[0];
+        highCutoff = cutoffs[1];
+    }
+
+    private void setCutoffs(double[] metrics) {
+        lowCutoff = new Percentile().evaluate(metrics, percentile);
+        highCutoff = new Percentile().evaluate(metrics, 100.0 - percentile);
+    }
+
+    private void classify(double[] metrics, double[] resultColumn, int offset) {
+        for (int i = 0; i < metrics.length; i++) {
             double curVal = metrics[i];
             if ((curVal > highCutoff && includeHigh)
                     || (curVal < lowCutoff && includeLow)
                     ) {
-                resultColumn[i] = 1.0;
+                resultColumn[offset + i] = 1.0;
             }
         }
-        output.addDoubleColumn(outputColumnName, resultColumn);
     }
 
     @Override
@@ -87,6 +240,45 @@ public class PercentileClassifier extends Classifier implements ThresholdClassif
         return this;
     }
 
+    public boolean isUseSketch() {
+        return useSketch;
+    }
+
+    /**
+     * @param useSketch Whether to estimate cutoffs with a quantile sketch instead of exactly
+     * @return this
+     */
+    public PercentileClassifier setUseSketch(boolean useSketch) {
+        this.useSketch = useSketch;
+        return this;
+    }
+
+    public int getSketchSize() {
+        return sketchSize;
+    }
+
+    /**
+     * @param sketchSize Accuracy parameter of the sketch: rank error shrinks roughly as 1 / sketchSize
+     * @return this
+     */
+    public PercentileClassifier setSketchSize(int sketchSize) {
+        this.sketchSize = sketchSize;
+        return this;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads Number of threads to build the sketch with in sketch mode, 1 by default
+     * @return this
+     */
+    public PercentileClassifier setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
     public double getLowCutoff() {
         return lowCutoff;
     }
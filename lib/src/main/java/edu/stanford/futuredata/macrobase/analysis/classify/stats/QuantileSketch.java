@@ -0,0 +1,263 @@
+package edu.stanford.futuredata.macrobase.analysis.classify.stats;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Mergeable streaming quantile sketch after Karnin, Lang and Liberty (KLL).
+ * Values are kept in a stack of compactors where an item on level h stands for 2^h inputs.
+ * When a level overflows it is sorted and every other item is promoted to the next level,
+ * so memory stays around 3k values while the rank error of a quantile, as a fraction of
+ * the number of values seen, shrinks roughly as 1 / k.
+ *
+ * Sketches built on separate parts of the data can be merged, giving a sketch with the same
+ * guarantees as one built on all of it. Compaction uses a seeded generator, so results are
+ * reproducible for the same input order.
+ */
+public class QuantileSketch {
+    // Ratio between the capacities of consecutive levels
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    // Keeps the lower levels from compacting after every few values
+    private static final int MIN_CAPACITY = 8;
+
+    private final int k;
+    private final Random random;
+
+    private double[][] levels;
+    private int[] levelSizes;
+    private int numLevels;
+    // Capacities only change when a level is added
+    private int[] capacities;
+    private long count;
+    // Extremes are tracked exactly since compaction may discard them
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param k accuracy parameter, the capacity of the top level
+     */
+    public QuantileSketch(int k) {
+        this.k = k;
+        this.random = new Random(0);
+        this.levels = new double[4][];
+        this.levelSizes = new int[4];
+        this.numLevels = 1;
+        this.capacities = computeCapacities(1);
+        this.levels[0] = new double[capacities[0]];
+    }
+
+    /**
+     * Add a value. NaN values are ignored.
+     * @param x value to add
+     */
+    public void add(double x) {
+        if (Double.isNaN(x)) {
+            return;
+        }
+        if (levelSizes[0] == levels[0].length) {
+            levels[0] = Arrays.copyOf(levels[0], 2 * levels[0].length);
+        }
+        levels[0][levelSizes[0]++] = x;
+        count++;
+        min = Math.min(min, x);
+        max = Math.max(max, x);
+        if (levelSizes[0] >= capacities[0]) {
+            compress();
+        }
+    }
+
+    /**
+     * Add a value that occurs weight times. The weight is split into powers of two, each
+     * stored as a single item on the matching level, so this costs O(log weight).
+     * NaN values and non-positive weights are ignored.
+     * @param x value to add
+     * @param weight number of occurrences
+     */
+    public void add(double x, long weight) {
+        if (Double.isNaN(x) || weight <= 0) {
+            return;
+        }
+        int topLevel = 63 - Long.numberOfLeadingZeros(weight);
+        while (numLevels <= topLevel) {
+            addLevel();
+        }
+        boolean full = false;
+        for (int h = 0; h <= topLevel; h++) {
+            if ((weight & (1L << h)) != 0) {
+                ensureLevelCapacity(h, levelSizes[h] + 1);
+                levels[h][levelSizes[h]++] = x;
+                full |= levelSizes[h] >= capacities[h];
+            }
+        }
+        count += weight;
+        min = Math.min(min, x);
+        max = Math.max(max, x);
+        if (full) {
+            compress();
+        }
+    }
+
+    public void addAll(double[] xs) {
+        for (double x : xs) {
+            add(x);
+        }
+    }
+
+    /**
+     * Fold another sketch into this one. The other sketch is not modified.
+     * @param other sketch built with the same k
+     * @return this
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        while (numLevels < other.numLevels) {
+            addLevel();
+        }
+        for (int h = 0; h < other.numLevels; h++) {
+            int otherSize = other.levelSizes[h];
+            ensureLevelCapacity(h, levelSizes[h] + otherSize);
+            System.arraycopy(other.levels[h], 0, levels[h], levelSizes[h], otherSize);
+            levelSizes[h] += otherSize;
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        compress();
+        return this;
+    }
+
+    /**
+     * @param q quantile in [0, 1]
+     * @return smallest retained value whose estimated rank is at least q times the count,
+     * the exact minimum or maximum for q = 0 or 1, NaN if no values have been added
+     */
+    public double quantile(double q) {
+        return quantiles(new double[]{q})[0];
+    }
+
+    /**
+     * Evaluate several quantiles with a single sort of the retained values
+     * @param qs quantiles in [0, 1]
+     * @return estimated values for each quantile
+     */
+    public double[] quantiles(double[] qs) {
+        double[] results = new double[qs.length];
+        if (count == 0) {
+            Arrays.fill(results, Double.NaN);
+            return results;
+        }
+
+        // Merge the sorted levels into values in order, remembering the level of each
+        int numRetained = getNumRetained();
+        double[] values = new double[numRetained];
+        int[] valueLevels = new int[numRetained];
+        int i = 0;
+        for (int h = 0; h < numLevels; h++) {
+            Arrays.sort(levels[h], 0, levelSizes[h]);
+        }
+        int[] heads = new int[numLevels];
+        while (i < numRetained) {
+            int best = -1;
+            for (int h = 0; h < numLevels; h++) {
+                if (heads[h] < levelSizes[h]
+                        && (best < 0 || levels[h][heads[h]] < levels[best][heads[best]])) {
+                    best = h;
+                }
+            }
+            values[i] = levels[best][heads[best]++];
+            valueLevels[i] = best;
+            i++;
+        }
+
+        for (int j = 0; j < qs.length; j++) {
+            if (qs[j] <= 0.0) {
+                results[j] = min;
+                continue;
+            } else if (qs[j] >= 1.0) {
+                results[j] = max;
+                continue;
+            }
+            double targetRank = qs[j] * count;
+            long rank = 0;
+            results[j] = values[numRetained - 1];
+            for (int r = 0; r < numRetained; r++) {
+                rank += 1L << valueLevels[r];
+                if (rank >= targetRank) {
+                    results[j] = values[r];
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return number of values added, including those merged from other sketches
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of values currently held by the sketch
+     */
+    public int getNumRetained() {
+        int numRetained = 0;
+        for (int h = 0; h < numLevels; h++) {
+            numRetained += levelSizes[h];
+        }
+        return numRetained;
+    }
+
+    private int[] computeCapacities(int numLevels) {
+        int[] result = new int[numLevels];
+        double capacity = k;
+        for (int h = numLevels - 1; h >= 0; h--) {
+            result[h] = Math.max(MIN_CAPACITY, (int) Math.ceil(capacity));
+            capacity *= CAPACITY_DECAY;
+        }
+        return result;
+    }
+
+    private void compress() {
+        for (int h = 0; h < numLevels; h++) {
+            if (levelSizes[h] < capacities[h]) {
+                continue;
+            }
+            if (h + 1 == numLevels) {
+                addLevel();
+            }
+            double[] level = levels[h];
+            int size = levelSizes[h];
+            Arrays.sort(level, 0, size);
+
+            // With an odd size the smallest item stays behind
+            int start = size % 2;
+            int offset = random.nextBoolean() ? 1 : 0;
+            int numPromoted = (size - start) / 2;
+            ensureLevelCapacity(h + 1, levelSizes[h + 1] + numPromoted);
+            double[] next = levels[h + 1];
+            int nextSize = levelSizes[h + 1];
+            for (int i = start + offset; i < size; i += 2) {
+                next[nextSize++] = level[i];
+            }
+            levelSizes[h + 1] = nextSize;
+            levelSizes[h] = start;
+        }
+    }
+
+    private void addLevel() {
+        if (numLevels == levels.length) {
+            levels = Arrays.copyOf(levels, 2 * numLevels);
+            levelSizes = Arrays.copyOf(levelSizes, 2 * numLevels);
+        }
+        numLevels++;
+        capacities = computeCapacities(numLevels);
+        levels[numLevels - 1] = new double[capacities[numLevels - 1]];
+    }
+
+    private void ensureLevelCapacity(int h, int minCapacity) {
+        if (levels[h].length < minCapacity) {
+            levels[h] = Arrays.copyOf(levels[h], Math.max(2 * levels[h].length, minCapacity));
+        }
+    }
+}
@@ -3,70 +3,229 @@ package edu.stanford.futuredata.macrobase.analysis.classify.stats;
 import edu.stanford.futuredata.macrobase.util.MacrobaseInternalError;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Computes percentiles when given an array of metrics and the count of the
  * number of times each occurs. Useful for computing percentiles on cubed data.
+ *
+ * Metrics and counts are sorted together as primitive arrays with a stable radix sort on
+ * the bits of each metric, split across threads if requested, and any number of
+ * percentiles can then be evaluated in one pass over the sorted arrays. For very large
+ * cubes approximate() estimates percentiles from a QuantileSketch without sorting.
  */
 public class WeightedPercentile {
-    private double[] counts;
-    private double[] metrics;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
 
     // Computed
     private double numRawMetrics = 0;
-    private WeightedMetric[] weightedMetrics;
+    private double[] sortedMetrics;
+    private double[] sortedCounts;
 
     public WeightedPercentile(double[] counts, double[] metrics) {
-        this.counts = counts;
-        this.metrics = metrics;
-        computeCounts();
+        this(counts, metrics, 1);
+    }
+
+    /**
+     * @param counts number of times each metric occurs
+     * @param metrics metric values
+     * @param numThreads number of threads to sort with
+     */
+    public WeightedPercentile(double[] counts, double[] metrics, int numThreads) {
+        int len = metrics.length;
+        for (int i = 0; i < len; i++) {
+            numRawMetrics += counts[i];
+        }
+        int[] order = sortedOrder(metrics, numThreads);
+        sortedMetrics = new double[len];
+        sortedCounts = new double[len];
+        for (int i = 0; i < len; i++) {
+            sortedMetrics[i] = metrics[order[i]];
+            sortedCounts[i] = counts[order[i]];
+        }
     }
 
     public double evaluate(double percentile) {
-        if (percentile >= 50.0) {
-            int numToPass = (int)((100.0 - percentile) / 100.0 * numRawMetrics);
-            int numPassed = 0;
-            for (int i = weightedMetrics.length - 1; i >= 0; i--) {
-                numPassed += weightedMetrics[i].count;
-                if (numPassed >= numToPass) {
-                    return weightedMetrics[i].metric;
+        return evaluate(new double[]{percentile})[0];
+    }
+
+    /**
+     * Evaluate several percentiles with one pass from each end of the sorted metrics
+     * @param percentiles percentiles in [0, 100]
+     * @return value of each percentile
+     */
+    public double[] evaluate(double[] percentiles) {
+        int k = percentiles.length;
+        double[] results = new double[k];
+        // Percentiles below 50 are found walking up from the smallest metric, the rest walking down
+        Integer[] requests = new Integer[k];
+        int[] numToPass = new int[k];
+        for (int j = 0; j < k; j++) {
+            requests[j] = j;
+            double fraction = percentiles[j] >= 50.0 ? 100.0 - percentiles[j] : percentiles[j];
+            numToPass[j] = (int)(fraction / 100.0 * numRawMetrics);
+        }
+        Arrays.sort(requests, Comparator.comparingInt(j -> numToPass[j]));
+
+        int len = sortedMetrics.length;
+        int lowIdx = 0;
+        int highIdx = 0;
+        double lowPassed = 0;
+        double highPassed = 0;
+        boolean[] found = new boolean[k];
+        for (int j : requests) {
+            if (percentiles[j] >= 50.0) {
+                while (highIdx < len && (highIdx == 0 || highPassed < numToPass[j])) {
+                    highPassed += sortedCounts[len - 1 - highIdx];
+                    highIdx++;
                 }
-            }
-        } else {
-            int numToPass = (int)(percentile / 100.0 * numRawMetrics);
-            int numPassed = 0;
-            for (int i = 0; i < weightedMetrics.length; i++) {
-                numPassed += weightedMetrics[i].count;
-                if (numPassed >= numToPass) {
-                    return weightedMetrics[i].metric;
+                if (highIdx > 0 && highPassed >= numToPass[j]) {
+                    results[j] = sortedMetrics[len - highIdx];
+                    found[j] = true;
+                }
+            } else {
+                while (lowIdx < len && (lowIdx == 0 || lowPassed < numToPass[j])) {
+                    lowPassed += sortedCounts[lowIdx];
+                    lowIdx++;
+                }
+                if (lowIdx > 0 && lowPassed >= numToPass[j]) {
+                    results[j] = sortedMetrics[lowIdx - 1];
+                    found[j] = true;
                 }
             }
+            if (!found[j]) {
+                throw new MacrobaseInternalError("WeightedPercentile was implemented incorrectly");
+            }
         }
-        throw new MacrobaseInternalError("WeightedPercentile was implemented incorrectly");
+        return results;
     }
 
-    private void computeCounts() {
-        int len = metrics.length;
-        weightedMetrics = new WeightedMetric[len];
-        for (int i = 0; i < len; i++) {
-            weightedMetrics[i] = new WeightedMetric(metrics[i], counts[i]);
-            numRawMetrics += counts[i];
+    /**
+     * Estimate percentiles without sorting. Counts are rounded to whole numbers.
+     * @param counts number of times each metric occurs
+     * @param metrics metric values
+     * @param percentiles percentiles in [0, 100]
+     * @param sketchSize accuracy parameter of the QuantileSketch used
+     * @return estimated value of each percentile
+     */
+    public static double[] approximate(double[] counts, double[] metrics, double[] percentiles,
+                                       int sketchSize) {
+        QuantileSketch sketch = new QuantileSketch(sketchSize);
+        for (int i = 0; i < metrics.length; i++) {
+            sketch.add(metrics[i], Math.round(counts[i]));
+        }
+        double[] qs = new double[percentiles.length];
+        for (int j = 0; j < percentiles.length; j++) {
+            qs[j] = percentiles[j] / 100.0;
         }
-        Arrays.sort(weightedMetrics);
+        return sketch.quantiles(qs);
     }
 
-    public class WeightedMetric implements Comparable<WeightedMetric> {
-        public double metric;
-        public double count;
+    /**
+     * @return row indices in order of metric value, ties in row order
+     */
+    private static int[] sortedOrder(double[] metrics, int numThreads) {
+        int len = metrics.length;
+        long[] keys = new long[len];
+        int[] order = new int[len];
+        long[] tmpKeys = new long[len];
+        int[] tmpOrder = new int[len];
+        int numRuns = Math.max(1, Math.min(numThreads, len));
+        int[] runStarts = new int[numRuns + 1];
+        for (int p = 0; p <= numRuns; p++) {
+            runStarts[p] = (int) ((long) len * p / numRuns);
+        }
+
+        if (numRuns == 1) {
+            sortRun(metrics, keys, order, tmpKeys, tmpOrder, 0, len);
+            return order;
+        }
+        ForkJoinPool pool = new ForkJoinPool(numRuns);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>(numRuns);
+            for (int p = 0; p < numRuns; p++) {
+                int start = runStarts[p];
+                int end = runStarts[p + 1];
+                tasks.add(() -> {
+                    sortRun(metrics, keys, order, tmpKeys, tmpOrder, start, end);
+                    return null;
+                });
+            }
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (Exception e) {
+            throw new MacrobaseInternalError("Failed to sort metrics: " + e.getMessage());
+        } finally {
+            pool.shutdown();
+        }
 
-        public WeightedMetric(double metric, double count) {
-            this.metric = metric;
-            this.count = count;
+        // Merge the sorted runs, taking the earlier run on ties to keep the sort stable
+        int[] heads = Arrays.copyOf(runStarts, numRuns);
+        for (int i = 0; i < len; i++) {
+            int best = -1;
+            for (int p = 0; p < numRuns; p++) {
+                if (heads[p] < runStarts[p + 1]
+                        && (best < 0 || Long.compareUnsigned(keys[heads[p]], keys[heads[best]]) < 0)) {
+                    best = p;
+                }
+            }
+            tmpOrder[i] = order[heads[best]++];
         }
+        return tmpOrder;
+    }
 
-        @Override
-        public int compareTo(WeightedMetric wm) {
-            return Double.compare(metric, wm.metric);
+    /**
+     * Stable LSD radix sort of rows [start, end) by metric, leaving sortable keys and row
+     * indices in keys and order
+     */
+    private static void sortRun(double[] metrics, long[] keys, int[] order,
+                                long[] tmpKeys, int[] tmpOrder, int start, int end) {
+        for (int i = start; i < end; i++) {
+            keys[i] = sortableBits(metrics[i]);
+            order[i] = i;
+        }
+        int[] bucketStarts = new int[RADIX];
+        for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+            Arrays.fill(bucketStarts, 0);
+            for (int i = start; i < end; i++) {
+                bucketStarts[(int) ((keys[i] >>> shift) & (RADIX - 1))]++;
+            }
+            // Skip digits shared by every key
+            boolean singleBucket = false;
+            for (int b = 0; b < RADIX; b++) {
+                if (bucketStarts[b] == end - start) {
+                    singleBucket = true;
+                    break;
+                }
+            }
+            if (singleBucket) {
+                continue;
+            }
+            int offset = start;
+            for (int b = 0; b < RADIX; b++) {
+                int bucketSize = bucketStarts[b];
+                bucketStarts[b] = offset;
+                offset += bucketSize;
+            }
+            for (int i = start; i < end; i++) {
+                int dest = bucketStarts[(int) ((keys[i] >>> shift) & (RADIX - 1))]++;
+                tmpKeys[dest] = keys[i];
+                tmpOrder[dest] = order[i];
+            }
+            System.arraycopy(tmpKeys, start, keys, start, end - start);
+            System.arraycopy(tmpOrder, start, order, start, end - start);
         }
     }
+
+    /**
+     * @return bits of x that compare as unsigned longs in the order of Double.compare
+     */
+    private static long sortableBits(double x) {
+        long bits = Double.doubleToLongBits(x);
+        return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+    }
 }
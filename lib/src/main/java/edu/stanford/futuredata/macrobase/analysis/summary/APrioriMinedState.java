@@ -0,0 +1,185 @@
+package edu.stanford.futuredata.macrobase.analysis.summary;
+
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.AttributeEncoder;
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.IntSet;
+import edu.stanford.futuredata.macrobase.datamodel.DictionaryColumn;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Encoded rows and itemset counts from an APrioriSummarizer run, kept so that rerunning
+ * over the same data with different thresholds can skip work.
+ *
+ * Single items are always counted in full. An order above 1 only counts itemsets built
+ * from the itemsets of the order below that were neither pruned nor saved, so its counts
+ * can be reused as long as those itemsets are a subset of the ones it was counted from,
+ * e.g. after raising minSupport. Otherwise that order is counted again.
+ *
+ * A state should only be used by one summarizer at a time; APrioriSummarizer holds its
+ * lock while processing.
+ */
+public class APrioriMinedState {
+    // Rough JVM object sizes used to estimate memory use
+    private static final long OBJECT_OVERHEAD = 16;
+    private static final long ARRAY_OVERHEAD = 16;
+    private static final long REFERENCE_SIZE = 8;
+    // a HashMap node, plus the table slot pointing to it at the default load factor
+    private static final long MAP_ENTRY_SIZE = 32 + 2 * REFERENCE_SIZE;
+
+    // Inputs the state was built from
+    private List<String> attributes;
+    private int[][] attributeCodes;
+    private double[] outlierCol;
+    private double[] countCol;
+
+    AttributeEncoder encoder;
+    List<int[]> encoded;
+
+    HashMap<Integer, HashMap<IntSet, Integer>> setIdxMapping = new HashMap<>();
+    HashMap<Integer, int[]> setCounts = new HashMap<>();
+    HashMap<Integer, int[]> setOCounts = new HashMap<>();
+    // itemsets of the order below that the counts of each order were built from
+    HashMap<Integer, HashSet<IntSet>> setBases = new HashMap<>();
+
+    private int numReusedOrders = 0;
+    private int numCountedOrders = 0;
+
+    /**
+     * @return whether the state was built from these columns, so its counts still apply
+     */
+    boolean matches(
+            List<String> attributes,
+            List<DictionaryColumn> attributeCols,
+            double[] outlierCol,
+            double[] countCol
+    ) {
+        if (encoder == null || attributeCodes == null || !attributes.equals(this.attributes)) {
+            return false;
+        }
+        for (int i = 0; i < attributeCodes.length; i++) {
+            if (attributeCols.get(i).getCodes() != attributeCodes[i]) {
+                return false;
+            }
+        }
+        return Arrays.equals(outlierCol, this.outlierCol) && Arrays.equals(countCol, this.countCol);
+    }
+
+    /**
+     * Discard all counts and start over with new inputs
+     * @param attributeCols columns the rows were encoded from, or null if they are not known,
+     *                      in which case the state never matches later inputs
+     */
+    void reset(
+            List<String> attributes,
+            List<DictionaryColumn> attributeCols,
+            double[] outlierCol,
+            double[] countCol,
+            AttributeEncoder encoder,
+            List<int[]> encoded
+    ) {
+        this.attributes = attributes;
+        if (attributeCols == null) {
+            this.attributeCodes = null;
+        } else {
+            this.attributeCodes = new int[attributeCols.size()][];
+            for (int i = 0; i < attributeCodes.length; i++) {
+                attributeCodes[i] = attributeCols.get(i).getCodes();
+            }
+        }
+        this.outlierCol = outlierCol;
+        this.countCol = countCol;
+        this.encoder = encoder;
+        this.encoded = encoded;
+        setIdxMapping.clear();
+        setCounts.clear();
+        setOCounts.clear();
+        setBases.clear();
+    }
+
+    /**
+     * @return whether counts for the order can be reused given the itemsets of the order below
+     */
+    boolean canReuse(int order, HashSet<IntSet> basis) {
+        if (!setCounts.containsKey(order)) {
+            return false;
+        }
+        return order == 1 || setBases.get(order).containsAll(basis);
+    }
+
+    void store(
+            int order,
+            HashSet<IntSet> basis,
+            HashMap<IntSet, Integer> idxMapping,
+            int[] counts,
+            int[] oCounts
+    ) {
+        setIdxMapping.put(order, idxMapping);
+        setCounts.put(order, counts);
+        setOCounts.put(order, oCounts);
+        setBases.put(order, basis);
+        numCountedOrders++;
+    }
+
+    /**
+     * Waits for a summarizer using the state to finish.
+     * @return estimated memory held by the encoded rows, the pinned input columns and
+     * the counts of every order
+     */
+    public synchronized long getEstimatedBytes() {
+        long bytes = 0;
+        if (encoded != null) {
+            for (int[] row : encoded) {
+                bytes += REFERENCE_SIZE + ARRAY_OVERHEAD + 4L * row.length;
+            }
+        }
+        if (outlierCol != null) {
+            bytes += ARRAY_OVERHEAD + 8L * outlierCol.length;
+        }
+        if (countCol != null) {
+            bytes += ARRAY_OVERHEAD + 8L * countCol.length;
+        }
+        for (HashMap<IntSet, Integer> idxMapping : setIdxMapping.values()) {
+            if (idxMapping == null) {
+                continue;
+            }
+            for (IntSet set : idxMapping.keySet()) {
+                // the key, its values array and the boxed index
+                bytes += MAP_ENTRY_SIZE + 2 * OBJECT_OVERHEAD + ARRAY_OVERHEAD + 4L * set.size();
+            }
+        }
+        for (int[] counts : setCounts.values()) {
+            bytes += ARRAY_OVERHEAD + 4L * counts.length;
+        }
+        for (int[] oCounts : setOCounts.values()) {
+            bytes += ARRAY_OVERHEAD + 4L * oCounts.length;
+        }
+        for (HashSet<IntSet> basis : setBases.values()) {
+            // the itemsets themselves are keys of the order below
+            if (basis != null) {
+                bytes += MAP_ENTRY_SIZE * basis.size();
+            }
+        }
+        return bytes;
+    }
+
+    void markReused() {
+        numReusedOrders++;
+    }
+
+    /**
+     * @return number of times counts for an order were reused rather than recounted
+     */
+    public int getNumReusedOrders() {
+        return numReusedOrders;
+    }
+
+    /**
+     * @return number of times an order was counted over the data
+     */
+    public int getNumCountedOrders() {
+        return numCountedOrders;
+    }
+}
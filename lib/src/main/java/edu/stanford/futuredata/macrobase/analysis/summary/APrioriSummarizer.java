@@ -2,23 +2,38 @@ package edu.stanford.futuredata.macrobase.analysis.summary;
 
 import edu.stanford.futuredata.macrobase.analysis.summary.itemset.AttributeEncoder;
 import edu.stanford.futuredata.macrobase.analysis.summary.itemset.IntSet;
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.PackedItemsetCounter;
 import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.AttributeSet;
 import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetResult;
 import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import edu.stanford.futuredata.macrobase.datamodel.DictionaryColumn;
+import edu.stanford.futuredata.macrobase.util.ForkJoinPools;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
 
 /**
  * Simple, direct itemset mining with pruning that is limited to low-order
  * interactions.
+ *
+ * Encoded rows and counts are kept in an APrioriMinedState. Passing the state of an
+ * earlier run over the same data to setMinedState lets a run with different thresholds
+ * reuse whichever orders are still valid instead of counting them again.
+ *
+ * Rows can also be encoded by the caller, e.g. chunk by chunk as they are loaded, and
+ * summarized with processEncoded.
  */
 public class APrioriSummarizer extends BatchSummarizer {
     Logger log = LoggerFactory.getLogger("APriori");
 
     // Parameters
     String countColumn = null;
+    int numThreads = 1;
 
     // Calculated Values
     int numRows;
@@ -41,7 +56,11 @@ public class APrioriSummarizer extends BatchSummarizer {
     HashMap<Integer, int[]> setCounts;
     HashMap<Integer, int[]> setOCounts;
 
+    APrioriMinedState minedState = null;
+
     long[] timings = new long[4];
+    // Shared with other summarizers counting with as many threads, null for one thread
+    private ForkJoinPool pool;
 
     public APrioriSummarizer() {
         setIdxMapping = new HashMap<>();
@@ -53,14 +72,67 @@ public class APrioriSummarizer extends BatchSummarizer {
 
     @Override
     public void process(DataFrame input) throws Exception {
-        numRows = input.getNumRows();
-
         // Marking Outliers
         double[] outlierCol = input.getDoubleColumnByName(outlierColumn);
         double[] countCol = null;
         if (countColumn != null) {
             countCol = input.getDoubleColumnByName(countColumn);
         }
+        countOutliers(input.getNumRows(), outlierCol, countCol);
+
+        if (minedState == null) {
+            minedState = new APrioriMinedState();
+        }
+        synchronized (minedState) {
+            List<DictionaryColumn> attributeCols = input.getEncodedStringColsByName(attributes);
+            List<int[]> encoded;
+            if (minedState.matches(attributes, attributeCols, outlierCol, countCol)) {
+                log.debug("Reusing mined state");
+                encoder = minedState.encoder;
+                encoded = minedState.encoded;
+            } else {
+                // Encoding
+                encoder = new AttributeEncoder();
+                encoder.setColumnNames(attributes);
+                long startTime = System.currentTimeMillis();
+                encoded = encoder.encodeDictionaryColumns(attributeCols);
+                long elapsed = System.currentTimeMillis() - startTime;
+                log.debug("Encoded in: {}", elapsed);
+                minedState.reset(attributes, attributeCols, outlierCol, countCol, encoder, encoded);
+            }
+            mine(encoded, countCol, outlierCol);
+        }
+        logResults();
+    }
+
+    /**
+     * Summarize rows whose attributes were already encoded. Any mined state is reset, since
+     * it cannot be matched against the original columns later.
+     * @param encoder encoder used for the attribute columns, in the order of getAttributes
+     * @param encoded encoded attributes of each row
+     * @param outlierCol outlier column
+     * @param countCol count column, or null if each row is a single event
+     */
+    public void processEncoded(
+            AttributeEncoder encoder,
+            List<int[]> encoded,
+            double[] outlierCol,
+            double[] countCol
+    ) throws Exception {
+        countOutliers(encoded.size(), outlierCol, countCol);
+        if (minedState == null) {
+            minedState = new APrioriMinedState();
+        }
+        synchronized (minedState) {
+            this.encoder = encoder;
+            minedState.reset(attributes, null, outlierCol, countCol, encoder, encoded);
+            mine(encoded, countCol, outlierCol);
+        }
+        logResults();
+    }
+
+    private void countOutliers(int numRows, double[] outlierCol, double[] countCol) {
+        this.numRows = numRows;
         numEvents = 0;
         if (countCol != null) {
             for (int i = 0; i < numRows; i++) {
@@ -80,19 +152,19 @@ public class APrioriSummarizer extends BatchSummarizer {
         log.info("Outlier Rate of: {}", baseRate);
         log.info("Min Support Count: {}", suppCount);
         log.info("Min Risk Ratio: {}", minRiskRatio);
+    }
 
-        // Encoding
-        encoder = new AttributeEncoder();
-        encoder.setColumnNames(attributes);
-        long startTime = System.currentTimeMillis();
-        List<int[]> encoded = encoder.encodeAttributes(
-                input.getStringColsByName(attributes)
-        );
-        long elapsed = System.currentTimeMillis() - startTime;
+    private void logResults() {
+        for (int o = 1; o <= 3; o++) {
+            log.info("Order {} Explanations: {}", o, setSaved.get(o).size());
+        }
+    }
+
+    private void mine(List<int[]> encoded, double[] countCol, double[] outlierCol) throws Exception {
         numSingles = encoder.getNextKey();
-        log.debug("Encoded in: {}", elapsed);
         log.debug("Encoded Categories: {}", encoder.getNextKey());
 
+        pool = numThreads > 1 ? ForkJoinPools.shared(numThreads) : null;
         countSingles(
                 encoded,
                 countCol,
@@ -112,11 +184,6 @@ public class APrioriSummarizer extends BatchSummarizer {
                 outlierCol,
                 3
         );
-
-        for (int o = 1; o <= 3; o++) {
-            log.info("Order {} Explanations: {}", o, setSaved.get(o).size());
-        }
-
     }
 
     public static HashSet<IntSet> getOrder3Candidates(
@@ -151,76 +218,76 @@ public class APrioriSummarizer extends BatchSummarizer {
         return finalCandidates;
     }
 
-    private void countSet(List<int[]> encoded, double[] countCol, double[] outlierCol, int order) {
-        log.debug("Processing Order {}", order);
-        long startTime = System.currentTimeMillis();
-        // Map each integer set under consideration an index so we can count using arrays
-        HashMap<IntSet, Integer> setMapping = new HashMap<>();
-        int maxSetIdx = 0;
-        int maxSets = 0;
-        if (order == 2) {
-            maxSets = singleNext.size() * singleNext.size() / 2;
-        } else {
-            maxSets = setNext.get(order-1).size() * singleNext.size();
+    /**
+     * Split the rows into contiguous ranges, one per thread, and count each range as a
+     * separate task. Partial results are returned in row order so that merging them
+     * reproduces a sequential pass exactly.
+     */
+    private <T> List<T> countPartitions(BiFunction<Integer, Integer, T> countRange) throws Exception {
+        if (pool == null) {
+            return Collections.singletonList(countRange.apply(0, numRows));
+        }
+        int numPartitions = Math.max(1, Math.min(numThreads, numRows));
+        List<Callable<T>> tasks = new ArrayList<>(numPartitions);
+        for (int p = 0; p < numPartitions; p++) {
+            int startRow = (int) ((long) numRows * p / numPartitions);
+            int endRow = (int) ((long) numRows * (p + 1) / numPartitions);
+            tasks.add(() -> countRange.apply(startRow, endRow));
         }
-        int[] oCounts = new int[maxSets];
-        int[] counts = new int[maxSets];
-        HashSet<IntSet> candidates = new HashSet<>();
-        if (order == 3) {
-            // candidate triplets are built from 3 pairs all of which are unpruned / unsaved
-            candidates = getOrder3Candidates(setNext.get(2), singleNext);
+        List<T> partials = new ArrayList<>(numPartitions);
+        for (Future<T> f : pool.invokeAll(tasks)) {
+            partials.add(f.get());
         }
+        return partials;
+    }
 
-        boolean hasCountCol = countCol != null;
-        for (int i = 0; i < numRows; i++) {
-            int[] curRow = encoded.get(i);
-            ArrayList<Integer> toExamine = new ArrayList<>();
-            for (int v : curRow) {
-                if (singleNext.contains(v)) {
-                    toExamine.add(v);
-                }
-            }
-            int l = toExamine.size();
-
-            ArrayList<IntSet> setsToAdd = new ArrayList<>();
-            if (order == 2) {
-                for (int p1 = 0; p1 < l; p1++) {
-                    int p1v = toExamine.get(p1);
-                    for (int p2 = p1 + 1; p2 < l; p2++) {
-                        int p2v = toExamine.get(p2);
-                        setsToAdd.add(new IntSet(p1v, p2v));
-                    }
-                }
-            } else if (order == 3) {
-                HashSet<IntSet> pairNext = setNext.get(2);
-                for (int p1 = 0; p1 < l; p1++) {
-                    int p1v = toExamine.get(p1);
-                    for (int p2 = p1+1; p2 < l; p2++) {
-                        int p2v = toExamine.get(p2);
-                        IntSet pair1 = new IntSet(p1v, p2v);
-                        if (pairNext.contains(pair1)) {
-                            for (int p3 = p2 + 1; p3 < l; p3++) {
-                                int p3v = toExamine.get(p3);
-                                IntSet curSet = new IntSet(p1v, p2v, p3v);
-                                if (candidates.contains(curSet)) {
-                                    setsToAdd.add(curSet);
-                                }
-                            }
-                        }
-                    }
-                }
+    private void countSet(List<int[]> encoded, double[] countCol, double[] outlierCol, int order)
+            throws Exception {
+        log.debug("Processing Order {}", order);
+        long startTime = System.currentTimeMillis();
+        HashSet<IntSet> basis = setNext.get(order - 1);
+        boolean reused = minedState.canReuse(order, basis);
+        int[] counts;
+        int[] oCounts;
+        HashMap<IntSet, Integer> setMapping;
+        if (reused) {
+            minedState.markReused();
+            counts = minedState.setCounts.get(order);
+            oCounts = minedState.setOCounts.get(order);
+            setMapping = minedState.setIdxMapping.get(order);
+        } else {
+            HashSet<IntSet> pairNext = null;
+            HashSet<IntSet> candidates = null;
+            if (order == 3) {
+                // candidate triplets are built from 3 pairs all of which are unpruned / unsaved
+                pairNext = setNext.get(2);
+                candidates = getOrder3Candidates(pairNext, singleNext);
             }
 
-            for (IntSet curSet : setsToAdd) {
-                int setIdx = setMapping.getOrDefault(curSet, -1);
-                if (setIdx < 0) {
-                    setIdx = maxSetIdx;
-                    setMapping.put(curSet, setIdx);
-                    maxSetIdx++;
-                }
-                counts[setIdx] += hasCountCol ? countCol[i] : 1;
-                oCounts[setIdx] += outlierCol[i];
+            // Itemsets are packed into primitive keys and mapped to indices so we can count using arrays
+            PackedItemsetCounter counter = new PackedItemsetCounter(
+                    order,
+                    numSingles,
+                    singleNext,
+                    pairNext,
+                    candidates
+            );
+            List<PackedItemsetCounter> partials = countPartitions(
+                    (startRow, endRow) -> counter.newPartition().count(
+                            encoded, countCol, outlierCol, startRow, endRow
+                    )
+            );
+            for (PackedItemsetCounter partial : partials) {
+                counter.merge(partial);
+            }
+            counts = counter.getCounts();
+            oCounts = counter.getOCounts();
+            int numSets = counter.getNumSets();
+            setMapping = new HashMap<>(numSets);
+            for (int setIdx = 0; setIdx < numSets; setIdx++) {
+                setMapping.put(counter.getItemset(setIdx), setIdx);
             }
+            minedState.store(order, new HashSet<>(basis), setMapping, counts, oCounts);
         }
         long elapsed = System.currentTimeMillis() - startTime;
         timings[order] = elapsed;
@@ -230,6 +297,10 @@ public class APrioriSummarizer extends BatchSummarizer {
         int numPruned = 0;
         HashSet<IntSet> next = new HashSet<>();
         for (IntSet curSet : setMapping.keySet()) {
+            // Reused counts may cover itemsets that are no longer candidates
+            if (reused && !isCandidate(curSet)) {
+                continue;
+            }
             int setIdx = setMapping.get(curSet);
             int oCount = oCounts[setIdx];
             int count = counts[setIdx];
@@ -256,18 +327,35 @@ public class APrioriSummarizer extends BatchSummarizer {
         setOCounts.put(order, oCounts);
     }
 
-    private void countSingles(List<int[]> encoded, double[] countCol, double[] outlierCol) {
+    /**
+     * @return whether every subset one item smaller is in the itemsets to explore
+     */
+    private boolean isCandidate(IntSet set) {
+        int[] v = set.values;
+        if (v.length == 2) {
+            return singleNext.contains(v[0]) && singleNext.contains(v[1]);
+        }
+        HashSet<IntSet> pairNext = setNext.get(2);
+        return pairNext.contains(new IntSet(v[0], v[1]))
+                && pairNext.contains(new IntSet(v[1], v[2]))
+                && pairNext.contains(new IntSet(v[0], v[2]));
+    }
+
+    private void countSingles(List<int[]> encoded, double[] countCol, double[] outlierCol)
+            throws Exception {
         // Counting Singles
         long startTime = System.currentTimeMillis();
-        int[] singleCounts = new int[numSingles];
-        int[] singleOCounts = new int[numSingles];
-        boolean hasCountCol = countCol != null;
-        for (int i = 0; i < numRows; i++) {
-            int[] curRow = encoded.get(i);
-            for (int v : curRow) {
-                singleCounts[v] += hasCountCol ? countCol[i] : 1;
-                singleOCounts[v] += outlierCol[i];
-            }
+        int[] singleCounts;
+        int[] singleOCounts;
+        if (minedState.canReuse(1, null)) {
+            minedState.markReused();
+            singleCounts = minedState.setCounts.get(1);
+            singleOCounts = minedState.setOCounts.get(1);
+        } else {
+            int[][] totals = countSingleTotals(encoded, countCol, outlierCol);
+            singleCounts = totals[0];
+            singleOCounts = totals[1];
+            minedState.store(1, null, null, singleCounts, singleOCounts);
         }
         long elapsed = System.currentTimeMillis() - startTime;
         timings[1] = elapsed;
@@ -312,6 +400,37 @@ public class APrioriSummarizer extends BatchSummarizer {
         setOCounts.put(1, singleOCounts);
     }
 
+    /**
+     * @return count and outlier count of every single item
+     */
+    private int[][] countSingleTotals(List<int[]> encoded, double[] countCol, double[] outlierCol)
+            throws Exception {
+        boolean hasCountCol = countCol != null;
+        List<int[][]> partials = countPartitions((startRow, endRow) -> {
+            int[] curCounts = new int[numSingles];
+            int[] curOCounts = new int[numSingles];
+            for (int i = startRow; i < endRow; i++) {
+                int[] curRow = encoded.get(i);
+                for (int v : curRow) {
+                    curCounts[v] += hasCountCol ? countCol[i] : 1;
+                    curOCounts[v] += outlierCol[i];
+                }
+            }
+            return new int[][]{curCounts, curOCounts};
+        });
+        int[] singleCounts = partials.get(0)[0];
+        int[] singleOCounts = partials.get(0)[1];
+        for (int p = 1; p < partials.size(); p++) {
+            int[] curCounts = partials.get(p)[0];
+            int[] curOCounts = partials.get(p)[1];
+            for (int i = 0; i < numSingles; i++) {
+                singleCounts[i] += curCounts[i];
+                singleOCounts[i] += curOCounts[i];
+            }
+        }
+        return new int[][]{singleCounts, singleOCounts};
+    }
+
     @Override
     public Explanation getResults() {
         List<AttributeSet> results = new ArrayList<>();
@@ -355,4 +474,30 @@ public class APrioriSummarizer extends BatchSummarizer {
         this.countColumn = countColumn;
         return this;
     }
+
+    /**
+     * Count itemsets over partitions of the rows in parallel. Results are identical to
+     * counting with a single thread.
+     * @param numThreads number of threads to count with, 1 by default.
+     * @return this
+     */
+    public APrioriSummarizer setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    /**
+     * Reuse the encoded rows and counts of an earlier run if it was over the same columns.
+     * The state is updated with anything counted by this run.
+     * @param minedState state from getMinedState of an earlier run, or null to start afresh.
+     * @return this
+     */
+    public APrioriSummarizer setMinedState(APrioriMinedState minedState) {
+        this.minedState = minedState;
+        return this;
+    }
+
+    public APrioriMinedState getMinedState() {
+        return minedState;
+    }
 }
@@ -4,7 +4,11 @@ import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.Attribu
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Represents a summarization result, which contains a list of attribute values
@@ -16,6 +20,7 @@ public class Explanation {
     private final long numInliers;
     private List<AttributeSet> itemsets;
     private final long creationTimeMs;
+    private Map<String, Long> stageTimings = new LinkedHashMap<>();
 
     public Explanation(List<AttributeSet> resultList,
                        long numInliers,
@@ -58,6 +63,7 @@ public class Explanation {
                 numOutliers,
                 creationTimeMs
         );
+        newExplanation.stageTimings = stageTimings;
         return newExplanation;
     }
 
@@ -65,8 +71,14 @@ public class Explanation {
         itemsets.sort((AttributeSet a, AttributeSet b) -> -a.compareTo(b));
     }
 
+    /**
+     * Sort by decreasing support. Ties are ordered by decreasing risk ratio and then by
+     * attribute values, so the order does not depend on how values were encoded.
+     */
     public void sortBySupport() {
-        itemsets.sort((AttributeSet a, AttributeSet b) -> -Double.compare(a.getSupport(),b.getSupport()));
+        itemsets.sort(Comparator.comparingDouble(AttributeSet::getSupport).reversed()
+                .thenComparing(Comparator.comparingDouble(AttributeSet::getRatioToInliers).reversed())
+                .thenComparing((AttributeSet a) -> new TreeMap<>(a.getItems()).toString()));
     }
 
     public List<AttributeSet> getItemsets() {
@@ -85,6 +97,19 @@ public class Explanation {
         return creationTimeMs;
     }
 
+    /**
+     * @return milliseconds spent in each stage of the pipeline that produced this explanation,
+     * in stage order
+     */
+    public Map<String, Long> getStageTimings() {
+        return stageTimings;
+    }
+
+    public Explanation setStageTimings(Map<String, Long> stageTimings) {
+        this.stageTimings = stageTimings;
+        return this;
+    }
+
     public String prettyPrint() {
         StringBuilder header = new StringBuilder(String.format(
                 "Outlier Explanation:\n"
@@ -5,6 +5,7 @@ import edu.stanford.futuredata.macrobase.analysis.summary.itemset.FPGrowthEmergi
 import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.AttributeSet;
 import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetResult;
 import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import edu.stanford.futuredata.macrobase.datamodel.DataFrameView;
 import edu.stanford.futuredata.macrobase.datamodel.Schema;
 
 import java.util.ArrayList;
@@ -39,22 +40,41 @@ public class FPGrowthSummarizer extends BatchSummarizer {
         return this;
     }
 
+    /**
+     * Whether to mine with per-item bitmaps instead of FP-trees. Bitmaps are faster
+     * when the attributes have few distinct values.
+     * @param useBitmaps flag
+     * @return this
+     */
+    public FPGrowthSummarizer setUseBitmaps(boolean useBitmaps) {
+        fpg.setUseBitmaps(useBitmaps);
+        return this;
+    }
+
+    /**
+     * @param numThreads number of threads to mine itemsets with, 1 by default
+     * @return this
+     */
+    public FPGrowthSummarizer setNumThreads(int numThreads) {
+        fpg.setNumThreads(numThreads);
+        return this;
+    }
+
     @Override
     public void process(DataFrame df) {
-        // Filter inliers and outliers
-        DataFrame outlierDF = df.filter(outlierColumn, (double d) -> d > 0.0);
-        DataFrame inlierDF = df.filter(outlierColumn, (double d) -> d == 0.0);
+        // Select inliers and outliers without copying columns
+        DataFrameView outlierRows = df.where(outlierColumn, (double d) -> d > 0.0);
+        DataFrameView inlierRows = df.where(outlierColumn, (double d) -> d == 0.0);
 
         // Encode inlier and outlier attribute columns
-        if (attributes.isEmpty()) {
-            encoder.setColumnNames(df.getSchema().getColumnNamesByType(Schema.ColType.STRING));
-            inlierItemsets = encoder.encodeAttributesAsSets(inlierDF.getStringCols());
-            outlierItemsets = encoder.encodeAttributesAsSets(outlierDF.getStringCols());
-        } else {
-            encoder.setColumnNames(attributes);
-            inlierItemsets = encoder.encodeAttributesAsSets(inlierDF.getStringColsByName(attributes));
-            outlierItemsets = encoder.encodeAttributesAsSets(outlierDF.getStringColsByName(attributes));
-        }
+        List<String> attributeColumns = attributes.isEmpty()
+                ? df.getSchema().getColumnNamesByType(Schema.ColType.STRING)
+                : attributes;
+        encoder.setColumnNames(attributeColumns);
+        inlierItemsets = encoder.encodeDictionaryColumnsAsSets(
+                inlierRows.getEncodedStringColsByName(attributeColumns));
+        outlierItemsets = encoder.encodeDictionaryColumnsAsSets(
+                outlierRows.getEncodedStringColsByName(attributeColumns));
 
         long startTime = System.currentTimeMillis();
         List<ItemsetResult> itemsetResults = fpg.getEmergingItemsetsWithMinSupport(
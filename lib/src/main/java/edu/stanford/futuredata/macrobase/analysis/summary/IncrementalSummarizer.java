@@ -8,9 +8,15 @@ import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.Attribu
 import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetResult;
 import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetWithCount;
 import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import edu.stanford.futuredata.macrobase.datamodel.DataFrameView;
 import edu.stanford.futuredata.macrobase.datamodel.Schema;
+import edu.stanford.futuredata.macrobase.operator.Checkpointable;
 import edu.stanford.futuredata.macrobase.operator.IncrementalOperator;
+import edu.stanford.futuredata.macrobase.util.SnapshotIO;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
 import java.util.function.DoublePredicate;
 
@@ -21,8 +27,15 @@ import java.util.function.DoublePredicate;
  * This class searches for new candidate explanations based on the latest pane. Viable candidates
  * are promoted and tracked until their support drops below a certain threshold, at which point they
  * are retired.
+ *
+ * The pane and window counts, tracking map and encoder can be checkpointed. Itemsets are written
+ * once to a table and referred to by index, so the snapshot stays small even though each itemset
+ * appears in many of the count maps.
  */
-public class IncrementalSummarizer implements IncrementalOperator<Explanation> {
+public class IncrementalSummarizer implements IncrementalOperator<Explanation>, Checkpointable {
+    private static final int SNAPSHOT_MAGIC = 0x4d42494e;
+    private static final int SNAPSHOT_VERSION = 1;
+
     // Number of panes that we keep track in the summarizer
     private int numPanes;
     // Default parameters for the summarizer
@@ -46,6 +59,8 @@ public class IncrementalSummarizer implements IncrementalOperator<Explanation> {
     private Deque<Integer> inlierPaneCounts;
     private Deque<Integer> outlierPaneCounts;
     private HashMap<Set<Integer>, Integer> trackingMap = new HashMap<>();
+    // Posting lists reused by every pane
+    private final PaneCounter paneCounter = new PaneCounter();
 
     // Temp Intermediate Values
     private List<Integer> inlierCountCumSum;
@@ -117,20 +132,19 @@ public class IncrementalSummarizer implements IncrementalOperator<Explanation> {
      *   - outlierItemsets: Encoded outlier itemsets for this pane
      */
     private void encodeAttributes(DataFrame df) {
-        // Filter inliers and outliers
-        DataFrame outlierDF = df.filter(outlierColumn, predicate);
-        DataFrame inlierDF = df.filter(outlierColumn, predicate.negate());
+        // Select outliers and take the complement as inliers without copying columns
+        DataFrameView outlierRows = df.where(outlierColumn, predicate);
+        DataFrameView inlierRows = outlierRows.not();
 
         // Encode inlier and outlier attribute columns
-        if (attributes.isEmpty()) {
-            encoder.setColumnNames(df.getSchema().getColumnNamesByType(Schema.ColType.STRING));
-            inlierItemsets = encoder.encodeAttributesAsSets(inlierDF.getStringCols());
-            outlierItemsets = encoder.encodeAttributesAsSets(outlierDF.getStringCols());
-        } else {
-            encoder.setColumnNames(attributes);
-            inlierItemsets = encoder.encodeAttributesAsSets(inlierDF.getStringColsByName(attributes));
-            outlierItemsets = encoder.encodeAttributesAsSets(outlierDF.getStringColsByName(attributes));
-        }
+        List<String> attributeColumns = attributes.isEmpty()
+                ? df.getSchema().getColumnNamesByType(Schema.ColType.STRING)
+                : attributes;
+        encoder.setColumnNames(attributeColumns);
+        inlierItemsets = encoder.encodeDictionaryColumnsAsSets(
+                inlierRows.getEncodedStringColsByName(attributeColumns));
+        outlierItemsets = encoder.encodeDictionaryColumnsAsSets(
+                outlierRows.getEncodedStringColsByName(attributeColumns));
     }
 
     /* Helper function to calculate cumulative pane count. This way, the support from pane a to
@@ -205,24 +219,9 @@ public class IncrementalSummarizer implements IncrementalOperator<Explanation> {
      *   - inlierPaneCounts, outlierPaneCounts
      */
     private void addNewPane() {
-        inlierItemsetPaneCount = new HashMap<>();
-        outlierItemsetPaneCount = new HashMap<>();
-
         // Compute support for frequent itemsets in the new pane
-        for (Set<Integer> supportedItem : outlierItemsetWindowCount.keySet()) {
-            for (Set<Integer> itemset : inlierItemsets) {
-                if (itemset.containsAll(supportedItem)) {
-                    double curVal = inlierItemsetPaneCount.getOrDefault(supportedItem, 0.0);
-                    inlierItemsetPaneCount.put(supportedItem, curVal + 1);
-                }
-            }
-            for (Set<Integer> itemset : outlierItemsets) {
-                if (itemset.containsAll(supportedItem)) {
-                    double curVal = outlierItemsetPaneCount.getOrDefault(supportedItem, 0.0);
-                    outlierItemsetPaneCount.put(supportedItem, curVal + 1);
-                }
-            }
-        }
+        inlierItemsetPaneCount = paneCounter.count(inlierItemsets, outlierItemsetWindowCount.keySet());
+        outlierItemsetPaneCount = paneCounter.count(outlierItemsets, outlierItemsetWindowCount.keySet());
 
         // Update support for the window
         for (Set<Integer> itemset : outlierItemsetWindowCount.keySet()) {
@@ -235,6 +234,114 @@ public class IncrementalSummarizer implements IncrementalOperator<Explanation> {
         outlierPaneCounts.add(outlierItemsets.size());
     }
 
+    /* Counts the rows of a pane containing each itemset. Rows are indexed once into a sorted
+     * list of row numbers per tracked item, so each itemset costs a merge of its items' lists,
+     * starting from the shortest, instead of a scan over every row. The lists and merge buffers
+     * are kept and reused by the next pane. Counts are the same as checking every row with
+     * containsAll: only nonzero counts are recorded, and the empty itemset is contained in
+     * every row.
+     */
+    static class PaneCounter {
+        private static class Postings {
+            int[] rows = new int[16];
+            int length = 0;
+        }
+
+        private HashMap<Integer, Postings> postings = new HashMap<>();
+        private int[] merged = new int[16];
+        private int[] mergeOut = new int[16];
+
+        HashMap<Set<Integer>, Double> count(List<Set<Integer>> rows, Collection<Set<Integer>> itemsets) {
+            // Keep the lists of items still tracked, dropping the rest
+            HashMap<Integer, Postings> tracked = new HashMap<>();
+            for (Set<Integer> itemset : itemsets) {
+                for (int item : itemset) {
+                    if (!tracked.containsKey(item)) {
+                        Postings p = postings.get(item);
+                        if (p == null) {
+                            p = new Postings();
+                        }
+                        p.length = 0;
+                        tracked.put(item, p);
+                    }
+                }
+            }
+            postings = tracked;
+            int rowIdx = 0;
+            for (Set<Integer> row : rows) {
+                for (int item : row) {
+                    Postings p = postings.get(item);
+                    if (p != null) {
+                        if (p.length == p.rows.length) {
+                            p.rows = Arrays.copyOf(p.rows, 2 * p.length);
+                        }
+                        p.rows[p.length++] = rowIdx;
+                    }
+                }
+                rowIdx++;
+            }
+
+            HashMap<Set<Integer>, Double> counts = new HashMap<>();
+            List<Postings> lists = new ArrayList<>();
+            for (Set<Integer> itemset : itemsets) {
+                int count;
+                if (itemset.isEmpty()) {
+                    count = rows.size();
+                } else {
+                    lists.clear();
+                    for (int item : itemset) {
+                        lists.add(postings.get(item));
+                    }
+                    count = intersect(lists);
+                }
+                if (count > 0) {
+                    counts.put(itemset, (double) count);
+                }
+            }
+            return counts;
+        }
+
+        /**
+         * @return number of rows in every list
+         */
+        private int intersect(List<Postings> lists) {
+            if (lists.size() == 1) {
+                return lists.get(0).length;
+            }
+            lists.sort(Comparator.comparingInt(p -> p.length));
+            Postings shortest = lists.get(0);
+            if (merged.length < shortest.length) {
+                merged = new int[shortest.rows.length];
+                mergeOut = new int[shortest.rows.length];
+            }
+            System.arraycopy(shortest.rows, 0, merged, 0, shortest.length);
+            int length = shortest.length;
+            for (int l = 1; l < lists.size() && length > 0; l++) {
+                Postings p = lists.get(l);
+                int outLength = 0;
+                int j = 0;
+                for (int i = 0; i < length && j < p.length; ) {
+                    int a = merged[i];
+                    int b = p.rows[j];
+                    if (a == b) {
+                        mergeOut[outLength++] = a;
+                        i++;
+                        j++;
+                    } else if (a < b) {
+                        i++;
+                    } else {
+                        j++;
+                    }
+                }
+                int[] tmp = merged;
+                merged = mergeOut;
+                mergeOut = tmp;
+                length = outLength;
+            }
+            return length;
+        }
+    }
+
     /* This function checks whether all itemsets that we are currently tracking counts of
      * still have enough outlier support (from the pane it first got promoted till now).
      *
@@ -357,6 +464,142 @@ public class IncrementalSummarizer implements IncrementalOperator<Explanation> {
         return explanation;
     }
 
+    /**
+     * @return number of itemsets whose counts are currently tracked over the window
+     */
+    public int getNumTrackedItemsets() {
+        return trackingMap.size();
+    }
+
+    /**
+     * Write the parameters and counts of the summarizer. The outlier predicate is not written.
+     */
+    @Override
+    public void writeCheckpoint(DataOutputStream out) throws IOException {
+        SnapshotIO.writeHeader(out, SNAPSHOT_MAGIC, SNAPSHOT_VERSION);
+        out.writeInt(numPanes);
+        out.writeDouble(minOutlierSupport);
+        SnapshotIO.writeString(out, outlierColumn);
+        SnapshotIO.writeStrings(out, attributes);
+        encoder.writeTo(out);
+
+        // Table of every itemset referred to by the counts. The maps share key instances, and
+        // hashing by identity avoids the collisions of Set.hashCode on small item codes.
+        IdentityHashMap<Set<Integer>, Integer> itemsetIds = new IdentityHashMap<>();
+        List<Set<Integer>> itemsets = new ArrayList<>();
+        List<Map<Set<Integer>, ?>> maps = new ArrayList<>();
+        maps.addAll(inlierItemsetPaneCounts);
+        maps.addAll(outlierItemsetPaneCounts);
+        maps.add(inlierItemsetWindowCount);
+        maps.add(outlierItemsetWindowCount);
+        maps.add(trackingMap);
+        for (Map<Set<Integer>, ?> map : maps) {
+            for (Set<Integer> itemset : map.keySet()) {
+                if (!itemsetIds.containsKey(itemset)) {
+                    itemsetIds.put(itemset, itemsets.size());
+                    itemsets.add(itemset);
+                }
+            }
+        }
+        out.writeInt(itemsets.size());
+        for (Set<Integer> itemset : itemsets) {
+            out.writeInt(itemset.size());
+            for (int item : itemset) {
+                out.writeInt(item);
+            }
+        }
+
+        out.writeInt(inlierPaneCounts.size());
+        Iterator<Integer> inlierCounts = inlierPaneCounts.iterator();
+        Iterator<Integer> outlierCounts = outlierPaneCounts.iterator();
+        while (inlierCounts.hasNext()) {
+            out.writeInt(inlierCounts.next());
+            out.writeInt(outlierCounts.next());
+        }
+        out.writeInt(inlierItemsetPaneCounts.size());
+        Iterator<HashMap<Set<Integer>, Double>> inlierPanes = inlierItemsetPaneCounts.iterator();
+        Iterator<HashMap<Set<Integer>, Double>> outlierPanes = outlierItemsetPaneCounts.iterator();
+        while (inlierPanes.hasNext()) {
+            writeCounts(out, inlierPanes.next(), itemsetIds);
+            writeCounts(out, outlierPanes.next(), itemsetIds);
+        }
+        writeCounts(out, inlierItemsetWindowCount, itemsetIds);
+        writeCounts(out, outlierItemsetWindowCount, itemsetIds);
+        out.writeInt(trackingMap.size());
+        for (Map.Entry<Set<Integer>, Integer> e : trackingMap.entrySet()) {
+            out.writeInt(itemsetIds.get(e.getKey()));
+            out.writeInt(e.getValue());
+        }
+    }
+
+    @Override
+    public void restoreCheckpoint(DataInputStream in) throws IOException {
+        SnapshotIO.readHeader(in, SNAPSHOT_MAGIC, SNAPSHOT_VERSION);
+        setWindowSize(in.readInt());
+        initializePanes();
+        minOutlierSupport = in.readDouble();
+        outlierColumn = SnapshotIO.readString(in);
+        attributes = SnapshotIO.readStrings(in);
+        encoder = AttributeEncoder.readFrom(in);
+
+        int numItemsets = in.readInt();
+        List<Set<Integer>> itemsets = new ArrayList<>(numItemsets);
+        for (int i = 0; i < numItemsets; i++) {
+            int size = in.readInt();
+            Set<Integer> itemset = new HashSet<>(size);
+            for (int j = 0; j < size; j++) {
+                itemset.add(in.readInt());
+            }
+            itemsets.add(itemset);
+        }
+
+        int numPaneCounts = in.readInt();
+        for (int i = 0; i < numPaneCounts; i++) {
+            inlierPaneCounts.add(in.readInt());
+            outlierPaneCounts.add(in.readInt());
+        }
+        int numPaneMaps = in.readInt();
+        for (int i = 0; i < numPaneMaps; i++) {
+            inlierItemsetPaneCounts.add(readCounts(in, itemsets));
+            outlierItemsetPaneCounts.add(readCounts(in, itemsets));
+        }
+        inlierItemsetPaneCount = new HashMap<>();
+        outlierItemsetPaneCount = new HashMap<>();
+        inlierItemsetWindowCount = readCounts(in, itemsets);
+        outlierItemsetWindowCount = readCounts(in, itemsets);
+        int numTracked = in.readInt();
+        trackingMap = new HashMap<>(numTracked * 2);
+        for (int i = 0; i < numTracked; i++) {
+            Set<Integer> itemset = itemsets.get(in.readInt());
+            trackingMap.put(itemset, in.readInt());
+        }
+    }
+
+    private static void writeCounts(
+            DataOutputStream out,
+            Map<Set<Integer>, Double> counts,
+            Map<Set<Integer>, Integer> itemsetIds
+    ) throws IOException {
+        out.writeInt(counts.size());
+        for (Map.Entry<Set<Integer>, Double> e : counts.entrySet()) {
+            out.writeInt(itemsetIds.get(e.getKey()));
+            out.writeDouble(e.getValue());
+        }
+    }
+
+    private static HashMap<Set<Integer>, Double> readCounts(
+            DataInputStream in,
+            List<Set<Integer>> itemsets
+    ) throws IOException {
+        int size = in.readInt();
+        HashMap<Set<Integer>, Double> counts = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            Set<Integer> itemset = itemsets.get(in.readInt());
+            counts.put(itemset, in.readDouble());
+        }
+        return counts;
+    }
+
     /* Use a default risk ratio of 3 if the users don't specify the minimum required risk ratio. */
     @Override
     public Explanation getResults() {
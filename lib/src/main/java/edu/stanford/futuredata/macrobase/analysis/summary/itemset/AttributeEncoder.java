@@ -1,5 +1,11 @@
 package edu.stanford.futuredata.macrobase.analysis.summary.itemset;
 
+import edu.stanford.futuredata.macrobase.datamodel.DictionaryColumn;
+import edu.stanford.futuredata.macrobase.util.SnapshotIO;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -67,8 +73,70 @@ public class AttributeEncoder {
         return encodedAttributes;
     }
 
+    /**
+     * Encode dictionary-encoded columns. Each distinct dictionary entry is hashed at most
+     * once per call rather than once per row, and keys are assigned in the same order as
+     * encodeAttributes would assign them for the decoded columns.
+     * @param columns dictionary-encoded attribute columns
+     * @return encoded attribute values for each row
+     */
+    public List<int[]> encodeDictionaryColumns(List<DictionaryColumn> columns) {
+        if (columns.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        int d = columns.size();
+        int numRows = columns.get(0).getNumRows();
+
+        for (int i = 0; i < d; i++) {
+            if (!encoder.containsKey(i)) {
+                encoder.put(i, new HashMap<>());
+            }
+        }
+
+        ArrayList<int[]> encodedAttributes = new ArrayList<>(numRows);
+        for (int i = 0; i < numRows; i++) {
+            encodedAttributes.add(new int[d]);
+        }
+
+        for (int colIdx = 0; colIdx < d; colIdx++) {
+            Map<String, Integer> curColEncoder = encoder.get(colIdx);
+            DictionaryColumn curCol = columns.get(colIdx);
+            String[] dictionary = curCol.getDictionary();
+            int[] codes = curCol.getCodes();
+            // dictionary code -> key, resolved on the first row that uses each code
+            int[] codeKeys = new int[dictionary.length];
+            Arrays.fill(codeKeys, -1);
+            for (int rowIdx = 0; rowIdx < numRows; rowIdx++) {
+                int code = codes[rowIdx];
+                int curKey = codeKeys[code];
+                if (curKey < 0) {
+                    String colVal = dictionary[code];
+                    if (!curColEncoder.containsKey(colVal)) {
+                        curColEncoder.put(colVal, nextKey);
+                        valueDecoder.put(nextKey, colVal);
+                        columnDecoder.put(nextKey, colIdx);
+                        nextKey++;
+                    }
+                    curKey = curColEncoder.get(colVal);
+                    codeKeys[code] = curKey;
+                }
+                encodedAttributes.get(rowIdx)[colIdx] = curKey;
+            }
+        }
+
+        return encodedAttributes;
+    }
+
     public List<Set<Integer>> encodeAttributesAsSets(List<String[]> columns) {
-        List<int[]> arrays = encodeAttributes(columns);
+        return toSets(encodeAttributes(columns));
+    }
+
+    public List<Set<Integer>> encodeDictionaryColumnsAsSets(List<DictionaryColumn> columns) {
+        return toSets(encodeDictionaryColumns(columns));
+    }
+
+    private static List<Set<Integer>> toSets(List<int[]> arrays) {
         ArrayList<Set<Integer>> sets = new ArrayList<>(arrays.size());
         for (int[] row : arrays) {
             HashSet<Integer> curSet = new HashSet<>(row.length);
@@ -84,4 +152,33 @@ public class AttributeEncoder {
         return nextKey;
     }
 
+    /**
+     * Write the column names and the column and value of every key, in key order
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        SnapshotIO.writeStrings(out, colNames);
+        out.writeInt(nextKey);
+        for (int key = 0; key < nextKey; key++) {
+            out.writeInt(columnDecoder.get(key));
+            SnapshotIO.writeString(out, valueDecoder.get(key));
+        }
+    }
+
+    /**
+     * @return encoder that assigns the same keys as the one written, and continues from them
+     */
+    public static AttributeEncoder readFrom(DataInput in) throws IOException {
+        AttributeEncoder result = new AttributeEncoder();
+        result.colNames = SnapshotIO.readStrings(in);
+        int numKeys = in.readInt();
+        for (int key = 0; key < numKeys; key++) {
+            int colIdx = in.readInt();
+            String value = SnapshotIO.readString(in);
+            result.encoder.computeIfAbsent(colIdx, c -> new HashMap<>()).put(value, key);
+            result.valueDecoder.put(key, value);
+            result.columnDecoder.put(key, colIdx);
+        }
+        result.nextKey = numKeys;
+        return result;
+    }
 }
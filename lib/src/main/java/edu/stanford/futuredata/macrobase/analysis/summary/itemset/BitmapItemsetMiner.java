@@ -0,0 +1,293 @@
+package edu.stanford.futuredata.macrobase.analysis.summary.itemset;
+
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetWithCount;
+
+import java.util.*;
+
+/**
+ * Vertical itemset miner: stores the set of transaction ids of each item and finds
+ * supports by intersecting these sets. Sets are kept in one of two layouts, as in Roaring
+ * bitmaps: an item that appears in at least one in 32 transactions gets a bitmap, whose
+ * intersections run a word at a time, and a rarer item gets a sorted array of ids, which
+ * takes less space than the bitmap. So high-cardinality attributes, whose values are mostly
+ * rare, cost memory in proportion to their occurrences rather than to items times
+ * transactions. Both are much cheaper to intersect than FP-trees built out of
+ * per-transaction lists and hash maps are to traverse.
+ *
+ * Produces the same itemsets and counts as FPGrowth.getItemsetsWithSupportCount and
+ * FPGrowth.getCounts for unit-weight transactions. Instances are not thread-safe.
+ */
+public class BitmapItemsetMiner {
+    private final int numTransactions;
+    private final int numWords;
+    private final Map<Integer, TidSet> itemTids;
+    // reused by getSupport
+    private final long[] scratch;
+
+    /**
+     * Transaction ids of an itemset, as a bitmap when dense or a sorted array when sparse
+     */
+    private static class TidSet {
+        final long[] words;
+        final int[] tids;
+        final int count;
+
+        TidSet(long[] words, int count) {
+            this.words = words;
+            this.tids = null;
+            this.count = count;
+        }
+
+        TidSet(int[] tids, int count) {
+            this.words = null;
+            this.tids = tids;
+            this.count = count;
+        }
+
+        boolean contains(int tid) {
+            if (words != null) {
+                return (words[tid >>> 6] & (1L << tid)) != 0;
+            }
+            return Arrays.binarySearch(tids, 0, count, tid) >= 0;
+        }
+    }
+
+    /**
+     * @param transactions transactions to index, each counted once
+     * @param items items to index; other items are ignored
+     */
+    public BitmapItemsetMiner(List<Set<Integer>> transactions, Set<Integer> items) {
+        numTransactions = transactions.size();
+        numWords = (numTransactions + 63) >>> 6;
+        Map<Integer, int[]> itemCounts = new HashMap<>(items.size() * 2);
+        for (int item : items) {
+            itemCounts.put(item, new int[1]);
+        }
+        for (Set<Integer> t : transactions) {
+            for (int item : t) {
+                int[] count = itemCounts.get(item);
+                if (count != null) {
+                    count[0]++;
+                }
+            }
+        }
+        itemTids = new HashMap<>(items.size() * 2);
+        for (Map.Entry<Integer, int[]> e : itemCounts.entrySet()) {
+            int count = e.getValue()[0];
+            itemTids.put(e.getKey(), isDense(count) ?
+                    new TidSet(new long[numWords], count) : new TidSet(new int[count], count));
+            // reused as the fill position of sparse sets
+            e.getValue()[0] = 0;
+        }
+        int tid = 0;
+        for (Set<Integer> t : transactions) {
+            for (int item : t) {
+                TidSet s = itemTids.get(item);
+                if (s == null) {
+                    continue;
+                }
+                if (s.words != null) {
+                    s.words[tid >>> 6] |= 1L << tid;
+                } else {
+                    s.tids[itemCounts.get(item)[0]++] = tid;
+                }
+            }
+            tid++;
+        }
+        scratch = new long[numWords];
+    }
+
+    /**
+     * A sorted int array takes 32 bits per id and a bitmap one bit per transaction
+     */
+    private boolean isDense(int count) {
+        return count >= numTransactions >>> 5;
+    }
+
+    /**
+     * @return intersection of a and b in the layout that suits its size
+     */
+    private TidSet intersect(TidSet a, TidSet b) {
+        if (a.words != null && b.words != null) {
+            long[] out = new long[numWords];
+            int count = 0;
+            for (int w = 0; w < numWords; w++) {
+                long word = a.words[w] & b.words[w];
+                out[w] = word;
+                count += Long.bitCount(word);
+            }
+            if (isDense(count)) {
+                return new TidSet(out, count);
+            }
+            int[] tids = new int[count];
+            int i = 0;
+            for (int w = 0; w < numWords; w++) {
+                for (long word = out[w]; word != 0; word &= word - 1) {
+                    tids[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                }
+            }
+            return new TidSet(tids, count);
+        }
+        // at least one side is sparse, so the result is too
+        TidSet small = a.count <= b.count ? a : b;
+        TidSet large = small == a ? b : a;
+        int[] tids = new int[small.count];
+        int count = 0;
+        if (small.words == null && large.words == null) {
+            int j = 0;
+            for (int i = 0; i < small.count && j < large.count; ) {
+                int x = small.tids[i];
+                int y = large.tids[j];
+                if (x == y) {
+                    tids[count++] = x;
+                    i++;
+                    j++;
+                } else if (x < y) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+        } else {
+            int[] sparse = small.words == null ? small.tids : large.tids;
+            int sparseCount = small.words == null ? small.count : large.count;
+            long[] words = small.words == null ? large.words : small.words;
+            for (int i = 0; i < sparseCount; i++) {
+                int tid = sparse[i];
+                if ((words[tid >>> 6] & (1L << tid)) != 0) {
+                    tids[count++] = tid;
+                }
+            }
+        }
+        return new TidSet(tids, count);
+    }
+
+    /**
+     * @param supportCount minimum number of transactions an itemset must appear in,
+     *                     truncated to an integer as in FPGrowth
+     * @return all itemsets with at least the required support
+     */
+    public List<ItemsetWithCount> getItemsetsWithSupportCount(double supportCount) {
+        int countRequiredForSupport = (int) supportCount;
+        List<Integer> frequentItems = new ArrayList<>();
+        List<TidSet> frequentTids = new ArrayList<>();
+
+        // Visit items in descending frequency so that extensions shrink quickly
+        List<Map.Entry<Integer, TidSet>> entries = new ArrayList<>(itemTids.entrySet());
+        entries.sort((x, y) -> {
+            int cmp = -Integer.compare(x.getValue().count, y.getValue().count);
+            return cmp != 0 ? cmp : Integer.compare(x.getKey(), y.getKey());
+        });
+        for (Map.Entry<Integer, TidSet> e : entries) {
+            int count = e.getValue().count;
+            if (count > 0 && count >= countRequiredForSupport) {
+                frequentItems.add(e.getKey());
+                frequentTids.add(e.getValue());
+            }
+        }
+
+        List<ItemsetWithCount> ret = new ArrayList<>();
+        mine(new ArrayList<>(), frequentItems, frequentTids, countRequiredForSupport, ret);
+        return ret;
+    }
+
+    /**
+     * Depth-first search over extensions of prefix. Each candidate i is emitted together
+     * with prefix, and extended with the candidates after it.
+     */
+    private void mine(List<Integer> prefix,
+                      List<Integer> items,
+                      List<TidSet> tidSets,
+                      int countRequiredForSupport,
+                      List<ItemsetWithCount> ret) {
+        int n = items.size();
+        for (int i = 0; i < n; i++) {
+            prefix.add(items.get(i));
+            ret.add(new ItemsetWithCount(new HashSet<>(prefix), tidSets.get(i).count));
+
+            List<Integer> nextItems = new ArrayList<>();
+            List<TidSet> nextTids = new ArrayList<>();
+            for (int j = i + 1; j < n; j++) {
+                TidSet both = intersect(tidSets.get(i), tidSets.get(j));
+                if (both.count > 0 && both.count >= countRequiredForSupport) {
+                    nextItems.add(items.get(j));
+                    nextTids.add(both);
+                }
+            }
+            if (!nextItems.isEmpty()) {
+                mine(prefix, nextItems, nextTids, countRequiredForSupport, ret);
+            }
+            prefix.remove(prefix.size() - 1);
+        }
+    }
+
+    /**
+     * @param itemset items to count
+     * @return number of transactions containing every item, 0 if any item is not indexed.
+     * Every transaction contains the empty itemset.
+     */
+    public int getSupport(Set<Integer> itemset) {
+        if (itemset.isEmpty()) {
+            return numTransactions;
+        }
+        List<TidSet> sets = new ArrayList<>(itemset.size());
+        TidSet smallest = null;
+        for (int item : itemset) {
+            TidSet s = itemTids.get(item);
+            if (s == null) {
+                return 0;
+            }
+            sets.add(s);
+            if (smallest == null || s.count < smallest.count) {
+                smallest = s;
+            }
+        }
+        if (sets.size() == 1) {
+            return smallest.count;
+        }
+        if (smallest.words == null) {
+            // probe the other sets with each id of the rarest item
+            int count = 0;
+            for (int i = 0; i < smallest.count; i++) {
+                int tid = smallest.tids[i];
+                boolean inAll = true;
+                for (TidSet s : sets) {
+                    if (s != smallest && !s.contains(tid)) {
+                        inAll = false;
+                        break;
+                    }
+                }
+                if (inAll) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        // every set is a bitmap
+        System.arraycopy(smallest.words, 0, scratch, 0, numWords);
+        for (TidSet s : sets) {
+            if (s != smallest) {
+                for (int w = 0; w < numWords; w++) {
+                    scratch[w] &= s.words[w];
+                }
+            }
+        }
+        int count = 0;
+        for (long word : scratch) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * @param toCount itemsets to count
+     * @return itemsets with their support in the indexed transactions, in the same order
+     */
+    public List<ItemsetWithCount> getCounts(List<ItemsetWithCount> toCount) {
+        List<ItemsetWithCount> ret = new ArrayList<>(toCount.size());
+        for (ItemsetWithCount c : toCount) {
+            ret.add(new ItemsetWithCount(c.getItems(), getSupport(c.getItems())));
+        }
+        return ret;
+    }
+}
@@ -4,123 +4,134 @@ import com.google.common.collect.Sets;
 import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetWithCount;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 
 public class FPGrowth {
+    private int numThreads = 1;
+    private int parallelThreshold = 1000;
+
+    /**
+     * FP-tree stored as parallel arrays indexed by node id, with the root at index 0.
+     * Each node links to its first child and its next sibling, so building and mining a
+     * tree allocates a handful of arrays rather than an object and a child list per node.
+     */
     class FPTree {
-        private FPTreeNode root = new FPTreeNode(-1, null, 0);
+        private static final int ROOT = 0;
+        private static final int NONE = -1;
+
+        private int[] item;
+        private int[] parent;
+        private double[] count;
+        private int[] nextLink;
+        private int[] firstChild;
+        private int[] nextSibling;
+        private int numNodes;
+
         // used to calculate the order
         private Map<Integer, Double> frequentItemCounts = new HashMap<>();
 
         // item order -- need canonical to break ties; 0 is smallest, N is largest
-        private Map<Integer, Integer> frequentItemOrder = new HashMap<>();
-
-        protected Map<Integer, FPTreeNode> nodeHeaders = new HashMap<>();
-
-//        protected void printTreeDebug() {
-//            log.debug("Frequent Item Counts:");
-//            frequentItemCounts.entrySet().forEach(e -> log.debug(String.format("%d: %f", e.getKey(), e.getValue())));
-//
-//            walkTree(root, 1);
-//        }
-
-//        private void walkTree(FPTreeNode start, int treeDepth) {
-//            log.debug(String.format("%s node: %d, count: %f",
-//                                    new String(new char[treeDepth]).replaceAll("\0", "\t"),
-//                                    start.getItem(), start.getCount()));
-//            if (start.getChildren() != null) {
-//                for (FPTreeNode child : start.getChildren()) {
-//                    walkTree(child, treeDepth + 1);
-//                }
-//            }
-//        }
-
-        private class FPTreeNode {
-            private int item;
-            private double count;
-            private FPTreeNode nextLink;
-            private FPTreeNode parent;
-            private List<FPTreeNode> children;
-
-            public FPTreeNode(int item, FPTreeNode parent, int initialCount) {
-                this.item = item;
-                this.parent = parent;
-                this.count = initialCount;
-            }
-
-            public int getItem() {
-                return item;
-            }
-
-            public double getCount() {
-                return count;
-            }
-
-            public void incrementCount(double by) {
-                count += by;
-            }
-
-            public void setNextLink(FPTreeNode nextLink) {
-                this.nextLink = nextLink;
-            }
-
-            public FPTreeNode getNextLink() {
-                return nextLink;
-            }
-
-            public FPTreeNode getParent() {
-                return parent;
-            }
-
+        private LongIntHashTable frequentItemOrder = new LongIntHashTable();
+
+        // item -> most recently created node with that item
+        protected Map<Integer, Integer> nodeHeaders = new HashMap<>();
+
+        FPTree() {
+            int capacity = 16;
+            item = new int[capacity];
+            parent = new int[capacity];
+            count = new double[capacity];
+            nextLink = new int[capacity];
+            firstChild = new int[capacity];
+            nextSibling = new int[capacity];
+            numNodes = 0;
+            addNode(-1, NONE);
+        }
 
-            public List<FPTreeNode> getChildren() {
-                return children;
+        private int addNode(int nodeItem, int nodeParent) {
+            if (numNodes == item.length) {
+                int capacity = numNodes * 2;
+                item = Arrays.copyOf(item, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                count = Arrays.copyOf(count, capacity);
+                nextLink = Arrays.copyOf(nextLink, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
             }
+            int node = numNodes++;
+            item[node] = nodeItem;
+            parent[node] = nodeParent;
+            count[node] = 0;
+            nextLink[node] = NONE;
+            firstChild[node] = NONE;
+            nextSibling[node] = NONE;
+            return node;
+        }
 
-            // insert the transaction at this node starting with transaction[currentIndex]
-            // then find the child that matches
-            public void insertTransaction(List<Integer> fullTransaction,
-                                          int currentIndex,
-                                          final double transactionCount) {
-                incrementCount(transactionCount);
-
-                if (currentIndex == fullTransaction.size()) {
-                    return;
-                }
-
-                int currentItem = fullTransaction.get(currentIndex);
+        private long itemKey(int i) {
+            // never zero, which LongIntHashTable reserves for empty slots
+            return i ^ Long.MIN_VALUE;
+        }
 
-                FPTreeNode matchingChild = null;
+        private int getOrder(int i) {
+            return frequentItemOrder.get(itemKey(i));
+        }
 
-                if (children != null) {
-                    for (FPTreeNode child : children) {
-                        if (child.getItem() == currentItem) {
-                            matchingChild = child;
-                            break;
-                        }
-                    }
+        // insert the transaction at the root, following or creating the child for each
+        // item in turn
+        private void insertTransaction(int[] fullTransaction, int length, double transactionCount) {
+            int node = ROOT;
+            count[node] += transactionCount;
+            for (int i = 0; i < length; i++) {
+                int currentItem = fullTransaction[i];
+
+                int matchingChild = firstChild[node];
+                int lastChild = NONE;
+                while (matchingChild != NONE && item[matchingChild] != currentItem) {
+                    lastChild = matchingChild;
+                    matchingChild = nextSibling[matchingChild];
                 }
 
-                if (matchingChild == null) {
-                    matchingChild = new FPTreeNode(currentItem, this, 0);
-
-                    FPTreeNode prevHeader = nodeHeaders.get(currentItem);
-                    nodeHeaders.put(currentItem, matchingChild);
+                if (matchingChild == NONE) {
+                    matchingChild = addNode(currentItem, node);
 
+                    Integer prevHeader = nodeHeaders.put(currentItem, matchingChild);
                     if (prevHeader != null) {
-                        matchingChild.setNextLink(prevHeader);
+                        nextLink[matchingChild] = prevHeader;
                     }
 
-                    if (children == null) {
-                        children = new ArrayList<>();
+                    // append so that the first child stays the first one created
+                    if (lastChild == NONE) {
+                        firstChild[node] = matchingChild;
+                    } else {
+                        nextSibling[lastChild] = matchingChild;
                     }
-
-                    children.add(matchingChild);
                 }
 
-                matchingChild.insertTransaction(fullTransaction, currentIndex + 1, transactionCount);
+                node = matchingChild;
+                count[node] += transactionCount;
+            }
+        }
+
+        /**
+         * Keep only frequent items and sort them by descending order.
+         * @return number of items kept at the front of buffer
+         */
+        private int sortFrequent(Collection<Integer> items, int[] buffer, long[] sortKeys) {
+            int length = 0;
+            for (int i : items) {
+                int order = getOrder(i);
+                if (order >= 0) {
+                    sortKeys[length++] = ((long) order << 32) | (i & 0xffffffffL);
+                }
             }
+            Arrays.sort(sortKeys, 0, length);
+            for (int j = 0; j < length; j++) {
+                buffer[j] = (int) sortKeys[length - 1 - j];
+            }
+            return length;
         }
 
         public void setFrequentCounts(Map<Integer, Double> counts) {
@@ -154,7 +165,7 @@ public class FPGrowth {
             sortedItemCounts.sort((i1, i2) -> frequentItemCounts.get(i1.getKey())
                     .compareTo(frequentItemCounts.get(i2.getKey())));
             for (int i = 0; i < sortedItemCounts.size(); ++i) {
-                frequentItemOrder.put(sortedItemCounts.get(i).getKey(), i);
+                frequentItemOrder.put(itemKey(sortedItemCounts.get(i).getKey()), i);
             }
         }
 
@@ -174,33 +185,34 @@ public class FPGrowth {
                 }
             }
 
-            // we have to materialize a canonical order so that items with equal counts
-            // are consistently ordered when they are sorted during transaction insertion
-            List<Map.Entry<Integer, Double>> sortedItemCounts = new ArrayList<>(frequentItemCounts.entrySet());
-            sortedItemCounts.sort((i1, i2) -> frequentItemCounts.get(i1.getKey())
-                    .compareTo(frequentItemCounts.get(i2.getKey())));
-            for (int i = 0; i < sortedItemCounts.size(); ++i) {
-                frequentItemOrder.put(sortedItemCounts.get(i).getKey(), i);
-            }
+            sortFrequentItems();
         }
 
         public void insertConditionalFrequentPatterns(List<ItemsetWithCount> patterns) {
+            int[] buffer = new int[8];
+            long[] sortKeys = new long[8];
             for (ItemsetWithCount is : patterns) {
-                List<Integer> filtered = is.getItems().stream().filter(i -> frequentItemCounts.containsKey(i)).collect(
-                        Collectors.toList());
-                filtered.sort((i1, i2) -> frequentItemOrder.get(i2).compareTo(frequentItemOrder.get(i1)));
-                root.insertTransaction(filtered, 0, is.getCount());
+                int size = is.getItems().size();
+                if (size > buffer.length) {
+                    buffer = new int[size];
+                    sortKeys = new long[size];
+                }
+                int length = sortFrequent(is.getItems(), buffer, sortKeys);
+                insertTransaction(buffer, length, is.getCount());
             }
         }
 
         public void insertTransactions(List<Set<Integer>> transactions) {
+            int[] buffer = new int[8];
+            long[] sortKeys = new long[8];
             for (Set<Integer> t : transactions) {
-                List<Integer> filtered = t.stream().filter(i -> frequentItemCounts.containsKey(i)).collect(
-                        Collectors.toList());
-
-                if (!filtered.isEmpty()) {
-                    filtered.sort((i1, i2) -> frequentItemOrder.get(i2).compareTo(frequentItemOrder.get(i1)));
-                    root.insertTransaction(filtered, 0, 1);
+                if (t.size() > buffer.length) {
+                    buffer = new int[t.size()];
+                    sortKeys = new long[t.size()];
+                }
+                int length = sortFrequent(t, buffer, sortKeys);
+                if (length > 0) {
+                    insertTransaction(buffer, length, 1);
                 }
             }
         }
@@ -212,29 +224,37 @@ public class FPGrowth {
                 }
             }
 
-            List<Integer> plist = new ArrayList<>(pattern);
-            // traverse bottom to top
-            plist.sort((i1, i2) -> frequentItemOrder.get(i1).compareTo(frequentItemOrder.get(i2)));
+            // traverse bottom to top, starting from the least frequent item
+            int first = NONE;
+            int firstOrder = Integer.MAX_VALUE;
+            for (int i : pattern) {
+                int order = getOrder(i);
+                if (order < firstOrder) {
+                    firstOrder = order;
+                    first = i;
+                }
+            }
 
             int count = 0;
-            FPTreeNode pathHead = nodeHeaders.get(plist.get(0));
-            while (pathHead != null) {
-                FPTreeNode curNode = pathHead;
-                int itemsToFind = plist.size();
-
-                while (curNode != null) {
-                    if (pattern.contains(curNode.getItem())) {
+            Integer pathHead = nodeHeaders.get(first);
+            int head = pathHead == null ? NONE : pathHead;
+            while (head != NONE) {
+                int curNode = head;
+                int itemsToFind = pattern.size();
+
+                while (curNode != NONE) {
+                    if (pattern.contains(item[curNode])) {
                         itemsToFind -= 1;
                     }
 
                     if (itemsToFind == 0) {
-                        count += pathHead.count;
+                        count += this.count[head];
                         break;
                     }
 
-                    curNode = curNode.getParent();
+                    curNode = parent[curNode];
                 }
-                pathHead = pathHead.getNextLink();
+                head = nextLink[head];
             }
 
             return count;
@@ -246,38 +266,38 @@ public class FPGrowth {
             List<ItemsetWithCount> branchingItemsets = new ArrayList<>();
 
             // mine single-path itemsets first
-            FPTreeNode curNode = root;
-            FPTreeNode nodeOfBranching = null;
-            Set<FPTreeNode> singlePathNodes = new HashSet<>();
+            int curNode = ROOT;
+            int nodeOfBranching = NONE;
+            Set<Integer> singlePathNodes = new HashSet<>();
             while (true) {
-                if (curNode.children != null && curNode.children.size() > 1) {
+                if (firstChild[curNode] != NONE && nextSibling[firstChild[curNode]] != NONE) {
                     nodeOfBranching = curNode;
                     break;
                 }
 
-                if (curNode != root) {
+                if (curNode != ROOT) {
                     singlePathNodes.add(curNode);
                 }
 
-                if (curNode.children == null || curNode.children.size() == 0) {
+                if (firstChild[curNode] == NONE) {
                     break;
                 } else {
-                    curNode = curNode.children.get(0);
+                    curNode = firstChild[curNode];
                 }
             }
 
-            for (Set<FPTreeNode> subset : Sets.powerSet(singlePathNodes)) {
+            for (Set<Integer> subset : Sets.powerSet(singlePathNodes)) {
                 if (subset.isEmpty()) {
                     continue;
                 }
 
                 double minSupportInSubset = -1;
                 Set<Integer> items = new HashSet<>();
-                for (FPTreeNode n : subset) {
-                    items.add(n.getItem());
+                for (int n : subset) {
+                    items.add(item[n]);
 
-                    if (minSupportInSubset == -1 || n.getCount() < minSupportInSubset) {
-                        minSupportInSubset = n.getCount();
+                    if (minSupportInSubset == -1 || count[n] < minSupportInSubset) {
+                        minSupportInSubset = count[n];
                     }
                 }
 
@@ -286,7 +306,7 @@ public class FPGrowth {
             }
 
             // the entire tree was a single path...
-            if (nodeOfBranching == null) {
+            if (nodeOfBranching == NONE) {
                 return singlePathItemsets;
             }
 
@@ -299,39 +319,47 @@ public class FPGrowth {
             // instead store the nodes to skip in a separate set
 
             Set<Integer> alreadyMinedItems = new HashSet<>();
-            for (FPTreeNode node : singlePathNodes) {
-                alreadyMinedItems.add(node.getItem());
+            for (int node : singlePathNodes) {
+                alreadyMinedItems.add(item[node]);
             }
 
-            for (Map.Entry<Integer, FPTreeNode> header : nodeHeaders.entrySet()) {
+            int stopNode = parent[nodeOfBranching];
+            // conditional trees for each header item are independent, so they may be mined
+            // as separate tasks; results are collected in header order either way
+            List<Integer> headerItems = new ArrayList<>();
+            List<ItemsetWithCount> headerSingletons = new ArrayList<>();
+            List<ForkJoinTask<List<ItemsetWithCount>>> conditionalTasks = new ArrayList<>();
+            for (Map.Entry<Integer, Integer> header : nodeHeaders.entrySet()) {
                 if (alreadyMinedItems.contains(header.getKey())) {
                     continue;
                 }
 
                 // add the singleton item set
-                branchingItemsets.add(new ItemsetWithCount(Sets.newHashSet(header.getKey()),
-                                                           frequentItemCounts.get(header.getKey())));
+                headerItems.add(header.getKey());
+                headerSingletons.add(new ItemsetWithCount(Sets.newHashSet(header.getKey()),
+                                                          frequentItemCounts.get(header.getKey())));
+                conditionalTasks.add(null);
 
                 List<ItemsetWithCount> conditionalPatternBase = new ArrayList<>();
 
                 // walk each "leaf" node
-                FPTreeNode conditionalNode = header.getValue();
-                while (conditionalNode != null) {
-                    final double leafSupport = conditionalNode.getCount();
+                int conditionalNode = header.getValue();
+                while (conditionalNode != NONE) {
+                    final double leafSupport = count[conditionalNode];
 
                     // walk the tree up to the branch node
                     Set<Integer> conditionalPattern = new HashSet<>();
-                    FPTreeNode walkNode = conditionalNode.getParent();
-                    while (walkNode != nodeOfBranching.getParent() && walkNode != root) {
-                        conditionalPattern.add(walkNode.getItem());
-                        walkNode = walkNode.getParent();
+                    int walkNode = parent[conditionalNode];
+                    while (walkNode != stopNode && walkNode != ROOT) {
+                        conditionalPattern.add(item[walkNode]);
+                        walkNode = parent[walkNode];
                     }
 
                     if (conditionalPattern.size() > 0) {
                         conditionalPatternBase.add(new ItemsetWithCount(conditionalPattern, leafSupport));
                     }
 
-                    conditionalNode = conditionalNode.getNextLink();
+                    conditionalNode = nextLink[conditionalNode];
                 }
 
                 if (conditionalPatternBase.isEmpty()) {
@@ -339,14 +367,31 @@ public class FPGrowth {
                 }
 
                 // build and mine the conditional FPTree
-                FPTree conditionalTree = new FPTree();
-                conditionalTree.insertConditionalFrequentItems(conditionalPatternBase, supportCountRequired);
-                conditionalTree.insertConditionalFrequentPatterns(conditionalPatternBase);
-                List<ItemsetWithCount> conditionalFrequentItemsets = conditionalTree.mineItemsets(supportCountRequired);
+                ForkJoinTask<List<ItemsetWithCount>> task = ForkJoinTask.adapt(() -> {
+                    FPTree conditionalTree = new FPTree();
+                    conditionalTree.insertConditionalFrequentItems(conditionalPatternBase, supportCountRequired);
+                    conditionalTree.insertConditionalFrequentPatterns(conditionalPatternBase);
+                    return conditionalTree.mineItemsets(supportCountRequired);
+                });
+                if (numThreads > 1 && conditionalPatternBase.size() >= parallelThreshold) {
+                    task.fork();
+                } else {
+                    task.invoke();
+                }
+                conditionalTasks.set(conditionalTasks.size() - 1, task);
+            }
+
+            for (int h = 0; h < headerItems.size(); h++) {
+                branchingItemsets.add(headerSingletons.get(h));
+                ForkJoinTask<List<ItemsetWithCount>> task = conditionalTasks.get(h);
+                if (task == null) {
+                    continue;
+                }
+                List<ItemsetWithCount> conditionalFrequentItemsets = task.join();
 
                 if (!conditionalFrequentItemsets.isEmpty()) {
                     for (ItemsetWithCount is : conditionalFrequentItemsets) {
-                        is.getItems().add(header.getKey());
+                        is.getItems().add(headerItems.get(h));
                     }
 
                     branchingItemsets.addAll(conditionalFrequentItemsets);
@@ -375,9 +420,37 @@ public class FPGrowth {
 
             return ret;
         }
+
+        /**
+         * @return number of nodes in the tree, including the root
+         */
+        int getNumNodes() {
+            return numNodes;
+        }
     }
 
 
+    /**
+     * Mine conditional trees for different header items in parallel.
+     * @param numThreads number of threads to mine with, 1 by default
+     * @return this
+     */
+    public FPGrowth setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    /**
+     * @param parallelThreshold minimum number of patterns in a conditional pattern base for its
+     *                          tree to be mined as a separate task, 1000 by default. Smaller
+     *                          trees are mined on the current thread.
+     * @return this
+     */
+    public FPGrowth setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+        return this;
+    }
+
     public List<ItemsetWithCount> getItemsetsWithSupportRatio(List<Set<Integer>> transactions,
                                                               Double supportRatio) {
         return getItemsetsWithSupportRatio(transactions, null, supportRatio);
@@ -433,7 +506,17 @@ public class FPGrowth {
         //fp.printTreeDebug();
 
         st = System.currentTimeMillis();
-        List<ItemsetWithCount> ret = fp.mineItemsets(countRequiredForSupport);
+        List<ItemsetWithCount> ret;
+        if (numThreads > 1) {
+            ForkJoinPool pool = new ForkJoinPool(numThreads);
+            try {
+                ret = pool.invoke(ForkJoinTask.adapt(() -> fp.mineItemsets(countRequiredForSupport)));
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            ret = fp.mineItemsets(countRequiredForSupport);
+        }
         en = System.currentTimeMillis();
 
 //        log.debug("FPTree mine: {}", en - st);
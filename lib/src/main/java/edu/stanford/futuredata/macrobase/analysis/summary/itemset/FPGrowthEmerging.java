@@ -10,6 +10,8 @@ import java.util.*;
 
 public class FPGrowthEmerging {
     private boolean combinationsEnabled = true;
+    private boolean useBitmaps = false;
+    private int numThreads = 1;
 
     public FPGrowthEmerging() {};
     public FPGrowthEmerging setCombinationsEnabled(boolean flag) {
@@ -17,6 +19,26 @@ public class FPGrowthEmerging {
         return this;
     }
 
+    /**
+     * Mine itemsets and count inlier support with per-item bitmaps (BitmapItemsetMiner)
+     * instead of FP-trees. Faster when attributes have few distinct values.
+     * @param flag whether to use the bitmap miner, false by default
+     * @return this
+     */
+    public FPGrowthEmerging setUseBitmaps(boolean flag) {
+        this.useBitmaps = flag;
+        return this;
+    }
+
+    /**
+     * @param numThreads number of threads used to mine outlier itemsets with FPGrowth
+     * @return this
+     */
+    public FPGrowthEmerging setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
 
     private List<ItemsetResult> getSingletonItemsets(List<Set<Integer>> inliers,
                                                      List<Set<Integer>> outliers,
@@ -103,11 +125,17 @@ public class FPGrowthEmerging {
             }
         }
 
-        FPGrowth fpg = new FPGrowth();
-        List<ItemsetWithCount> iwc = fpg.getItemsetsWithSupportCount(
-                outlierTransactions,
-                supportedOutlierCounts,
-                outliers.size() * minSupport);
+        List<ItemsetWithCount> iwc;
+        if (useBitmaps) {
+            iwc = new BitmapItemsetMiner(outlierTransactions, supportedOutlierCounts.keySet())
+                    .getItemsetsWithSupportCount(outliers.size() * minSupport);
+        } else {
+            FPGrowth fpg = new FPGrowth().setNumThreads(numThreads);
+            iwc = fpg.getItemsetsWithSupportCount(
+                    outlierTransactions,
+                    supportedOutlierCounts,
+                    outliers.size() * minSupport);
+        }
 
         iwc.sort((x, y) -> x.getCount() != y.getCount() ?
                 -Double.compare(x.getCount(), y.getCount()) :
@@ -149,11 +177,17 @@ public class FPGrowthEmerging {
         }
 
         // check the ratios of any itemsets we just marked
-        FPGrowth inlierTree = new FPGrowth();
-        List<ItemsetWithCount> matchingInlierCounts = inlierTree.getCounts(inliers,
-                                                                           inlierCounts,
-                                                                           ratioItemsToCheck,
-                                                                           ratioSetsToCheck);
+        List<ItemsetWithCount> matchingInlierCounts;
+        if (useBitmaps) {
+            matchingInlierCounts = new BitmapItemsetMiner(inliers, ratioItemsToCheck)
+                    .getCounts(ratioSetsToCheck);
+        } else {
+            FPGrowth inlierTree = new FPGrowth();
+            matchingInlierCounts = inlierTree.getCounts(inliers,
+                                                        inlierCounts,
+                                                        ratioItemsToCheck,
+                                                        ratioSetsToCheck);
+        }
 
         assert (matchingInlierCounts.size() == ratioSetsToCheck.size());
         for (int i = 0; i < matchingInlierCounts.size(); ++i) {
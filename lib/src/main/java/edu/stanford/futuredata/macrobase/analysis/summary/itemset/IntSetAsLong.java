@@ -0,0 +1,60 @@
+package edu.stanford.futuredata.macrobase.analysis.summary.itemset;
+
+/**
+ * Packs sets of up to three small non-negative integers into a single long, so that
+ * low-order itemsets can be hashed and compared without allocating an IntSet.
+ * Values are stored sorted and offset by one in 21-bit fields, so 0 is never a
+ * valid packed set and sets of different sizes never collide.
+ */
+public class IntSetAsLong {
+    public static final int BITS_PER_VALUE = 21;
+    public static final int MAX_VALUE = (1 << BITS_PER_VALUE) - 2;
+    private static final long MASK = (1L << BITS_PER_VALUE) - 1;
+
+    public static long pack(int a) {
+        return a + 1;
+    }
+
+    public static long pack(int a, int b) {
+        if (a > b) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        return ((long) (a + 1) << BITS_PER_VALUE) | (b + 1);
+    }
+
+    public static long pack(int a, int b, int c) {
+        int t;
+        if (a > b) { t = a; a = b; b = t; }
+        if (b > c) { t = b; b = c; c = t; }
+        if (a > b) { t = a; a = b; b = t; }
+        return ((long) (a + 1) << (2 * BITS_PER_VALUE))
+                | ((long) (b + 1) << BITS_PER_VALUE)
+                | (c + 1);
+    }
+
+    public static int size(long packed) {
+        if ((packed >>> (2 * BITS_PER_VALUE)) != 0) {
+            return 3;
+        } else if ((packed >>> BITS_PER_VALUE) != 0) {
+            return 2;
+        } else {
+            return 1;
+        }
+    }
+
+    /**
+     * @param packed set packed by one of the pack methods
+     * @return values in the set, in ascending order
+     */
+    public static int[] unpack(long packed) {
+        int n = size(packed);
+        int[] values = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            values[i] = (int) (packed & MASK) - 1;
+            packed >>>= BITS_PER_VALUE;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,111 @@
+package edu.stanford.futuredata.macrobase.analysis.summary.itemset;
+
+/**
+ * Open-addressing hash table from long keys to int values with linear probing.
+ * Avoids boxing keys and values so that lookups in hot counting loops do not
+ * allocate. The key 0 is reserved to mark empty slots, which makes it a natural fit
+ * for itemsets packed with IntSetAsLong.
+ */
+public class LongIntHashTable {
+    private static final double MAX_LOAD = 0.5;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public LongIntHashTable() {
+        this(16);
+    }
+
+    public LongIntHashTable(int expectedSize) {
+        int capacity = 16;
+        while (capacity * MAX_LOAD < expectedSize) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private int findSlot(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @param key nonzero key
+     * @return value stored for key, or -1 if key is absent
+     */
+    public int get(long key) {
+        int slot = findSlot(key);
+        return keys[slot] == 0 ? -1 : values[slot];
+    }
+
+    public boolean containsKey(long key) {
+        return keys[findSlot(key)] != 0;
+    }
+
+    public void put(long key, int value) {
+        int slot = findSlot(key);
+        if (keys[slot] == 0) {
+            keys[slot] = key;
+            size++;
+            values[slot] = value;
+            if (size > keys.length * MAX_LOAD) {
+                resize();
+            }
+        } else {
+            values[slot] = value;
+        }
+    }
+
+    /**
+     * Single-probe lookup and insert.
+     * @param key nonzero key
+     * @param value value to associate with key if it is absent
+     * @return existing value for key, or -1 if value was inserted
+     */
+    public int putIfAbsent(long key, int value) {
+        int slot = findSlot(key);
+        if (keys[slot] != 0) {
+            return values[slot];
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size > keys.length * MAX_LOAD) {
+            resize();
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        int capacity = oldKeys.length << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
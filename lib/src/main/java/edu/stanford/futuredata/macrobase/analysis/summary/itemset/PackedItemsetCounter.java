@@ -0,0 +1,244 @@
+package edu.stanford.futuredata.macrobase.analysis.summary.itemset;
+
+import edu.stanford.futuredata.macrobase.util.MacrobaseInternalError;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Counts order 2 or order 3 itemsets over encoded rows without allocating per row.
+ * Candidate items are renumbered densely so that itemsets can be packed into longs
+ * with IntSetAsLong and looked up in a primitive open-addressing table. Each distinct
+ * itemset is assigned an index in order of first appearance, and counts are kept in
+ * arrays addressed by that index.
+ *
+ * Rows are only examined for candidate items; for order 3 a triple is only counted if
+ * its leading pair is extendable and the triple itself is a candidate.
+ */
+public class PackedItemsetCounter {
+    private final int order;
+    // encoded item -> dense rank among candidate items, -1 if not a candidate
+    private final int[] itemRanks;
+    private final int[] rankItems;
+    private final LongIntHashTable extendablePairs;
+    private final LongIntHashTable candidateSets;
+
+    private final LongIntHashTable setMapping;
+    private long[] setKeys;
+    private int[] counts;
+    private int[] oCounts;
+    private int numSets;
+
+    // Scratch space reused across rows
+    private int[] toExamine;
+
+    /**
+     * @param order size of the itemsets to count, 2 or 3
+     * @param numItems number of distinct encoded items
+     * @param candidateItems items which can participate in itemsets
+     * @param extendablePairs for order 3, pairs which can be extended to a triple
+     * @param candidateSets for order 3, triples which should be counted
+     */
+    public PackedItemsetCounter(
+            int order,
+            int numItems,
+            Set<Integer> candidateItems,
+            Set<IntSet> extendablePairs,
+            Set<IntSet> candidateSets
+    ) {
+        if (order != 2 && order != 3) {
+            throw new MacrobaseInternalError("Unsupported itemset order: " + order);
+        }
+        if (candidateItems.size() > IntSetAsLong.MAX_VALUE) {
+            throw new MacrobaseInternalError("Too many candidate items to pack: " + candidateItems.size());
+        }
+        this.order = order;
+
+        rankItems = new int[candidateItems.size()];
+        int r = 0;
+        for (int item : candidateItems) {
+            rankItems[r++] = item;
+        }
+        // ranks follow the encoded order so that packed sets unpack in ascending order
+        Arrays.sort(rankItems);
+        itemRanks = new int[numItems];
+        Arrays.fill(itemRanks, -1);
+        for (int i = 0; i < rankItems.length; i++) {
+            itemRanks[rankItems[i]] = i;
+        }
+
+        if (order == 3) {
+            this.extendablePairs = new LongIntHashTable(extendablePairs.size());
+            for (IntSet pair : extendablePairs) {
+                this.extendablePairs.put(IntSetAsLong.pack(
+                        itemRanks[pair.get(0)], itemRanks[pair.get(1)]), 0);
+            }
+            this.candidateSets = new LongIntHashTable(candidateSets.size());
+            for (IntSet triple : candidateSets) {
+                this.candidateSets.put(IntSetAsLong.pack(
+                        itemRanks[triple.get(0)], itemRanks[triple.get(1)], itemRanks[triple.get(2)]), 0);
+            }
+        } else {
+            this.extendablePairs = null;
+            this.candidateSets = null;
+        }
+
+        setMapping = new LongIntHashTable();
+        setKeys = new long[16];
+        counts = new int[16];
+        oCounts = new int[16];
+        numSets = 0;
+        toExamine = new int[8];
+    }
+
+    private PackedItemsetCounter(PackedItemsetCounter base) {
+        this.order = base.order;
+        this.itemRanks = base.itemRanks;
+        this.rankItems = base.rankItems;
+        this.extendablePairs = base.extendablePairs;
+        this.candidateSets = base.candidateSets;
+
+        setMapping = new LongIntHashTable();
+        setKeys = new long[16];
+        counts = new int[16];
+        oCounts = new int[16];
+        numSets = 0;
+        toExamine = new int[8];
+    }
+
+    /**
+     * Count itemsets in rows [startRow, endRow)
+     * @param encoded encoded attribute values for each row
+     * @param countCol number of raw events each row represents, or null if each row is one event
+     * @param outlierCol number of outlying events each row represents
+     * @param startRow first row to count
+     * @param endRow row after the last one to count
+     * @return this
+     */
+    public PackedItemsetCounter count(
+            List<int[]> encoded,
+            double[] countCol,
+            double[] outlierCol,
+            int startRow,
+            int endRow
+    ) {
+        boolean hasCountCol = countCol != null;
+        for (int i = startRow; i < endRow; i++) {
+            int[] curRow = encoded.get(i);
+            if (curRow.length > toExamine.length) {
+                toExamine = new int[curRow.length];
+            }
+            int l = 0;
+            for (int v : curRow) {
+                int rank = itemRanks[v];
+                if (rank >= 0) {
+                    toExamine[l++] = rank;
+                }
+            }
+
+            double count = hasCountCol ? countCol[i] : 1;
+            double oCount = outlierCol[i];
+            if (order == 2) {
+                for (int p1 = 0; p1 < l; p1++) {
+                    int p1v = toExamine[p1];
+                    for (int p2 = p1 + 1; p2 < l; p2++) {
+                        increment(IntSetAsLong.pack(p1v, toExamine[p2]), count, oCount);
+                    }
+                }
+            } else {
+                for (int p1 = 0; p1 < l; p1++) {
+                    int p1v = toExamine[p1];
+                    for (int p2 = p1 + 1; p2 < l; p2++) {
+                        int p2v = toExamine[p2];
+                        if (extendablePairs.containsKey(IntSetAsLong.pack(p1v, p2v))) {
+                            for (int p3 = p2 + 1; p3 < l; p3++) {
+                                long curSet = IntSetAsLong.pack(p1v, p2v, toExamine[p3]);
+                                if (candidateSets.containsKey(curSet)) {
+                                    increment(curSet, count, oCount);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return this;
+    }
+
+    private void increment(long key, double count, double oCount) {
+        int setIdx = getOrAddIndex(key);
+        counts[setIdx] += count;
+        oCounts[setIdx] += oCount;
+    }
+
+    private int getOrAddIndex(long key) {
+        int setIdx = setMapping.putIfAbsent(key, numSets);
+        if (setIdx < 0) {
+            setIdx = numSets;
+            if (numSets == setKeys.length) {
+                int newLength = numSets * 2;
+                setKeys = Arrays.copyOf(setKeys, newLength);
+                counts = Arrays.copyOf(counts, newLength);
+                oCounts = Arrays.copyOf(oCounts, newLength);
+            }
+            setKeys[numSets] = key;
+            numSets++;
+        }
+        return setIdx;
+    }
+
+    /**
+     * @return empty counter sharing the candidate items and filters of this counter,
+     * for counting a separate range of rows on another thread
+     */
+    public PackedItemsetCounter newPartition() {
+        return new PackedItemsetCounter(this);
+    }
+
+    /**
+     * Add the counts from another partition into this counter. Merging partitions in
+     * row order assigns the same set indices as counting all rows in a single pass.
+     * @param other counter created with newPartition
+     * @return this
+     */
+    public PackedItemsetCounter merge(PackedItemsetCounter other) {
+        for (int i = 0; i < other.numSets; i++) {
+            int setIdx = getOrAddIndex(other.setKeys[i]);
+            counts[setIdx] += other.counts[i];
+            oCounts[setIdx] += other.oCounts[i];
+        }
+        return this;
+    }
+
+    public int getNumSets() {
+        return numSets;
+    }
+
+    /**
+     * @param setIdx index of a counted itemset
+     * @return itemset in terms of the original encoded items
+     */
+    public IntSet getItemset(int setIdx) {
+        int[] ranks = IntSetAsLong.unpack(setKeys[setIdx]);
+        int[] items = new int[ranks.length];
+        for (int i = 0; i < ranks.length; i++) {
+            items[i] = rankItems[ranks[i]];
+        }
+        return new IntSet(items);
+    }
+
+    /**
+     * @return counts indexed by set index, may be longer than getNumSets()
+     */
+    public int[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * @return outlier counts indexed by set index, may be longer than getNumSets()
+     */
+    public int[] getOCounts() {
+        return oCounts;
+    }
+}
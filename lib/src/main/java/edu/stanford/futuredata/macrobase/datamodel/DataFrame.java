@@ -16,11 +16,21 @@ import java.util.function.Predicate;
  * The addColumn methods are the primary means of mutating a dataframe and are
  * especially useful during dataframe construction. DataFrames can also be
  * initialized from a schema and a set of rows.
+ *
+ * String columns can be stored either as String[] or dictionary-encoded as a
+ * DictionaryColumn. Dictionary-encoded columns are decoded on every request for
+ * String[] values rather than kept decoded, so they stay compact; string filters and
+ * views read their codes and dictionary directly instead. String[] columns are encoded
+ * on first request and the encoding is kept alongside them. Reading a dataframe from
+ * several threads at once is safe.
  */
 public class DataFrame {
     private Schema schema;
 
     private ArrayList<String[]> stringCols;
+    // dictionary-encoded string columns, stored at the same type-specific index as
+    // stringCols. At least one of the two representations is non-null for each column.
+    private ArrayList<DictionaryColumn> encodedStringCols;
     private ArrayList<double[]> doubleCols;
     // external indices define a global ordering on columns, but internally each
     // column is stored with other columns of its type. Thus external indices must be
@@ -32,6 +42,7 @@ public class DataFrame {
     public DataFrame() {
         this.schema = new Schema();
         this.stringCols = new ArrayList<>();
+        this.encodedStringCols = new ArrayList<>();
         this.doubleCols = new ArrayList<>();
         this.indexToTypeIndex = new ArrayList<>();
         this.numRows = 0;
@@ -55,7 +66,7 @@ public class DataFrame {
                 for (int i = 0; i < numRows; i++) {
                     colValues[i] = rows.get(i).<String>getAs(c);
                 }
-                addStringColumnInternal(colValues);
+                addStringColumnInternal(colValues, null);
             } else if (t == Schema.ColType.DOUBLE) {
                 double[] colValues = new double[numRows];
                 for (int i = 0; i < numRows; i++) {
@@ -79,6 +90,7 @@ public class DataFrame {
         other.indexToTypeIndex = new ArrayList<>(indexToTypeIndex);
         other.numRows = numRows;
         other.stringCols = new ArrayList<>(stringCols);
+        other.encodedStringCols = new ArrayList<>(encodedStringCols);
         other.doubleCols = new ArrayList<>(doubleCols);
         return other;
     }
@@ -86,7 +98,16 @@ public class DataFrame {
     public Schema getSchema() {return this.schema;}
     public int getNumRows() {return numRows;}
     public ArrayList<double[]> getDoubleCols() { return doubleCols; }
-    public ArrayList<String[]> getStringCols() { return stringCols; }
+    /**
+     * @return every string column, decoding dictionary-encoded ones into new arrays
+     */
+    public ArrayList<String[]> getStringCols() {
+        ArrayList<String[]> cols = new ArrayList<>(stringCols.size());
+        for (int i = 0; i < stringCols.size(); i++) {
+            cols.add(getStringColumnInternal(i));
+        }
+        return cols;
+    }
 
     public String toString() {
         return getRows().toString();
@@ -105,8 +126,9 @@ public class DataFrame {
         addDoubleColumnInternal(colValues);
         return this;
     }
-    private void addStringColumnInternal(String[] colValues) {
+    private void addStringColumnInternal(String[] colValues, DictionaryColumn encodedValues) {
         stringCols.add(colValues);
+        encodedStringCols.add(encodedValues);
         indexToTypeIndex.add(stringCols.size()-1);
     }
     public DataFrame addStringColumn(String colName, String[] colValues) {
@@ -114,9 +136,69 @@ public class DataFrame {
             numRows = colValues.length;
         }
         schema.addColumn(Schema.ColType.STRING, colName);
-        addStringColumnInternal(colValues);
+        addStringColumnInternal(colValues, null);
         return this;
     }
+    public DataFrame addEncodedStringColumn(String colName, DictionaryColumn colValues) {
+        if (numRows == 0) {
+            numRows = colValues.getNumRows();
+        }
+        schema.addColumn(Schema.ColType.STRING, colName);
+        addStringColumnInternal(null, colValues);
+        return this;
+    }
+
+    private String[] getStringColumnInternal(int typeIdx) {
+        String[] col = stringCols.get(typeIdx);
+        if (col == null) {
+            col = encodedStringCols.get(typeIdx).decode();
+        }
+        return col;
+    }
+    private DictionaryColumn getEncodedStringColumnInternal(int typeIdx) {
+        // Encodings are cached, so the slot is read and filled under a lock to keep
+        // concurrent readers from encoding the same column twice
+        synchronized (encodedStringCols) {
+            DictionaryColumn col = encodedStringCols.get(typeIdx);
+            if (col == null) {
+                col = DictionaryColumn.encode(stringCols.get(typeIdx));
+                encodedStringCols.set(typeIdx, col);
+            }
+            return col;
+        }
+    }
+    /**
+     * Select rows by a string column without decoding it if it is stored encoded
+     */
+    private RowSelection whereString(int columnIdx, Predicate<Object> filter) {
+        int typeIdx = indexToTypeIndex.get(columnIdx);
+        String[] col = stringCols.get(typeIdx);
+        if (col == null) {
+            return RowSelection.where(encodedStringCols.get(typeIdx), filter);
+        }
+        return RowSelection.where(col, filter);
+    }
+    /**
+     * @return values of a string column at the given rows, without decoding the rest of it
+     */
+    String[] getStringValuesByName(String columnName, int[] rowIndices) {
+        int typeIdx = indexToTypeIndex.get(schema.getColumnIndex(columnName));
+        String[] values = new String[rowIndices.length];
+        for (int i = 0; i < rowIndices.length; i++) {
+            values[i] = getStringValue(typeIdx, rowIndices[i]);
+        }
+        return values;
+    }
+    RowSelection whereString(String columnName, Predicate<Object> filter) {
+        return whereString(schema.getColumnIndex(columnName), filter);
+    }
+    private String getStringValue(int typeIdx, int rowIdx) {
+        String[] col = stringCols.get(typeIdx);
+        if (col == null) {
+            return encodedStringCols.get(typeIdx).getValue(rowIdx);
+        }
+        return col[rowIdx];
+    }
 
     protected int[] getSubIndices(List<Integer> columns) {
         int d = columns.size();
@@ -146,10 +228,10 @@ public class DataFrame {
         return getDoubleCols(this.schema.getColumnIndices(columns));
     }
     public String[] getStringColumn(int columnIdx) {
-        return stringCols.get(indexToTypeIndex.get(columnIdx));
+        return getStringColumnInternal(indexToTypeIndex.get(columnIdx));
     }
     public String[] getStringColumnByName(String columnName) {
-        return stringCols.get(indexToTypeIndex.get(schema.getColumnIndex(columnName)));
+        return getStringColumn(schema.getColumnIndex(columnName));
     }
     public ArrayList<String[]> getStringCols(List<Integer> columns) {
         ArrayList<String[]> cols = new ArrayList<>();
@@ -162,6 +244,29 @@ public class DataFrame {
         return getStringCols(this.schema.getColumnIndices(columns));
     }
 
+    /**
+     * String columns stored as String[] are encoded on first request and the
+     * encoding is kept, so repeated calls do not rehash the column.
+     * @param columnIdx index of a string column
+     * @return dictionary-encoded column
+     */
+    public DictionaryColumn getEncodedStringColumn(int columnIdx) {
+        return getEncodedStringColumnInternal(indexToTypeIndex.get(columnIdx));
+    }
+    public DictionaryColumn getEncodedStringColumnByName(String columnName) {
+        return getEncodedStringColumn(schema.getColumnIndex(columnName));
+    }
+    public ArrayList<DictionaryColumn> getEncodedStringCols(List<Integer> columns) {
+        ArrayList<DictionaryColumn> cols = new ArrayList<>();
+        for (int c : columns) {
+            cols.add(getEncodedStringColumn(c));
+        }
+        return cols;
+    }
+    public ArrayList<DictionaryColumn> getEncodedStringColsByName(List<String> columns) {
+        return getEncodedStringCols(this.schema.getColumnIndices(columns));
+    }
+
     /**
      * @param others Dataframes to combine
      * @return new dataframe with copied rows
@@ -186,16 +291,43 @@ public class DataFrame {
         for (int colIdx = 0; colIdx < d; colIdx++) {
             Schema.ColType t = combined.schema.getColumnType(colIdx);
             if (t == Schema.ColType.STRING) {
-                String[] newCol = new String[n];
-                int i = 0;
+                // Encoded columns sharing a dictionary can be combined without decoding
+                int firstTypeIdx = first.indexToTypeIndex.get(colIdx);
+                DictionaryColumn firstEncoded = first.encodedStringCols.get(firstTypeIdx);
+                boolean sharedDictionary = firstEncoded != null;
                 for (DataFrame curOther : others) {
-                    String[] otherCol = curOther.getStringColumn(colIdx);
-                    for (String curString : otherCol) {
-                        newCol[i] = curString;
-                        i++;
+                    DictionaryColumn otherEncoded = curOther.encodedStringCols.get(
+                            curOther.indexToTypeIndex.get(colIdx));
+                    if (otherEncoded == null
+                            || otherEncoded.getDictionary() != firstEncoded.getDictionary()) {
+                        sharedDictionary = false;
+                        break;
                     }
                 }
-                combined.stringCols.add(newCol);
+                if (sharedDictionary) {
+                    int[] newCodes = new int[n];
+                    int i = 0;
+                    for (DataFrame curOther : others) {
+                        int[] otherCodes = curOther.getEncodedStringColumn(colIdx).getCodes();
+                        System.arraycopy(otherCodes, 0, newCodes, i, otherCodes.length);
+                        i += otherCodes.length;
+                    }
+                    combined.stringCols.add(null);
+                    combined.encodedStringCols.add(
+                            new DictionaryColumn(newCodes, firstEncoded.getDictionary()));
+                } else {
+                    String[] newCol = new String[n];
+                    int i = 0;
+                    for (DataFrame curOther : others) {
+                        String[] otherCol = curOther.getStringColumn(colIdx);
+                        for (String curString : otherCol) {
+                            newCol[i] = curString;
+                            i++;
+                        }
+                    }
+                    combined.stringCols.add(newCol);
+                    combined.encodedStringCols.add(null);
+                }
             } else if (t == Schema.ColType.DOUBLE) {
                 double[] newCol = new double[n];
                 int i = 0;
@@ -225,7 +357,10 @@ public class DataFrame {
             String columnName = schema.getColumnName(c);
             Schema.ColType t = schema.getColumnType(c);
             if (t == Schema.ColType.STRING) {
-                other.addStringColumn(columnName, getStringColumn(c));
+                int typeIdx = indexToTypeIndex.get(c);
+                other.schema.addColumn(Schema.ColType.STRING, columnName);
+                other.addStringColumnInternal(stringCols.get(typeIdx), encodedStringCols.get(typeIdx));
+                other.numRows = numRows;
             } else if (t == Schema.ColType.DOUBLE) {
                 other.addDoubleColumn(columnName, getDoubleColumn(c));
             } else {
@@ -248,53 +383,50 @@ public class DataFrame {
      * @return new dataframe with subset of rows
      */
     protected DataFrame filter(boolean[] mask) {
+        return filter(RowSelection.fromMask(mask));
+    }
+
+    /**
+     * @param selection rows to select
+     * @return new dataframe with copies of every column for the selected rows
+     */
+    public DataFrame filter(RowSelection selection) {
         DataFrame other = new DataFrame();
 
         int d = schema.getNumColumns();
-        int numTrue = 0;
-        for (int i = 0; i < numRows; i++) {
-            if (mask[i]) {
-                numTrue++;
-            }
-        }
+        int[] indices = selection.getRowIndices();
+        int numTrue = indices.length;
         for (int c = 0; c < d; c++) {
             Schema.ColType t = schema.getColumnType(c);
             String columnName = schema.getColumnName(c);
-            if (t == Schema.ColType.STRING) {
+            if (t == Schema.ColType.STRING && encodedStringCols.get(indexToTypeIndex.get(c)) != null) {
+                other.addEncodedStringColumn(
+                        columnName,
+                        getEncodedStringColumn(c).select(indices)
+                );
+            } else if (t == Schema.ColType.STRING) {
                 String[] oldColumn = getStringColumn(c);
                 String[] newColumn = new String[numTrue];
-                int j = 0;
-                for (int i = 0; i < numRows; i++) {
-                    if (mask[i]) {
-                        newColumn[j] = oldColumn[i];
-                        j++;
-                    }
+                for (int j = 0; j < numTrue; j++) {
+                    newColumn[j] = oldColumn[indices[j]];
                 }
                 other.addStringColumn(columnName, newColumn);
             } else if (t == Schema.ColType.DOUBLE) {
                 double[] oldColumn = getDoubleColumn(c);
                 double[] newColumn = new double[numTrue];
-                int j = 0;
-                for (int i = 0; i < numRows; i++) {
-                    if (mask[i]) {
-                        newColumn[j] = oldColumn[i];
-                        j++;
-                    }
+                for (int j = 0; j < numTrue; j++) {
+                    newColumn[j] = oldColumn[indices[j]];
                 }
                 other.addDoubleColumn(columnName, newColumn);
             } else {
                 throw new MacrobaseInternalError("Bad Column Type");
             }
         }
+        other.numRows = numTrue;
         return other;
     }
     public DataFrame filter(int columnIdx, Predicate<Object> filter) {
-        String[] filterColumn = getStringColumn(columnIdx);
-        boolean[] mask = new boolean[numRows];
-        for (int i = 0; i < numRows; i++) {
-            mask[i] = filter.test(filterColumn[i]);
-        }
-        return filter(mask);
+        return filter(whereString(columnIdx, filter));
     }
     public DataFrame filter(String columnName, Predicate<Object> filter) {
         return filter(schema.getColumnIndex(columnName), filter);
@@ -306,12 +438,7 @@ public class DataFrame {
      * @return new dataframe with subset of rows
      */
     public DataFrame filter(int columnIdx, DoublePredicate filter) {
-        double[] filterColumn = getDoubleColumn(columnIdx);
-        boolean[] mask = new boolean[numRows];
-        for (int i = 0; i < numRows; i++) {
-            mask[i] = filter.test(filterColumn[i]);
-        }
-        return filter(mask);
+        return filter(RowSelection.where(getDoubleColumn(columnIdx), filter));
     }
 
     /**
@@ -323,6 +450,26 @@ public class DataFrame {
         return filter(schema.getColumnIndex(columnName), filter);
     }
 
+    /**
+     * @return view over every row of this dataframe
+     */
+    public DataFrameView view() {
+        return new DataFrameView(this, RowSelection.all(numRows));
+    }
+
+    /**
+     * Like filter, but returns a view over this dataframe instead of copying columns.
+     * @param columnName column name to filter by
+     * @param filter predicate to test each column value
+     * @return view of the rows passing the filter
+     */
+    public DataFrameView where(String columnName, DoublePredicate filter) {
+        return new DataFrameView(this, RowSelection.where(getDoubleColumnByName(columnName), filter));
+    }
+    public DataFrameView where(String columnName, Predicate<Object> filter) {
+        return new DataFrameView(this, whereString(columnName, filter));
+    }
+
     public Row getRow(int rowIdx) {
         int d = schema.getNumColumns();
         ArrayList<Object> rowValues = new ArrayList<>(d);
@@ -330,7 +477,7 @@ public class DataFrame {
             Schema.ColType t = schema.getColumnType(c);
             int typeSubIndex = indexToTypeIndex.get(c);
             if (t == Schema.ColType.STRING) {
-                rowValues.add(stringCols.get(typeSubIndex)[rowIdx]);
+                rowValues.add(getStringValue(typeSubIndex, rowIdx));
             } else if (t == Schema.ColType.DOUBLE) {
                 rowValues.add(doubleCols.get(typeSubIndex)[rowIdx]);
             } else {
@@ -372,13 +519,12 @@ public class DataFrame {
     public ArrayList<String[]> getStringRows(List<Integer> columns) {
         ArrayList<String[]> rows = new ArrayList<>(this.numRows);
         int d = columns.size();
-        int[] typeSubIndices = getSubIndices(columns);
+        ArrayList<String[]> cols = getStringCols(columns);
 
         for (int i = 0; i < this.numRows; i++) {
             String[] curRow = new String[d];
             for (int j = 0; j < d; j++) {
-                int colSubIndex = typeSubIndices[j];
-                curRow[j] = stringCols.get(colSubIndex)[i];
+                curRow[j] = cols.get(j)[i];
             }
             rows.add(curRow);
         }
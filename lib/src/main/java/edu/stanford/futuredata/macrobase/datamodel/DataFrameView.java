@@ -0,0 +1,113 @@
+package edu.stanford.futuredata.macrobase.datamodel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoublePredicate;
+import java.util.function.Predicate;
+
+/**
+ * Subset of the rows of a DataFrame, represented by a RowSelection over the original
+ * columns instead of copies of them. Views can be narrowed and combined cheaply;
+ * columns are only gathered into contiguous arrays when requested, and only the
+ * requested columns are gathered.
+ */
+public class DataFrameView {
+    private final DataFrame base;
+    private final RowSelection selection;
+    // selected row indices, computed on first column access
+    private volatile int[] rowIndices;
+
+    public DataFrameView(DataFrame base, RowSelection selection) {
+        this.base = base;
+        this.selection = selection;
+    }
+
+    public DataFrame getBase() { return base; }
+    public RowSelection getSelection() { return selection; }
+    public Schema getSchema() { return base.getSchema(); }
+    public int getNumRows() {
+        return getRowIndices().length;
+    }
+
+    private int[] getRowIndices() {
+        if (rowIndices == null) {
+            rowIndices = selection.getRowIndices();
+        }
+        return rowIndices;
+    }
+
+    /**
+     * @param other selection over the same base DataFrame
+     * @return view of rows selected by both
+     */
+    public DataFrameView and(RowSelection other) {
+        return new DataFrameView(base, selection.and(other));
+    }
+    public DataFrameView and(DataFrameView other) {
+        return and(other.selection);
+    }
+    public DataFrameView or(DataFrameView other) {
+        return new DataFrameView(base, selection.or(other.selection));
+    }
+
+    /**
+     * @return view of the rows of the base DataFrame not in this view
+     */
+    public DataFrameView not() {
+        return new DataFrameView(base, selection.not());
+    }
+
+    public DataFrameView where(String columnName, DoublePredicate filter) {
+        return and(RowSelection.where(base.getDoubleColumnByName(columnName), filter));
+    }
+    public DataFrameView where(String columnName, Predicate<Object> filter) {
+        return and(base.whereString(columnName, filter));
+    }
+
+    public double[] getDoubleColumnByName(String columnName) {
+        double[] column = base.getDoubleColumnByName(columnName);
+        int[] indices = getRowIndices();
+        double[] values = new double[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            values[i] = column[indices[i]];
+        }
+        return values;
+    }
+
+    /**
+     * @param columnName name of a string column
+     * @return codes of the selected rows, sharing the base column's dictionary
+     */
+    public DictionaryColumn getEncodedStringColumnByName(String columnName) {
+        return base.getEncodedStringColumnByName(columnName).select(getRowIndices());
+    }
+    public ArrayList<DictionaryColumn> getEncodedStringColsByName(List<String> columns) {
+        ArrayList<DictionaryColumn> cols = new ArrayList<>(columns.size());
+        for (String columnName : columns) {
+            cols.add(getEncodedStringColumnByName(columnName));
+        }
+        return cols;
+    }
+
+    /**
+     * @param columnName name of a string column
+     * @return values of the selected rows, read without decoding the whole base column
+     */
+    public String[] getStringColumnByName(String columnName) {
+        return base.getStringValuesByName(columnName, getRowIndices());
+    }
+    public ArrayList<String[]> getStringColsByName(List<String> columns) {
+        ArrayList<String[]> cols = new ArrayList<>(columns.size());
+        for (String columnName : columns) {
+            cols.add(getStringColumnByName(columnName));
+        }
+        return cols;
+    }
+
+    /**
+     * @return new DataFrame with copies of every column for the selected rows
+     */
+    public DataFrame materialize() {
+        return base.filter(selection);
+    }
+}
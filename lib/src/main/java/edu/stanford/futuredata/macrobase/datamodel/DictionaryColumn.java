@@ -0,0 +1,122 @@
+package edu.stanford.futuredata.macrobase.datamodel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Dictionary-encoded string column: each row stores an int code into a dictionary
+ * of distinct values. Columns with many repeated values take far less memory than
+ * a String[] with one object per row, and consumers such as AttributeEncoder can
+ * work with the codes directly instead of hashing every row.
+ *
+ * Columns are immutable. Derived columns (e.g. from selecting rows) share the
+ * dictionary of the column they came from, so the dictionary may contain values
+ * that no row refers to.
+ */
+public class DictionaryColumn {
+    private final int[] codes;
+    private final String[] dictionary;
+
+    public DictionaryColumn(int[] codes, String[] dictionary) {
+        this.codes = codes;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @param values column to encode
+     * @return column with codes assigned in order of first appearance
+     */
+    public static DictionaryColumn encode(String[] values) {
+        Builder builder = new Builder(values.length);
+        for (String v : values) {
+            builder.add(v);
+        }
+        return builder.build();
+    }
+
+    public int getNumRows() {
+        return codes.length;
+    }
+    public int[] getCodes() {
+        return codes;
+    }
+    public String[] getDictionary() {
+        return dictionary;
+    }
+    public int getCode(int rowIdx) {
+        return codes[rowIdx];
+    }
+    public String getValue(int rowIdx) {
+        return dictionary[codes[rowIdx]];
+    }
+
+    /**
+     * @return column values; rows with the same value share the same String object
+     */
+    public String[] decode() {
+        int n = codes.length;
+        String[] values = new String[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = dictionary[codes[i]];
+        }
+        return values;
+    }
+
+    /**
+     * @param rowIndices rows to select
+     * @return new column with subset of rows, sharing this column's dictionary
+     */
+    public DictionaryColumn select(int[] rowIndices) {
+        int[] newCodes = new int[rowIndices.length];
+        for (int j = 0; j < rowIndices.length; j++) {
+            newCodes[j] = codes[rowIndices[j]];
+        }
+        return new DictionaryColumn(newCodes, dictionary);
+    }
+
+    /**
+     * Appends values one at a time, assigning dictionary codes in order of first appearance.
+     */
+    public static class Builder {
+        private int[] codes;
+        private int numRows;
+        private HashMap<String, Integer> valueCodes;
+        private ArrayList<String> values;
+
+        public Builder() {
+            this(16);
+        }
+        public Builder(int expectedRows) {
+            codes = new int[Math.max(expectedRows, 1)];
+            numRows = 0;
+            valueCodes = new HashMap<>();
+            values = new ArrayList<>();
+        }
+
+        public int add(String value) {
+            Integer code = valueCodes.get(value);
+            if (code == null) {
+                code = values.size();
+                valueCodes.put(value, code);
+                values.add(value);
+            }
+            if (numRows == codes.length) {
+                codes = Arrays.copyOf(codes, numRows * 2);
+            }
+            codes[numRows++] = code;
+            return code;
+        }
+
+        public int getNumRows() {
+            return numRows;
+        }
+
+        public DictionaryColumn build() {
+            return new DictionaryColumn(
+                    Arrays.copyOf(codes, numRows),
+                    values.toArray(new String[0])
+            );
+        }
+    }
+}
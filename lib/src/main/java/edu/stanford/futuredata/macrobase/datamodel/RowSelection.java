@@ -0,0 +1,181 @@
+package edu.stanford.futuredata.macrobase.datamodel;
+
+import edu.stanford.futuredata.macrobase.util.MacrobaseInternalError;
+
+import java.util.function.DoublePredicate;
+import java.util.function.Predicate;
+
+/**
+ * Immutable bitmap of selected rows out of a fixed number of rows. Selections are
+ * evaluated once per predicate and combined with and / or / not a word at a time,
+ * so repeated filters over the same DataFrame do not rescan or copy its columns.
+ */
+public class RowSelection {
+    private final long[] words;
+    private final int numRows;
+
+    private RowSelection(long[] words, int numRows) {
+        this.words = words;
+        this.numRows = numRows;
+    }
+
+    /**
+     * @param numRows number of rows
+     * @return selection of every row
+     */
+    public static RowSelection all(int numRows) {
+        long[] words = new long[numWords(numRows)];
+        for (int w = 0; w < words.length; w++) {
+            words[w] = -1L;
+        }
+        clearTail(words, numRows);
+        return new RowSelection(words, numRows);
+    }
+
+    public static RowSelection fromMask(boolean[] mask) {
+        long[] words = new long[numWords(mask.length)];
+        for (int i = 0; i < mask.length; i++) {
+            if (mask[i]) {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+        return new RowSelection(words, mask.length);
+    }
+
+    /**
+     * @param column values to test
+     * @param filter predicate to test each value
+     * @return selection of rows whose values pass the predicate
+     */
+    public static RowSelection where(double[] column, DoublePredicate filter) {
+        long[] words = new long[numWords(column.length)];
+        for (int i = 0; i < column.length; i++) {
+            if (filter.test(column[i])) {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+        return new RowSelection(words, column.length);
+    }
+
+    public static RowSelection where(Object[] column, Predicate<Object> filter) {
+        long[] words = new long[numWords(column.length)];
+        for (int i = 0; i < column.length; i++) {
+            if (filter.test(column[i])) {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+        return new RowSelection(words, column.length);
+    }
+
+    /**
+     * Tests the predicate once per dictionary value instead of once per row
+     * @param column dictionary-encoded values to test
+     * @param filter predicate to test each value
+     * @return selection of rows whose values pass the predicate
+     */
+    public static RowSelection where(DictionaryColumn column, Predicate<Object> filter) {
+        String[] dictionary = column.getDictionary();
+        boolean[] passes = new boolean[dictionary.length];
+        for (int c = 0; c < dictionary.length; c++) {
+            passes[c] = filter.test(dictionary[c]);
+        }
+        int[] codes = column.getCodes();
+        long[] words = new long[numWords(codes.length)];
+        for (int i = 0; i < codes.length; i++) {
+            if (passes[codes[i]]) {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+        return new RowSelection(words, codes.length);
+    }
+
+    private static int numWords(int numRows) {
+        return (numRows + 63) >>> 6;
+    }
+
+    private static void clearTail(long[] words, int numRows) {
+        int tail = numRows & 63;
+        if (tail != 0) {
+            words[words.length - 1] &= (1L << tail) - 1;
+        }
+    }
+
+    private void checkCompatible(RowSelection other) {
+        if (other.numRows != numRows) {
+            throw new MacrobaseInternalError("Mismatched selection sizes");
+        }
+    }
+
+    public RowSelection and(RowSelection other) {
+        checkCompatible(other);
+        long[] newWords = new long[words.length];
+        for (int w = 0; w < words.length; w++) {
+            newWords[w] = words[w] & other.words[w];
+        }
+        return new RowSelection(newWords, numRows);
+    }
+
+    public RowSelection or(RowSelection other) {
+        checkCompatible(other);
+        long[] newWords = new long[words.length];
+        for (int w = 0; w < words.length; w++) {
+            newWords[w] = words[w] | other.words[w];
+        }
+        return new RowSelection(newWords, numRows);
+    }
+
+    public RowSelection not() {
+        long[] newWords = new long[words.length];
+        for (int w = 0; w < words.length; w++) {
+            newWords[w] = ~words[w];
+        }
+        clearTail(newWords, numRows);
+        return new RowSelection(newWords, numRows);
+    }
+
+    /**
+     * @return total number of rows, selected or not
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return number of selected rows
+     */
+    public int getNumSelected() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public boolean isSelected(int rowIdx) {
+        return (words[rowIdx >>> 6] & (1L << rowIdx)) != 0;
+    }
+
+    /**
+     * @return indices of the selected rows in ascending order
+     */
+    public int[] getRowIndices() {
+        int[] indices = new int[getNumSelected()];
+        int j = 0;
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while (word != 0) {
+                indices[j++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return indices;
+    }
+
+    public boolean[] toMask() {
+        boolean[] mask = new boolean[numRows];
+        for (int i = 0; i < numRows; i++) {
+            mask[i] = isSelected(i);
+        }
+        return mask;
+    }
+}
@@ -1,22 +1,42 @@
 package edu.stanford.futuredata.macrobase.ingest;
 
 import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
-import edu.stanford.futuredata.macrobase.datamodel.Row;
+import edu.stanford.futuredata.macrobase.datamodel.DictionaryColumn;
 import edu.stanford.futuredata.macrobase.datamodel.Schema;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+/**
+ * Loads a CSV file with a header row into a DataFrame, parsing records straight into
+ * column arrays. String columns are dictionary-encoded as they are read.
+ *
+ * With more than one thread the file is split into chunks on line boundaries which
+ * are parsed in parallel and then concatenated in file order, giving the same
+ * DataFrame as a sequential load. The file can also be streamed as a sequence of chunk
+ * DataFrames with loadChunks. Parallel and chunked loading assume that quoted fields do
+ * not contain line breaks.
+ */
 public class CSVDataFrameLoader implements DataFrameLoader {
+    // Target size of each chunk of the file parsed as a separate task
+    private static final long CHUNK_BYTES = 32L << 20;
+    // Smaller chunks when streaming so that consumers can start early
+    private static final long STREAM_CHUNK_BYTES = 4L << 20;
+
     private String fileName;
     private Map<String, Schema.ColType> columnTypes;
     private int badRecords;
+    private int numThreads = 1;
 
     public CSVDataFrameLoader(String fileName){
         this.fileName = fileName;
@@ -28,56 +48,254 @@ public class CSVDataFrameLoader implements DataFrameLoader {
         return this;
     }
 
+    /**
+     * @param numThreads number of threads to parse the file with, 1 by default.
+     * @return this
+     */
+    public CSVDataFrameLoader setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
     @Override
     public DataFrame load() throws Exception {
+        this.badRecords = 0;
+        if (numThreads > 1) {
+            return loadParallel();
+        }
+
         File csvFile = new File(fileName);
         CSVParser csvParser = CSVParser.parse(
                 csvFile,
                 Charset.defaultCharset(),
                 CSVFormat.DEFAULT.withHeader()
         );
+        String[] columnNameList = getColumnNames(csvParser.getHeaderMap());
+        Schema.ColType[] columnTypeList = getColumnTypes(columnNameList);
+        ColumnChunk columns = parseRecords(csvParser, columnTypeList);
+        csvParser.close();
 
-        Map<String, Integer> headerMap = csvParser.getHeaderMap();
-        int numColumns = headerMap.size();
+        // Make sure to generate the schema in the right order
+        DataFrame df = new DataFrame();
+        for (int c = 0; c < columnNameList.length; c++) {
+            if (columns.stringCols[c] != null) {
+                df.addEncodedStringColumn(columnNameList[c], columns.stringCols[c]);
+            } else {
+                df.addDoubleColumn(columnNameList[c], columns.doubleCols[c]);
+            }
+        }
+        return df;
+    }
 
-        String[] columnNameList = new String[numColumns];
-        Schema.ColType[] columnTypeList = new Schema.ColType[numColumns];
+    private String[] getColumnNames(Map<String, Integer> headerMap) {
+        String[] columnNameList = new String[headerMap.size()];
         for (String columnName: headerMap.keySet()) {
-            int columnIndex = headerMap.get(columnName);
-            Schema.ColType t = columnTypes.getOrDefault(columnName, Schema.ColType.STRING);
-            columnNameList[columnIndex] = columnName;
-            columnTypeList[columnIndex] = t;
+            columnNameList[headerMap.get(columnName)] = columnName;
         }
-        // Make sure to generate the schema in the right order
-        Schema schema = new Schema();
+        return columnNameList;
+    }
+
+    private Schema.ColType[] getColumnTypes(String[] columnNameList) {
+        Schema.ColType[] columnTypeList = new Schema.ColType[columnNameList.length];
+        for (int c = 0; c < columnNameList.length; c++) {
+            Schema.ColType t = columnTypes.getOrDefault(columnNameList[c], Schema.ColType.STRING);
+            if (t != Schema.ColType.STRING && t != Schema.ColType.DOUBLE) {
+                throw new RuntimeException("Bad ColType");
+            }
+            columnTypeList[c] = t;
+        }
+        return columnTypeList;
+    }
+
+    /**
+     * Columns parsed from a contiguous run of records
+     */
+    private static class ColumnChunk {
+        DictionaryColumn[] stringCols;
+        double[][] doubleCols;
+        int numRows;
+    }
+
+    private static ColumnChunk parseRecords(Iterable<CSVRecord> records, Schema.ColType[] columnTypeList) {
+        int numColumns = columnTypeList.length;
+        DictionaryColumn.Builder[] stringBuilders = new DictionaryColumn.Builder[numColumns];
+        double[][] doubleValues = new double[numColumns][];
+        int capacity = 16;
         for (int c = 0; c < numColumns; c++) {
-            schema.addColumn(columnTypeList[c], columnNameList[c]);
+            if (columnTypeList[c] == Schema.ColType.STRING) {
+                stringBuilders[c] = new DictionaryColumn.Builder(capacity);
+            } else {
+                doubleValues[c] = new double[capacity];
+            }
         }
 
-        this.badRecords = 0;
-        ArrayList<Row> rows = new ArrayList<>();
-        for (CSVRecord record : csvParser) {
-            ArrayList<Object> rowFields = new ArrayList<>(numColumns);
+        int numRows = 0;
+        for (CSVRecord record : records) {
+            if (numRows == capacity) {
+                capacity *= 2;
+                for (int c = 0; c < numColumns; c++) {
+                    if (doubleValues[c] != null) {
+                        doubleValues[c] = Arrays.copyOf(doubleValues[c], capacity);
+                    }
+                }
+            }
             for (int c = 0; c < numColumns; c++) {
-                Schema.ColType t = columnTypeList[c];
                 String rowValue = record.get(c);
-                if (t == Schema.ColType.STRING) {
-                    rowFields.add(rowValue);
-                } else if (t == Schema.ColType.DOUBLE) {
+                if (stringBuilders[c] != null) {
+                    stringBuilders[c].add(rowValue);
+                } else {
                     try {
-                        rowFields.add(Double.parseDouble(rowValue));
+                        doubleValues[c][numRows] = Double.parseDouble(rowValue);
                     } catch (NumberFormatException e) {
-                        rowFields.add(Double.NaN);
+                        doubleValues[c][numRows] = Double.NaN;
                     }
-                } else {
-                    throw new RuntimeException("Bad ColType");
                 }
             }
-            rows.add(new Row(rowFields));
+            numRows++;
         }
 
-        DataFrame df = new DataFrame(schema, rows);
-        return df;
+        ColumnChunk chunk = new ColumnChunk();
+        chunk.numRows = numRows;
+        chunk.stringCols = new DictionaryColumn[numColumns];
+        chunk.doubleCols = new double[numColumns][];
+        for (int c = 0; c < numColumns; c++) {
+            if (stringBuilders[c] != null) {
+                chunk.stringCols[c] = stringBuilders[c].build();
+            } else {
+                chunk.doubleCols[c] = Arrays.copyOf(doubleValues[c], numRows);
+            }
+        }
+        return chunk;
+    }
+
+    private DataFrame loadParallel() throws Exception {
+        DataFrameChunkMerger merger = new DataFrameChunkMerger();
+        forEachChunk(CHUNK_BYTES, merger::add);
+        return merger.build();
+    }
+
+    /**
+     * Load the file as a sequence of DataFrames, each holding a run of consecutive rows.
+     * Chunks are parsed with the configured number of threads and put on the queue in file
+     * order, blocking while the queue is full. At most one chunk per thread is parsed ahead
+     * of the queue, so a full queue also pauses parsing. Combining the chunks with a
+     * DataFrameChunkMerger gives the same DataFrame as load().
+     * @param chunks queue to put chunks on as they are parsed
+     * @throws Exception if the file cannot be read
+     */
+    public void loadChunks(BlockingQueue<DataFrame> chunks) throws Exception {
+        this.badRecords = 0;
+        forEachChunk(STREAM_CHUNK_BYTES, chunks::put);
+    }
+
+    private interface ChunkConsumer {
+        void accept(DataFrame chunk) throws Exception;
+    }
+
+    private void forEachChunk(long chunkBytes, ChunkConsumer consumer) throws Exception {
+        Charset charset = Charset.defaultCharset();
+        long fileLength;
+        long dataStart;
+        List<Long> boundaries = new ArrayList<>();
+        String[] columnNameList;
+        try (RandomAccessFile f = new RandomAccessFile(fileName, "r")) {
+            fileLength = f.length();
+            dataStart = findNextLineStart(f, 0);
+            byte[] headerBytes = new byte[(int) dataStart];
+            f.seek(0);
+            f.readFully(headerBytes);
+            CSVParser headerParser = CSVParser.parse(
+                    new String(headerBytes, charset),
+                    CSVFormat.DEFAULT.withHeader()
+            );
+            columnNameList = getColumnNames(headerParser.getHeaderMap());
+
+            // Split the rest of the file into chunks that end on line boundaries
+            long dataLength = fileLength - dataStart;
+            int numChunks = (int) Math.max(numThreads, (dataLength + chunkBytes - 1) / chunkBytes);
+            boundaries.add(dataStart);
+            for (int p = 1; p < numChunks; p++) {
+                long target = dataStart + dataLength * p / numChunks;
+                long boundary = Math.max(findNextLineStart(f, target), boundaries.get(boundaries.size() - 1));
+                boundaries.add(boundary);
+            }
+            boundaries.add(fileLength);
+        }
+        Schema.ColType[] columnTypeList = getColumnTypes(columnNameList);
+
+        // Only numThreads chunks are parsed ahead of the consumer, so a consumer that blocks
+        // holds back parsing instead of letting parsed chunks pile up in memory
+        int numChunks = boundaries.size() - 1;
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            ArrayDeque<Future<ColumnChunk>> parsing = new ArrayDeque<>(numThreads);
+            int nextChunk = 0;
+            while (nextChunk < numChunks && parsing.size() < numThreads) {
+                parsing.add(submitChunk(pool, boundaries, nextChunk++, charset, columnTypeList));
+            }
+            while (!parsing.isEmpty()) {
+                ColumnChunk chunk = parsing.poll().get();
+                DataFrame df = new DataFrame();
+                for (int c = 0; c < columnNameList.length; c++) {
+                    if (columnTypeList[c] == Schema.ColType.STRING) {
+                        df.addEncodedStringColumn(columnNameList[c], chunk.stringCols[c]);
+                    } else {
+                        df.addDoubleColumn(columnNameList[c], chunk.doubleCols[c]);
+                    }
+                }
+                consumer.accept(df);
+                if (nextChunk < numChunks) {
+                    parsing.add(submitChunk(pool, boundaries, nextChunk++, charset, columnTypeList));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Future<ColumnChunk> submitChunk(
+            ForkJoinPool pool,
+            List<Long> boundaries,
+            int p,
+            Charset charset,
+            Schema.ColType[] columnTypeList
+    ) {
+        long start = boundaries.get(p);
+        long end = boundaries.get(p + 1);
+        return pool.submit(() -> parseChunk(start, end, charset, columnTypeList));
+    }
+
+    private ColumnChunk parseChunk(long start, long end, Charset charset, Schema.ColType[] columnTypeList)
+            throws Exception {
+        byte[] bytes = new byte[(int) (end - start)];
+        try (RandomAccessFile f = new RandomAccessFile(fileName, "r")) {
+            f.seek(start);
+            f.readFully(bytes);
+        }
+        CSVParser parser = new CSVParser(
+                new InputStreamReader(new ByteArrayInputStream(bytes), charset),
+                CSVFormat.DEFAULT
+        );
+        return parseRecords(parser, columnTypeList);
+    }
+
+    /**
+     * @return offset just past the first newline at or after pos, or the file length
+     */
+    private static long findNextLineStart(RandomAccessFile f, long pos) throws Exception {
+        long length = f.length();
+        byte[] buffer = new byte[4096];
+        f.seek(pos);
+        while (pos < length) {
+            int n = f.read(buffer);
+            for (int i = 0; i < n; i++) {
+                if (buffer[i] == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return length;
     }
 
     public int getBadRecords() {
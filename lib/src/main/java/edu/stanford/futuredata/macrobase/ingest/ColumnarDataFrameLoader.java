@@ -0,0 +1,138 @@
+package edu.stanford.futuredata.macrobase.ingest;
+
+import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import edu.stanford.futuredata.macrobase.datamodel.DictionaryColumn;
+import edu.stanford.futuredata.macrobase.datamodel.Schema;
+import edu.stanford.futuredata.macrobase.util.MacrobaseException;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads a DataFrame from the binary columnar format written by ColumnarFileWriter.
+ * Column blocks are memory-mapped and copied into column arrays with bulk reads, so
+ * loading costs little more than reading the file and no parsing is done. Dictionary
+ * encoded string columns are loaded without materializing a String per row.
+ *
+ * Columns keep the types they were written with. A column stored as STRING may be
+ * requested as DOUBLE, in which case each distinct value is parsed once, with
+ * unparseable values becoming NaN as in CSVDataFrameLoader.
+ */
+public class ColumnarDataFrameLoader implements DataFrameLoader {
+    private String fileName;
+    private Map<String, Schema.ColType> columnTypes;
+
+    public ColumnarDataFrameLoader(String fileName) {
+        this.fileName = fileName;
+        this.columnTypes = new HashMap<>();
+    }
+
+    @Override
+    public DataFrameLoader setColumnTypes(Map<String, Schema.ColType> types) {
+        this.columnTypes = types;
+        return this;
+    }
+
+    @Override
+    public DataFrame load() throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            FileChannel channel = file.getChannel();
+            long fileLength = channel.size();
+            if (fileLength < ColumnarFormat.HEADER_BYTES + ColumnarFormat.TRAILER_BYTES) {
+                throw new MacrobaseException("Not a columnar DataFrame file: " + fileName);
+            }
+            ByteBuffer header = map(channel, 0, ColumnarFormat.HEADER_BYTES);
+            ByteBuffer trailer = map(channel, fileLength - ColumnarFormat.TRAILER_BYTES, ColumnarFormat.TRAILER_BYTES);
+            long footerOffset = trailer.getLong();
+            if (header.getInt() != ColumnarFormat.MAGIC || trailer.getInt() != ColumnarFormat.MAGIC) {
+                throw new MacrobaseException("Not a columnar DataFrame file: " + fileName);
+            }
+            int version = header.getInt();
+            if (version != ColumnarFormat.VERSION) {
+                throw new MacrobaseException("Unsupported columnar file version: " + version);
+            }
+
+            ByteBuffer footer = map(channel, footerOffset,
+                    fileLength - ColumnarFormat.TRAILER_BYTES - footerOffset);
+            int numRows = footer.getInt();
+            int numColumns = footer.getInt();
+            DataFrame df = new DataFrame();
+            for (int c = 0; c < numColumns; c++) {
+                String name = getString(footer);
+                byte type = footer.get();
+                long offset = footer.getLong();
+                long length = footer.getLong();
+                ByteBuffer block = map(channel, offset, length);
+
+                Schema.ColType requestedType = columnTypes.get(name);
+                if (type == ColumnarFormat.TYPE_DOUBLE) {
+                    if (requestedType != null && requestedType != Schema.ColType.DOUBLE) {
+                        throw new MacrobaseException("Column " + name + " is stored as DOUBLE");
+                    }
+                    double[] values = new double[numRows];
+                    block.asDoubleBuffer().get(values);
+                    df.addDoubleColumn(name, values);
+                } else if (type == ColumnarFormat.TYPE_STRING) {
+                    DictionaryColumn col = getDictionaryColumn(block, numRows);
+                    if (requestedType == Schema.ColType.DOUBLE) {
+                        df.addDoubleColumn(name, parseDoubles(col));
+                    } else {
+                        df.addEncodedStringColumn(name, col);
+                    }
+                } else {
+                    throw new MacrobaseException("Bad column type in " + fileName + ": " + type);
+                }
+            }
+            return df;
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long length) throws Exception {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        buffer.order(ColumnarFormat.ORDER);
+        return buffer;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, ColumnarFormat.CHARSET);
+    }
+
+    private static DictionaryColumn getDictionaryColumn(ByteBuffer block, int numRows) {
+        int dictionarySize = block.getInt();
+        String[] dictionary = new String[dictionarySize];
+        for (int i = 0; i < dictionarySize; i++) {
+            dictionary[i] = getString(block);
+        }
+        int[] codes = new int[numRows];
+        block.slice().order(ColumnarFormat.ORDER).asIntBuffer().get(codes);
+        return new DictionaryColumn(codes, dictionary);
+    }
+
+    private static double[] parseDoubles(DictionaryColumn col) {
+        String[] dictionary = col.getDictionary();
+        double[] dictionaryValues = new double[dictionary.length];
+        for (int i = 0; i < dictionary.length; i++) {
+            try {
+                dictionaryValues[i] = Double.parseDouble(dictionary[i]);
+            } catch (NullPointerException | NumberFormatException e) {
+                dictionaryValues[i] = Double.NaN;
+            }
+        }
+        int[] codes = col.getCodes();
+        double[] values = new double[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            values[i] = dictionaryValues[codes[i]];
+        }
+        return values;
+    }
+}
@@ -0,0 +1,128 @@
+package edu.stanford.futuredata.macrobase.ingest;
+
+import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import edu.stanford.futuredata.macrobase.datamodel.DictionaryColumn;
+import edu.stanford.futuredata.macrobase.datamodel.Schema;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a DataFrame in the binary columnar format described in ColumnarFormat, so that
+ * later analyses can load it with ColumnarDataFrameLoader instead of re-parsing CSV.
+ * String columns are written with their dictionary encoding.
+ */
+public class ColumnarFileWriter {
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private long position;
+
+    public void write(DataFrame df, String fileName) throws IOException {
+        Schema schema = df.getSchema();
+        int numColumns = schema.getNumColumns();
+        int numRows = df.getNumRows();
+        long[] offsets = new long[numColumns];
+        long[] lengths = new long[numColumns];
+
+        buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ColumnarFormat.ORDER);
+        position = 0;
+        try (FileOutputStream out = new FileOutputStream(fileName)) {
+            channel = out.getChannel();
+            putInt(ColumnarFormat.MAGIC);
+            putInt(ColumnarFormat.VERSION);
+
+            for (int c = 0; c < numColumns; c++) {
+                offsets[c] = position;
+                if (schema.getColumnType(c) == Schema.ColType.DOUBLE) {
+                    for (double v : df.getDoubleColumn(c)) {
+                        putDouble(v);
+                    }
+                } else {
+                    DictionaryColumn col = df.getEncodedStringColumn(c);
+                    String[] dictionary = col.getDictionary();
+                    putInt(dictionary.length);
+                    for (String value : dictionary) {
+                        putString(value);
+                    }
+                    for (int code : col.getCodes()) {
+                        putInt(code);
+                    }
+                }
+                lengths[c] = position - offsets[c];
+            }
+
+            long footerOffset = position;
+            putInt(numRows);
+            putInt(numColumns);
+            for (int c = 0; c < numColumns; c++) {
+                putString(schema.getColumnName(c));
+                ensureRemaining(1);
+                buffer.put(schema.getColumnType(c) == Schema.ColType.DOUBLE
+                        ? ColumnarFormat.TYPE_DOUBLE
+                        : ColumnarFormat.TYPE_STRING);
+                position++;
+                putLong(offsets[c]);
+                putLong(lengths[c]);
+            }
+            putLong(footerOffset);
+            putInt(ColumnarFormat.MAGIC);
+            flush();
+        } finally {
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    private void putInt(int v) throws IOException {
+        ensureRemaining(4);
+        buffer.putInt(v);
+        position += 4;
+    }
+
+    private void putLong(long v) throws IOException {
+        ensureRemaining(8);
+        buffer.putLong(v);
+        position += 8;
+    }
+
+    private void putDouble(double v) throws IOException {
+        ensureRemaining(8);
+        buffer.putDouble(v);
+        position += 8;
+    }
+
+    private void putString(String s) throws IOException {
+        if (s == null) {
+            putInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(ColumnarFormat.CHARSET);
+        putInt(bytes.length);
+        int written = 0;
+        while (written < bytes.length) {
+            ensureRemaining(1);
+            int n = Math.min(buffer.remaining(), bytes.length - written);
+            buffer.put(bytes, written, n);
+            written += n;
+        }
+        position += bytes.length;
+    }
+
+    private void ensureRemaining(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,35 @@
+package edu.stanford.futuredata.macrobase.ingest;
+
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the binary columnar DataFrame format written by ColumnarFileWriter and
+ * read by ColumnarDataFrameLoader. All values are little-endian.
+ *
+ * <pre>
+ * header:  magic (int), version (int)
+ * blocks:  one per column, in schema order
+ *          DOUBLE: numRows doubles
+ *          STRING: dictionary size (int), each value as byte length (int, -1 for null)
+ *                  + UTF-8 bytes,
+ *                  then numRows int codes
+ * footer:  numRows (int), numColumns (int),
+ *          per column: name length (int) + UTF-8 name, type (byte),
+ *                      block offset (long), block length (long)
+ * trailer: footer offset (long), magic (int)
+ * </pre>
+ */
+class ColumnarFormat {
+    static final int MAGIC = 0x4d424346; // "MBCF"
+    static final int VERSION = 1;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    static final int HEADER_BYTES = 8;
+    static final int TRAILER_BYTES = 12;
+
+    static final byte TYPE_STRING = 0;
+    static final byte TYPE_DOUBLE = 1;
+}
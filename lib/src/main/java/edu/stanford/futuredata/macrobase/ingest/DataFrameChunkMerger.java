@@ -0,0 +1,130 @@
+package edu.stanford.futuredata.macrobase.ingest;
+
+import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import edu.stanford.futuredata.macrobase.datamodel.DictionaryColumn;
+import edu.stanford.futuredata.macrobase.datamodel.Schema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Concatenates chunks of a DataFrame, in the order they are added, as they arrive.
+ * String columns are merged into a single dictionary with codes assigned in order of first
+ * appearance, hashing each distinct value once per chunk, so combining the chunks of a file
+ * gives the same DataFrame as loading it in one piece.
+ */
+public class DataFrameChunkMerger {
+    private String[] columnNames;
+    private Schema.ColType[] columnTypes;
+
+    private List<List<double[]>> doubleChunks;
+    private List<List<int[]>> codeChunks;
+    private List<HashMap<String, Integer>> valueCodes;
+    private List<ArrayList<String>> values;
+    private int numRows;
+
+    /**
+     * @param chunk next rows, with the same schema as earlier chunks
+     * @return this
+     */
+    public DataFrameChunkMerger add(DataFrame chunk) {
+        if (columnNames == null) {
+            initialize(chunk.getSchema());
+        }
+        for (int c = 0; c < columnNames.length; c++) {
+            if (columnTypes[c] == Schema.ColType.DOUBLE) {
+                doubleChunks.get(c).add(chunk.getDoubleColumn(c));
+            } else {
+                codeChunks.get(c).add(remapCodes(c, chunk.getEncodedStringColumn(c)));
+            }
+        }
+        numRows += chunk.getNumRows();
+        return this;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return all rows added so far, with no columns if no chunks were added
+     */
+    public DataFrame build() {
+        DataFrame df = new DataFrame();
+        if (columnNames == null) {
+            return df;
+        }
+        for (int c = 0; c < columnNames.length; c++) {
+            if (columnTypes[c] == Schema.ColType.DOUBLE) {
+                double[] colValues = new double[numRows];
+                int offset = 0;
+                for (double[] chunkValues : doubleChunks.get(c)) {
+                    System.arraycopy(chunkValues, 0, colValues, offset, chunkValues.length);
+                    offset += chunkValues.length;
+                }
+                df.addDoubleColumn(columnNames[c], colValues);
+            } else {
+                int[] codes = new int[numRows];
+                int offset = 0;
+                for (int[] chunkCodes : codeChunks.get(c)) {
+                    System.arraycopy(chunkCodes, 0, codes, offset, chunkCodes.length);
+                    offset += chunkCodes.length;
+                }
+                df.addEncodedStringColumn(
+                        columnNames[c],
+                        new DictionaryColumn(codes, values.get(c).toArray(new String[0]))
+                );
+            }
+        }
+        return df;
+    }
+
+    private void initialize(Schema schema) {
+        int numColumns = schema.getNumColumns();
+        columnNames = new String[numColumns];
+        columnTypes = new Schema.ColType[numColumns];
+        doubleChunks = new ArrayList<>(numColumns);
+        codeChunks = new ArrayList<>(numColumns);
+        valueCodes = new ArrayList<>(numColumns);
+        values = new ArrayList<>(numColumns);
+        for (int c = 0; c < numColumns; c++) {
+            columnNames[c] = schema.getColumnName(c);
+            columnTypes[c] = schema.getColumnType(c);
+            boolean isDouble = columnTypes[c] == Schema.ColType.DOUBLE;
+            doubleChunks.add(isDouble ? new ArrayList<>() : null);
+            codeChunks.add(isDouble ? null : new ArrayList<>());
+            valueCodes.add(isDouble ? null : new HashMap<>());
+            values.add(isDouble ? null : new ArrayList<>());
+        }
+    }
+
+    private int[] remapCodes(int c, DictionaryColumn chunkCol) {
+        HashMap<String, Integer> curValueCodes = valueCodes.get(c);
+        ArrayList<String> curValues = values.get(c);
+        String[] chunkDictionary = chunkCol.getDictionary();
+        int[] chunkCodes = chunkCol.getCodes();
+
+        // Only map dictionary entries the chunk actually uses, in row order
+        int[] codeMapping = new int[chunkDictionary.length];
+        Arrays.fill(codeMapping, -1);
+        int[] codes = new int[chunkCodes.length];
+        for (int i = 0; i < chunkCodes.length; i++) {
+            int chunkCode = chunkCodes[i];
+            int code = codeMapping[chunkCode];
+            if (code < 0) {
+                Integer existing = curValueCodes.get(chunkDictionary[chunkCode]);
+                if (existing == null) {
+                    existing = curValues.size();
+                    curValueCodes.put(chunkDictionary[chunkCode], existing);
+                    curValues.add(chunkDictionary[chunkCode]);
+                }
+                code = existing;
+                codeMapping[chunkCode] = code;
+            }
+            codes[i] = code;
+        }
+        return codes;
+    }
+}
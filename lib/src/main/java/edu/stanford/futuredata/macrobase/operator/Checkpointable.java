@@ -0,0 +1,19 @@
+package edu.stanford.futuredata.macrobase.operator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Operator whose state can be saved and later restored, so that a restarted streaming job
+ * picks up where it left off instead of waiting a full window for results.
+ * Parameters that cannot be written, such as predicates, must be set again before restoring.
+ */
+public interface Checkpointable {
+    void writeCheckpoint(DataOutputStream out) throws IOException;
+
+    /**
+     * Replace the state of this operator with a saved one
+     */
+    void restoreCheckpoint(DataInputStream in) throws IOException;
+}
@@ -0,0 +1,115 @@
+package edu.stanford.futuredata.macrobase.operator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically saves the state of an operator to a file.
+ * The state is serialized into memory on the calling thread, between minibatches, so the
+ * snapshot is consistent; the file is written on a background thread and moved into place
+ * once complete, so a crash mid-write leaves the previous checkpoint intact.
+ */
+public class Checkpointer implements Closeable {
+    private static Logger log = LoggerFactory.getLogger(Checkpointer.class);
+
+    private final Checkpointable target;
+    private final File file;
+    private final long intervalMillis;
+    private final ExecutorService writer;
+
+    private long lastCheckpointTime;
+    private int lastSnapshotBytes = 0;
+    private long numCheckpoints = 0;
+
+    /**
+     * @param target operator to save
+     * @param file file to save to
+     * @param intervalMillis minimum time between checkpoints
+     */
+    public Checkpointer(Checkpointable target, File file, long intervalMillis) {
+        this.target = target;
+        this.file = file;
+        this.intervalMillis = intervalMillis;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.lastCheckpointTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Save a checkpoint if the interval has passed since the last one, call between minibatches
+     * @return whether a checkpoint was taken
+     */
+    public boolean checkpointIfDue() throws IOException {
+        if (System.currentTimeMillis() - lastCheckpointTime < intervalMillis) {
+            return false;
+        }
+        checkpoint();
+        return true;
+    }
+
+    public void checkpoint() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            target.writeCheckpoint(out);
+        }
+        byte[] snapshot = bytes.toByteArray();
+        lastSnapshotBytes = snapshot.length;
+        lastCheckpointTime = System.currentTimeMillis();
+        numCheckpoints++;
+        writer.submit(() -> {
+            try {
+                File tmp = new File(file.getPath() + ".tmp");
+                Files.write(tmp.toPath(), snapshot);
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                log.error("Failed to write checkpoint {}", file, e);
+            }
+        });
+    }
+
+    /**
+     * Restore the target from the checkpoint file, if there is one
+     * @return whether a checkpoint was restored
+     */
+    public boolean restore() throws IOException {
+        if (!file.isFile()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            target.restoreCheckpoint(in);
+        }
+        return true;
+    }
+
+    public int getLastSnapshotBytes() {
+        return lastSnapshotBytes;
+    }
+
+    public long getNumCheckpoints() {
+        return numCheckpoints;
+    }
+
+    /**
+     * Wait for pending checkpoints to be written
+     */
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package edu.stanford.futuredata.macrobase.operator;
+
+import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import edu.stanford.futuredata.macrobase.datamodel.DictionaryColumn;
+import edu.stanford.futuredata.macrobase.datamodel.Schema;
+import edu.stanford.futuredata.macrobase.util.SnapshotIO;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Columnar buffer for the rows of a pane that is still being filled.
+ * Rows from successive minibatches are copied once into preallocated column segments,
+ * and a completed pane is cut out of the segments with a single copy per column, after
+ * which the segments are reused for the next pane.
+ *
+ * String columns are stored as dictionary codes. Each pane gets its own dictionary of the
+ * values its rows use, which is cleared when the pane is emitted, so memory and checkpoint
+ * size depend on the values in the open panes rather than every value ever seen.
+ */
+class PaneBuffer {
+    private String[] columnNames;
+    private Schema.ColType[] columnTypes;
+
+    private double[][] doubleCols;
+    private int[][] codeCols;
+    private String[][] dictionaries;
+    private int[] dictionarySizes;
+    private HashMap<String, Integer>[] dictionaryCodes;
+
+    // Code mapping for the most recent source dictionary of each column, resolved lazily
+    private String[][] sourceDictionaries;
+    private int[][] sourceMappings;
+
+    private int capacity;
+    private int numRows;
+    private int numFragments;
+
+    /**
+     * Append selected rows, in order
+     * @param input minibatch with the same schema as previous appends
+     * @param rowIndices row indices, or null to append rows start until end directly
+     * @param start first entry of rowIndices to use
+     * @param end one past the last entry of rowIndices to use
+     */
+    public void append(DataFrame input, int[] rowIndices, int start, int end) {
+        initialize(input.getSchema());
+        numFragments++;
+        int count = end - start;
+        if (count <= 0) {
+            return;
+        }
+        ensureCapacity(numRows + count);
+
+        int numColumns = columnNames.length;
+        for (int c = 0; c < numColumns; c++) {
+            if (columnTypes[c] == Schema.ColType.DOUBLE) {
+                double[] src = input.getDoubleColumn(c);
+                double[] dest = doubleCols[c];
+                if (rowIndices == null) {
+                    System.arraycopy(src, start, dest, numRows, count);
+                } else {
+                    for (int i = start; i < end; i++) {
+                        dest[numRows + i - start] = src[rowIndices[i]];
+                    }
+                }
+            } else {
+                DictionaryColumn src = input.getEncodedStringColumn(c);
+                String[] srcDictionary = src.getDictionary();
+                int[] mapping = getSourceMapping(c, srcDictionary);
+                int[] srcCodes = src.getCodes();
+                int[] dest = codeCols[c];
+                for (int i = start; i < end; i++) {
+                    int srcCode = srcCodes[rowIndices == null ? i : rowIndices[i]];
+                    int code = mapping[srcCode];
+                    if (code < 0) {
+                        code = addDictionaryValue(c, srcDictionary[srcCode]);
+                        mapping[srcCode] = code;
+                    }
+                    dest[numRows + i - start] = code;
+                }
+            }
+        }
+        numRows += count;
+    }
+
+    /**
+     * Copy the buffered rows out as a pane and empty the buffer
+     * @return pane with the buffered rows, with no columns if nothing was ever appended
+     */
+    public DataFrame emit() {
+        DataFrame pane = new DataFrame();
+        if (columnNames != null) {
+            for (int c = 0; c < columnNames.length; c++) {
+                if (columnTypes[c] == Schema.ColType.DOUBLE) {
+                    pane.addDoubleColumn(columnNames[c], Arrays.copyOf(doubleCols[c], numRows));
+                } else {
+                    pane.addEncodedStringColumn(
+                            columnNames[c],
+                            new DictionaryColumn(
+                                    Arrays.copyOf(codeCols[c], numRows),
+                                    Arrays.copyOf(dictionaries[c], dictionarySizes[c])
+                            )
+                    );
+                    clearDictionary(c);
+                }
+            }
+        }
+        numRows = 0;
+        numFragments = 0;
+        return pane;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return number of appends since the last pane was emitted
+     */
+    public int getNumFragments() {
+        return numFragments;
+    }
+
+    /**
+     * Set up column segments for the schema, unless already set up by an earlier call
+     * @param schema schema of all rows that will be appended
+     */
+    @SuppressWarnings("unchecked")
+    public void initialize(Schema schema) {
+        if (columnNames != null) {
+            return;
+        }
+        int numColumns = schema.getNumColumns();
+        columnNames = new String[numColumns];
+        columnTypes = new Schema.ColType[numColumns];
+        for (int c = 0; c < numColumns; c++) {
+            columnNames[c] = schema.getColumnName(c);
+            columnTypes[c] = schema.getColumnType(c);
+        }
+        capacity = 16;
+        doubleCols = new double[numColumns][];
+        codeCols = new int[numColumns][];
+        dictionaries = new String[numColumns][];
+        dictionarySizes = new int[numColumns];
+        dictionaryCodes = new HashMap[numColumns];
+        sourceDictionaries = new String[numColumns][];
+        sourceMappings = new int[numColumns][];
+        for (int c = 0; c < numColumns; c++) {
+            if (columnTypes[c] == Schema.ColType.DOUBLE) {
+                doubleCols[c] = new double[capacity];
+            } else {
+                codeCols[c] = new int[capacity];
+                dictionaries[c] = new String[16];
+                dictionaryCodes[c] = new HashMap<>();
+            }
+        }
+    }
+
+    /**
+     * Write the schema and buffered rows, with the dictionary entries of the buffered rows
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        int numColumns = columnNames == null ? -1 : columnNames.length;
+        out.writeInt(numColumns);
+        for (int c = 0; c < numColumns; c++) {
+            SnapshotIO.writeString(out, columnNames[c]);
+            out.writeInt(columnTypes[c].ordinal());
+        }
+        out.writeInt(numRows);
+        out.writeInt(numFragments);
+        for (int c = 0; c < numColumns; c++) {
+            if (columnTypes[c] == Schema.ColType.DOUBLE) {
+                for (int i = 0; i < numRows; i++) {
+                    out.writeDouble(doubleCols[c][i]);
+                }
+            } else {
+                out.writeInt(dictionarySizes[c]);
+                for (int code = 0; code < dictionarySizes[c]; code++) {
+                    SnapshotIO.writeString(out, dictionaries[c][code]);
+                }
+                for (int i = 0; i < numRows; i++) {
+                    out.writeInt(codeCols[c][i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return buffer holding the rows written by writeTo
+     */
+    public static PaneBuffer readFrom(DataInput in) throws IOException {
+        PaneBuffer buffer = new PaneBuffer();
+        int numColumns = in.readInt();
+        if (numColumns >= 0) {
+            Schema schema = new Schema();
+            for (int c = 0; c < numColumns; c++) {
+                String name = SnapshotIO.readString(in);
+                schema.addColumn(Schema.ColType.values()[in.readInt()], name);
+            }
+            buffer.initialize(schema);
+        }
+        int numRows = in.readInt();
+        buffer.numFragments = in.readInt();
+        if (numColumns < 0) {
+            return buffer;
+        }
+        buffer.ensureCapacity(numRows);
+        for (int c = 0; c < numColumns; c++) {
+            if (buffer.columnTypes[c] == Schema.ColType.DOUBLE) {
+                for (int i = 0; i < numRows; i++) {
+                    buffer.doubleCols[c][i] = in.readDouble();
+                }
+            } else {
+                int dictionarySize = in.readInt();
+                for (int code = 0; code < dictionarySize; code++) {
+                    buffer.addDictionaryValue(c, SnapshotIO.readString(in));
+                }
+                for (int i = 0; i < numRows; i++) {
+                    buffer.codeCols[c][i] = in.readInt();
+                }
+            }
+        }
+        buffer.numRows = numRows;
+        return buffer;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(2 * capacity, minCapacity);
+        for (int c = 0; c < columnNames.length; c++) {
+            if (doubleCols[c] != null) {
+                doubleCols[c] = Arrays.copyOf(doubleCols[c], newCapacity);
+            } else {
+                codeCols[c] = Arrays.copyOf(codeCols[c], newCapacity);
+            }
+        }
+        capacity = newCapacity;
+    }
+
+    private int[] getSourceMapping(int c, String[] sourceDictionary) {
+        if (sourceDictionaries[c] != sourceDictionary) {
+            sourceDictionaries[c] = sourceDictionary;
+            sourceMappings[c] = new int[sourceDictionary.length];
+            Arrays.fill(sourceMappings[c], -1);
+        }
+        return sourceMappings[c];
+    }
+
+    private int addDictionaryValue(int c, String value) {
+        Integer code = dictionaryCodes[c].get(value);
+        if (code == null) {
+            code = dictionarySizes[c];
+            if (code == dictionaries[c].length) {
+                dictionaries[c] = Arrays.copyOf(dictionaries[c], 2 * code);
+            }
+            dictionaries[c][code] = value;
+            dictionarySizes[c]++;
+            dictionaryCodes[c].put(value, code);
+        }
+        return code;
+    }
+
+    /**
+     * Start a new dictionary for the next pane. Codes cached for the last source
+     * dictionary refer to the old one, so they are dropped too.
+     */
+    private void clearDictionary(int c) {
+        Arrays.fill(dictionaries[c], 0, dictionarySizes[c], null);
+        dictionarySizes[c] = 0;
+        dictionaryCodes[c].clear();
+        sourceDictionaries[c] = null;
+        sourceMappings[c] = null;
+    }
+}
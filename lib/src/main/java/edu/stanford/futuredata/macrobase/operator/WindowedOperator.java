@@ -2,7 +2,11 @@ package edu.stanford.futuredata.macrobase.operator;
 
 import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
 import edu.stanford.futuredata.macrobase.util.ArrayUtils;
+import edu.stanford.futuredata.macrobase.util.SnapshotIO;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -11,25 +15,53 @@ import java.util.*;
  * slideLength is assumed to be a divisor of the window length so that
  * a window divides neatly into panes: if not the window length is
  * effectively rounded up.
+ *
+ * Rows may arrive out of order. The watermark trails the largest time seen by the
+ * allowed lateness, and a pane is only handed to the operator once the watermark
+ * passes its end, so rows up to allowedLateness behind the newest row still land in
+ * their own pane. Rows for panes that have already been handed on are dropped.
+ *
+ * Rows waiting for their pane to fill are held in columnar buffers, and minibatches
+ * are split at pane boundaries by binary search on the time column when it is sorted,
+ * so the cost of windowing is constant per row rather than per minibatch.
+ *
+ * A checkpoint holds the window position, the buffered rows and, if the wrapped operator
+ * is Checkpointable, its state.
  * @param <O> output type of the operator
  */
 public class WindowedOperator<O>
-        implements Operator<DataFrame, O> {
+        implements Operator<DataFrame, O>, Checkpointable {
+    private static final int SNAPSHOT_MAGIC = 0x4d42574f;
+    private static final int SNAPSHOT_VERSION = 1;
+
     private String timeColumn = "time";
     private double windowLength = 60.0;
     private double slideLength = 10.0;
+    private double allowedLateness = 0.0;
 
     private double maxWindowTime;
+    private double maxEventTime;
     private IncrementalOperator<O> op;
 
-    private ArrayList<DataFrame> batchBuffer;
+    // Buffers for panes that have not been handed on yet, in time order from maxWindowTime
+    private ArrayList<PaneBuffer> openPanes;
+    private ArrayDeque<PaneBuffer> freePanes;
+
+    private long numLateRows;
+    private long numDroppedRows;
+    private double maxObservedLateness;
 
     public WindowedOperator(IncrementalOperator op) {
         this.op = op;
     }
     public WindowedOperator<O> initialize() {
         this.maxWindowTime = 0.0;
-        this.batchBuffer = new ArrayList<>();
+        this.maxEventTime = Double.NEGATIVE_INFINITY;
+        this.openPanes = new ArrayList<>();
+        this.freePanes = new ArrayDeque<>();
+        this.numLateRows = 0;
+        this.numDroppedRows = 0;
+        this.maxObservedLateness = 0.0;
 
         int numPanes = (int)Math.ceil(windowLength / slideLength);
         op.setWindowSize(numPanes);
@@ -39,7 +71,7 @@ public class WindowedOperator<O>
 
     /**
      * Process a small batch of data. Data is buffered until a pane (or multiple)
-     * is filled, then the internal operator state is updated with these panes.
+     * is closed by the watermark, then the internal operator state is updated with these panes.
      * Minibatches are split to fit into panes of fixed time length.
      * @param input minibatch of data to process
      * @throws Exception
@@ -53,21 +85,20 @@ public class WindowedOperator<O>
     }
 
     /**
-     * Build a pane from what is already in the buffer, call when no more events will arrive before
-     * the next pane interval.
+     * Build a pane from what is already buffered for the earliest open pane, call when no more
+     * events will arrive before the next pane interval.
      * @return new effective window end time
      */
     public double flushBuffer() throws Exception {
-        DataFrame partialPane = DataFrame.unionAll(batchBuffer);
-        maxWindowTime += slideLength;
+        DataFrame partialPane = closePane();
         op.process(partialPane);
-        batchBuffer.clear();
         return maxWindowTime;
     }
 
     /**
-     * Split buffer + input into panes, keeping any leftover rows in the buffer
-     * @param input current minibatch to aprocess
+     * Route the rows of the input to their panes, keeping rows of panes that the watermark
+     * has not passed in the buffer
+     * @param input current minibatch to process
      * @return completed panes derived from the buffer and current input
      */
     protected List<DataFrame> addToBuffer(DataFrame input) {
@@ -78,29 +109,189 @@ public class WindowedOperator<O>
         double[] times = input.getDoubleColumnByName(timeColumn);
         double maxInputTime = ArrayUtils.max(times);
 
-        DataFrame restInput = input;
-        ArrayList<DataFrame> newPanes = new ArrayList<>(1);
+        // Track lateness against the largest time seen so far, including earlier rows of this batch
+        boolean sorted = true;
+        double runningMax = maxEventTime;
+        for (int i = 0; i < n; i++) {
+            double t = times[i];
+            if (t < runningMax) {
+                sorted = false;
+                if (t < maxWindowTime) {
+                    numDroppedRows++;
+                } else {
+                    numLateRows++;
+                }
+                maxObservedLateness = Math.max(maxObservedLateness, runningMax - t);
+            } else if (t < maxWindowTime) {
+                // Before the first pane still open, e.g. ahead of a flush
+                sorted = false;
+                numDroppedRows++;
+            } else {
+                runningMax = t;
+            }
+        }
+        maxEventTime = Math.max(maxEventTime, maxInputTime);
 
-        // Assuming in order arrival, break up incoming batch into panes
-        while (maxInputTime >= maxWindowTime + slideLength) {
-            // When we fill up a pane, split off the overflow from the current batch
-            double nextWindowEnd = maxWindowTime + slideLength;
-            DataFrame earlyInput = restInput.filter(timeColumn, (double t) -> t < nextWindowEnd);
-            restInput = restInput.filter(timeColumn, (double t) -> t >= nextWindowEnd);
-            batchBuffer.add(earlyInput);
-            DataFrame newPane = DataFrame.unionAll(batchBuffer);
+        // Ends of the open panes, through the pane holding the newest row
+        int numPanes = 0;
+        double[] paneEnds = new double[Math.max(1, openPanes.size())];
+        double paneEnd = maxWindowTime + slideLength;
+        while (numPanes == 0 || numPanes < openPanes.size() || maxInputTime >= paneEnds[numPanes - 1]) {
+            if (numPanes == paneEnds.length) {
+                paneEnds = Arrays.copyOf(paneEnds, 2 * numPanes);
+            }
+            paneEnds[numPanes++] = paneEnd;
+            paneEnd += slideLength;
+        }
+        while (openPanes.size() < numPanes) {
+            openPanes.add(newPaneBuffer(input));
+        }
 
-            // Reset the batch buffer and start collecting for the next pane
-            maxWindowTime = nextWindowEnd;
-            batchBuffer.clear();
-            newPanes.add(newPane);
+        if (sorted) {
+            int start = 0;
+            for (int p = 0; p < numPanes && start < n; p++) {
+                int end = lowerBound(times, start, n, paneEnds[p]);
+                if (end > start) {
+                    openPanes.get(p).append(input, null, start, end);
+                }
+                start = end;
+            }
+        } else {
+            // Stable bucketing of rows by pane, -1 for rows that are dropped
+            int[] paneIndex = new int[n];
+            int[] paneCounts = new int[numPanes + 1];
+            for (int i = 0; i < n; i++) {
+                double t = times[i];
+                int p = t < maxWindowTime ? -1 : upperBound(paneEnds, 0, numPanes, t);
+                paneIndex[i] = p;
+                paneCounts[p + 1]++;
+            }
+            for (int p = 0; p < numPanes; p++) {
+                paneCounts[p + 1] += paneCounts[p];
+            }
+            // Rows of pane p are at [paneCounts[p], paneCounts[p + 1]), dropped rows before them
+            int[] rowIndices = new int[n];
+            int[] offsets = new int[numPanes + 1];
+            System.arraycopy(paneCounts, 0, offsets, 1, numPanes);
+            for (int i = 0; i < n; i++) {
+                rowIndices[offsets[paneIndex[i] + 1]++] = i;
+            }
+            for (int p = 0; p < numPanes; p++) {
+                if (paneCounts[p + 1] > paneCounts[p]) {
+                    openPanes.get(p).append(input, rowIndices, paneCounts[p], paneCounts[p + 1]);
+                }
+            }
         }
 
-        // Buffer partially filled pane until it is filled
-        batchBuffer.add(restInput);
+        ArrayList<DataFrame> newPanes = new ArrayList<>(1);
+        while (getWatermark() >= maxWindowTime + slideLength) {
+            newPanes.add(closePane());
+        }
         return newPanes;
     }
 
+    /**
+     * Hand on the earliest open pane and advance the window by one pane
+     */
+    private DataFrame closePane() {
+        maxWindowTime += slideLength;
+        if (openPanes.isEmpty()) {
+            return new PaneBuffer().emit();
+        }
+        PaneBuffer buffer = openPanes.remove(0);
+        DataFrame pane = buffer.emit();
+        freePanes.add(buffer);
+        return pane;
+    }
+
+    private PaneBuffer newPaneBuffer(DataFrame input) {
+        PaneBuffer buffer = freePanes.poll();
+        if (buffer == null) {
+            buffer = new PaneBuffer();
+        }
+        buffer.initialize(input.getSchema());
+        return buffer;
+    }
+
+    private static int lowerBound(double[] a, int start, int end, double key) {
+        while (start < end) {
+            int mid = (start + end) >>> 1;
+            if (a[mid] < key) {
+                start = mid + 1;
+            } else {
+                end = mid;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * @return first index in [start, end) with a value &gt; key, or end
+     */
+    private static int upperBound(double[] a, int start, int end, double key) {
+        while (start < end) {
+            int mid = (start + end) >>> 1;
+            if (a[mid] <= key) {
+                start = mid + 1;
+            } else {
+                end = mid;
+            }
+        }
+        return start;
+    }
+
+    @Override
+    public void writeCheckpoint(DataOutputStream out) throws IOException {
+        SnapshotIO.writeHeader(out, SNAPSHOT_MAGIC, SNAPSHOT_VERSION);
+        SnapshotIO.writeString(out, timeColumn);
+        out.writeDouble(windowLength);
+        out.writeDouble(slideLength);
+        out.writeDouble(allowedLateness);
+        out.writeDouble(maxWindowTime);
+        out.writeDouble(maxEventTime);
+        out.writeLong(numLateRows);
+        out.writeLong(numDroppedRows);
+        out.writeDouble(maxObservedLateness);
+        out.writeInt(openPanes.size());
+        for (PaneBuffer buffer : openPanes) {
+            buffer.writeTo(out);
+        }
+        boolean hasOperatorState = op instanceof Checkpointable;
+        out.writeBoolean(hasOperatorState);
+        if (hasOperatorState) {
+            ((Checkpointable) op).writeCheckpoint(out);
+        }
+    }
+
+    /**
+     * Restore the window, and the wrapped operator if its state was saved. Takes the place
+     * of initialize().
+     */
+    @Override
+    public void restoreCheckpoint(DataInputStream in) throws IOException {
+        SnapshotIO.readHeader(in, SNAPSHOT_MAGIC, SNAPSHOT_VERSION);
+        timeColumn = SnapshotIO.readString(in);
+        windowLength = in.readDouble();
+        slideLength = in.readDouble();
+        allowedLateness = in.readDouble();
+        initialize();
+        maxWindowTime = in.readDouble();
+        maxEventTime = in.readDouble();
+        numLateRows = in.readLong();
+        numDroppedRows = in.readLong();
+        maxObservedLateness = in.readDouble();
+        int numOpenPanes = in.readInt();
+        for (int p = 0; p < numOpenPanes; p++) {
+            openPanes.add(PaneBuffer.readFrom(in));
+        }
+        if (in.readBoolean()) {
+            if (!(op instanceof Checkpointable)) {
+                throw new IOException("Checkpoint has state for an operator that cannot restore it");
+            }
+            ((Checkpointable) op).restoreCheckpoint(in);
+        }
+    }
+
     @Override
     public O getResults() {
         return op.getResults();
@@ -130,17 +321,62 @@ public class WindowedOperator<O>
         this.slideLength = slideLength;
     }
 
+    public double getAllowedLateness() {
+        return allowedLateness;
+    }
+
+    /**
+     * @param allowedLateness how far behind the newest row a row may be and still be
+     *                        assigned to its pane, 0 by default
+     */
+    public void setAllowedLateness(double allowedLateness) {
+        this.allowedLateness = allowedLateness;
+    }
+
     public double getMaxWindowTime() {
         return maxWindowTime;
     }
 
+    /**
+     * @return largest time seen minus the allowed lateness: panes ending at or before
+     * this have been handed to the operator
+     */
+    public double getWatermark() {
+        return maxEventTime - allowedLateness;
+    }
+
+    /**
+     * @return number of rows that arrived behind the newest row but within the allowed lateness
+     */
+    public long getNumLateRows() {
+        return numLateRows;
+    }
+
+    /**
+     * @return number of rows dropped because their pane had already been handed on
+     */
+    public long getNumDroppedRows() {
+        return numDroppedRows;
+    }
+
+    /**
+     * @return largest gap seen between a row and the newest row before it, late or dropped
+     */
+    public double getMaxObservedLateness() {
+        return maxObservedLateness;
+    }
+
     public int getBufferSize() {
-        return batchBuffer.size();
+        int numFragments = 0;
+        for (PaneBuffer buffer : openPanes) {
+            numFragments += buffer.getNumFragments();
+        }
+        return numFragments;
     }
     public int getNumBufferedRows() {
         int numRows = 0;
-        for (DataFrame df : batchBuffer) {
-            numRows += df.getNumRows();
+        for (PaneBuffer buffer : openPanes) {
+            numRows += buffer.getNumRows();
         }
         return numRows;
     }
@@ -0,0 +1,23 @@
+package edu.stanford.futuredata.macrobase.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Fork/join pools shared by every caller asking for the same number of threads, so that
+ * parallel stages run on long-lived workers instead of creating and shutting down a pool
+ * on every call. Workers are daemon threads and idle ones are retired by the pool, so the
+ * shared pools are never shut down.
+ */
+public class ForkJoinPools {
+    private static final Map<Integer, ForkJoinPool> pools = new HashMap<>();
+
+    /**
+     * @param numThreads parallelism of the pool
+     * @return the pool shared by callers with this parallelism; do not shut it down
+     */
+    public static synchronized ForkJoinPool shared(int numThreads) {
+        return pools.computeIfAbsent(numThreads, ForkJoinPool::new);
+    }
+}
@@ -0,0 +1,80 @@
+package edu.stanford.futuredata.macrobase.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers for the binary checkpoint formats of streaming operators.
+ * Strings are written as UTF-8 with a length prefix, so unlike writeUTF they may be null
+ * and longer than 64KB.
+ */
+public class SnapshotIO {
+    public static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeStrings(DataOutput out, List<String> strings) throws IOException {
+        if (strings == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            writeString(out, s);
+        }
+    }
+
+    public static List<String> readStrings(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    /**
+     * Check the header written at the start of a snapshot
+     * @param magic value identifying the kind of snapshot
+     * @param version highest format version the reader understands
+     * @return version of the snapshot
+     */
+    public static int readHeader(DataInput in, int magic, int version) throws IOException {
+        if (in.readInt() != magic) {
+            throw new IOException("Not a snapshot of the expected type");
+        }
+        int snapshotVersion = in.readInt();
+        if (snapshotVersion > version) {
+            throw new IOException("Unsupported snapshot version: " + snapshotVersion);
+        }
+        return snapshotVersion;
+    }
+
+    public static void writeHeader(DataOutput out, int magic, int version) throws IOException {
+        out.writeInt(magic);
+        out.writeInt(version);
+    }
+}
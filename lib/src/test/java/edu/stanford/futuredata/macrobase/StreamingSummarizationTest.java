@@ -91,6 +91,17 @@ public class StreamingSummarizationTest {
         return attributes;
     }
 
+    /**
+     * @return support and risk ratio of each explanation, keyed by its attribute values
+     */
+    public static Map<Map<String, String>, String> resultStats(Explanation e) {
+        Map<Map<String, String>, String> stats = new HashMap<>();
+        for (AttributeSet aSet : e.getItemsets()) {
+            stats.put(aSet.getItems(), aSet.getSupport() + "/" + aSet.getRatioToInliers());
+        }
+        return stats;
+    }
+
     @Test
     public void testDetectSingleChange() throws Exception {
         // Prepare data set
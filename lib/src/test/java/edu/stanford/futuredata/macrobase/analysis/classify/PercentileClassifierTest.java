@@ -4,6 +4,9 @@ import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -62,4 +65,88 @@ public class PercentileClassifierTest {
         int numOutliers = outliers.getNumRows();
         assertTrue(numOutliers >= 90 && numOutliers <= 110);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSketch() throws Exception {
+        PercentileClassifier pc = new PercentileClassifier("val");
+        pc.setPercentile(10);
+        pc.setUseSketch(true);
+        pc.process(df);
+
+        assertTrue(pc.getLowCutoff() > 90.0 && pc.getLowCutoff() < 110.0);
+        assertTrue(pc.getHighCutoff() > 890.0 && pc.getHighCutoff() < 910.0);
+        DataFrame outliers = pc.getResults().filter(
+                pc.getOutputColumnName(), (double d) -> d != 0.0
+        );
+        int numOutliers = outliers.getNumRows();
+        assertTrue(numOutliers >= 180 && numOutliers <= 220);
+    }
+
+    @Test
+    public void testParallelSketch() throws Exception {
+        int n = 200000;
+        double[] vals = new double[n];
+        for (int i = 0; i < n; i++) {
+            // a permutation of 0..n-1, so ranges do not each hold a band of values
+            vals[i] = (i * 7919L) % n;
+        }
+        DataFrame large = new DataFrame();
+        large.addDoubleColumn("val", vals);
+
+        PercentileClassifier sequential = new PercentileClassifier("val");
+        sequential.setPercentile(5);
+        sequential.setUseSketch(true);
+        sequential.process(large);
+        // within 1% of the count in rank
+        assertEquals(0.05 * n, sequential.getLowCutoff(), 0.01 * n);
+        assertEquals(0.95 * n, sequential.getHighCutoff(), 0.01 * n);
+
+        // Block sketches are merged in order, so threads and chunking do not change the cutoffs
+        PercentileClassifier parallel = new PercentileClassifier("val");
+        parallel.setPercentile(5);
+        parallel.setUseSketch(true);
+        parallel.setNumThreads(4);
+        parallel.process(large);
+        assertEquals(sequential.getLowCutoff(), parallel.getLowCutoff(), 0.0);
+        assertEquals(sequential.getHighCutoff(), parallel.getHighCutoff(), 0.0);
+
+        PercentileClassifier chunked = new PercentileClassifier("val");
+        chunked.setPercentile(5);
+        chunked.setUseSketch(true);
+        for (int start = 0; start < n; start += 30000) {
+            DataFrame chunk = new DataFrame();
+            chunk.addDoubleColumn("val", Arrays.copyOfRange(vals, start, Math.min(n, start + 30000)));
+            chunked.addChunk(chunk);
+        }
+        chunked.classifyChunks();
+        assertEquals(sequential.getLowCutoff(), chunked.getLowCutoff(), 0.0);
+        assertEquals(sequential.getHighCutoff(), chunked.getHighCutoff(), 0.0);
+    }
+
+    @Test
+    public void testChunks() throws Exception {
+        for (boolean useSketch : new boolean[]{false, true}) {
+            PercentileClassifier whole = new PercentileClassifier("val");
+            whole.setPercentile(10);
+            whole.setUseSketch(useSketch);
+            whole.process(df);
+
+            PercentileClassifier chunked = new PercentileClassifier("val");
+            chunked.setPercentile(10);
+            chunked.setUseSketch(useSketch);
+            for (int start = 0; start < 1000; start += 300) {
+                double ls = start;
+                chunked.addChunk(df.filter("val", (double v) -> v >= ls && v < ls + 300));
+            }
+            double[] classes = chunked.classifyChunks();
+
+            assertEquals(whole.getLowCutoff(), chunked.getLowCutoff(), 0.0);
+            assertEquals(whole.getHighCutoff(), chunked.getHighCutoff(), 0.0);
+            assertArrayEquals(
+                    whole.getResults().getDoubleColumnByName(whole.getOutputColumnName()),
+                    classes,
+                    0.0
+            );
+        }
+    }
+}
@@ -49,4 +49,24 @@ public class NormalDistTest {
             assertEquals(NormalDist.CDF_LUT[i], LUT[i], 0.001);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMaxError() {
+        NormalDist dist = new NormalDist();
+        NormalDistribution exact = new NormalDistribution();
+        int n = 100000;
+        double[] means = new double[n];
+        double[] stds = new double[n];
+        for (int i = 0; i < n; i++) {
+            // z-scores from -8 to 8 when evaluated at x = 1
+            means[i] = 1.0 - (i - n / 2) * 16.0 / n * 2.0;
+            stds[i] = 2.0;
+        }
+        double[] batched = dist.cdf(means, stds, 1.0, new double[n]);
+        for (int i = 0; i < n; i++) {
+            double z = (1.0 - means[i]) / stds[i];
+            assertEquals(exact.cumulativeProbability(z), batched[i], 2e-6);
+            assertEquals(dist.cdf(means[i], stds[i], 1.0), batched[i], 0.0);
+        }
+    }
+}
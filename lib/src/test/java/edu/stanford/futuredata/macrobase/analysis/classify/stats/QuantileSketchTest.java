@@ -0,0 +1,60 @@
+package edu.stanford.futuredata.macrobase.analysis.classify.stats;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuantileSketchTest {
+    @Test
+    public void testQuantiles() throws Exception {
+        int n = 100000;
+        double[] values = new double[n];
+        Random r = new Random(0);
+        for (int i = 0; i < n; i++) {
+            // shuffled ranks so that the value is its own rank
+            values[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            double tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+
+        QuantileSketch sketch = new QuantileSketch(256);
+        sketch.addAll(values);
+        assertEquals(n, sketch.getCount());
+        assertTrue(sketch.getNumRetained() < 1000);
+        for (double q : new double[]{0.01, 0.1, 0.5, 0.9, 0.99}) {
+            assertEquals(q * n, sketch.quantile(q), 0.02 * n);
+        }
+        assertEquals(0.0, sketch.quantile(0.0), 0.0);
+        assertEquals(n - 1, sketch.quantile(1.0), 0.0);
+        assertTrue(Double.isNaN(new QuantileSketch(256).quantile(0.5)));
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        int n = 50000;
+        QuantileSketch whole = new QuantileSketch(256);
+        QuantileSketch[] parts = new QuantileSketch[4];
+        for (int p = 0; p < parts.length; p++) {
+            parts[p] = new QuantileSketch(256);
+        }
+        for (int i = 0; i < n; i++) {
+            whole.add(i);
+            parts[i % parts.length].add(i);
+        }
+        QuantileSketch merged = parts[0];
+        for (int p = 1; p < parts.length; p++) {
+            merged.merge(parts[p]);
+        }
+        assertEquals(n, merged.getCount());
+        assertTrue(merged.getNumRetained() < 1000);
+        for (double q : new double[]{0.05, 0.5, 0.95}) {
+            assertEquals(whole.quantile(q), merged.quantile(q), 0.02 * n);
+        }
+    }
+}
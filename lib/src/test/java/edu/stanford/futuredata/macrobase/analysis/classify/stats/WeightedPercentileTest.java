@@ -3,6 +3,9 @@ package edu.stanford.futuredata.macrobase.analysis.classify.stats;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 public class WeightedPercentileTest {
@@ -44,4 +47,125 @@ public class WeightedPercentileTest {
         assertEquals(1.0, p0, 0.01);
     }
 
-}
\ No newline at end of file
+    /**
+     * Reference percentile: sort (metric, count) pairs and scan cumulative counts from the
+     * nearer end until the required count is passed
+     */
+    private static double bruteForce(double[] counts, double[] metrics, double percentile) {
+        int n = metrics.length;
+        double[][] pairs = new double[n][];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            pairs[i] = new double[]{metrics[i], counts[i]};
+            total += counts[i];
+        }
+        Arrays.sort(pairs, (a, b) -> Double.compare(a[0], b[0]));
+        boolean fromTop = percentile >= 50.0;
+        double fraction = fromTop ? 100.0 - percentile : percentile;
+        int numToPass = (int) (fraction / 100.0 * total);
+        double passed = 0;
+        for (int i = 0; i < n; i++) {
+            double[] pair = pairs[fromTop ? n - 1 - i : i];
+            passed += pair[1];
+            if (passed >= numToPass) {
+                return pair[0];
+            }
+        }
+        throw new AssertionError("Percentile past the last metric");
+    }
+
+    private static void assertSameValue(double expected, double actual) {
+        // Double.equals tells -0.0 from 0.0
+        assertEquals(Double.valueOf(expected), Double.valueOf(actual));
+    }
+
+    /**
+     * @return percentiles from a single thread, after checking them and those from several
+     * threads against the reference
+     */
+    private static double[] checkAgainstBruteForce(double[] counts, double[] metrics, double[] percentiles) {
+        WeightedPercentile wp = new WeightedPercentile(counts, metrics);
+        double[] results = wp.evaluate(percentiles);
+        for (int j = 0; j < percentiles.length; j++) {
+            assertSameValue(bruteForce(counts, metrics, percentiles[j]), results[j]);
+            assertSameValue(results[j], wp.evaluate(percentiles[j]));
+        }
+        for (int numThreads : new int[]{2, 3}) {
+            double[] parallel = new WeightedPercentile(counts, metrics, numThreads).evaluate(percentiles);
+            for (int j = 0; j < percentiles.length; j++) {
+                assertSameValue(results[j], parallel[j]);
+            }
+        }
+        return results;
+    }
+
+    @Test
+    public void testEvaluateMany() throws Exception {
+        int n = 10000;
+        double[] shuffledCounts = new double[n];
+        double[] shuffledMetrics = new double[n];
+        Random r = new Random(0);
+        for (int i = 0; i < n; i++) {
+            shuffledCounts[i] = r.nextInt(8) == 0 ? 0.5 : 1 + r.nextInt(5);
+            switch (r.nextInt(10)) {
+                case 0:
+                    shuffledMetrics[i] = -0.0;
+                    break;
+                case 1:
+                    shuffledMetrics[i] = 0.0;
+                    break;
+                default:
+                    // include negative values and repeats
+                    shuffledMetrics[i] = r.nextInt(2000) - 1000.5;
+            }
+        }
+        double[] percentiles = new double[30];
+        double[] fixed = {0.0, 0.1, 1.0, 25.0, 49.9, 50.0, 75.0, 99.0, 99.9, 100.0};
+        System.arraycopy(fixed, 0, percentiles, 0, fixed.length);
+        for (int j = fixed.length; j < percentiles.length; j++) {
+            percentiles[j] = 100.0 * r.nextDouble();
+        }
+        // -0.0 and 0.0 each hold about a tenth of the weight; pick a percentile inside each
+        double zeroWeight = 0;
+        double negativeWeight = 0;
+        double totalWeight = 0;
+        for (int i = 0; i < n; i++) {
+            totalWeight += shuffledCounts[i];
+            if (shuffledMetrics[i] == 0.0) {
+                zeroWeight += shuffledCounts[i];
+            } else if (shuffledMetrics[i] < 0) {
+                negativeWeight += shuffledCounts[i];
+            }
+        }
+        double[] zeroPercentiles = {
+                100.0 * (negativeWeight + 0.25 * zeroWeight) / totalWeight,
+                100.0 * (negativeWeight + 0.75 * zeroWeight) / totalWeight
+        };
+
+        double[] results = checkAgainstBruteForce(shuffledCounts, shuffledMetrics, percentiles);
+        WeightedPercentile wp = new WeightedPercentile(shuffledCounts, shuffledMetrics);
+        double[] zeros = wp.evaluate(zeroPercentiles);
+        assertSameValue(-0.0, bruteForce(shuffledCounts, shuffledMetrics, zeroPercentiles[0]));
+        assertSameValue(0.0, bruteForce(shuffledCounts, shuffledMetrics, zeroPercentiles[1]));
+        assertSameValue(-0.0, zeros[0]);
+        assertSameValue(0.0, zeros[1]);
+
+        // Unit counts make the cumulative count land exactly on the count to pass
+        double[] unitCounts = new double[200];
+        double[] tiedMetrics = new double[200];
+        for (int i = 0; i < 200; i++) {
+            unitCounts[i] = 1;
+            tiedMetrics[i] = r.nextInt(40) - 20.0;
+        }
+        double[] wholePercentiles = new double[101];
+        for (int j = 0; j <= 100; j++) {
+            wholePercentiles[j] = j;
+        }
+        checkAgainstBruteForce(unitCounts, tiedMetrics, wholePercentiles);
+
+        double[] approx = WeightedPercentile.approximate(shuffledCounts, shuffledMetrics, percentiles, 256);
+        for (int j = 0; j < percentiles.length; j++) {
+            assertEquals(results[j], approx[j], 50.0);
+        }
+    }
+}
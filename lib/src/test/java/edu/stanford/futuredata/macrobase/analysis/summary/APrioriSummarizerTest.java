@@ -1,7 +1,9 @@
 package edu.stanford.futuredata.macrobase.analysis.summary;
 
+import edu.stanford.futuredata.macrobase.StreamingSummarizationTest;
 import edu.stanford.futuredata.macrobase.analysis.classify.ArithmeticClassifier;
 import edu.stanford.futuredata.macrobase.analysis.classify.PercentileClassifier;
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.AttributeEncoder;
 import edu.stanford.futuredata.macrobase.analysis.summary.itemset.IntSet;
 import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.AttributeSet;
 import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
@@ -12,6 +14,7 @@ import org.junit.Test;
 
 import java.util.*;
 
+import static edu.stanford.futuredata.macrobase.StreamingSummarizationTest.resultStats;
 import static junit.framework.TestCase.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -145,4 +148,119 @@ public class APrioriSummarizerTest {
         assertEquals(3, mainResult.getItems().size());
         assertEquals(100.0, mainResult.getNumRecords(), 1e-10);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParallelMatchesSequential() throws Exception {
+        int d = 5;
+        DataFrame df = StreamingSummarizationTest.generateAnomalyDataset(
+                10000, 3, 4, d, 0.01, 2000, 4000
+        );
+        List<String> explanationAttributes = StreamingSummarizationTest.getAttributes(d, false);
+
+        List<Explanation> results = new ArrayList<>();
+        for (int numThreads : new int[]{1, 4}) {
+            APrioriSummarizer summ = new APrioriSummarizer();
+            summ.setOutlierColumn("outlier");
+            summ.setMinSupport(.05);
+            summ.setMinRiskRatio(2.0);
+            summ.setAttributes(explanationAttributes);
+            summ.setNumThreads(numThreads);
+            summ.process(df);
+            results.add(summ.getResults());
+        }
+
+        Explanation sequential = results.get(0);
+        Explanation parallel = results.get(1);
+        assertTrue(sequential.getItemsets().size() > 0);
+        assertEquals(sequential.getNumOutliers(), parallel.getNumOutliers());
+        assertEquals(sequential.getItemsets().size(), parallel.getItemsets().size());
+        Map<Map<String, String>, Double> sequentialRatios = new HashMap<>();
+        for (AttributeSet aSet : sequential.getItemsets()) {
+            sequentialRatios.put(aSet.getItems(), aSet.getRatioToInliers());
+        }
+        for (AttributeSet aSet : parallel.getItemsets()) {
+            assertEquals(sequentialRatios.get(aSet.getItems()), aSet.getRatioToInliers(), 0.0);
+        }
+    }
+
+    @Test
+    public void testMinedStateReuse() throws Exception {
+        int d = 5;
+        DataFrame df = StreamingSummarizationTest.generateAnomalyDataset(
+                10000, 3, 4, d, 0.01, 2000, 4000
+        );
+        List<String> explanationAttributes = StreamingSummarizationTest.getAttributes(d, false);
+
+        // minSupport, minRiskRatio, whether every order should be reused
+        double[][] settings = {
+                {.05, 2.0, 0},
+                {.2, 2.0, 1},
+                {.05, 1.5, 1},
+                {.01, 2.0, 0},
+                {.05, 5.0, 0},
+        };
+        APrioriMinedState state = null;
+        for (double[] setting : settings) {
+            APrioriSummarizer fresh = new APrioriSummarizer();
+            fresh.setOutlierColumn("outlier");
+            fresh.setMinSupport(setting[0]);
+            fresh.setMinRiskRatio(setting[1]);
+            fresh.setAttributes(explanationAttributes);
+            fresh.process(df);
+
+            APrioriSummarizer reusing = new APrioriSummarizer();
+            reusing.setOutlierColumn("outlier");
+            reusing.setMinSupport(setting[0]);
+            reusing.setMinRiskRatio(setting[1]);
+            reusing.setAttributes(explanationAttributes);
+            reusing.setMinedState(state);
+            int numReusedBefore = state == null ? 0 : state.getNumReusedOrders();
+            reusing.process(df);
+            state = reusing.getMinedState();
+
+            assertEquals(resultStats(fresh.getResults()), resultStats(reusing.getResults()));
+            if (setting[2] == 1) {
+                assertEquals(numReusedBefore + 3, state.getNumReusedOrders());
+            }
+        }
+        // Every order of every run is either reused or counted, and looser thresholds recount
+        assertEquals(3 * settings.length, state.getNumReusedOrders() + state.getNumCountedOrders());
+        assertTrue(state.getNumCountedOrders() > 3);
+    }
+
+    @Test
+    public void testProcessEncodedChunks() throws Exception {
+        int d = 5;
+        DataFrame df = StreamingSummarizationTest.generateAnomalyDataset(
+                10000, 3, 4, d, 0.01, 2000, 4000
+        );
+        List<String> explanationAttributes = StreamingSummarizationTest.getAttributes(d, false);
+
+        APrioriSummarizer whole = new APrioriSummarizer();
+        whole.setOutlierColumn("outlier");
+        whole.setMinSupport(.05);
+        whole.setMinRiskRatio(2.0);
+        whole.setAttributes(explanationAttributes);
+        whole.process(df);
+
+        // Encode the rows a chunk at a time, as a pipelined load does
+        AttributeEncoder encoder = new AttributeEncoder();
+        encoder.setColumnNames(explanationAttributes);
+        List<int[]> encoded = new ArrayList<>();
+        for (int start = 0; start < 10000; start += 3000) {
+            double ls = start;
+            DataFrame chunk = df.filter("time", (double t) -> t >= ls && t < ls + 3000);
+            encoded.addAll(encoder.encodeDictionaryColumns(
+                    chunk.getEncodedStringColsByName(explanationAttributes)));
+        }
+        APrioriSummarizer chunked = new APrioriSummarizer();
+        chunked.setOutlierColumn("outlier");
+        chunked.setMinSupport(.05);
+        chunked.setMinRiskRatio(2.0);
+        chunked.setAttributes(explanationAttributes);
+        chunked.processEncoded(encoder, encoded, df.getDoubleColumnByName("outlier"), null);
+
+        assertTrue(whole.getResults().getItemsets().size() > 0);
+        assertEquals(resultStats(whole.getResults()), resultStats(chunked.getResults()));
+    }
+}
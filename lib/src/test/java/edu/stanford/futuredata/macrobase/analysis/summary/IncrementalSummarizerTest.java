@@ -0,0 +1,79 @@
+package edu.stanford.futuredata.macrobase.analysis.summary;
+
+import edu.stanford.futuredata.macrobase.StreamingSummarizationTest;
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.AttributeEncoder;
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.FPGrowth;
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetWithCount;
+import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalSummarizerTest {
+    // Counting by checking every row, as addNewPane did before rows were indexed into bitmaps
+    private static HashMap<Set<Integer>, Double> countByScan(
+            List<Set<Integer>> rows,
+            Collection<Set<Integer>> itemsets
+    ) {
+        HashMap<Set<Integer>, Double> counts = new HashMap<>();
+        for (Set<Integer> itemset : itemsets) {
+            for (Set<Integer> row : rows) {
+                if (row.containsAll(itemset)) {
+                    counts.put(itemset, counts.getOrDefault(itemset, 0.0) + 1);
+                }
+            }
+        }
+        return counts;
+    }
+
+    @Test
+    public void testCountPaneMatchesScan() {
+        int n = 6000;
+        int d = 5;
+        int paneSize = 1000;
+        DataFrame df = StreamingSummarizationTest.generateAnomalyDataset(
+                n, 2, 4, d, 0.05, 3000, 6000);
+        List<String> attributes = StreamingSummarizationTest.getAttributes(d, false);
+        AttributeEncoder encoder = new AttributeEncoder();
+        encoder.setColumnNames(attributes);
+
+        List<Set<Integer>> itemsets = null;
+        // One counter for every pane and both classes, as the summarizer reuses it
+        IncrementalSummarizer.PaneCounter counter = new IncrementalSummarizer.PaneCounter();
+        for (int start = 0; start < n; start += paneSize) {
+            double paneStart = start;
+            DataFrame pane = df.filter("time", (double t) -> t >= paneStart && t < paneStart + paneSize);
+            List<Set<Integer>> outliers = encoder.encodeDictionaryColumnsAsSets(
+                    pane.filter("outlier", (double o) -> o != 0.0).getEncodedStringColsByName(attributes));
+            List<Set<Integer>> inliers = encoder.encodeDictionaryColumnsAsSets(
+                    pane.filter("outlier", (double o) -> o == 0.0).getEncodedStringColsByName(attributes));
+
+            if (itemsets == null) {
+                // Track itemsets frequent in the first pane, plus ones the panes never contain
+                itemsets = new ArrayList<>();
+                for (ItemsetWithCount iwc : new FPGrowth().getItemsetsWithSupportRatio(outliers, 0.05)) {
+                    itemsets.add(iwc.getItems());
+                }
+                assertTrue(itemsets.stream().anyMatch(i -> i.size() > 1));
+                itemsets.add(Collections.singleton(-1));
+                itemsets.add(new HashSet<>(Arrays.asList(0, -1)));
+                itemsets.add(Collections.emptySet());
+            }
+
+            assertEquals(countByScan(inliers, itemsets), counter.count(inliers, itemsets));
+            assertEquals(countByScan(outliers, itemsets), counter.count(outliers, itemsets));
+            // Tracking fewer itemsets in a later pane drops the other lists
+            List<Set<Integer>> fewer = itemsets.subList(0, itemsets.size() / 2);
+            assertEquals(countByScan(outliers, fewer), counter.count(outliers, fewer));
+        }
+
+        // The empty itemset is contained in every row
+        List<Set<Integer>> rows = Arrays.asList(
+                new HashSet<>(Arrays.asList(1, 2)), new HashSet<>(Arrays.asList(2, 3)));
+        assertEquals(2.0, counter.count(
+                rows, Collections.singleton(Collections.emptySet())).get(Collections.emptySet()), 0.0);
+    }
+}
@@ -1,5 +1,6 @@
 package edu.stanford.futuredata.macrobase.analysis.summary.itemset;
 
+import edu.stanford.futuredata.macrobase.datamodel.DictionaryColumn;
 import org.junit.Test;
 
 import java.util.ArrayList;
@@ -7,6 +8,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class AttributeEncoderTest {
@@ -43,4 +45,28 @@ public class AttributeEncoderTest {
         assertEquals(totalItems.size(), 5 + 3);
         // printItemsets(results);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void encodeDictionaryColumns() throws Exception {
+        List<String[]> columns = new ArrayList<>();
+        List<DictionaryColumn> encodedColumns = new ArrayList<>();
+        for (int j = 0; j < 2; j ++) {
+            String[] curCol = new String[15];
+            for (int i = 0; i < 15; i++) {
+                curCol[i] = String.valueOf((i * 7) % (j * 2 + 3));
+            }
+            columns.add(curCol);
+            encodedColumns.add(DictionaryColumn.encode(curCol));
+        }
+
+        List<int[]> expected = new AttributeEncoder().encodeAttributes(columns);
+        AttributeEncoder dictEncoder = new AttributeEncoder();
+        List<int[]> results = dictEncoder.encodeDictionaryColumns(encodedColumns);
+        assertEquals(expected.size(), results.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), results.get(i));
+        }
+        assertEquals(5 + 3, dictEncoder.getNextKey());
+        assertEquals(columns.get(1)[4], dictEncoder.decodeValue(results.get(4)[1]));
+    }
+}
@@ -0,0 +1,123 @@
+package edu.stanford.futuredata.macrobase.analysis.summary.itemset;
+
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetResult;
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.result.ItemsetWithCount;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BitmapItemsetMinerTest {
+    private Set<Integer> intIfy(String txnStr) {
+        return Arrays.stream(txnStr.split(", ")).map(s -> (int) s.charAt(0)).collect(Collectors.toSet());
+    }
+
+    private Map<Set<Integer>, Double> toMap(List<ItemsetWithCount> itemsets) {
+        Map<Set<Integer>, Double> counts = new HashMap<>();
+        for (ItemsetWithCount i : itemsets) {
+            counts.put(i.getItems(), i.getCount());
+        }
+        return counts;
+    }
+
+    @Test
+    public void testFPFromPaper() {
+        List<Set<Integer>> txns = new ArrayList<>();
+        txns.add(intIfy("f, a, c, d, g, i, m, p"));
+        txns.add(intIfy("a, b, c, f, l, m, o"));
+        txns.add(intIfy("b, f, h, j, o"));
+        txns.add(intIfy("b, c, k, s, p"));
+        txns.add(intIfy("a, f, c, e, l, p, m, n"));
+        Set<Integer> allItems = new HashSet<>();
+        txns.forEach(allItems::addAll);
+
+        List<ItemsetWithCount> itemsets = new BitmapItemsetMiner(txns, allItems)
+                .getItemsetsWithSupportCount(.6 * txns.size());
+        assertEquals(18, itemsets.size());
+        assertEquals(toMap(new FPGrowth().getItemsetsWithSupportRatio(txns, .6)), toMap(itemsets));
+
+        BitmapItemsetMiner miner = new BitmapItemsetMiner(txns, allItems);
+        assertEquals(3, miner.getSupport(intIfy("a, c, m")));
+        assertEquals(0, miner.getSupport(intIfy("a, z")));
+    }
+
+    private List<Set<Integer>> randomTransactions(Random r, int n, int d, int cardinality, int skew) {
+        List<Set<Integer>> txns = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Set<Integer> txn = new HashSet<>();
+            for (int j = 0; j < d; j++) {
+                // low values are much more common so that longer itemsets are frequent
+                int v = Math.min(r.nextInt(cardinality), r.nextInt(skew));
+                txn.add(j * cardinality + v);
+            }
+            txns.add(txn);
+        }
+        return txns;
+    }
+
+    @Test
+    public void testHighCardinality() {
+        // Most values of a 300-value attribute are in fewer than 1 in 32 transactions, so
+        // their ids are kept as arrays while the common ones are kept as bitmaps
+        Random r = new Random(0);
+        List<Set<Integer>> txns = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            Set<Integer> txn = new HashSet<>();
+            for (int j = 0; j < 4; j++) {
+                // half the values are one of a few common ones
+                txn.add(j * 300 + (r.nextBoolean() ? r.nextInt(4) : r.nextInt(300)));
+            }
+            txns.add(txn);
+        }
+        Set<Integer> allItems = new HashSet<>();
+        Map<Integer, Double> itemCounts = new HashMap<>();
+        for (Set<Integer> t : txns) {
+            allItems.addAll(t);
+            t.forEach(i -> itemCounts.merge(i, 1.0, Double::sum));
+        }
+        assertTrue(itemCounts.values().stream().anyMatch(c -> c < txns.size() / 32));
+        assertTrue(itemCounts.values().stream().anyMatch(c -> c >= txns.size() / 32));
+
+        for (double supportCount : new double[]{3, 10, 40}) {
+            List<ItemsetWithCount> expected = new FPGrowth().getItemsetsWithSupportCount(txns, supportCount);
+            List<ItemsetWithCount> itemsets = new BitmapItemsetMiner(txns, allItems)
+                    .getItemsetsWithSupportCount(supportCount);
+            assertTrue(itemsets.stream().anyMatch(i -> i.getItems().size() > 1));
+            assertEquals(toMap(expected), toMap(itemsets));
+
+            assertEquals(
+                    toMap(new FPGrowth().getCounts(txns, itemCounts, allItems, expected)),
+                    toMap(new BitmapItemsetMiner(txns, allItems).getCounts(expected))
+            );
+        }
+    }
+
+    @Test
+    public void testEmergingMatchesFPGrowth() {
+        Random r = new Random(0);
+        for (int trial = 0; trial < 5; trial++) {
+            List<Set<Integer>> inliers = randomTransactions(r, 2000, 4, 6, 6);
+            List<Set<Integer>> outliers = randomTransactions(r, 300, 4, 6, 2);
+
+            List<ItemsetResult> fpResults = new FPGrowthEmerging()
+                    .getEmergingItemsetsWithMinSupport(inliers, outliers, 0.05, 1.5);
+            List<ItemsetResult> bitmapResults = new FPGrowthEmerging()
+                    .setUseBitmaps(true)
+                    .getEmergingItemsetsWithMinSupport(inliers, outliers, 0.05, 1.5);
+
+            assertTrue(fpResults.stream().anyMatch(i -> i.getItems().size() > 1));
+            Map<Set<Integer>, ItemsetResult> expected = new HashMap<>();
+            fpResults.forEach(i -> expected.put(i.getItems(), i));
+            assertEquals(fpResults.size(), bitmapResults.size());
+            for (ItemsetResult actual : bitmapResults) {
+                ItemsetResult e = expected.get(actual.getItems());
+                assertEquals(e.getNumRecords(), actual.getNumRecords(), 1e-10);
+                assertEquals(e.getSupport(), actual.getSupport(), 1e-10);
+                assertEquals(e.getRatioToInliers(), actual.getRatioToInliers(), 1e-10);
+            }
+        }
+    }
+}
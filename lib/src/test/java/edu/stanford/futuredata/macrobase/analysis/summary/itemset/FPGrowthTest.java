@@ -167,5 +167,28 @@ public class FPGrowthTest {
         assertEquals(0, fpt.getSupport(intIfy("a, b, c, d")));
 
     }
-}
 
+    @Test
+    public void testParallelMatchesSequential() {
+        Random r = new Random(0);
+        List<Set<Integer>> txns = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Set<Integer> txn = new HashSet<>();
+            for (int j = 0; j < 8; j++) {
+                txn.add(j * 5 + Math.min(r.nextInt(5), r.nextInt(5)));
+            }
+            txns.add(txn);
+        }
+
+        List<ItemsetWithCount> sequential = new FPGrowth().getItemsetsWithSupportRatio(txns, .01);
+        List<ItemsetWithCount> parallel = new FPGrowth()
+                .setNumThreads(4)
+                .setParallelThreshold(1)
+                .getItemsetsWithSupportRatio(txns, .01);
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(sequential.get(i).getItems(), parallel.get(i).getItems());
+            assertEquals(sequential.get(i).getCount(), parallel.get(i).getCount(), 1e-10);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package edu.stanford.futuredata.macrobase.analysis.summary.itemset;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PackedItemsetCounterTest {
+    @Test
+    public void testPacking() {
+        assertEquals(IntSetAsLong.pack(3, 1), IntSetAsLong.pack(1, 3));
+        assertEquals(IntSetAsLong.pack(5, 0, 2), IntSetAsLong.pack(2, 5, 0));
+        assertTrue(IntSetAsLong.pack(0, 1) != IntSetAsLong.pack(0, 0, 1));
+        assertEquals(3, IntSetAsLong.size(IntSetAsLong.pack(0, 0, 0)));
+        assertEquals(1, IntSetAsLong.size(IntSetAsLong.pack(0)));
+
+        int big = IntSetAsLong.MAX_VALUE;
+        int[] values = IntSetAsLong.unpack(IntSetAsLong.pack(big, 7, 0));
+        assertEquals(0, values[0]);
+        assertEquals(7, values[1]);
+        assertEquals(big, values[2]);
+    }
+
+    @Test
+    public void testHashTable() {
+        LongIntHashTable table = new LongIntHashTable();
+        for (int i = 1; i <= 1000; i++) {
+            assertEquals(-1, table.putIfAbsent(i * 31L, i));
+        }
+        assertEquals(1000, table.size());
+        assertEquals(5, table.putIfAbsent(5 * 31L, 0));
+        assertEquals(1000, table.get(1000 * 31L));
+        assertFalse(table.containsKey(17));
+        table.put(31L, 42);
+        assertEquals(42, table.get(31L));
+        assertEquals(1000, table.size());
+    }
+
+    @Test
+    public void testCountOrder2And3() {
+        List<int[]> encoded = new ArrayList<>();
+        encoded.add(new int[]{0, 2, 4});
+        encoded.add(new int[]{0, 2, 5});
+        encoded.add(new int[]{1, 2, 4});
+        encoded.add(new int[]{0, 3, 4});
+        double[] counts = {10, 20, 30, 40};
+        double[] oCounts = {1, 2, 3, 4};
+        Set<Integer> candidateItems = new HashSet<>(Arrays.asList(0, 2, 4, 5));
+
+        PackedItemsetCounter pairCounter = new PackedItemsetCounter(
+                2, 6, candidateItems, null, null
+        ).count(encoded, counts, oCounts, 0, encoded.size());
+        Map<IntSet, Integer> pairCounts = new HashMap<>();
+        for (int i = 0; i < pairCounter.getNumSets(); i++) {
+            pairCounts.put(pairCounter.getItemset(i), pairCounter.getCounts()[i]);
+        }
+        assertEquals(5, pairCounts.size());
+        assertEquals(30, pairCounts.get(new IntSet(0, 2)).intValue());
+        assertEquals(50, pairCounts.get(new IntSet(0, 4)).intValue());
+        assertEquals(40, pairCounts.get(new IntSet(2, 4)).intValue());
+
+        Set<IntSet> pairs = new HashSet<>(Arrays.asList(
+                new IntSet(0, 2), new IntSet(0, 4), new IntSet(2, 4)));
+        Set<IntSet> triples = new HashSet<>(Collections.singletonList(new IntSet(0, 2, 4)));
+        PackedItemsetCounter tripleCounter = new PackedItemsetCounter(
+                3, 6, candidateItems, pairs, triples
+        ).count(encoded, null, oCounts, 0, encoded.size());
+        assertEquals(1, tripleCounter.getNumSets());
+        assertEquals(new IntSet(0, 2, 4), tripleCounter.getItemset(0));
+        assertEquals(1, tripleCounter.getCounts()[0]);
+        assertEquals(1, tripleCounter.getOCounts()[0]);
+    }
+}
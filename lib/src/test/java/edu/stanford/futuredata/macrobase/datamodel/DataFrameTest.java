@@ -3,9 +3,18 @@ package edu.stanford.futuredata.macrobase.datamodel;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 public class DataFrameTest {
     private DataFrame tinyDF;
@@ -49,6 +58,44 @@ public class DataFrameTest {
         assertEquals(tinyDF.getNumRows()*3, combined.getNumRows());
     }
 
+    @Test
+    public void testViews() {
+        DataFrameView high = tinyDF.where("metric", (double d) -> d > 1.5);
+        DataFrameView low = high.not();
+        assertEquals(2, high.getNumRows());
+        assertEquals(1, low.getNumRows());
+        assertArrayEquals(new double[]{2.0, 3.0}, high.getDoubleColumnByName("metric"), 1e-10);
+        assertArrayEquals(new String[]{"a"}, low.getStringColumnByName("attribute"));
+
+        DataFrameView highA = high.and(tinyDF.where("attribute", (Object a) -> a.equals("a")));
+        assertEquals(1, highA.getNumRows());
+        DictionaryColumn attr = highA.getEncodedStringColumnByName("attribute");
+        assertSame(tinyDF.getEncodedStringColumnByName("attribute").getDictionary(), attr.getDictionary());
+        assertEquals("a", attr.getValue(0));
+        assertEquals(3, high.or(low).getNumRows());
+
+        DataFrame materialized = highA.materialize();
+        assertEquals(1, materialized.getNumRows());
+        assertEquals(2.0, materialized.getDoubleColumnByName("metric")[0], 1e-10);
+    }
+
+    @Test
+    public void testRowSelection() {
+        int n = 130;
+        boolean[] mask = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            mask[i] = i % 3 == 0;
+        }
+        RowSelection selection = RowSelection.fromMask(mask);
+        assertEquals(44, selection.getNumSelected());
+        assertEquals(86, selection.not().getNumSelected());
+        assertEquals(0, selection.and(selection.not()).getNumSelected());
+        assertEquals(n, RowSelection.all(n).getNumSelected());
+        assertArrayEquals(mask, selection.toMask());
+        int[] indices = selection.getRowIndices();
+        assertEquals(129, indices[indices.length - 1]);
+    }
+
     @Test
     public void testComplexDataFrame() {
         DataFrame df = new DataFrame();
@@ -77,4 +124,94 @@ public class DataFrameTest {
         assertEquals(df2.getRow(0), df2.getRow(n));
         assertEquals(2.0 * n, df2.getDoubleColumn(2)[0], 1e-10);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testEncodedStringColumns() {
+        String[] attribute = {"a", "b", "a", "c"};
+        DataFrame df = new DataFrame();
+        df.addDoubleColumn("metric", new double[]{1.0, 2.0, 3.0, 4.0});
+        df.addEncodedStringColumn("attribute", DictionaryColumn.encode(attribute));
+        assertEquals(4, df.getNumRows());
+        assertEquals(3, df.getEncodedStringColumnByName("attribute").getDictionary().length);
+        assertEquals("c", df.getRow(3).getAs("attribute"));
+
+        DataFrame filtered = df.filter("metric", (double d) -> d != 2.0);
+        DictionaryColumn filteredCol = filtered.getEncodedStringColumnByName("attribute");
+        assertEquals(3, filteredCol.getNumRows());
+        assertSame(
+                df.getEncodedStringColumnByName("attribute").getDictionary(),
+                filteredCol.getDictionary()
+        );
+        assertArrayEquals(new String[]{"a", "a", "c"}, filtered.getStringColumnByName("attribute"));
+
+        DataFrame combined = DataFrame.unionAll(Arrays.asList(df, filtered));
+        assertEquals(7, combined.getNumRows());
+        assertEquals("c", combined.getStringColumnByName("attribute")[6]);
+
+        DataFrame selected = df.selectByName(Arrays.asList("attribute"));
+        assertArrayEquals(attribute, selected.getStringColumn(0));
+
+        // filters and views on encoded columns test each dictionary value once
+        int[] numTests = new int[1];
+        DataFrameView notA = df.where("attribute", (Object a) -> {
+            numTests[0]++;
+            return !a.equals("a");
+        });
+        assertEquals(3, numTests[0]);
+        assertArrayEquals(new String[]{"b", "c"}, notA.getStringColumnByName("attribute"));
+        assertArrayEquals(
+                new String[]{"c"},
+                notA.where("metric", (double d) -> d > 2.0).getStringColumnByName("attribute")
+        );
+        assertArrayEquals(
+                new String[]{"b"},
+                df.where("metric", (double d) -> d < 3.0).where("attribute", (Object a) -> a.equals("b"))
+                        .getStringColumnByName("attribute")
+        );
+        assertArrayEquals(
+                new double[]{2.0, 4.0},
+                df.filter(1, (Object a) -> !a.equals("a")).getDoubleColumnByName("metric"),
+                1e-10
+        );
+
+        // plain string columns are encoded on demand
+        DictionaryColumn encoded = tinyDF.getEncodedStringColumnByName("attribute");
+        assertEquals(2, encoded.getDictionary().length);
+        assertSame(encoded, tinyDF.getEncodedStringColumnByName("attribute"));
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        String[] attribute = new String[10000];
+        for (int i = 0; i < attribute.length; i++) {
+            attribute[i] = "v" + (i % 7);
+        }
+        DataFrame df = new DataFrame();
+        df.addStringColumn("attribute", attribute);
+        df.addEncodedStringColumn("encoded", DictionaryColumn.encode(attribute));
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<DictionaryColumn>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                tasks.add(() -> {
+                    assertArrayEquals(attribute, df.getStringColumnByName("encoded"));
+                    return df.getEncodedStringColumnByName("attribute");
+                });
+            }
+            DictionaryColumn first = null;
+            for (Future<DictionaryColumn> f : pool.invokeAll(tasks)) {
+                if (first == null) {
+                    first = f.get();
+                }
+                // every reader sees the one cached encoding
+                assertSame(first, f.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // encoded columns are decoded on request rather than kept decoded
+        assertNotSame(df.getStringColumnByName("encoded"), df.getStringColumnByName("encoded"));
+    }
+}
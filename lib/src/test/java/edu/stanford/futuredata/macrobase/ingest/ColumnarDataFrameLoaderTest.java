@@ -0,0 +1,60 @@
+package edu.stanford.futuredata.macrobase.ingest;
+
+import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import edu.stanford.futuredata.macrobase.datamodel.Schema;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ColumnarDataFrameLoaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Map<String, Schema.ColType> colTypes = new HashMap<>();
+        colTypes.put("usage", Schema.ColType.DOUBLE);
+        colTypes.put("latency", Schema.ColType.DOUBLE);
+        DataFrame df = new CSVDataFrameLoader("src/test/resources/sample.csv")
+                .setColumnTypes(colTypes)
+                .load();
+
+        String fileName = new File(folder.getRoot(), "sample.mbc").getPath();
+        new ColumnarFileWriter().write(df, fileName);
+        DataFrame loaded = new ColumnarDataFrameLoader(fileName).load();
+
+        assertEquals(df.getSchema().toString(), loaded.getSchema().toString());
+        assertEquals(df.getNumRows(), loaded.getNumRows());
+        assertArrayEquals(df.getDoubleColumnByName("usage"), loaded.getDoubleColumnByName("usage"), 0);
+        assertArrayEquals(df.getDoubleColumnByName("latency"), loaded.getDoubleColumnByName("latency"), 0);
+        assertArrayEquals(df.getStringColumnByName("location"), loaded.getStringColumnByName("location"));
+        assertArrayEquals(df.getEncodedStringColumnByName("version").getCodes(),
+                loaded.getEncodedStringColumnByName("version").getCodes());
+    }
+
+    @Test
+    public void testStringColumnAsDouble() throws Exception {
+        DataFrame df = new DataFrame();
+        df.addStringColumn("x", new String[]{"1.5", "bad", "1.5", null});
+        String fileName = new File(folder.getRoot(), "strings.mbc").getPath();
+        new ColumnarFileWriter().write(df, fileName);
+
+        assertArrayEquals(new String[]{"1.5", "bad", "1.5", null},
+                new ColumnarDataFrameLoader(fileName).load().getStringColumnByName("x"));
+
+        Map<String, Schema.ColType> colTypes = new HashMap<>();
+        colTypes.put("x", Schema.ColType.DOUBLE);
+        double[] x = new ColumnarDataFrameLoader(fileName)
+                .setColumnTypes(colTypes)
+                .load()
+                .getDoubleColumnByName("x");
+        assertArrayEquals(new double[]{1.5, Double.NaN, 1.5, Double.NaN}, x, 0);
+    }
+}
@@ -7,7 +7,9 @@ import org.junit.Test;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class DataFrameCSVLoaderTest {
@@ -28,4 +30,68 @@ public class DataFrameCSVLoaderTest {
         Row row = df.getRow(1);
         assertEquals("CAN", row.getAs("location"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLoadParallel() throws Exception {
+        Map<String, Schema.ColType> colTypes = new HashMap<>();
+        colTypes.put("usage", Schema.ColType.DOUBLE);
+        colTypes.put("latency", Schema.ColType.DOUBLE);
+
+        DataFrame sequential = new CSVDataFrameLoader("src/test/resources/sample.csv")
+                .setColumnTypes(colTypes)
+                .load();
+        for (int numThreads : new int[]{2, 7}) {
+            DataFrame parallel = new CSVDataFrameLoader("src/test/resources/sample.csv")
+                    .setNumThreads(numThreads)
+                    .setColumnTypes(colTypes)
+                    .load();
+            assertEquals(sequential.getSchema().toString(), parallel.getSchema().toString());
+            assertEquals(sequential.getNumRows(), parallel.getNumRows());
+            assertArrayEquals(sequential.getDoubleColumnByName("usage"),
+                    parallel.getDoubleColumnByName("usage"), 0);
+            assertArrayEquals(sequential.getDoubleColumnByName("latency"),
+                    parallel.getDoubleColumnByName("latency"), 0);
+            assertArrayEquals(sequential.getStringColumnByName("location"),
+                    parallel.getStringColumnByName("location"));
+            assertArrayEquals(sequential.getEncodedStringColumnByName("version").getDictionary(),
+                    parallel.getEncodedStringColumnByName("version").getDictionary());
+        }
+
+        DataFrame tiny = new CSVDataFrameLoader("src/test/resources/tiny.csv")
+                .setNumThreads(8)
+                .setColumnTypes(colTypes)
+                .load();
+        assertEquals(3, tiny.getNumRows());
+        assertArrayEquals(new String[]{"USA", "CAN", "USA"}, tiny.getStringColumnByName("location"));
+    }
+
+    @Test
+    public void testLoadChunks() throws Exception {
+        Map<String, Schema.ColType> colTypes = new HashMap<>();
+        colTypes.put("usage", Schema.ColType.DOUBLE);
+        colTypes.put("latency", Schema.ColType.DOUBLE);
+
+        DataFrame whole = new CSVDataFrameLoader("src/test/resources/sample.csv")
+                .setColumnTypes(colTypes)
+                .load();
+        LinkedBlockingQueue<DataFrame> chunks = new LinkedBlockingQueue<>();
+        CSVDataFrameLoader loader = new CSVDataFrameLoader("src/test/resources/sample.csv")
+                .setNumThreads(3);
+        loader.setColumnTypes(colTypes);
+        loader.loadChunks(chunks);
+        assertEquals(3, chunks.size());
+
+        DataFrameChunkMerger merger = new DataFrameChunkMerger();
+        for (DataFrame chunk : chunks) {
+            merger.add(chunk);
+        }
+        DataFrame merged = merger.build();
+        assertEquals(whole.getNumRows(), merged.getNumRows());
+        assertArrayEquals(whole.getDoubleColumnByName("latency"),
+                merged.getDoubleColumnByName("latency"), 0);
+        assertArrayEquals(whole.getEncodedStringColumnByName("location").getCodes(),
+                merged.getEncodedStringColumnByName("location").getCodes());
+        assertArrayEquals(whole.getEncodedStringColumnByName("version").getDictionary(),
+                merged.getEncodedStringColumnByName("version").getDictionary());
+    }
+}
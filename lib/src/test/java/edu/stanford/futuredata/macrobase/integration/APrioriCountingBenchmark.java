@@ -0,0 +1,178 @@
+package edu.stanford.futuredata.macrobase.integration;
+
+import edu.stanford.futuredata.macrobase.analysis.summary.APrioriSummarizer;
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.AttributeEncoder;
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.IntSet;
+import edu.stanford.futuredata.macrobase.analysis.summary.itemset.PackedItemsetCounter;
+
+import java.util.*;
+
+/**
+ * Compare the packed itemset counter used by APrioriSummarizer with the previous
+ * implementation, which allocated an IntSet per itemset per row and counted through a
+ * HashMap. Data is generated with the shapes of sample.csv (raw rows, one event per row)
+ * and sample_cubed.csv (cubed rows with a count column), widened to more attribute
+ * columns so that order 3 itemsets are exercised.
+ */
+public class APrioriCountingBenchmark {
+    private static class Dataset {
+        List<int[]> encoded;
+        double[] countCol;
+        double[] outlierCol;
+        int numItems;
+    }
+
+    private static Dataset generate(int n, int d, int C, boolean cubed) {
+        Random r = new Random(0);
+        List<String[]> columns = new ArrayList<>(d);
+        for (int j = 0; j < d; j++) {
+            columns.add(new String[n]);
+        }
+        double[] countCol = cubed ? new double[n] : null;
+        double[] outlierCol = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < d; j++) {
+                columns.get(j)[i] = "a" + j + ":" + r.nextInt(C);
+            }
+            if (cubed) {
+                countCol[i] = 1 + r.nextInt(200);
+                outlierCol[i] = r.nextInt((int) countCol[i] / 10 + 1);
+            } else {
+                outlierCol[i] = r.nextFloat() < 0.01 ? 1.0 : 0.0;
+            }
+        }
+        AttributeEncoder encoder = new AttributeEncoder();
+        Dataset ds = new Dataset();
+        ds.encoded = encoder.encodeAttributes(columns);
+        ds.countCol = countCol;
+        ds.outlierCol = outlierCol;
+        ds.numItems = encoder.getNextKey();
+        return ds;
+    }
+
+    /**
+     * Counting loop as previously implemented in APrioriSummarizer.countSet
+     */
+    private static HashMap<IntSet, Integer> legacyCount(
+            Dataset ds, HashSet<Integer> singleNext, HashSet<IntSet> pairNext,
+            HashSet<IntSet> candidates, int order, int[] counts, int[] oCounts) {
+        HashMap<IntSet, Integer> setMapping = new HashMap<>();
+        int maxSetIdx = 0;
+        boolean hasCountCol = ds.countCol != null;
+        int numRows = ds.encoded.size();
+        for (int i = 0; i < numRows; i++) {
+            int[] curRow = ds.encoded.get(i);
+            ArrayList<Integer> toExamine = new ArrayList<>();
+            for (int v : curRow) {
+                if (singleNext.contains(v)) {
+                    toExamine.add(v);
+                }
+            }
+            int l = toExamine.size();
+
+            ArrayList<IntSet> setsToAdd = new ArrayList<>();
+            if (order == 2) {
+                for (int p1 = 0; p1 < l; p1++) {
+                    int p1v = toExamine.get(p1);
+                    for (int p2 = p1 + 1; p2 < l; p2++) {
+                        int p2v = toExamine.get(p2);
+                        setsToAdd.add(new IntSet(p1v, p2v));
+                    }
+                }
+            } else {
+                for (int p1 = 0; p1 < l; p1++) {
+                    int p1v = toExamine.get(p1);
+                    for (int p2 = p1 + 1; p2 < l; p2++) {
+                        int p2v = toExamine.get(p2);
+                        if (pairNext.contains(new IntSet(p1v, p2v))) {
+                            for (int p3 = p2 + 1; p3 < l; p3++) {
+                                IntSet curSet = new IntSet(p1v, p2v, toExamine.get(p3));
+                                if (candidates.contains(curSet)) {
+                                    setsToAdd.add(curSet);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+
+            for (IntSet curSet : setsToAdd) {
+                int setIdx = setMapping.getOrDefault(curSet, -1);
+                if (setIdx < 0) {
+                    setIdx = maxSetIdx;
+                    setMapping.put(curSet, setIdx);
+                    maxSetIdx++;
+                }
+                counts[setIdx] += hasCountCol ? ds.countCol[i] : 1;
+                oCounts[setIdx] += ds.outlierCol[i];
+            }
+        }
+        return setMapping;
+    }
+
+    private static void runOrder(String name, Dataset ds, HashSet<Integer> singleNext,
+                                 HashSet<IntSet> pairNext, HashSet<IntSet> candidates,
+                                 int order, int numTrials) {
+        int maxSets = order == 2
+                ? singleNext.size() * singleNext.size() / 2
+                : candidates.size();
+        long legacyTime = Long.MAX_VALUE;
+        long packedTime = Long.MAX_VALUE;
+        HashMap<IntSet, Integer> legacyMapping = null;
+        int[] legacyCounts = null;
+        PackedItemsetCounter counter = null;
+        for (int t = 0; t < numTrials; t++) {
+            long start = System.nanoTime();
+            legacyCounts = new int[maxSets];
+            legacyMapping = legacyCount(ds, singleNext, pairNext, candidates, order,
+                    legacyCounts, new int[maxSets]);
+            legacyTime = Math.min(legacyTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            counter = new PackedItemsetCounter(order, ds.numItems, singleNext, pairNext, candidates)
+                    .count(ds.encoded, ds.countCol, ds.outlierCol, 0, ds.encoded.size());
+            packedTime = Math.min(packedTime, System.nanoTime() - start);
+        }
+
+        // Sanity check that both implementations agree
+        if (counter.getNumSets() != legacyMapping.size()) {
+            throw new RuntimeException("Mismatched number of itemsets");
+        }
+        for (int i = 0; i < counter.getNumSets(); i++) {
+            int legacyIdx = legacyMapping.get(counter.getItemset(i));
+            if (legacyCounts[legacyIdx] != counter.getCounts()[i]) {
+                throw new RuntimeException("Mismatched counts");
+            }
+        }
+
+        System.out.format("%s order %d: %d sets, legacy %.1f ms, packed %.1f ms, %.2fx\n",
+                name, order, counter.getNumSets(),
+                legacyTime / 1e6, packedTime / 1e6, legacyTime * 1.0 / packedTime);
+    }
+
+    public static void benchmarkShape(String name, int n, int d, int C, boolean cubed, int numTrials) {
+        Dataset ds = generate(n, d, C, cubed);
+        HashSet<Integer> singleNext = new HashSet<>();
+        for (int i = 0; i < ds.numItems; i++) {
+            singleNext.add(i);
+        }
+        runOrder(name, ds, singleNext, null, null, 2, numTrials);
+
+        HashSet<IntSet> pairNext = new HashSet<>();
+        PackedItemsetCounter pairs = new PackedItemsetCounter(2, ds.numItems, singleNext, null, null)
+                .count(ds.encoded, ds.countCol, ds.outlierCol, 0, ds.encoded.size());
+        for (int i = 0; i < pairs.getNumSets(); i++) {
+            pairNext.add(pairs.getItemset(i));
+        }
+        HashSet<IntSet> candidates = APrioriSummarizer.getOrder3Candidates(pairNext, singleNext);
+        runOrder(name, ds, singleNext, pairNext, candidates, 3, numTrials);
+    }
+
+    public static void main(String[] args) {
+        // Increase these numbers for more rigorous, slower performance testing
+        int n = 1000000;
+        int numTrials = 5;
+        benchmarkShape("sample", n, 4, 10, false, numTrials);
+        benchmarkShape("sample_cubed", n / 10, 4, 10, true, numTrials);
+    }
+}
@@ -0,0 +1,64 @@
+package edu.stanford.futuredata.macrobase.integration;
+
+import edu.stanford.futuredata.macrobase.analysis.classify.ArithmeticClassifier;
+import edu.stanford.futuredata.macrobase.analysis.classify.stats.NormalDist;
+import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+
+import java.util.Random;
+
+/**
+ * Per-row cost of the normal CDF, evaluated row by row and batched over a column, and of
+ * ArithmeticClassifier scoring on cubed data with the shape of sample_cubed.csv.
+ */
+public class ArithmeticClassifierBenchmark {
+    public static void main(String[] args) {
+        // Increase these numbers for more rigorous, slower performance testing
+        int n = 5000000;
+        int numTrials = 10;
+
+        Random r = new Random(0);
+        double[] counts = new double[n];
+        double[] means = new double[n];
+        double[] stds = new double[n];
+        for (int i = 0; i < n; i++) {
+            counts[i] = 1 + r.nextInt(200);
+            means[i] = r.nextGaussian() * 10;
+            stds[i] = 1 + r.nextDouble() * 5;
+        }
+        DataFrame df = new DataFrame();
+        df.addDoubleColumn("count", counts);
+        df.addDoubleColumn("mean", means);
+        df.addDoubleColumn("std", stds);
+
+        NormalDist dist = new NormalDist();
+        double[] results = new double[n];
+        long scalarTime = Long.MAX_VALUE;
+        long batchedTime = Long.MAX_VALUE;
+        long classifyTime = Long.MAX_VALUE;
+        double checksum = 0;
+        for (int t = 0; t < numTrials; t++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                results[i] = dist.cdf(means[i], stds[i], 20.0);
+            }
+            scalarTime = Math.min(scalarTime, System.nanoTime() - start);
+            checksum += results[t];
+
+            start = System.nanoTime();
+            dist.cdf(means, stds, 20.0, results);
+            batchedTime = Math.min(batchedTime, System.nanoTime() - start);
+            checksum += results[t];
+
+            start = System.nanoTime();
+            ArithmeticClassifier ac = new ArithmeticClassifier("count", "mean", "std");
+            ac.process(df);
+            classifyTime = Math.min(classifyTime, System.nanoTime() - start);
+            checksum += ac.getHighCutoff();
+        }
+
+        System.out.format("cdf per row: scalar %.2f ns, batched %.2f ns\n",
+                scalarTime * 1.0 / n, batchedTime * 1.0 / n);
+        System.out.format("ArithmeticClassifier.process per row: %.2f ns (checksum %f)\n",
+                classifyTime * 1.0 / n, checksum);
+    }
+}
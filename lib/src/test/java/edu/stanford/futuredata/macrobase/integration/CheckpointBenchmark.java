@@ -0,0 +1,71 @@
+package edu.stanford.futuredata.macrobase.integration;
+
+import edu.stanford.futuredata.macrobase.StreamingSummarizationTest;
+import edu.stanford.futuredata.macrobase.analysis.summary.Explanation;
+import edu.stanford.futuredata.macrobase.analysis.summary.IncrementalSummarizer;
+import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import edu.stanford.futuredata.macrobase.operator.Checkpointer;
+import edu.stanford.futuredata.macrobase.operator.WindowedOperator;
+
+import java.io.File;
+
+/**
+ * Measure snapshot size and the cost of checkpointing and restoring a sliding window
+ * summarizer tracking a large number of itemsets.
+ */
+public class CheckpointBenchmark {
+    private static WindowedOperator<Explanation> getOperator(IncrementalSummarizer summarizer) {
+        summarizer.setAttributes(StreamingSummarizationTest.getAttributes(10, false));
+        summarizer.setOutlierColumn("outlier");
+        summarizer.setMinSupport(.01);
+        WindowedOperator<Explanation> windowed = new WindowedOperator<>(summarizer);
+        windowed.setWindowLength(50000);
+        windowed.setTimeColumn("time");
+        windowed.setSlideLength(1000);
+        return windowed;
+    }
+
+    public static void testCheckpointPerformance() throws Exception {
+        int n = 100000;
+        // Ten attributes of cardinality 7 leave about 11k itemsets tracked once the window is
+        // full; cardinality 10 over eight attributes only reaches about 3k
+        DataFrame df = StreamingSummarizationTest.generateAnomalyDataset(
+                n, 3, 7, 10, 0.2, 50000, 100000
+        );
+
+        IncrementalSummarizer summarizer = new IncrementalSummarizer();
+        WindowedOperator<Explanation> windowed = getOperator(summarizer).initialize();
+        double startTime = 0.0;
+        while (startTime < n) {
+            double ls = startTime;
+            double endTime = startTime + 1000;
+            windowed.process(df.filter("time", (double t) -> t >= ls && t < endTime));
+            startTime = endTime;
+        }
+        System.out.println("Tracked itemsets: " + summarizer.getNumTrackedItemsets());
+
+        File file = File.createTempFile("macrobase", ".checkpoint");
+        file.deleteOnExit();
+        int numTrials = 10;
+        Checkpointer checkpointer = new Checkpointer(windowed, file, 0);
+        long timerStart = System.nanoTime();
+        for (int i = 0; i < numTrials; i++) {
+            checkpointer.checkpoint();
+        }
+        double checkpointTime = (System.nanoTime() - timerStart) / 1.0e6 / numTrials;
+        checkpointer.close();
+        System.out.println("Snapshot bytes: " + checkpointer.getLastSnapshotBytes());
+        System.out.println("Checkpoint time (ms): " + checkpointTime);
+
+        timerStart = System.nanoTime();
+        for (int i = 0; i < numTrials; i++) {
+            new Checkpointer(getOperator(new IncrementalSummarizer()), file, 0).restore();
+        }
+        double restoreTime = (System.nanoTime() - timerStart) / 1.0e6 / numTrials;
+        System.out.println("Restore time (ms): " + restoreTime);
+    }
+
+    public static void main(String[] args) throws Exception {
+        testCheckpointPerformance();
+    }
+}
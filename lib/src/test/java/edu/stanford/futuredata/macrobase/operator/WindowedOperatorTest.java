@@ -1,13 +1,25 @@
 package edu.stanford.futuredata.macrobase.operator;
 
+import edu.stanford.futuredata.macrobase.StreamingSummarizationTest;
+import edu.stanford.futuredata.macrobase.analysis.summary.Explanation;
+import edu.stanford.futuredata.macrobase.analysis.summary.IncrementalSummarizer;
 import edu.stanford.futuredata.macrobase.analysis.summary.MovingAverage;
 import edu.stanford.futuredata.macrobase.analysis.summary.MovingAverageTest;
 import edu.stanford.futuredata.macrobase.datamodel.DataFrame;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.util.List;
+
+import static edu.stanford.futuredata.macrobase.StreamingSummarizationTest.resultStats;
 import static org.junit.Assert.*;
 
 public class WindowedOperatorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testMovingAverage() throws Exception {
         DataFrame data = MovingAverageTest.getTestDF();
@@ -46,4 +58,149 @@ public class WindowedOperatorTest {
         windowedAverageOp.flushBuffer();
         assertEquals(windowedAverageOp.getBufferSize(), 0);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSplitPanes() throws Exception {
+        WindowedOperator<Double> windowedOp = new WindowedOperator<>(
+                new MovingAverage("val", 0)
+        );
+        windowedOp.setSlideLength(10.0);
+        windowedOp.setWindowLength(30.0);
+        windowedOp.initialize();
+
+        DataFrame sorted = new DataFrame();
+        sorted.addDoubleColumn("time", new double[]{3, 5, 12, 25});
+        sorted.addStringColumn("attr", new String[]{"a", "b", "a", "c"});
+        List<DataFrame> panes = windowedOp.addToBuffer(sorted);
+        assertEquals(2, panes.size());
+        assertArrayEquals(new double[]{3, 5}, panes.get(0).getDoubleColumnByName("time"), 0.0);
+        assertArrayEquals(new String[]{"a"}, panes.get(1).getStringColumnByName("attr"));
+        assertEquals(1, windowedOp.getNumBufferedRows());
+
+        // Rows out of order within a minibatch keep their relative order within each pane
+        DataFrame unsorted = new DataFrame();
+        unsorted.addDoubleColumn("time", new double[]{41, 27, 33, 28, 45});
+        unsorted.addStringColumn("attr", new String[]{"d", "b", "e", "a", "b"});
+        panes = windowedOp.addToBuffer(unsorted);
+        assertEquals(2, panes.size());
+        assertArrayEquals(new double[]{25, 27, 28}, panes.get(0).getDoubleColumnByName("time"), 0.0);
+        assertArrayEquals(new String[]{"c", "b", "a"}, panes.get(0).getStringColumnByName("attr"));
+        assertArrayEquals(new String[]{"e"}, panes.get(1).getStringColumnByName("attr"));
+        assertEquals(2, windowedOp.getNumBufferedRows());
+        assertEquals(40.0, windowedOp.getMaxWindowTime(), 0.0);
+    }
+
+    @Test
+    public void testPaneDictionaries() throws Exception {
+        WindowedOperator<Double> windowedOp = new WindowedOperator<>(
+                new MovingAverage("val", 0)
+        );
+        windowedOp.setSlideLength(10.0);
+        windowedOp.setWindowLength(30.0);
+        windowedOp.initialize();
+
+        // Every pane sees new values, and buffers are reused across panes
+        for (int p = 0; p < 20; p++) {
+            DataFrame batch = new DataFrame();
+            batch.addDoubleColumn("time", new double[]{10 * p, 10 * p + 1, 10 * p + 2});
+            batch.addStringColumn("attr", new String[]{"x", "v" + p, "v" + p});
+            List<DataFrame> panes = windowedOp.addToBuffer(batch);
+            if (p > 0) {
+                assertEquals(1, panes.size());
+                DataFrame pane = panes.get(0);
+                // Only the values of the pane itself are in its dictionary
+                assertEquals(2, pane.getEncodedStringColumnByName("attr").getDictionary().length);
+                assertArrayEquals(
+                        new String[]{"x", "v" + (p - 1), "v" + (p - 1)},
+                        pane.getStringColumnByName("attr")
+                );
+            }
+        }
+    }
+
+    @Test
+    public void testAllowedLateness() throws Exception {
+        WindowedOperator<Double> windowedOp = new WindowedOperator<>(
+                new MovingAverage("val", 0)
+        );
+        windowedOp.setSlideLength(10.0);
+        windowedOp.setWindowLength(30.0);
+        windowedOp.setAllowedLateness(5.0);
+        windowedOp.initialize();
+
+        DataFrame batch = new DataFrame();
+        batch.addDoubleColumn("time", new double[]{1, 12, 8, 14});
+        assertEquals(0, windowedOp.addToBuffer(batch).size());
+        assertEquals(9.0, windowedOp.getWatermark(), 0.0);
+        assertEquals(1, windowedOp.getNumLateRows());
+
+        batch = new DataFrame();
+        batch.addDoubleColumn("time", new double[]{16, 3});
+        List<DataFrame> panes = windowedOp.addToBuffer(batch);
+        assertEquals(1, panes.size());
+        assertArrayEquals(new double[]{1, 8, 3}, panes.get(0).getDoubleColumnByName("time"), 0.0);
+        assertEquals(2, windowedOp.getNumLateRows());
+        assertEquals(13.0, windowedOp.getMaxObservedLateness(), 0.0);
+
+        // Rows for a pane that has already been handed on are dropped
+        batch = new DataFrame();
+        batch.addDoubleColumn("time", new double[]{26, 9});
+        panes = windowedOp.addToBuffer(batch);
+        assertEquals(1, panes.size());
+        assertArrayEquals(new double[]{12, 14, 16}, panes.get(0).getDoubleColumnByName("time"), 0.0);
+        assertEquals(1, windowedOp.getNumDroppedRows());
+        assertEquals(1, windowedOp.getNumBufferedRows());
+        assertEquals(20.0, windowedOp.getMaxWindowTime(), 0.0);
+    }
+
+    private WindowedOperator<Explanation> getWindowedSummarizer() {
+        IncrementalSummarizer summarizer = new IncrementalSummarizer();
+        summarizer.setAttributes(StreamingSummarizationTest.getAttributes(5, false));
+        summarizer.setOutlierColumn("outlier");
+        summarizer.setMinSupport(.3);
+        WindowedOperator<Explanation> windowed = new WindowedOperator<>(summarizer);
+        windowed.setWindowLength(2000);
+        windowed.setSlideLength(500);
+        windowed.setAllowedLateness(100);
+        return windowed;
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        DataFrame df = StreamingSummarizationTest.generateAnomalyDataset(
+                6000, 2, 5, 5, 0.01, 2000, 4000
+        );
+        WindowedOperator<Explanation> original = getWindowedSummarizer().initialize();
+        File file = new File(folder.getRoot(), "checkpoint");
+        Checkpointer checkpointer = new Checkpointer(original, file, 0);
+
+        double batchSize = 300;
+        double startTime = 0.0;
+        while (startTime < 3000) {
+            double ls = startTime;
+            double endTime = startTime + batchSize;
+            original.process(df.filter("time", (double t) -> t >= ls && t < endTime));
+            startTime = endTime;
+        }
+        assertTrue(original.getNumBufferedRows() > 0);
+        assertTrue(checkpointer.checkpointIfDue());
+        checkpointer.close();
+        assertTrue(checkpointer.getLastSnapshotBytes() > 0);
+
+        WindowedOperator<Explanation> restored = getWindowedSummarizer();
+        assertTrue(new Checkpointer(restored, file, 0).restore());
+        assertEquals(original.getMaxWindowTime(), restored.getMaxWindowTime(), 0.0);
+        assertEquals(original.getNumBufferedRows(), restored.getNumBufferedRows());
+        assertEquals(resultStats(original.getResults()), resultStats(restored.getResults()));
+
+        while (startTime < 6000) {
+            double ls = startTime;
+            double endTime = startTime + batchSize;
+            DataFrame batch = df.filter("time", (double t) -> t >= ls && t < endTime);
+            original.process(batch);
+            restored.process(batch);
+            assertEquals(resultStats(original.getResults()), resultStats(restored.getResults()));
+            startTime = endTime;
+        }
+    }
+}